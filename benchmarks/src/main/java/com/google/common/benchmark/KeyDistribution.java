@@ -0,0 +1,72 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The distribution from which benchmarks draw the keys they look up.
+ */
+public enum KeyDistribution {
+  /** Every key is equally likely. */
+  UNIFORM {
+    @Override
+    int[] sample(int keySpace, int count, Random random) {
+      int[] keys = new int[count];
+      for (int i = 0; i < count; i++) {
+        keys[i] = random.nextInt(keySpace);
+      }
+      return keys;
+    }
+  },
+
+  /**
+   * The popularity of the keys follows Zipf's law with an exponent of 1, like that of many real
+   * workloads: the key of rank {@code r} is drawn with a probability proportional to {@code 1 / r}.
+   */
+  ZIPF {
+    @Override
+    int[] sample(int keySpace, int count, Random random) {
+      double[] cumulative = new double[keySpace];
+      double sum = 0;
+      for (int rank = 1; rank <= keySpace; rank++) {
+        sum += 1.0 / rank;
+        cumulative[rank - 1] = sum;
+      }
+      int[] keys = new int[count];
+      for (int i = 0; i < count; i++) {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+        keys[i] = Math.min((index >= 0) ? index : -index - 1, keySpace - 1);
+      }
+      return keys;
+    }
+  };
+
+  /**
+   * Returns {@code count} keys between zero (inclusive) and {@code keySpace} (exclusive), drawn
+   * from this distribution.
+   */
+  abstract int[] sample(int keySpace, int count, Random random);
+
+  /**
+   * Returns {@code count} keys drawn with a fixed seed, so that every run draws the same keys.
+   */
+  public int[] sample(int keySpace, int count) {
+    return sample(keySpace, count, new Random(0x5DEECE66DL));
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.benchmark.KeyDistribution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of reads and writes of a {@link LocalCache}, which is filled to its maximum size
+ * before measuring. Keys are drawn from a key space {@code keySpaceFactor} times larger than the
+ * cache, so that the hit ratio is roughly the reciprocal of that factor under a uniform
+ * distribution, and much higher under a Zipf distribution. The {@code Contended} benchmarks run
+ * the same operations on {@value #CONTENDED_THREADS} threads, each of which walks the same key
+ * sequence from a different offset.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class LocalCacheBenchmark {
+  /** The number of keys in each sequence; a power of two, so that indices can be masked. */
+  private static final int SEQUENCE_LENGTH = 1 << 16;
+
+  /** The number of threads of the contended benchmarks. */
+  private static final int CONTENDED_THREADS = 8;
+
+  @Param({"1000", "100000"})
+  int maximumSize;
+
+  @Param({"1", "2", "10"})
+  int keySpaceFactor;
+
+  @Param({"UNIFORM", "ZIPF"})
+  KeyDistribution distribution;
+
+  @Param({"LRU", "WINDOW_TINY_LFU"})
+  EvictionPolicy evictionPolicy;
+
+  /** Whether entries also expire after access, which maintains the access queue on every read. */
+  @Param({"false", "true"})
+  boolean expireAfterAccess;
+
+  Cache<Integer, Integer> cache;
+  LoadingCache<Integer, Integer> loadingCache;
+  Integer[] keys;
+
+  private CacheBuilder<Object, Object> builder() {
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .evictionPolicy(evictionPolicy);
+    return expireAfterAccess ? builder.expireAfterAccess(1, TimeUnit.HOURS) : builder;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    cache = builder().build();
+    loadingCache = builder().build(new CacheLoader<Integer, Integer>() {
+      @Override
+      public Integer load(Integer key) {
+        return key;
+      }
+    });
+    int keySpace = maximumSize * keySpaceFactor;
+    int[] sample = distribution.sample(keySpace, SEQUENCE_LENGTH);
+    keys = new Integer[SEQUENCE_LENGTH];
+    for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+      keys[i] = sample[i];
+    }
+    for (int i = 0; i < maximumSize; i++) {
+      cache.put(i, i);
+      loadingCache.getUnchecked(i);
+    }
+  }
+
+  /** The position of one thread in the key sequence. */
+  @State(Scope.Thread)
+  public static class ThreadState {
+    int index = (int) (Thread.currentThread().getId() * 0x9E3779B9L);
+  }
+
+  private Integer nextKey(ThreadState thread) {
+    return keys[thread.index++ & (SEQUENCE_LENGTH - 1)];
+  }
+
+  @Benchmark
+  public Integer getIfPresent(ThreadState thread) {
+    return cache.getIfPresent(nextKey(thread));
+  }
+
+  @Benchmark
+  public Integer get(ThreadState thread) {
+    return loadingCache.getUnchecked(nextKey(thread));
+  }
+
+  @Benchmark
+  public void put(ThreadState thread) {
+    Integer key = nextKey(thread);
+    cache.put(key, key);
+  }
+
+  @Benchmark
+  @Threads(CONTENDED_THREADS)
+  public Integer getIfPresentContended(ThreadState thread) {
+    return cache.getIfPresent(nextKey(thread));
+  }
+
+  @Benchmark
+  @Threads(CONTENDED_THREADS)
+  public Integer getContended(ThreadState thread) {
+    return loadingCache.getUnchecked(nextKey(thread));
+  }
+
+  @Benchmark
+  @Threads(CONTENDED_THREADS)
+  public void putContended(ThreadState thread) {
+    Integer key = nextKey(thread);
+    cache.put(key, key);
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(3)
+  public Integer readWrite_get(ThreadState thread) {
+    return loadingCache.getUnchecked(nextKey(thread));
+  }
+
+  @Benchmark
+  @Group("readWrite")
+  @GroupThreads(1)
+  public void readWrite_put(ThreadState thread) {
+    Integer key = nextKey(thread);
+    loadingCache.put(key, key);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.benchmark.KeyDistribution;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the construction of {@link ImmutableMap} instances, and of lookups in them. The
+ * looked up keys are drawn from a key space in which a fraction {@code hitRatio} of the keys is
+ * present; under a Zipf distribution, which favors the present keys, more lookups than that hit.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ImmutableMapBenchmark {
+  private static final int LOOKUPS = 1 << 12;
+
+  @Param({"4", "64", "4096", "262144"})
+  int size;
+
+  @Param({"1.0", "0.5"})
+  double hitRatio;
+
+  @Param({"UNIFORM", "ZIPF"})
+  KeyDistribution distribution;
+
+  Map<String, Integer> entries;
+  ImmutableMap<String, Integer> map;
+  String[] lookups;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    entries = new LinkedHashMap<String, Integer>();
+    for (int i = 0; i < size; i++) {
+      entries.put("key" + i, i);
+    }
+    map = ImmutableMap.copyOf(entries);
+    // Keys at or above size are absent; the key space is scaled so the given fraction is present.
+    int keySpace = (int) Math.ceil(size / hitRatio);
+    int[] sample = distribution.sample(keySpace, LOOKUPS);
+    lookups = new String[LOOKUPS];
+    for (int i = 0; i < LOOKUPS; i++) {
+      lookups[i] = "key" + sample[i];
+    }
+  }
+
+  @Benchmark
+  public ImmutableMap<String, Integer> copyOf() {
+    return ImmutableMap.copyOf(entries);
+  }
+
+  @Benchmark
+  public ImmutableMap<String, Integer> builder() {
+    ImmutableMap.Builder<String, Integer> builder = ImmutableMap.builder();
+    for (Map.Entry<String, Integer> entry : entries.entrySet()) {
+      builder.put(entry.getKey(), entry.getValue());
+    }
+    return builder.build();
+  }
+
+  /** Returns the number of hits in {@value #LOOKUPS} lookups. */
+  @Benchmark
+  public int get() {
+    int hits = 0;
+    for (String key : lookups) {
+      if (map.get(key) != null) {
+        hits++;
+      }
+    }
+    return hits;
+  }
+}
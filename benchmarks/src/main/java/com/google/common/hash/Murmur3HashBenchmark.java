@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.hash;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link Murmur3_128HashFunction}, hashing byte arrays of several sizes directly
+ * and through a {@link Hasher}, and hashing single {@code long} values.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class Murmur3HashBenchmark {
+  private static final HashFunction MURMUR3_128 = Hashing.murmur3_128();
+
+  @Param({"8", "64", "1024", "65536"})
+  int size;
+
+  byte[] bytes;
+  long value;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(size);
+    bytes = new byte[size];
+    random.nextBytes(bytes);
+    value = random.nextLong();
+  }
+
+  @Benchmark
+  public HashCode hashBytes() {
+    return MURMUR3_128.hashBytes(bytes);
+  }
+
+  @Benchmark
+  public HashCode hasherPutBytes() {
+    return MURMUR3_128.newHasher().putBytes(bytes).hash();
+  }
+
+  @Benchmark
+  public HashCode hashLong() {
+    return MURMUR3_128.hashLong(value);
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.io;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of {@link BaseEncoding} and of {@link ByteStreams#copy(java.io.InputStream,
+ * OutputStream)}, over inputs of several sizes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class IoBenchmark {
+  private static final OutputStream NULL_OUTPUT_STREAM = ByteStreams.nullOutputStream();
+
+  @Param({"16", "1024", "65536", "1048576"})
+  int size;
+
+  @Param({"BASE64", "BASE16"})
+  Encoding encoding;
+
+  /** The encodings which are benchmarked. */
+  public enum Encoding {
+    BASE64(BaseEncoding.base64()),
+    BASE16(BaseEncoding.base16());
+
+    final BaseEncoding encoding;
+
+    Encoding(BaseEncoding encoding) {
+      this.encoding = encoding;
+    }
+  }
+
+  byte[] bytes;
+  String encoded;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    bytes = new byte[size];
+    new Random(size).nextBytes(bytes);
+    encoded = encoding.encoding.encode(bytes);
+  }
+
+  @Benchmark
+  public String encode() {
+    return encoding.encoding.encode(bytes);
+  }
+
+  @Benchmark
+  public byte[] decode() {
+    return encoding.encoding.decode(encoded);
+  }
+
+  @Benchmark
+  public long copy() throws IOException {
+    return ByteStreams.copy(new ByteArrayInputStream(bytes), NULL_OUTPUT_STREAM);
+  }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.primitives;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the bulk array operations of {@link Ints}, {@link Longs} and {@link Doubles}:
+ * sums, prefix sums, radix sorting against {@link Arrays#sort}, searches of sorted arrays, and set
+ * operations on pairs of sorted arrays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PrimitiveArraysBenchmark {
+  @Param({"1024", "65536", "1048576"})
+  int size;
+
+  int[] ints;
+  long[] longs;
+  double[] doubles;
+  int[] sortedInts;
+  int[] otherSortedInts;
+  int[] keys;
+  int[] scratch;
+  long[] longScratch;
+  int[] output;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    Random random = new Random(size);
+    ints = new int[size];
+    longs = new long[size];
+    doubles = new double[size];
+    for (int i = 0; i < size; i++) {
+      ints[i] = random.nextInt();
+      longs[i] = random.nextLong();
+      doubles[i] = random.nextDouble();
+    }
+    // two sorted arrays drawn from a range twice their size, so about half the values are shared
+    sortedInts = sortedRandomInts(random, size);
+    otherSortedInts = sortedRandomInts(random, size);
+    keys = new int[1024];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = random.nextInt(2 * size);
+    }
+    scratch = new int[size];
+    longScratch = new long[size];
+    output = new int[2 * size];
+  }
+
+  private static int[] sortedRandomInts(Random random, int size) {
+    int[] array = new int[size];
+    for (int i = 0; i < size; i++) {
+      array[i] = random.nextInt(2 * size);
+    }
+    Arrays.sort(array);
+    return array;
+  }
+
+  @Benchmark
+  public long intSum() {
+    return Ints.sum(ints);
+  }
+
+  @Benchmark
+  public long longSum() {
+    return Longs.sum(longs);
+  }
+
+  @Benchmark
+  public double doubleSum() {
+    return Doubles.sum(doubles);
+  }
+
+  @Benchmark
+  public int intPrefixSums() {
+    System.arraycopy(ints, 0, scratch, 0, size);
+    Ints.prefixSums(scratch);
+    return scratch[size - 1];
+  }
+
+  @Benchmark
+  public int intArraysSort() {
+    System.arraycopy(ints, 0, scratch, 0, size);
+    Arrays.sort(scratch);
+    return scratch[0];
+  }
+
+  @Benchmark
+  public int intRadixSort() {
+    System.arraycopy(ints, 0, scratch, 0, size);
+    Ints.radixSort(scratch);
+    return scratch[0];
+  }
+
+  @Benchmark
+  public long longArraysSort() {
+    System.arraycopy(longs, 0, longScratch, 0, size);
+    Arrays.sort(longScratch);
+    return longScratch[0];
+  }
+
+  @Benchmark
+  public long longRadixSort() {
+    System.arraycopy(longs, 0, longScratch, 0, size);
+    Longs.radixSort(longScratch);
+    return longScratch[0];
+  }
+
+  @Benchmark
+  public int ceilingIndex() {
+    int result = 0;
+    for (int key : keys) {
+      result += Ints.ceilingIndex(sortedInts, key);
+    }
+    return result;
+  }
+
+  @Benchmark
+  public int mergeSorted() {
+    return Ints.mergeSorted(sortedInts, otherSortedInts, output);
+  }
+
+  @Benchmark
+  public int unionSorted() {
+    return Ints.unionSorted(sortedInts, otherSortedInts, output);
+  }
+
+  @Benchmark
+  public int intersectSorted() {
+    return Ints.intersectSorted(sortedInts, otherSortedInts, output);
+  }
+
+  @Benchmark
+  public int subtractSorted() {
+    return Ints.subtractSorted(sortedInts, otherSortedInts, output);
+  }
+}
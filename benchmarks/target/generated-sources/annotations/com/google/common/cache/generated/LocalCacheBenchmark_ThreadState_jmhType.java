@@ -0,0 +1,4 @@
+package com.google.common.cache.generated;
+public class LocalCacheBenchmark_ThreadState_jmhType extends LocalCacheBenchmark_ThreadState_jmhType_B3 {
+}
+
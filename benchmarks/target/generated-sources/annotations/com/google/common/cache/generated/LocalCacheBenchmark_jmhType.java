@@ -0,0 +1,4 @@
+package com.google.common.cache.generated;
+public class LocalCacheBenchmark_jmhType extends LocalCacheBenchmark_jmhType_B3 {
+}
+
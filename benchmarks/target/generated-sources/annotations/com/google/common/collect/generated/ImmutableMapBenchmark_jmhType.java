@@ -0,0 +1,4 @@
+package com.google.common.collect.generated;
+public class ImmutableMapBenchmark_jmhType extends ImmutableMapBenchmark_jmhType_B3 {
+}
+
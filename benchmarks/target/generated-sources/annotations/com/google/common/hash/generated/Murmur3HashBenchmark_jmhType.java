@@ -0,0 +1,4 @@
+package com.google.common.hash.generated;
+public class Murmur3HashBenchmark_jmhType extends Murmur3HashBenchmark_jmhType_B3 {
+}
+
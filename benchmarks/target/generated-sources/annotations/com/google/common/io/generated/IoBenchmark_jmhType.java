@@ -0,0 +1,4 @@
+package com.google.common.io.generated;
+public class IoBenchmark_jmhType extends IoBenchmark_jmhType_B3 {
+}
+
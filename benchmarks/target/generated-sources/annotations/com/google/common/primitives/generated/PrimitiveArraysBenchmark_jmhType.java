@@ -0,0 +1,4 @@
+package com.google.common.primitives.generated;
+public class PrimitiveArraysBenchmark_jmhType extends PrimitiveArraysBenchmark_jmhType_B3 {
+}
+
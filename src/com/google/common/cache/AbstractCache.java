@@ -209,6 +209,7 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
     private final LongAddable loadExceptionCount = LongAddables.create();
     private final LongAddable totalLoadTime = LongAddables.create();
     private final LongAddable evictionCount = LongAddables.create();
+    private final LongAddable admissionRejectionCount = LongAddables.create();
 
     /**
      * Constructs an instance with all counts initialized to zero.
@@ -248,6 +249,16 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
       evictionCount.increment();
     }
 
+    /**
+     * Records that a newly added entry was evicted, rather than an existing entry, by the cache's
+     * {@linkplain EvictionPolicy admission policy}. The eviction itself is also recorded by
+     * {@link #recordEviction}. This is not part of {@link StatsCounter}, so that existing
+     * implementations of it need not change; other counters report no rejections.
+     */
+    void recordAdmissionRejection() {
+      admissionRejectionCount.increment();
+    }
+
     @Override
     public CacheStats snapshot() {
       return new CacheStats(
@@ -256,7 +267,8 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
           loadSuccessCount.sum(),
           loadExceptionCount.sum(),
           totalLoadTime.sum(),
-          evictionCount.sum());
+          evictionCount.sum(),
+          admissionRejectionCount.sum());
     }
 
     /**
@@ -270,6 +282,7 @@ public abstract class AbstractCache<K, V> implements Cache<K, V> {
       loadExceptionCount.add(otherStats.loadExceptionCount());
       totalLoadTime.add(otherStats.totalLoadTime());
       evictionCount.add(otherStats.evictionCount());
+      admissionRejectionCount.add(otherStats.admissionRejectionCount());
     }
   }
 }
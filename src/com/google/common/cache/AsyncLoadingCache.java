@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A semi-persistent mapping from keys to the futures of their values. Values are loaded
+ * asynchronously by the cache, on the executor given to {@link CacheBuilder#buildAsync}, and the
+ * futures are stored in the cache until either evicted or manually invalidated. Unlike
+ * {@link LoadingCache#get}, no method of this interface waits for a value to be loaded.
+ *
+ * <p>A future which fails is removed from the cache as soon as it completes, so that the next
+ * request for its key starts a new load; a future which is still loading counts towards the
+ * cache's size, and may be evicted like any other entry.
+ *
+ * <p>Implementations of this interface are expected to be thread-safe, and can be safely accessed
+ * by multiple concurrent threads.
+ *
+ * @param <K> the type of the cache's keys, which are not permitted to be null
+ * @param <V> the type of the cache's values, which are not permitted to be null
+ * @since 17.0
+ */
+@Beta
+@GwtIncompatible("ListenableFuture")
+public interface AsyncLoadingCache<K, V> {
+
+  /**
+   * Returns the future associated with {@code key} in this cache, or {@code null} if there is no
+   * cached future for {@code key}. The returned future may still be loading.
+   */
+  @Nullable
+  ListenableFuture<V> getIfPresent(Object key);
+
+  /**
+   * Returns the future associated with {@code key} in this cache, first starting to load that
+   * value if necessary. Loading runs {@link CacheLoader#load} on the cache's executor.
+   *
+   * <p>If another call to {@link #get} or {@link #getAll} is currently loading the value for
+   * {@code key}, returns the same future rather than starting another load.
+   *
+   * <p>If the load fails, the returned future fails with the exception thrown by the loader, or
+   * with an {@link CacheLoader.InvalidCacheLoadException} if the loader returned null, and the
+   * future is removed from the cache.
+   */
+  ListenableFuture<V> get(K key);
+
+  /**
+   * Returns a future of a map of the values associated with {@code keys}, starting to load them if
+   * necessary. The returned map contains entries that were already cached, combined with newly
+   * loaded entries; it will never contain null keys or values.
+   *
+   * <p>All of the keys which are neither cached nor currently loading are loaded by a single
+   * call to {@link CacheLoader#loadAll} on the cache's executor, or by individual calls to
+   * {@link CacheLoader#load} if {@code loadAll} is not implemented. Keys which are already loading
+   * are not loaded again. If the loader returns entries for keys which were not requested, they
+   * are cached but not included in the returned map.
+   *
+   * <p>The returned future fails if the load of any of the keys fails.
+   */
+  ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys);
+
+  /**
+   * Associates {@code valueFuture} with {@code key} in this cache. If the cache previously
+   * contained a future associated with {@code key}, it is replaced. If {@code valueFuture} fails,
+   * it is removed from the cache.
+   */
+  void put(K key, ListenableFuture<V> valueFuture);
+
+  /**
+   * Discards any cached future for key {@code key}. A load which is in progress is not cancelled,
+   * but its result will not be cached.
+   */
+  void invalidate(Object key);
+
+  /**
+   * Discards all entries in the cache.
+   */
+  void invalidateAll();
+
+  /**
+   * Returns the approximate number of entries in this cache, including those which are still
+   * loading.
+   */
+  long size();
+
+  /**
+   * Returns a current snapshot of this cache's cumulative statistics. Loads are counted when they
+   * complete, and load times are measured from when the executor starts running the load: they
+   * exclude the time a load spends queued, waiting for the executor.
+   */
+  CacheStats stats();
+
+  /**
+   * Returns a view of the entries stored in this cache as a thread-safe map. Modifications made to
+   * the map directly affect the cache, but futures added through the map are not removed from
+   * the cache if they fail.
+   */
+  ConcurrentMap<K, ListenableFuture<V>> asMap();
+
+  /**
+   * Performs any pending maintenance operations needed by the cache.
+   */
+  void cleanUp();
+}
@@ -38,23 +38,27 @@ import java.lang.ref.SoftReference;
 import java.lang.ref.WeakReference;
 import java.util.ConcurrentModificationException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
 
 /**
- * <p>A builder of {@link LoadingCache} and {@link Cache} instances having any combination of the
- * following features:
+ * <p>A builder of {@link LoadingCache}, {@link AsyncLoadingCache} and {@link Cache} instances
+ * having any combination of the following features:
  *
  * <ul>
  * <li>automatic loading of entries into the cache
- * <li>least-recently-used eviction when a maximum size is exceeded
- * <li>time-based expiration of entries, measured since last access or last write
+ * <li>least-recently-used or frequency-based eviction when a maximum size is exceeded
+ * <li>time-based expiration of entries, measured since last access or last write, or calculated
+ *     separately for each entry
  * <li>keys automatically wrapped in {@linkplain WeakReference weak} references
  * <li>values automatically wrapped in {@linkplain WeakReference weak} or
- *     {@linkplain SoftReference soft} references
+ *     {@linkplain SoftReference soft} references, or serialized and stored off the Java heap
  * <li>notification of evicted (or otherwise removed) entries
  * <li>accumulation of cache access statistics
  * </ul>
@@ -115,9 +119,9 @@ import javax.annotation.CheckReturnValue;
  *
  * <p>If {@linkplain #expireAfterWrite expireAfterWrite} or
  * {@linkplain #expireAfterAccess expireAfterAccess} is requested entries may be evicted on each
- * cache modification, on occasional cache accesses, or on calls to {@link Cache#cleanUp}. Expired
- * entries may be counted by {@link Cache#size}, but will never be visible to read or write
- * operations.
+ * cache modification, on occasional cache accesses, on calls to {@link Cache#cleanUp}, or
+ * periodically on a {@linkplain #maintenanceScheduler maintenance scheduler}. Expired entries may
+ * be counted by {@link Cache#size}, but will never be visible to read or write operations.
  *
  * <p>If {@linkplain #weakKeys weakKeys}, {@linkplain #weakValues weakValues}, or
  * {@linkplain #softValues softValues} are requested, it is possible for a key or value present in
@@ -133,7 +137,8 @@ import javax.annotation.CheckReturnValue;
  * {@linkplain #removalListener removalListener}, {@linkplain #expireAfterWrite expireAfterWrite},
  * {@linkplain #expireAfterAccess expireAfterAccess}, {@linkplain #weakKeys weakKeys},
  * {@linkplain #weakValues weakValues}, or {@linkplain #softValues softValues} perform periodic
- * maintenance.
+ * maintenance. If a {@linkplain #maintenanceScheduler maintenance scheduler} is specified, such
+ * caches also perform maintenance on it periodically, whether or not they are being used.
  *
  * <p>The caches produced by {@code CacheBuilder} are serializable, and the deserialized caches
  * retain all the configuration properties of the original cache. Note that the serialized form does
@@ -188,6 +193,15 @@ public final class CacheBuilder<K, V> {
     }
   };
 
+  @GwtIncompatible("DetailedStatsCounter")
+  static final Supplier<StatsCounter> DETAILED_STATS_COUNTER =
+      new Supplier<StatsCounter>() {
+    @Override
+    public StatsCounter get() {
+      return new DetailedStatsCounter();
+    }
+  };
+
   enum NullListener implements RemovalListener<Object, Object> {
     INSTANCE;
 
@@ -222,13 +236,19 @@ public final class CacheBuilder<K, V> {
   long maximumSize = UNSET_INT;
   long maximumWeight = UNSET_INT;
   Weigher<? super K, ? super V> weigher;
+  EvictionPolicy evictionPolicy;
 
   Strength keyStrength;
   Strength valueStrength;
+  ValueSerializer<? extends V> valueSerializer;
+  long maximumOffHeapBytes = UNSET_INT;
 
   long expireAfterWriteNanos = UNSET_INT;
   long expireAfterAccessNanos = UNSET_INT;
+  Expiry<? super K, ? super V> expiry;
   long refreshNanos = UNSET_INT;
+  ScheduledExecutorService refreshExecutor;
+  long refreshWindowNanos = UNSET_INT;
 
   Equivalence<Object> keyEquivalence;
   Equivalence<Object> valueEquivalence;
@@ -236,6 +256,9 @@ public final class CacheBuilder<K, V> {
   RemovalListener<? super K, ? super V> removalListener;
   Ticker ticker;
 
+  ScheduledExecutorService maintenanceScheduler;
+  long maintenancePeriodNanos = UNSET_INT;
+
   Supplier<? extends StatsCounter> statsCounterSupplier = NULL_STATS_COUNTER;
 
   // TODO(fry): make constructor private and update tests to use newBuilder
@@ -365,6 +388,12 @@ public final class CacheBuilder<K, V> {
    * uncommon to specify {@code concurrencyLevel(1)} in order to achieve more deterministic eviction
    * behavior.
    *
+   * <p>Reads never take the segment lock. Accesses are recorded in a buffer which is striped by
+   * thread rather than by segment, and which is applied to the access queue by whichever thread
+   * next holds the segment lock, so the concurrency level need not be raised to scale read-heavy
+   * workloads, even those concentrated on a few hot keys. When many threads read concurrently, some
+   * accesses may not be recorded, which slightly relaxes the least-recently-used ordering.
+   *
    * <p>Note that future implementations may abandon segment locking in favor of more advanced
    * concurrency controls.
    *
@@ -501,6 +530,35 @@ public final class CacheBuilder<K, V> {
     return (Weigher<K1, V1>) Objects.firstNonNull(weigher, OneWeigher.INSTANCE);
   }
 
+  /**
+   * Specifies the algorithm used to select entries for eviction when the cache exceeds its
+   * {@linkplain #maximumSize(long) maximum size} or {@linkplain #maximumWeight(long) maximum
+   * weight}. By default, {@link EvictionPolicy#LRU} is used.
+   *
+   * <p>{@link EvictionPolicy#WINDOW_TINY_LFU} keeps a frequency sketch per segment, costing about
+   * eight to sixteen bytes per cached entry, and may evict a newly added entry in favor of a more
+   * popular existing one. Because of this, an entry which is {@linkplain Cache#put
+   * put} into a full cache is not guaranteed to be present afterwards.
+   *
+   * <p>This feature requires a corresponding call to {@link #maximumSize} or
+   * {@link #maximumWeight} prior to calling {@link #build}.
+   *
+   * @param policy the eviction policy to use
+   * @throws IllegalStateException if an eviction policy was already set
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public CacheBuilder<K, V> evictionPolicy(EvictionPolicy policy) {
+    checkState(evictionPolicy == null, "eviction policy was already set to %s", evictionPolicy);
+    evictionPolicy = checkNotNull(policy);
+    return this;
+  }
+
+  EvictionPolicy getEvictionPolicy() {
+    return firstNonNull(evictionPolicy, EvictionPolicy.LRU);
+  }
+
   /**
    * Specifies that each key (not value) stored in the cache should be wrapped in a {@link
    * WeakReference} (by default, strong references are used).
@@ -574,6 +632,64 @@ public final class CacheBuilder<K, V> {
     return setValueStrength(Strength.SOFT);
   }
 
+  /**
+   * Specifies that each value (not key) stored in the cache should be serialized by
+   * {@code serializer} and stored outside of the Java heap, in direct byte buffers (by default,
+   * values are stored on the heap). Keys, and the cache's bookkeeping for each entry, remain on the
+   * heap.
+   *
+   * <p>This keeps large values out of the reach of the garbage collector, whose pauses would
+   * otherwise grow with the size of the cache. In exchange, every write serializes the value, and
+   * every read, including those of {@link Cache#getIfPresent getIfPresent}, {@link Cache#asMap
+   * asMap} and iteration, deserializes it and returns a new copy: no deserialized value is kept
+   * on the heap. Frequently read values which are expensive to deserialize may be better kept in
+   * a small on-heap cache in front of this one.
+   *
+   * <p>The values occupy at most {@code maximumBytes} of direct buffers, which are allocated as
+   * they are needed and divided evenly among the segments of the cache. The memory of a value is
+   * freed as soon as the value is removed or replaced and no read is copying from it. When a
+   * segment has no room for a new value, it evicts entries, least recently used first, until the
+   * value fits; the value is held on the heap in the meantime. Memory is allocated in blocks whose
+   * sizes are powers of two, so values occupy up to twice their serialized size.
+   *
+   * <p><b>Note:</b> when this method is used, the resulting cache compares values by comparing
+   * their deserialized copies with {@link Object#equals equals}. Values such as arrays, whose
+   * {@code equals} method compares identity, should be compared using a suitable
+   * {@linkplain #valueEquivalence value equivalence}. The cache is only serializable if
+   * {@code serializer} is.
+   *
+   * @param serializer the serializer used to store and retrieve values
+   * @param maximumBytes the maximum number of bytes of direct buffers which the values may occupy
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code maximumBytes} is negative
+   * @throws IllegalStateException if the value strength was already set
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("java.nio.ByteBuffer")
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> offHeapValues(
+      ValueSerializer<V1> serializer, long maximumBytes) {
+    checkNotNull(serializer);
+    checkArgument(maximumBytes >= 0, "maximum bytes must not be negative");
+    setValueStrength(Strength.OFF_HEAP);
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.valueSerializer = serializer;
+    me.maximumOffHeapBytes = maximumBytes;
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  <V1 extends V> ValueSerializer<V1> getValueSerializer() {
+    return (ValueSerializer<V1>) valueSerializer;
+  }
+
+  long getMaximumOffHeapBytes() {
+    return maximumOffHeapBytes;
+  }
+
   CacheBuilder<K, V> setValueStrength(Strength strength) {
     checkState(valueStrength == null, "Value strength was already set to %s", valueStrength);
     valueStrength = checkNotNull(strength);
@@ -606,6 +722,7 @@ public final class CacheBuilder<K, V> {
   public CacheBuilder<K, V> expireAfterWrite(long duration, TimeUnit unit) {
     checkState(expireAfterWriteNanos == UNSET_INT, "expireAfterWrite was already set to %s ns",
         expireAfterWriteNanos);
+    checkState(expiry == null, "expireAfterWrite can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterWriteNanos = unit.toNanos(duration);
     return this;
@@ -640,6 +757,7 @@ public final class CacheBuilder<K, V> {
   public CacheBuilder<K, V> expireAfterAccess(long duration, TimeUnit unit) {
     checkState(expireAfterAccessNanos == UNSET_INT, "expireAfterAccess was already set to %s ns",
         expireAfterAccessNanos);
+    checkState(expiry == null, "expireAfterAccess can not be combined with expireAfter");
     checkArgument(duration >= 0, "duration cannot be negative: %s %s", duration, unit);
     this.expireAfterAccessNanos = unit.toNanos(duration);
     return this;
@@ -650,6 +768,47 @@ public final class CacheBuilder<K, V> {
         ? DEFAULT_EXPIRATION_NANOS : expireAfterAccessNanos;
   }
 
+  /**
+   * Specifies that each entry should be automatically removed from the cache once the duration
+   * calculated for it by {@code expiry} has elapsed. The duration is calculated when the entry is
+   * created, and recalculated whenever its value is replaced or it is read. This allows entries to
+   * have different lifetimes, for example ones derived from their values.
+   *
+   * <p>Expired entries may be counted in {@link Cache#size}, but will never be visible to read or
+   * write operations. Expired entries are cleaned up as part of the routine maintenance described
+   * in the class javadoc. Entries are grouped into buckets of exponentially increasing width
+   * according to how soon they expire, so that this maintenance takes time proportional to the
+   * number of entries which have expired, regardless of the size of the cache.
+   *
+   * @param expiry the expiry used to calculate the lifetime of each entry
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalStateException if an expiry, a time to live or a time to idle was already set
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("To be supported")
+  public <K1 extends K, V1 extends V> CacheBuilder<K1, V1> expireAfter(
+      Expiry<? super K1, ? super V1> expiry) {
+    checkState(this.expiry == null, "expiry was already set to %s", this.expiry);
+    checkState(expireAfterWriteNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterWrite");
+    checkState(expireAfterAccessNanos == UNSET_INT,
+        "expireAfter can not be combined with expireAfterAccess");
+
+    // safely limiting the kinds of caches this can produce
+    @SuppressWarnings("unchecked")
+    CacheBuilder<K1, V1> me = (CacheBuilder<K1, V1>) this;
+    me.expiry = checkNotNull(expiry);
+    return me;
+  }
+
+  // Make a safe contravariant cast now so we don't have to do it over and over.
+  @SuppressWarnings("unchecked")
+  @Nullable
+  <K1 extends K, V1 extends V> Expiry<K1, V1> getExpiry() {
+    return (Expiry<K1, V1>) expiry;
+  }
+
   /**
    * Specifies that active entries are eligible for automatic refresh once a fixed duration has
    * elapsed after the entry's creation, or the most recent replacement of its value. The semantics
@@ -689,6 +848,56 @@ public final class CacheBuilder<K, V> {
     return (refreshNanos == UNSET_INT) ? DEFAULT_REFRESH_NANOS : refreshNanos;
   }
 
+  /**
+   * Specifies that the automatic refreshes requested by {@link #refreshAfterWrite} should be
+   * gathered into batches, each loaded by a single call to {@link CacheLoader#loadAll} on
+   * {@code executor}, instead of being performed one key at a time by {@link CacheLoader#reload}
+   * on the threads which read the cache. This spares a backend a burst of individual requests when
+   * many popular entries become stale together.
+   *
+   * <p>The first stale read of an entry adds its key to the pending batch, and returns the old
+   * value, as do later reads until the refresh completes. A batch is loaded {@code window} after
+   * its first key was added, and includes every key added until then. If {@code loadAll} returns
+   * no value for one of the keys, or fails, the entry keeps its old value and is refreshed again on
+   * a later read; if {@code loadAll} is not implemented, the batch's keys are reloaded individually
+   * on {@code executor}. Refreshes requested explicitly by {@link LoadingCache#refresh}, or by
+   * reads through {@link Cache#get(Object, java.util.concurrent.Callable)}, are not batched.
+   *
+   * <p>So that entries which were loaded together do not all become stale together, each entry
+   * becomes eligible for refresh somewhat before the {@code refreshAfterWrite} duration has
+   * elapsed, by up to an eighth of that duration. The amount varies from key to key.
+   *
+   * <p>The executor is not serialized with the cache's configuration.
+   *
+   * @param executor the executor which schedules and performs batched refreshes
+   * @param window how long keys are gathered into a batch before it is loaded
+   * @param unit the unit that {@code window} is expressed in
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code window} is negative
+   * @throws IllegalStateException if batched refreshes were already requested
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("ScheduledExecutorService")
+  public CacheBuilder<K, V> refreshInBatches(
+      ScheduledExecutorService executor, long window, TimeUnit unit) {
+    checkState(refreshExecutor == null, "refresh executor was already set to %s",
+        refreshExecutor);
+    checkArgument(window >= 0, "window cannot be negative: %s %s", window, unit);
+    this.refreshExecutor = checkNotNull(executor);
+    this.refreshWindowNanos = unit.toNanos(window);
+    return this;
+  }
+
+  @Nullable
+  ScheduledExecutorService getRefreshExecutor() {
+    return refreshExecutor;
+  }
+
+  long getRefreshWindowNanos() {
+    return refreshWindowNanos;
+  }
+
   /**
    * Specifies a nanosecond-precision time source for use in determining when entries should be
    * expired. By default, {@link System#nanoTime} is used.
@@ -711,6 +920,50 @@ public final class CacheBuilder<K, V> {
     return recordsTime ? Ticker.systemTicker() : NULL_TICKER;
   }
 
+  /**
+   * Specifies that each cache should perform its routine maintenance periodically on
+   * {@code scheduler}, in addition to during cache operations. Each run removes expired entries
+   * and entries whose keys or values have been garbage-collected, and then notifies the
+   * {@linkplain #removalListener removal listener} of pending removals. This lets a cache which is
+   * rarely used release memory and send notifications promptly, and moves some of this work off
+   * the threads which use the cache.
+   *
+   * <p>Each run does a bounded amount of work, so that a backlog does not monopolize the
+   * scheduler; the remainder is left for later runs or for cache operations. A run skips any
+   * segment of the cache which is locked by another thread. A cache does not prevent its scheduler
+   * from being shut down, and its task cancels itself once the cache has been garbage-collected.
+   *
+   * <p>The scheduler is not serialized with the cache's configuration.
+   *
+   * @param scheduler the scheduler on which maintenance is performed
+   * @param period the delay between the end of one run and the start of the next
+   * @param unit the unit that {@code period} is expressed in
+   * @return this {@code CacheBuilder} instance (for chaining)
+   * @throws IllegalArgumentException if {@code period} is not positive
+   * @throws IllegalStateException if a maintenance scheduler was already set
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("ScheduledExecutorService")
+  public CacheBuilder<K, V> maintenanceScheduler(
+      ScheduledExecutorService scheduler, long period, TimeUnit unit) {
+    checkState(maintenanceScheduler == null, "maintenance scheduler was already set to %s",
+        maintenanceScheduler);
+    checkArgument(period > 0, "period must be positive: %s %s", period, unit);
+    this.maintenanceScheduler = checkNotNull(scheduler);
+    this.maintenancePeriodNanos = unit.toNanos(period);
+    return this;
+  }
+
+  @Nullable
+  ScheduledExecutorService getMaintenanceScheduler() {
+    return maintenanceScheduler;
+  }
+
+  long getMaintenancePeriodNanos() {
+    return maintenancePeriodNanos;
+  }
+
   /**
    * Specifies a listener instance that caches should notify each time an entry is removed for any
    * {@linkplain RemovalCause reason}. Each cache created by this builder will invoke this listener
@@ -763,8 +1016,24 @@ public final class CacheBuilder<K, V> {
     return this;
   }
   
+  /**
+   * Enables the accumulation of {@link DetailedCacheStats}, as well as {@link CacheStats}, during
+   * the operation of the cache. In addition to the bookkeeping of {@link #recordStats}, each load
+   * is counted in a histogram of load times, each eviction is counted by its cause, and each
+   * thread which waits for the lock of one of the cache's segments records how long it waited.
+   *
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("DetailedCacheStats")
+  public CacheBuilder<K, V> recordDetailedStats() {
+    statsCounterSupplier = DETAILED_STATS_COUNTER;
+    return this;
+  }
+
   boolean isRecordingStats() {
-    return statsCounterSupplier == CACHE_STATS_COUNTER;
+    return statsCounterSupplier == CACHE_STATS_COUNTER
+        || statsCounterSupplier == DETAILED_STATS_COUNTER;
   }
 
   Supplier<? extends StatsCounter> getStatsCounterSupplier() {
@@ -786,6 +1055,8 @@ public final class CacheBuilder<K, V> {
   public <K1 extends K, V1 extends V> LoadingCache<K1, V1> build(
       CacheLoader<? super K1, V1> loader) {
     checkWeightWithWeigher();
+    checkEvictionPolicy();
+    checkRefreshInBatches();
     return new LocalCache.LocalLoadingCache<K1, V1>(this, loader);
   }
 
@@ -803,12 +1074,86 @@ public final class CacheBuilder<K, V> {
    */
   public <K1 extends K, V1 extends V> Cache<K1, V1> build() {
     checkWeightWithWeigher();
+    checkEvictionPolicy();
     checkNonLoadingCache();
     return new LocalCache.LocalManualCache<K1, V1>(this);
   }
 
+  /**
+   * Builds a cache which returns the futures of its values, rather than the values themselves,
+   * and which loads missing values by calling the supplied {@code CacheLoader} on
+   * {@code executor}. If the value for a key is already being loaded, the same future is returned.
+   * Futures which fail are removed from the cache.
+   *
+   * <p>A future counts towards the cache's maximum size while it is loading. If a
+   * {@linkplain #weigher weigher} is used, it is applied to the loaded value, and a future weighs
+   * nothing until it completes. Removal notifications are only sent for futures which completed
+   * successfully, and carry their values.
+   *
+   * <p>This method does not alter the state of this {@code CacheBuilder} instance, so it can be
+   * invoked again to create multiple independent caches.
+   *
+   * @param loader the cache loader used to obtain new values
+   * @param executor the executor on which values are loaded
+   * @return a cache having the requested features
+   * @throws IllegalStateException if {@linkplain #weakValues weak}, {@linkplain #softValues soft}
+   *     or {@linkplain #offHeapValues off-heap} values were requested
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("ListenableFuture")
+  public <K1 extends K, V1 extends V> AsyncLoadingCache<K1, V1> buildAsync(
+      CacheLoader<? super K1, V1> loader, Executor executor) {
+    checkWeightWithWeigher();
+    checkEvictionPolicy();
+    checkRefreshInBatches();
+    checkState(valueStrength == null || valueStrength == Strength.STRONG,
+        "buildAsync does not support weakValues, softValues or offHeapValues");
+    return new LocalCache.LocalAsyncLoadingCache<K1, V1>(this, loader, executor);
+  }
+
+  /**
+   * Returns a new builder with the same settings as this one, except that the given weigher,
+   * expiry and removal listener replace this builder's. Used to configure the map underlying an
+   * {@link AsyncLoadingCache}, whose values are futures.
+   */
+  <K1, V1> CacheBuilder<K1, V1> copyWith(@Nullable Weigher<? super K1, ? super V1> weigher,
+      @Nullable Expiry<? super K1, ? super V1> expiry,
+      @Nullable RemovalListener<? super K1, ? super V1> removalListener) {
+    CacheBuilder<K1, V1> copy = new CacheBuilder<K1, V1>();
+    copy.strictParsing = strictParsing;
+    copy.initialCapacity = initialCapacity;
+    copy.concurrencyLevel = concurrencyLevel;
+    copy.maximumSize = maximumSize;
+    copy.maximumWeight = maximumWeight;
+    copy.weigher = weigher;
+    copy.evictionPolicy = evictionPolicy;
+    copy.keyStrength = keyStrength;
+    copy.valueStrength = valueStrength;
+    copy.expireAfterWriteNanos = expireAfterWriteNanos;
+    copy.expireAfterAccessNanos = expireAfterAccessNanos;
+    copy.expiry = expiry;
+    copy.refreshNanos = refreshNanos;
+    copy.refreshExecutor = refreshExecutor;
+    copy.refreshWindowNanos = refreshWindowNanos;
+    copy.keyEquivalence = keyEquivalence;
+    copy.valueEquivalence = valueEquivalence;
+    copy.removalListener = removalListener;
+    copy.ticker = ticker;
+    copy.maintenanceScheduler = maintenanceScheduler;
+    copy.maintenancePeriodNanos = maintenancePeriodNanos;
+    copy.statsCounterSupplier = statsCounterSupplier;
+    return copy;
+  }
+
   private void checkNonLoadingCache() {
     checkState(refreshNanos == UNSET_INT, "refreshAfterWrite requires a LoadingCache");
+    checkState(refreshExecutor == null, "refreshInBatches requires a LoadingCache");
+  }
+
+  private void checkRefreshInBatches() {
+    checkState(refreshExecutor == null || refreshNanos != UNSET_INT,
+        "refreshInBatches requires refreshAfterWrite");
   }
 
   private void checkWeightWithWeigher() {
@@ -825,6 +1170,13 @@ public final class CacheBuilder<K, V> {
     }
   }
 
+  private void checkEvictionPolicy() {
+    if (evictionPolicy != null) {
+      checkState(maximumSize != UNSET_INT || maximumWeight != UNSET_INT,
+          "evictionPolicy requires maximumSize or maximumWeight");
+    }
+  }
+
   /**
    * Returns a string representation for this CacheBuilder instance. The exact form of the returned
    * string is not specified.
@@ -844,18 +1196,27 @@ public final class CacheBuilder<K, V> {
     if (maximumWeight != UNSET_INT) {
       s.add("maximumWeight", maximumWeight);
     }
+    if (evictionPolicy != null) {
+      s.add("evictionPolicy", evictionPolicy);
+    }
     if (expireAfterWriteNanos != UNSET_INT) {
       s.add("expireAfterWrite", expireAfterWriteNanos + "ns");
     }
     if (expireAfterAccessNanos != UNSET_INT) {
       s.add("expireAfterAccess", expireAfterAccessNanos + "ns");
     }
+    if (expiry != null) {
+      s.addValue("expiry");
+    }
     if (keyStrength != null) {
       s.add("keyStrength", Ascii.toLowerCase(keyStrength.toString()));
     }
     if (valueStrength != null) {
       s.add("valueStrength", Ascii.toLowerCase(valueStrength.toString()));
     }
+    if (maximumOffHeapBytes != UNSET_INT) {
+      s.add("maximumOffHeapBytes", maximumOffHeapBytes);
+    }
     if (keyEquivalence != null) {
       s.addValue("keyEquivalence");
     }
@@ -865,6 +1226,12 @@ public final class CacheBuilder<K, V> {
     if (removalListener != null) {
       s.addValue("removalListener");
     }
+    if (maintenanceScheduler != null) {
+      s.add("maintenancePeriod", maintenancePeriodNanos + "ns");
+    }
+    if (refreshExecutor != null) {
+      s.add("refreshWindow", refreshWindowNanos + "ns");
+    }
     return s.toString();
   }
 }
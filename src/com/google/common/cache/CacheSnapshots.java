@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.LocalCache.LocalManualCache;
+import com.google.common.io.ByteSink;
+import com.google.common.io.ByteSource;
+import com.google.common.io.Closer;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * Static methods which save the contents of a cache built by {@link CacheBuilder} and later
+ * restore them, for example so that a server can start with a warm cache after a restart. (The
+ * serialized form of such a cache includes only its configuration.)
+ *
+ * <p>A snapshot holds each live entry's key and value, in Java serialized form, together with the
+ * times at which the entry was last written and accessed, or at which it expires, as tracked by
+ * the cache. Restoring a snapshot reproduces the entries' remaining lifetimes, counting the time
+ * which passed in between, and approximately reproduces the order in which they would be evicted.
+ *
+ * <p>Snapshots are taken without blocking the cache as a whole, and entries which are added,
+ * changed or removed while a snapshot is being written may or may not be included.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtIncompatible("java.io.ObjectOutputStream")
+public final class CacheSnapshots {
+  private CacheSnapshots() {}
+
+  /**
+   * Writes a snapshot of the entries of {@code cache} to {@code sink}, and returns how many
+   * entries were written. The entries are gathered one segment of the cache at a time, so the
+   * cache is never copied as a whole.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   * @throws java.io.NotSerializableException if a key or value is not serializable
+   * @throws IOException if an I/O error occurs in the process of writing the snapshot
+   */
+  public static long write(Cache<?, ?> cache, ByteSink sink) throws IOException {
+    LocalCache<?, ?> localCache = localCache(cache);
+    checkNotNull(sink);
+    Closer closer = Closer.create();
+    try {
+      ObjectOutputStream out =
+          closer.register(new ObjectOutputStream(closer.register(sink.openBufferedStream())));
+      long count = localCache.writeSnapshot(out);
+      out.flush();
+      return count;
+    } catch (Throwable e) {
+      throw closer.rethrow(e);
+    } finally {
+      closer.close();
+    }
+  }
+
+  /**
+   * Adds the entries of a snapshot read from {@code source}, which was written by
+   * {@link #write}, to {@code cache}, and returns how many entries were added. Entries whose keys
+   * are already present in {@code cache} are skipped, as are entries which have expired according
+   * to the expiration settings of {@code cache}. No removal notifications are sent for entries
+   * which are skipped, and restored entries are not counted as loads.
+   *
+   * <p>The snapshot is read one entry at a time. Its keys and values must be instances of the key
+   * and value types of {@code cache}.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   * @throws ClassNotFoundException if the class of a key or value can't be found
+   * @throws IOException if an I/O error occurs in the process of reading the snapshot
+   */
+  public static long read(Cache<?, ?> cache, ByteSource source)
+      throws IOException, ClassNotFoundException {
+    LocalCache<?, ?> localCache = localCache(cache);
+    checkNotNull(source);
+    Closer closer = Closer.create();
+    try {
+      ObjectInputStream in =
+          closer.register(new ObjectInputStream(closer.register(source.openBufferedStream())));
+      return localCache.readSnapshot(in);
+    } catch (Throwable e) {
+      throw closer.rethrow(e, ClassNotFoundException.class);
+    } finally {
+      closer.close();
+    }
+  }
+
+  private static LocalCache<?, ?> localCache(Cache<?, ?> cache) {
+    checkArgument(cache instanceof LocalManualCache,
+        "%s was not built by CacheBuilder", checkNotNull(cache));
+    return ((LocalManualCache<?, ?>) cache).localCache;
+  }
+}
@@ -45,6 +45,9 @@ import javax.annotation.Nullable;
  *     for loading to complete (whether successful or not) and then increment {@code missCount}.
  * </ul>
  * <li>When an entry is evicted from the cache, {@code evictionCount} is incremented.
+ * <li>When a new entry is evicted by the cache's {@linkplain EvictionPolicy admission policy} in
+ *     favor of an entry already present, both {@code evictionCount} and {@code
+ *     admissionRejectionCount} are incremented.
  * <li>No stats are modified when a cache entry is invalidated or manually removed.
  * <li>No stats are modified on a query to {@link Cache#getIfPresent}.
  * <li>No stats are modified by operations invoked on the {@linkplain Cache#asMap asMap} view of
@@ -67,6 +70,7 @@ public final class CacheStats {
   private final long loadExceptionCount;
   private final long totalLoadTime;
   private final long evictionCount;
+  private final long admissionRejectionCount;
 
   /**
    * Constructs a new {@code CacheStats} instance.
@@ -76,12 +80,26 @@ public final class CacheStats {
    */
   public CacheStats(long hitCount, long missCount, long loadSuccessCount,
       long loadExceptionCount, long totalLoadTime, long evictionCount) {
+    this(hitCount, missCount, loadSuccessCount, loadExceptionCount, totalLoadTime, evictionCount,
+        0);
+  }
+
+  /**
+   * Constructs a new {@code CacheStats} instance, including the number of entries turned away by
+   * the cache's admission policy.
+   *
+   * @since 17.0
+   */
+  public CacheStats(long hitCount, long missCount, long loadSuccessCount,
+      long loadExceptionCount, long totalLoadTime, long evictionCount,
+      long admissionRejectionCount) {
     checkArgument(hitCount >= 0);
     checkArgument(missCount >= 0);
     checkArgument(loadSuccessCount >= 0);
     checkArgument(loadExceptionCount >= 0);
     checkArgument(totalLoadTime >= 0);
     checkArgument(evictionCount >= 0);
+    checkArgument(admissionRejectionCount >= 0);
 
     this.hitCount = hitCount;
     this.missCount = missCount;
@@ -89,6 +107,7 @@ public final class CacheStats {
     this.loadExceptionCount = loadExceptionCount;
     this.totalLoadTime = totalLoadTime;
     this.evictionCount = evictionCount;
+    this.admissionRejectionCount = admissionRejectionCount;
   }
 
   /**
@@ -211,6 +230,18 @@ public final class CacheStats {
     return evictionCount;
   }
 
+  /**
+   * Returns the number of times a newly added entry was evicted, instead of an existing entry,
+   * because the cache's {@linkplain EvictionPolicy admission policy} estimated that it was less
+   * likely to be used again. Each such rejection is also included in {@link #evictionCount}. This
+   * is always zero for caches using {@link EvictionPolicy#LRU}.
+   *
+   * @since 17.0
+   */
+  public long admissionRejectionCount() {
+    return admissionRejectionCount;
+  }
+
   /**
    * Returns a new {@code CacheStats} representing the difference between this {@code CacheStats}
    * and {@code other}. Negative values, which aren't supported by {@code CacheStats} will be
@@ -223,7 +254,8 @@ public final class CacheStats {
         Math.max(0, loadSuccessCount - other.loadSuccessCount),
         Math.max(0, loadExceptionCount - other.loadExceptionCount),
         Math.max(0, totalLoadTime - other.totalLoadTime),
-        Math.max(0, evictionCount - other.evictionCount));
+        Math.max(0, evictionCount - other.evictionCount),
+        Math.max(0, admissionRejectionCount - other.admissionRejectionCount));
   }
 
   /**
@@ -239,13 +271,14 @@ public final class CacheStats {
         loadSuccessCount + other.loadSuccessCount,
         loadExceptionCount + other.loadExceptionCount,
         totalLoadTime + other.totalLoadTime,
-        evictionCount + other.evictionCount);
+        evictionCount + other.evictionCount,
+        admissionRejectionCount + other.admissionRejectionCount);
   }
 
   @Override
   public int hashCode() {
     return Objects.hashCode(hitCount, missCount, loadSuccessCount, loadExceptionCount,
-        totalLoadTime, evictionCount);
+        totalLoadTime, evictionCount, admissionRejectionCount);
   }
 
   @Override
@@ -257,7 +290,8 @@ public final class CacheStats {
           && loadSuccessCount == other.loadSuccessCount
           && loadExceptionCount == other.loadExceptionCount
           && totalLoadTime == other.totalLoadTime
-          && evictionCount == other.evictionCount;
+          && evictionCount == other.evictionCount
+          && admissionRejectionCount == other.admissionRejectionCount;
     }
     return false;
   }
@@ -271,6 +305,7 @@ public final class CacheStats {
         .add("loadExceptionCount", loadExceptionCount)
         .add("totalLoadTime", totalLoadTime)
         .add("evictionCount", evictionCount)
+        .add("admissionRejectionCount", admissionRejectionCount)
         .toString();
   }
 }
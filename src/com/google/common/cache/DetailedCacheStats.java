@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Objects;
+import com.google.common.cache.LocalCache.LocalManualCache;
+import com.google.common.cache.LocalCache.Segment;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Detailed statistics about the performance of a {@link Cache} built by {@link CacheBuilder},
+ * extending its {@link CacheStats} with the distribution of load times, the causes of evictions,
+ * and the state of each of the cache's segments. Instances of this class are immutable.
+ *
+ * <p>The size and weight of each segment are always available. The other statistics are only
+ * accumulated by caches built with {@link CacheBuilder#recordDetailedStats}; for other caches they
+ * are zero.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtIncompatible("java.util.concurrent.atomic.AtomicLongArray")
+public final class DetailedCacheStats {
+  private final CacheStats cacheStats;
+  private final long[] loadTimeHistogram;
+  private final long[] evictionCounts;
+  private final ImmutableList<SegmentStats> segmentStats;
+
+  private DetailedCacheStats(CacheStats cacheStats, long[] loadTimeHistogram,
+      long[] evictionCounts, ImmutableList<SegmentStats> segmentStats) {
+    this.cacheStats = cacheStats;
+    this.loadTimeHistogram = loadTimeHistogram;
+    this.evictionCounts = evictionCounts;
+    this.segmentStats = segmentStats;
+  }
+
+  /**
+   * Returns a snapshot of the statistics of {@code cache}. Each counter is read without locking,
+   * so the snapshot is not necessarily consistent with the state of the cache at any one moment.
+   *
+   * @throws IllegalArgumentException if {@code cache} was not built by {@link CacheBuilder}
+   */
+  public static DetailedCacheStats of(Cache<?, ?> cache) {
+    checkArgument(cache instanceof LocalManualCache,
+        "%s was not built by CacheBuilder", checkNotNull(cache));
+    LocalCache<?, ?> localCache = ((LocalManualCache<?, ?>) cache).localCache;
+    long[] loadTimeHistogram = new long[DetailedStatsCounter.BUCKETS];
+    long[] evictionCounts = new long[RemovalCause.values().length];
+    ImmutableList.Builder<SegmentStats> segmentStats = ImmutableList.builder();
+    if (localCache.globalStatsCounter instanceof DetailedStatsCounter) {
+      DetailedStatsCounter counter = (DetailedStatsCounter) localCache.globalStatsCounter;
+      counter.addLoadTimesTo(loadTimeHistogram);
+    }
+    for (Segment<?, ?> segment : localCache.segments) {
+      long lockContentionCount = 0;
+      long totalLockWaitTime = 0;
+      DetailedStatsCounter counter = segment.detailedStatsCounter;
+      if (counter != null) {
+        counter.addLoadTimesTo(loadTimeHistogram);
+        counter.addEvictionCountsTo(evictionCounts);
+        lockContentionCount = counter.lockContentionCount();
+        totalLockWaitTime = counter.totalLockWaitTime();
+      }
+      segmentStats.add(new SegmentStats(
+          segment.count, segment.totalWeight, lockContentionCount, totalLockWaitTime));
+    }
+    return new DetailedCacheStats(
+        cache.stats(), loadTimeHistogram, evictionCounts, segmentStats.build());
+  }
+
+  /**
+   * Returns the statistics also returned by {@link Cache#stats}.
+   */
+  public CacheStats cacheStats() {
+    return cacheStats;
+  }
+
+  /**
+   * Returns the number of times an entry has been evicted for {@code cause}. Causes which are not
+   * {@linkplain RemovalCause#wasEvicted evictions} always have a count of zero.
+   */
+  public long evictionCount(RemovalCause cause) {
+    return evictionCounts[cause.ordinal()];
+  }
+
+  /**
+   * Returns the time, in nanoseconds, within which the given percentage of loads completed,
+   * whether successfully or not. The time is an upper bound, which may exceed the true percentile
+   * by up to 12.5%. Returns zero if no loads have been recorded.
+   *
+   * @param percentile a percentage between 0 and 100, such as 50 for the median load time
+   * @throws IllegalArgumentException if {@code percentile} is not between 0 and 100
+   */
+  public long loadTimePercentile(double percentile) {
+    checkArgument(percentile >= 0.0 && percentile <= 100.0,
+        "percentile must be between 0 and 100: %s", percentile);
+    long loadCount = 0;
+    for (long count : loadTimeHistogram) {
+      loadCount += count;
+    }
+    if (loadCount == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(loadCount * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < loadTimeHistogram.length; i++) {
+      seen += loadTimeHistogram[i];
+      if (seen >= rank) {
+        return DetailedStatsCounter.bucketMaximum(i);
+      }
+    }
+    throw new AssertionError();
+  }
+
+  /**
+   * Returns the statistics of each of the cache's segments, whose number is determined by its
+   * {@linkplain CacheBuilder#concurrencyLevel concurrency level}. An uneven distribution of size
+   * or of lock contention among segments suggests that the cache's keys are poorly distributed.
+   */
+  public ImmutableList<SegmentStats> segmentStats() {
+    return segmentStats;
+  }
+
+  private Map<RemovalCause, Long> evictionCountsByCause() {
+    Map<RemovalCause, Long> counts = Maps.newEnumMap(RemovalCause.class);
+    for (RemovalCause cause : RemovalCause.values()) {
+      if (cause.wasEvicted()) {
+        counts.put(cause, evictionCount(cause));
+      }
+    }
+    return counts;
+  }
+
+  @Override
+  public String toString() {
+    return Objects.toStringHelper(this)
+        .add("cacheStats", cacheStats)
+        .add("loadTimeMedian", loadTimePercentile(50))
+        .add("loadTime99thPercentile", loadTimePercentile(99))
+        .add("evictionCounts", evictionCountsByCause())
+        .add("segmentStats", segmentStats)
+        .toString();
+  }
+
+  /**
+   * Statistics about one segment of a cache, each of which holds a part of the cache's entries
+   * and is guarded by its own lock. Instances of this class are immutable.
+   *
+   * @since 17.0
+   */
+  @Beta
+  public static final class SegmentStats {
+    private final int size;
+    private final long weight;
+    private final long lockContentionCount;
+    private final long totalLockWaitTime;
+
+    SegmentStats(int size, long weight, long lockContentionCount, long totalLockWaitTime) {
+      this.size = size;
+      this.weight = weight;
+      this.lockContentionCount = lockContentionCount;
+      this.totalLockWaitTime = totalLockWaitTime;
+    }
+
+    /**
+     * Returns the approximate number of entries in the segment.
+     */
+    public int size() {
+      return size;
+    }
+
+    /**
+     * Returns the approximate total weight of the entries in the segment, or their number if the
+     * cache has no {@linkplain CacheBuilder#weigher weigher}.
+     */
+    public long weight() {
+      return weight;
+    }
+
+    /**
+     * Returns the number of times a thread found the segment's lock held by another thread, and
+     * waited for it.
+     */
+    public long lockContentionCount() {
+      return lockContentionCount;
+    }
+
+    /**
+     * Returns the total number of nanoseconds which threads have spent waiting for the segment's
+     * lock.
+     */
+    public long totalLockWaitTime() {
+      return totalLockWaitTime;
+    }
+
+    @Override
+    public String toString() {
+      return Objects.toStringHelper(this)
+          .add("size", size)
+          .add("weight", weight)
+          .add("lockContentionCount", lockContentionCount)
+          .add("totalLockWaitTime", totalLockWaitTime)
+          .toString();
+    }
+  }
+}
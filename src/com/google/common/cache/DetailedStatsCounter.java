@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.cache.AbstractCache.SimpleStatsCounter;
+import com.google.common.cache.AbstractCache.StatsCounter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link StatsCounter} for caches built with {@link CacheBuilder#recordDetailedStats}, which
+ * records, in addition to the counts of a {@link SimpleStatsCounter}, a histogram of load times,
+ * the number of evictions of each {@link RemovalCause}, and how often and for how long threads
+ * waited for the lock of the segment which owns the counter.
+ *
+ * <p>Load times are counted in a log-linear histogram: each power of two is divided into
+ * {@value #SUB_BUCKETS} equal buckets, so a time is known to within 12.5%. Times below
+ * {@value #SUB_BUCKETS} nanoseconds have exact buckets.
+ */
+@GwtIncompatible("java.util.concurrent.atomic.AtomicLongArray")
+final class DetailedStatsCounter implements StatsCounter {
+
+  /** The binary logarithm of the number of buckets into which each power of two is divided. */
+  static final int SUB_BUCKET_BITS = 3;
+
+  /** The number of buckets into which each power of two is divided. */
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+  /** The number of buckets, enough for every non-negative {@code long}. */
+  static final int BUCKETS = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final SimpleStatsCounter counts = new SimpleStatsCounter();
+  private final AtomicLongArray loadTimes = new AtomicLongArray(BUCKETS);
+  private final LongAddable[] evictionCounts = new LongAddable[RemovalCause.values().length];
+  private final LongAddable lockContentionCount = LongAddables.create();
+  private final LongAddable totalLockWaitTime = LongAddables.create();
+
+  DetailedStatsCounter() {
+    for (int i = 0; i < evictionCounts.length; i++) {
+      evictionCounts[i] = LongAddables.create();
+    }
+  }
+
+  @Override
+  public void recordHits(int count) {
+    counts.recordHits(count);
+  }
+
+  @Override
+  public void recordMisses(int count) {
+    counts.recordMisses(count);
+  }
+
+  @Override
+  public void recordLoadSuccess(long loadTime) {
+    counts.recordLoadSuccess(loadTime);
+    loadTimes.incrementAndGet(bucket(loadTime));
+  }
+
+  @Override
+  public void recordLoadException(long loadTime) {
+    counts.recordLoadException(loadTime);
+    loadTimes.incrementAndGet(bucket(loadTime));
+  }
+
+  @Override
+  public void recordEviction() {
+    counts.recordEviction();
+  }
+
+  /**
+   * Records that a newly added entry was rejected by the admission policy; see
+   * {@link SimpleStatsCounter#recordAdmissionRejection}.
+   */
+  void recordAdmissionRejection() {
+    counts.recordAdmissionRejection();
+  }
+
+  /**
+   * Records the cause of an eviction, which is also recorded by {@link #recordEviction}.
+   */
+  void recordEvictionCause(RemovalCause cause) {
+    evictionCounts[cause.ordinal()].increment();
+  }
+
+  /**
+   * Records that a thread waited {@code waitTime} nanoseconds for a segment lock which was held by
+   * another thread.
+   */
+  void recordLockContention(long waitTime) {
+    lockContentionCount.increment();
+    totalLockWaitTime.add(waitTime);
+  }
+
+  @Override
+  public CacheStats snapshot() {
+    return counts.snapshot();
+  }
+
+  /** Adds the count of each load time bucket to the corresponding element of {@code histogram}. */
+  void addLoadTimesTo(long[] histogram) {
+    for (int i = 0; i < BUCKETS; i++) {
+      histogram[i] += loadTimes.get(i);
+    }
+  }
+
+  /** Adds the eviction count of each cause to the element of {@code counts} at its ordinal. */
+  void addEvictionCountsTo(long[] counts) {
+    for (int i = 0; i < evictionCounts.length; i++) {
+      counts[i] += evictionCounts[i].sum();
+    }
+  }
+
+  long lockContentionCount() {
+    return lockContentionCount.sum();
+  }
+
+  long totalLockWaitTime() {
+    return totalLockWaitTime.sum();
+  }
+
+  /** Returns the index of the histogram bucket which counts {@code time}. */
+  static int bucket(long time) {
+    if (time < SUB_BUCKETS) {
+      return (int) Math.max(0, time);
+    }
+    int exponent = (Long.SIZE - 1) - Long.numberOfLeadingZeros(time);
+    int subBucket = (int) (time >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return ((exponent - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+  }
+
+  /** Returns the largest time counted by the histogram bucket at {@code index}. */
+  static long bucketMaximum(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    int shift = (index >>> SUB_BUCKET_BITS) - 1;
+    long minimum = ((long) (SUB_BUCKETS + (index & (SUB_BUCKETS - 1)))) << shift;
+    return minimum + ((1L << shift) - 1);
+  }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+
+/**
+ * The algorithm used to choose which entries to evict when a cache built with
+ * {@link CacheBuilder#maximumSize} or {@link CacheBuilder#maximumWeight} exceeds its bound.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public enum EvictionPolicy {
+  /**
+   * Evicts the least-recently-used entry. Every new entry is admitted, even if it will never be
+   * read again. This is the default.
+   */
+  LRU,
+
+  /**
+   * Window TinyLFU. New entries are first placed in a small admission window, ordered by recency,
+   * which holds about one percent of the cache. When an entry leaves the window while the cache is
+   * full, it is admitted to the main region only if it has been accessed more frequently than the
+   * main region's least-recently-used entry, which is evicted in its place; otherwise the
+   * candidate itself is evicted. Access frequencies are estimated by a compact, periodically aged
+   * sketch that also remembers keys which are no longer present.
+   *
+   * <p>This policy resists pollution by scans and one-time keys, and usually achieves a higher hit
+   * rate than {@link #LRU} on workloads whose popularity is skewed. Candidates which are turned
+   * away are reported by {@link CacheStats#admissionRejectionCount}, and are also counted as
+   * evictions with {@link RemovalCause#SIZE}.
+   */
+  WINDOW_TINY_LFU
+}
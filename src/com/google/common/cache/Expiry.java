@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+
+/**
+ * Calculates how long each cache entry should live, for caches built with
+ * {@link CacheBuilder#expireAfter}. Unlike {@link CacheBuilder#expireAfterWrite} and
+ * {@link CacheBuilder#expireAfterAccess}, which apply a single duration to every entry, an
+ * {@code Expiry} may give each entry its own lifetime, for example one taken from the
+ * {@code Cache-Control} header of a cached HTTP response.
+ *
+ * <p>All durations and times are in nanoseconds, as measured by the cache's
+ * {@linkplain CacheBuilder#ticker ticker}. An entry whose duration is zero or negative expires
+ * immediately; a duration of {@link Long#MAX_VALUE} means that the entry never expires.
+ *
+ * <p>Methods are invoked while the affected entry's segment is locked, or on the reading thread for
+ * {@link #expireAfterRead}, so they should be fast and must not access the cache.
+ *
+ * @param <K> the type of the cache's keys
+ * @param <V> the type of the cache's values
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public abstract class Expiry<K, V> {
+  /**
+   * Constructor for use by subclasses.
+   */
+  protected Expiry() {}
+
+  /**
+   * Returns how long, in nanoseconds, the entry should live after it is created, either by a
+   * load or by an explicit put.
+   *
+   * @param key the entry's key
+   * @param value the entry's new value
+   * @param currentTime the current time, according to the cache's ticker
+   */
+  public abstract long expireAfterCreate(K key, V value, long currentTime);
+
+  /**
+   * Returns how long, in nanoseconds, the entry should live after its value is replaced, either by
+   * a refresh or by an explicit put. {@code currentDuration} is what remains of the entry's
+   * lifetime, and may be returned to leave it unchanged.
+   *
+   * <p>The default implementation treats the update like a creation, returning
+   * {@code expireAfterCreate(key, value, currentTime)}.
+   *
+   * @param key the entry's key
+   * @param value the entry's new value
+   * @param currentTime the current time, according to the cache's ticker
+   * @param currentDuration the entry's remaining lifetime
+   */
+  public long expireAfterUpdate(K key, V value, long currentTime, long currentDuration) {
+    return expireAfterCreate(key, value, currentTime);
+  }
+
+  /**
+   * Returns how long, in nanoseconds, the entry should live after it is read. {@code
+   * currentDuration} is what remains of the entry's lifetime, and may be returned to leave it
+   * unchanged.
+   *
+   * <p>The default implementation returns {@code currentDuration}, so that reads do not affect
+   * expiration.
+   *
+   * @param key the entry's key
+   * @param value the entry's value
+   * @param currentTime the current time, according to the cache's ticker
+   * @param currentDuration the entry's remaining lifetime
+   */
+  public long expireAfterRead(K key, V value, long currentTime, long currentDuration) {
+    return currentDuration;
+  }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.annotations.GwtIncompatible;
+
+import javax.annotation.concurrent.NotThreadSafe;
+
+/**
+ * A probabilistic estimate of how often each element has been seen recently, used by the
+ * {@link EvictionPolicy#WINDOW_TINY_LFU} admission policy to decide whether a new entry is more
+ * valuable than the entry it would displace.
+ *
+ * <p>The sketch is a count-min sketch of four-bit counters, sixteen to a {@code long}. An element's
+ * four counters are chosen by independent hashes, and its estimated frequency is the minimum of
+ * them. So that the history reflects recent behavior, all counters are halved once the number of
+ * increments reaches ten times the table size ("aging"). Counters saturate at 15, which is enough
+ * to tell popular elements apart from one-hit wonders.
+ *
+ * <p>Instances are not thread-safe; each {@code LocalCache.Segment} owns one and only touches it
+ * while holding the segment lock.
+ */
+@GwtIncompatible("Long.bitCount")
+@NotThreadSafe
+final class FrequencySketch {
+
+  /** Multipliers used to derive the four row indexes of an element. */
+  static final long[] SEED = {
+      0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+  /** Clears the low bit of each counter before a halving shift. */
+  static final long RESET_MASK = 0x7777777777777777L;
+
+  /** Selects the low bit of each counter, used to account for truncation when halving. */
+  static final long ONE_MASK = 0x1111111111111111L;
+
+  /** The number of increments, per table slot, between agings. */
+  static final int SAMPLE_FACTOR = 10;
+
+  int sampleSize;
+  int tableMask;
+  long[] table;
+  int size;
+
+  /**
+   * Creates a sketch sized to estimate the frequencies of roughly {@code expectedSize} distinct
+   * elements.
+   */
+  FrequencySketch(long expectedSize) {
+    ensureCapacity(expectedSize);
+  }
+
+  /**
+   * Grows the sketch, if necessary, so that it can estimate the frequencies of roughly
+   * {@code expectedSize} distinct elements. Growing discards the accumulated history.
+   */
+  void ensureCapacity(long expectedSize) {
+    checkArgument(expectedSize >= 0);
+    int maximum = (int) Math.min(expectedSize, Integer.MAX_VALUE >>> 1);
+    if ((table != null) && (table.length >= maximum)) {
+      return;
+    }
+
+    int length = 1;
+    while (length < maximum) {
+      length <<= 1;
+    }
+    table = new long[length];
+    tableMask = length - 1;
+    sampleSize = (maximum == 0) ? SAMPLE_FACTOR : (SAMPLE_FACTOR * maximum);
+    if (sampleSize <= 0) {
+      sampleSize = Integer.MAX_VALUE;
+    }
+    size = 0;
+  }
+
+  /**
+   * Returns the estimated number of occurrences of the element with the given (already spread)
+   * hash code, up to a maximum of 15.
+   */
+  int frequency(int hash) {
+    int start = (hash & 3) << 2;
+    int frequency = Integer.MAX_VALUE;
+    for (int i = 0; i < 4; i++) {
+      int index = indexOf(hash, i);
+      int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+      frequency = Math.min(frequency, count);
+    }
+    return frequency;
+  }
+
+  /**
+   * Increments the popularity of the element with the given (already spread) hash code, aging all
+   * counters if the sample period has elapsed.
+   */
+  void increment(int hash) {
+    int start = (hash & 3) << 2;
+    boolean added = false;
+    for (int i = 0; i < 4; i++) {
+      added |= incrementAt(indexOf(hash, i), start + i);
+    }
+    if (added && (++size == sampleSize)) {
+      reset();
+    }
+  }
+
+  /**
+   * Increments the {@code j}th counter of the {@code i}th slot unless it is saturated. Returns
+   * true if the counter was incremented.
+   */
+  boolean incrementAt(int i, int j) {
+    int offset = j << 2;
+    long mask = (0xfL << offset);
+    if ((table[i] & mask) != mask) {
+      table[i] += (1L << offset);
+      return true;
+    }
+    return false;
+  }
+
+  /** Halves every counter and adjusts the sample size to match. */
+  void reset() {
+    int count = 0;
+    for (int i = 0; i < table.length; i++) {
+      count += Long.bitCount(table[i] & ONE_MASK);
+      table[i] = (table[i] >>> 1) & RESET_MASK;
+    }
+    size = (size >>> 1) - (count >>> 2);
+  }
+
+  /** Returns the table slot of the {@code i}th row for the element with the given hash. */
+  int indexOf(int hash, int i) {
+    long h = (hash + SEED[i]) * SEED[i];
+    h += h >>> 32;
+    return ((int) h) & tableMask;
+  }
+}
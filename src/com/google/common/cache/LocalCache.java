@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkState;
 import static com.google.common.cache.CacheBuilder.NULL_TICKER;
 import static com.google.common.cache.CacheBuilder.UNSET_INT;
 import static com.google.common.util.concurrent.Uninterruptibles.getUninterruptibly;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import com.google.common.annotations.GwtCompatible;
@@ -36,13 +37,18 @@ import com.google.common.cache.CacheBuilder.NullListener;
 import com.google.common.cache.CacheBuilder.OneWeigher;
 import com.google.common.cache.CacheLoader.InvalidCacheLoadException;
 import com.google.common.cache.CacheLoader.UnsupportedLoadingOperationException;
+import com.google.common.cache.OffHeapStore.Allocation;
 import com.google.common.collect.AbstractSequentialIterator;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Iterators;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import com.google.common.primitives.Ints;
 import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import com.google.common.util.concurrent.ListeningExecutorService;
@@ -53,6 +59,7 @@ import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.IOException;
 import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.lang.ref.Reference;
 import java.lang.ref.ReferenceQueue;
@@ -64,6 +71,7 @@ import java.util.AbstractQueue;
 import java.util.AbstractSet;
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
@@ -73,8 +81,13 @@ import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.logging.Level;
@@ -112,9 +125,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    * penalty of applying the batches is spread across threads so that the amortized cost is slightly
    * higher than performing just the operation without enforcing the capacity constraint.
    *
-   * This implementation uses a per-segment queue to record a memento of the additions, removals,
-   * and accesses that were performed on the map. The queue is drained on writes and when it exceeds
-   * its capacity threshold.
+   * This implementation uses a per-segment read buffer to record a memento of the accesses that
+   * were performed on the map. The buffer is striped by thread, so that readers of a hot segment
+   * rarely write to the same memory, and is lossy: a read which cannot be recorded without waiting,
+   * because its stripe is full or another reader won the race for the slot, is simply dropped. Only
+   * the thread holding the segment lock drains the buffer, which it does on writes and whenever a
+   * reader fills its stripe and finds the lock free. Reads therefore never block on, or spin for,
+   * the segment lock, and read throughput does not depend on the number of segments.
    *
    * The Least Recently Used page replacement algorithm was chosen due to its simplicity, high hit
    * rate, and ability to be implemented with O(1) time complexity. The initial LRU implementation
@@ -138,14 +155,44 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   static final int CONTAINS_VALUE_RETRIES = 3;
 
   /**
-   * Number of cache access operations that can be buffered per segment before the cache's recency
-   * ordering information is updated. This is used to avoid lock contention by recording a memento
-   * of reads and delaying a lock acquisition until the threshold is crossed or a mutation occurs.
+   * Number of read operations, per read buffer stripe, between routine cleanups performed by
+   * reading threads in the absence of writes.
    *
    * <p>This must be a (2^n)-1 as it is used as a mask.
    */
   static final int DRAIN_THRESHOLD = 0x3F;
 
+  /**
+   * Number of cache access operations that can be buffered by each stripe of a segment's read
+   * buffer before the cache's recency ordering information is updated. This is used to avoid lock
+   * contention by recording a memento of reads and delaying a lock acquisition until a stripe is
+   * full or a mutation occurs.
+   *
+   * <p>This must be a power of two as it is used to compute a mask.
+   */
+  static final int READ_BUFFER_SIZE = 16;
+
+  /** The maximum number of stripes in a segment's read buffer. MUST be a power of two. */
+  static final int MAX_READ_BUFFER_STRIPES = 64;
+
+  /**
+   * The longest time for which an {@link Expiry} may retain an entry, about 146 years. Longer
+   * durations are truncated so that expiration times cannot overflow.
+   */
+  static final long MAXIMUM_EXPIRY = Long.MAX_VALUE >> 1;
+
+  /**
+   * Maximum number of expired entries to be removed from each segment, and of removal
+   * notifications to be delivered, by a single run of the scheduled maintenance task.
+   */
+  static final int MAINTENANCE_MAX = 1 << 10;
+
+  /**
+   * When refreshes are batched, each entry becomes eligible for refresh early by up to this
+   * fraction of the refresh interval, so that entries written together aren't refreshed together.
+   */
+  static final int REFRESH_JITTER_DIVISOR = 8;
+
   /**
    * Maximum number of entries to be drained in a single cleanup run. This applies independently to
    * the cleanup queue and both reference queues.
@@ -195,15 +242,37 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   /** Weigher to weigh cache entries. */
   final Weigher<K, V> weigher;
 
+  /** The algorithm used to choose entries for size-based eviction. */
+  final EvictionPolicy evictionPolicy;
+
+  /** Serializes the values of this map, or null unless values are stored off the heap. */
+  @Nullable
+  final ValueSerializer<V> valueSerializer;
+
+  /** The most memory which the values of this map may occupy off the heap. */
+  final long maxOffHeapBytes;
+
   /** How long after the last access to an entry the map will retain that entry. */
   final long expireAfterAccessNanos;
 
   /** How long after the last write to an entry the map will retain that entry. */
   final long expireAfterWriteNanos;
 
+  /**
+   * Calculates how long each entry will be retained, or null if entries do not expire variably.
+   * When present, the access time of each entry holds the time at which it expires instead, and
+   * each segment's write queue is a {@link TimerWheel}.
+   */
+  @Nullable
+  final Expiry<K, V> expiry;
+
   /** How long after the last write an entry becomes a candidate for refresh. */
   final long refreshNanos;
 
+  /** Gathers refreshes into batches, or null if refreshes are performed individually. */
+  @Nullable
+  final RefreshBatcher refreshBatcher;
+
   /** Entries waiting to be consumed by the removal listener. */
   // TODO(fry): define a new type which creates event objects and automates the clear logic
   final Queue<RemovalNotification<K, V>> removalNotificationQueue;
@@ -247,9 +316,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     maxWeight = builder.getMaximumWeight();
     weigher = builder.getWeigher();
+    evictionPolicy = builder.getEvictionPolicy();
+    valueSerializer = builder.<V>getValueSerializer();
+    maxOffHeapBytes = builder.getMaximumOffHeapBytes();
     expireAfterAccessNanos = builder.getExpireAfterAccessNanos();
     expireAfterWriteNanos = builder.getExpireAfterWriteNanos();
+    expiry = builder.getExpiry();
     refreshNanos = builder.getRefreshNanos();
+    ScheduledExecutorService refreshExecutor = builder.getRefreshExecutor();
+    refreshBatcher = (refreshExecutor == null)
+        ? null
+        : new RefreshBatcher(refreshExecutor, builder.getRefreshWindowNanos());
 
     removalListener = builder.getRemovalListener();
     removalNotificationQueue = (removalListener == NullListener.INSTANCE)
@@ -310,6 +387,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
             createSegment(segmentSize, UNSET_INT, builder.getStatsCounterSupplier().get());
       }
     }
+
+    ScheduledExecutorService maintenanceScheduler = builder.getMaintenanceScheduler();
+    if (maintenanceScheduler != null) {
+      long period = builder.getMaintenancePeriodNanos();
+      MaintenanceTask task = new MaintenanceTask(this);
+      task.future =
+          maintenanceScheduler.scheduleWithFixedDelay(task, period, period, NANOSECONDS);
+    }
   }
 
   boolean evictsBySize() {
@@ -320,8 +405,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return weigher != OneWeigher.INSTANCE;
   }
 
+  boolean storesOffHeap() {
+    return valueStrength == Strength.OFF_HEAP;
+  }
+
+  boolean usesAdmissionWindow() {
+    return evictsBySize() && (evictionPolicy == EvictionPolicy.WINDOW_TINY_LFU);
+  }
+
   boolean expires() {
-    return expiresAfterWrite() || expiresAfterAccess();
+    return expiresAfterWrite() || expiresAfterAccess() || expiresVariably();
+  }
+
+  boolean expiresVariably() {
+    return expiry != null;
   }
 
   boolean expiresAfterWrite() {
@@ -337,11 +434,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean usesAccessQueue() {
-    return expiresAfterAccess() || evictsBySize();
+    return expiresAfterAccess() || evictsBySize() || storesOffHeap();
   }
 
   boolean usesWriteQueue() {
-    return expiresAfterWrite();
+    return expiresAfterWrite() || expiresVariably();
+  }
+
+  boolean buffersReads() {
+    return usesAccessQueue() || expiresVariably();
   }
 
   boolean recordsWrite() {
@@ -353,7 +454,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean recordsTime() {
-    return recordsWrite() || recordsAccess();
+    return recordsWrite() || recordsAccess() || expiresVariably();
   }
 
   boolean usesWriteEntries() {
@@ -361,7 +462,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean usesAccessEntries() {
-    return usesAccessQueue() || recordsAccess();
+    return usesAccessQueue() || recordsAccess() || expiresVariably();
   }
 
   boolean usesKeyReferences() {
@@ -369,7 +470,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
   }
 
   boolean usesValueReferences() {
-    return valueStrength != Strength.STRONG;
+    return valueStrength == Strength.WEAK || valueStrength == Strength.SOFT;
   }
 
   enum Strength {
@@ -423,6 +524,20 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       Equivalence<Object> defaultEquivalence() {
         return Equivalence.identity();
       }
+    },
+
+    OFF_HEAP {
+      @Override
+      <K, V> ValueReference<K, V> referenceValue(
+          Segment<K, V> segment, ReferenceEntry<K, V> entry, V value, int weight) {
+        OffHeapStore<V> store = segment.offHeapStore;
+        return new OffHeapValueReference<K, V>(store, store.write(value), weight);
+      }
+
+      @Override
+      Equivalence<Object> defaultEquivalence() {
+        return Equivalence.equals();
+      }
     };
 
     /**
@@ -602,6 +717,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       // TODO(fry): when we link values instead of entries this method can go
       // away, as can connectAccessOrder, nullifyAccessOrder.
       newEntry.setAccessTime(original.getAccessTime());
+      newEntry.setInAdmissionWindow(original.isInAdmissionWindow());
 
       connectAccessOrder(original.getPreviousInAccessQueue(), newEntry);
       connectAccessOrder(newEntry, original.getNextInAccessQueue());
@@ -814,6 +930,18 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      */
     void setPreviousInAccessQueue(ReferenceEntry<K, V> previous);
 
+    /**
+     * Returns true if this entry is in the admission window of its segment's access queue, rather
+     * than in the main region. Only meaningful for caches using
+     * {@link EvictionPolicy#WINDOW_TINY_LFU}.
+     */
+    boolean isInAdmissionWindow();
+
+    /**
+     * Sets whether this entry is in the admission window of its segment's access queue.
+     */
+    void setInAdmissionWindow(boolean inAdmissionWindow);
+
     /*
      * Implemented by entries that use write order. Write entries are maintained in a
      * doubly-linked list. New entries are added at the tail of the list at write time and stale
@@ -901,6 +1029,14 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     @Override
     public void setPreviousInAccessQueue(ReferenceEntry<Object, Object> previous) {}
 
+    @Override
+    public boolean isInAdmissionWindow() {
+      return false;
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {}
+
     @Override
     public long getWriteTime() {
       return 0;
@@ -982,6 +1118,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean isInAdmissionWindow() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      throw new UnsupportedOperationException();
+    }
+
     @Override
     public long getWriteTime() {
       throw new UnsupportedOperationException();
@@ -1149,6 +1295,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     public void setPreviousInAccessQueue(ReferenceEntry<K, V> previous) {
       this.previousAccess = previous;
     }
+
+    @GuardedBy("Segment.this")
+    boolean inAdmissionWindow;
+
+    @Override
+    public boolean isInAdmissionWindow() {
+      return inAdmissionWindow;
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      this.inAdmissionWindow = inAdmissionWindow;
+    }
   }
 
   static final class StrongWriteEntry<K, V> extends StrongEntry<K, V> {
@@ -1242,6 +1401,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.previousAccess = previous;
     }
 
+    @GuardedBy("Segment.this")
+    boolean inAdmissionWindow;
+
+    @Override
+    public boolean isInAdmissionWindow() {
+      return inAdmissionWindow;
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      this.inAdmissionWindow = inAdmissionWindow;
+    }
+
     // The code below is exactly the same for each write entry type.
 
     volatile long writeTime = Long.MAX_VALUE;
@@ -1335,6 +1507,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       throw new UnsupportedOperationException();
     }
 
+    @Override
+    public boolean isInAdmissionWindow() {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      throw new UnsupportedOperationException();
+    }
+
     // null write
 
     @Override
@@ -1439,6 +1621,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     public void setPreviousInAccessQueue(ReferenceEntry<K, V> previous) {
       this.previousAccess = previous;
     }
+
+    @GuardedBy("Segment.this")
+    boolean inAdmissionWindow;
+
+    @Override
+    public boolean isInAdmissionWindow() {
+      return inAdmissionWindow;
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      this.inAdmissionWindow = inAdmissionWindow;
+    }
   }
 
   static final class WeakWriteEntry<K, V> extends WeakEntry<K, V> {
@@ -1534,6 +1729,19 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this.previousAccess = previous;
     }
 
+    @GuardedBy("Segment.this")
+    boolean inAdmissionWindow;
+
+    @Override
+    public boolean isInAdmissionWindow() {
+      return inAdmissionWindow;
+    }
+
+    @Override
+    public void setInAdmissionWindow(boolean inAdmissionWindow) {
+      this.inAdmissionWindow = inAdmissionWindow;
+    }
+
     // The code below is exactly the same for each write entry type.
 
     volatile long writeTime = Long.MAX_VALUE;
@@ -1784,6 +1992,61 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  /**
+   * References a value which is stored off the heap, and deserialized on each read. Once the
+   * segment has released the value's memory, {@link #get} returns null.
+   */
+  static final class OffHeapValueReference<K, V> implements ValueReference<K, V> {
+    final OffHeapStore<V> store;
+    final Allocation allocation;
+    final int weight;
+
+    OffHeapValueReference(OffHeapStore<V> store, Allocation allocation, int weight) {
+      this.store = store;
+      this.allocation = allocation;
+      this.weight = weight;
+    }
+
+    @Override
+    public V get() {
+      return store.read(allocation);
+    }
+
+    @Override
+    public int getWeight() {
+      return weight;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> getEntry() {
+      return null;
+    }
+
+    @Override
+    public ValueReference<K, V> copyFor(
+        ReferenceQueue<V> queue, V value, ReferenceEntry<K, V> entry) {
+      return this;
+    }
+
+    @Override
+    public boolean isLoading() {
+      return false;
+    }
+
+    @Override
+    public boolean isActive() {
+      return true;
+    }
+
+    @Override
+    public V waitForValue() {
+      return get();
+    }
+
+    @Override
+    public void notifyNewValue(V newValue) {}
+  }
+
   /**
    * Applies a supplemental hash function to a given hash code, which defends against poor quality
    * hash functions. This is critical when the concurrent hash map uses power-of-two length hash
@@ -1911,9 +2174,34 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         && (now - entry.getWriteTime() >= expireAfterWriteNanos)) {
       return true;
     }
+    if (expiresVariably()
+        && (now - entry.getAccessTime() >= 0)) {
+      return true;
+    }
     return false;
   }
 
+  /**
+   * Returns how long after its last write {@code entry} becomes a candidate for refresh. When
+   * refreshes are batched, this is less than {@link #refreshNanos} by an amount derived from the
+   * entry's hash.
+   */
+  long refreshDelay(ReferenceEntry<K, V> entry) {
+    if (refreshBatcher == null) {
+      return refreshNanos;
+    }
+    long maxJitter = refreshNanos / REFRESH_JITTER_DIVISOR;
+    return refreshNanos - (maxJitter >>> 8) * (rehash(entry.getHash()) & 0xFF);
+  }
+
+  /**
+   * Returns the time at which an entry which is to be retained for {@code duration} nanoseconds
+   * from {@code now} will expire, truncating durations outside of {@code [0, MAXIMUM_EXPIRY]}.
+   */
+  static long expirationTime(long now, long duration) {
+    return now + Math.max(0, Math.min(duration, MAXIMUM_EXPIRY));
+  }
+
   // queues
 
   @GuardedBy("Segment.this")
@@ -1948,8 +2236,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
    * evictEntry is called (once the lock is released).
    */
   void processPendingNotifications() {
+    processPendingNotifications(Integer.MAX_VALUE);
+  }
+
+  /**
+   * Notifies the listener of at most {@code limit} pending removals.
+   */
+  void processPendingNotifications(int limit) {
     RemovalNotification<K, V> notification;
-    while ((notification = removalNotificationQueue.poll()) != null) {
+    for (int i = 0; (i < limit) && (notification = removalNotificationQueue.poll()) != null; i++) {
       try {
         removalListener.onRemoval(notification);
       } catch (Throwable e) {
@@ -2055,17 +2350,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     final ReferenceQueue<V> valueReferenceQueue;
 
     /**
-     * The recency queue is used to record which entries were accessed for updating the access
-     * list's ordering. It is drained as a batch operation when either the DRAIN_THRESHOLD is
-     * crossed or a write occurs on the segment.
-     */
-    final Queue<ReferenceEntry<K, V>> recencyQueue;
-
-    /**
-     * A counter of the number of reads since the last write, used to drain queues on a small
-     * fraction of read operations.
+     * The read buffer is used to record which entries were accessed for updating the access list's
+     * ordering, and to count reads so that queues can be drained on a small fraction of read
+     * operations. It is drained as a batch operation when either a stripe fills up or a write
+     * occurs on the segment.
      */
-    final AtomicInteger readCount = new AtomicInteger();
+    final ReadBuffer<K, V> readBuffer = new ReadBuffer<K, V>();
 
     /**
      * A queue of elements currently in the map, ordered by write time. Elements are added to the
@@ -2076,7 +2366,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     /**
      * A queue of elements currently in the map, ordered by access time. Elements are added to the
-     * tail of the queue on access (note that writes count as accesses).
+     * tail of the queue on access (note that writes count as accesses). When the map uses an
+     * admission window this is an {@link AdmissionQueue}, which is ordered by access time within
+     * each of its two regions.
      */
     @GuardedBy("Segment.this")
     final Queue<ReferenceEntry<K, V>> accessQueue;
@@ -2084,11 +2376,22 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     /** Accumulates cache statistics. */
     final StatsCounter statsCounter;
 
+    /** The same as {@link #statsCounter} if it accumulates detailed statistics, otherwise null. */
+    @Nullable
+    final DetailedStatsCounter detailedStatsCounter;
+
+    /** Holds the serialized values of this segment, or null unless values are stored off-heap. */
+    @Nullable
+    final OffHeapStore<V> offHeapStore;
+
     Segment(LocalCache<K, V> map, int initialCapacity, long maxSegmentWeight,
         StatsCounter statsCounter) {
       this.map = map;
       this.maxSegmentWeight = maxSegmentWeight;
       this.statsCounter = checkNotNull(statsCounter);
+      this.detailedStatsCounter = (statsCounter instanceof DetailedStatsCounter)
+          ? (DetailedStatsCounter) statsCounter
+          : null;
       initTable(newEntryArray(initialCapacity));
 
       keyReferenceQueue = map.usesKeyReferences()
@@ -2097,17 +2400,40 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       valueReferenceQueue = map.usesValueReferences()
            ? new ReferenceQueue<V>() : null;
 
-      recencyQueue = map.usesAccessQueue()
-          ? new ConcurrentLinkedQueue<ReferenceEntry<K, V>>()
-          : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      if (map.expiresVariably()) {
+        writeQueue = new TimerWheel<K, V>(map.ticker.read());
+      } else if (map.usesWriteQueue()) {
+        writeQueue = new WriteQueue<K, V>();
+      } else {
+        writeQueue = LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
+
+      if (map.usesAdmissionWindow()) {
+        accessQueue = new AdmissionQueue<K, V>(initialCapacity);
+      } else if (map.usesAccessQueue()) {
+        accessQueue = new AccessQueue<K, V>();
+      } else {
+        accessQueue = LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      }
 
-      writeQueue = map.usesWriteQueue()
-          ? new WriteQueue<K, V>()
-          : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+      offHeapStore = map.storesOffHeap()
+          ? new OffHeapStore<V>(map.valueSerializer, map.maxOffHeapBytes / map.segments.length)
+          : null;
+    }
 
-      accessQueue = map.usesAccessQueue()
-          ? new AccessQueue<K, V>()
-          : LocalCache.<ReferenceEntry<K, V>>discardingQueue();
+    /**
+     * Acquires the segment lock. When detailed statistics are recorded, a thread which finds the
+     * lock held by another thread records how long it waited.
+     */
+    @Override
+    public void lock() {
+      if (detailedStatsCounter == null) {
+        super.lock();
+      } else if (!tryLock()) {
+        long start = System.nanoTime();
+        super.lock();
+        detailedStatsCounter.recordLockContention(System.nanoTime() - start);
+      }
     }
 
     AtomicReferenceArray<ReferenceEntry<K, V>> newEntryArray(int size) {
@@ -2160,6 +2486,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       int weight = map.weigher.weigh(key, value);
       checkState(weight >= 0, "Weights must be non-negative");
 
+      if (map.expiresVariably()) {
+        long duration = previous.isActive()
+            ? map.expiry.expireAfterUpdate(key, value, now, entry.getAccessTime() - now)
+            : map.expiry.expireAfterCreate(key, value, now);
+        entry.setAccessTime(expirationTime(now, duration));
+      }
+
       ValueReference<K, V> valueReference =
           map.valueStrength.referenceValue(this, entry, value, weight);
       entry.setValueReference(valueReference);
@@ -2360,8 +2693,12 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     V scheduleRefresh(ReferenceEntry<K, V> entry, K key, int hash, V oldValue, long now,
         CacheLoader<? super K, V> loader) {
-      if (map.refreshes() && (now - entry.getWriteTime() > map.refreshNanos)
+      if (map.refreshes() && (now - entry.getWriteTime() > map.refreshDelay(entry))
           && !entry.getValueReference().isLoading()) {
+        if (map.refreshBatcher != null && loader == map.defaultLoader) {
+          map.refreshBatcher.add(this, key, hash);
+          return oldValue;
+        }
         V newValue = refresh(key, hash, loader, true);
         if (newValue != null) {
           return newValue;
@@ -2421,7 +2758,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
             ValueReference<K, V> valueReference = e.getValueReference();
             if (valueReference.isLoading()
-                || (checkTime && (now - e.getWriteTime() < map.refreshNanos))) {
+                || (checkTime && (now - e.getWriteTime() < map.refreshDelay(e)))) {
               // refresh is a no-op if loading is pending
               // if checkTime, we want to check *after* acquiring the lock if refresh still needs
               // to be scheduled
@@ -2526,12 +2863,13 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       while (valueReferenceQueue.poll() != null) {}
     }
 
-    // recency queue, shared by expiration and eviction
+    // read buffer, shared by expiration and eviction
 
     /**
      * Records the relative order in which this read was performed by adding {@code entry} to the
-     * recency queue. At write-time, or when the queue is full past the threshold, the queue will
-     * be drained and the entries therein processed.
+     * read buffer. At write-time, or when the calling thread's stripe of the buffer is full, the
+     * buffer will be drained and the entries therein processed. The read is silently dropped if it
+     * cannot be recorded without waiting.
      *
      * <p>Note: locked reads should use {@link #recordLockedRead}.
      */
@@ -2539,7 +2877,45 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       if (map.recordsAccess()) {
         entry.setAccessTime(now);
       }
-      recencyQueue.add(entry);
+      if (map.expiresVariably()) {
+        recordExpirationAfterRead(entry, now);
+      }
+      if (map.buffersReads() && readBuffer.offer(entry)) {
+        tryDrainReadBuffer();
+      }
+    }
+
+    /**
+     * Recalculates the expiration time of {@code entry}, which was just read, using the map's
+     * {@link Expiry}. This may race with a concurrent write of the entry, just as the access time
+     * of an entry may be overwritten by a concurrent read.
+     */
+    void recordExpirationAfterRead(ReferenceEntry<K, V> entry, long now) {
+      K key = entry.getKey();
+      V value = entry.getValueReference().get();
+      if (key == null || value == null) {
+        return;
+      }
+      long expirationTime = entry.getAccessTime();
+      long duration = map.expiry.expireAfterRead(key, value, now, expirationTime - now);
+      long newExpirationTime = expirationTime(now, duration);
+      if (newExpirationTime != expirationTime) {
+        entry.setAccessTime(newExpirationTime);
+      }
+    }
+
+    /**
+     * Drains the read buffer if the segment lock is available, without waiting for it. If another
+     * thread holds the lock, it will drain the buffer itself before releasing it, or soon after.
+     */
+    void tryDrainReadBuffer() {
+      if (tryLock()) {
+        try {
+          drainRecencyQueue();
+        } finally {
+          unlock();
+        }
+      }
     }
 
     /**
@@ -2555,6 +2931,10 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         entry.setAccessTime(now);
       }
       accessQueue.add(entry);
+      if (map.expiresVariably()) {
+        recordExpirationAfterRead(entry, now);
+        writeQueue.add(entry);
+      }
     }
 
     /**
@@ -2563,7 +2943,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      */
     @GuardedBy("Segment.this")
     void recordWrite(ReferenceEntry<K, V> entry, int weight, long now) {
-      // we are already under lock, so drain the recency queue immediately
+      // we are already under lock, so drain the read buffer immediately
       drainRecencyQueue();
       totalWeight += weight;
 
@@ -2578,22 +2958,34 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     /**
-     * Drains the recency queue, updating eviction metadata that the entries therein were read in
+     * Drains the read buffer, updating eviction metadata that the entries therein were read in
      * the specified relative order. This currently amounts to adding them to relevant eviction
      * lists (accounting for the fact that they could have been removed from the map since being
-     * added to the recency queue).
+     * added to the read buffer).
      */
     @GuardedBy("Segment.this")
     void drainRecencyQueue() {
-      ReferenceEntry<K, V> e;
-      while ((e = recencyQueue.poll()) != null) {
-        // An entry may be in the recency queue despite it being removed from
-        // the map . This can occur when the entry was concurrently read while a
-        // writer is removing it from the segment or after a clear has removed
-        // all of the segment's entries.
-        if (accessQueue.contains(e)) {
-          accessQueue.add(e);
-        }
+      if (map.buffersReads()) {
+        readBuffer.drainTo(this);
+      }
+    }
+
+    /**
+     * Updates eviction metadata that {@code entry}, which was recorded in the read buffer, was
+     * read. This moves it to the tail of the access queue, and reschedules it in the timer wheel
+     * in case the read extended its expiration time.
+     */
+    @GuardedBy("Segment.this")
+    void recordBufferedRead(ReferenceEntry<K, V> entry) {
+      // An entry may be in the read buffer despite it being removed from
+      // the map . This can occur when the entry was concurrently read while a
+      // writer is removing it from the segment or after a clear has removed
+      // all of the segment's entries.
+      if (accessQueue.contains(entry)) {
+        accessQueue.add(entry);
+      }
+      if (map.expiresVariably() && writeQueue.contains(entry)) {
+        writeQueue.add(entry);
       }
     }
 
@@ -2615,18 +3007,32 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     @GuardedBy("Segment.this")
     void expireEntries(long now) {
+      expireEntries(now, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Removes at most {@code limit} expired entries, leaving any others for a later cleanup.
+     */
+    @GuardedBy("Segment.this")
+    void expireEntries(long now, int limit) {
       drainRecencyQueue();
+      if (map.expiresVariably()) {
+        ((TimerWheel<K, V>) writeQueue).advance(now);
+      }
 
       ReferenceEntry<K, V> e;
-      while ((e = writeQueue.peek()) != null && map.isExpired(e, now)) {
+      int i = 0;
+      while (i < limit && (e = writeQueue.peek()) != null && map.isExpired(e, now)) {
         if (!removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
           throw new AssertionError();
         }
+        i++;
       }
-      while ((e = accessQueue.peek()) != null && map.isExpired(e, now)) {
+      while (i < limit && (e = accessQueue.peek()) != null && map.isExpired(e, now)) {
         if (!removeEntry(e, e.getHash(), RemovalCause.EXPIRED)) {
           throw new AssertionError();
         }
+        i++;
       }
     }
 
@@ -2643,12 +3049,32 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       totalWeight -= valueReference.getWeight();
       if (cause.wasEvicted()) {
         statsCounter.recordEviction();
+        if (detailedStatsCounter != null) {
+          detailedStatsCounter.recordEvictionCause(cause);
+        }
       }
       if (map.removalNotificationQueue != DISCARDING_QUEUE) {
         V value = valueReference.get();
         RemovalNotification<K, V> notification = new RemovalNotification<K, V>(key, value, cause);
         map.removalNotificationQueue.offer(notification);
       }
+      if (offHeapStore != null) {
+        releaseOffHeapValue(valueReference);
+      }
+    }
+
+    /**
+     * Frees the off-heap memory of a value which has been removed from the segment. A loading
+     * reference holds the value it replaces, which is the one removed if it was active.
+     */
+    @GuardedBy("Segment.this")
+    void releaseOffHeapValue(ValueReference<K, V> valueReference) {
+      if (valueReference instanceof LoadingValueReference) {
+        valueReference = ((LoadingValueReference<K, V>) valueReference).getOldValue();
+      }
+      if (valueReference instanceof OffHeapValueReference) {
+        offHeapStore.release(((OffHeapValueReference<K, V>) valueReference).allocation);
+      }
     }
 
     /**
@@ -2657,6 +3083,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      */
     @GuardedBy("Segment.this")
     void evictEntries() {
+      if (offHeapStore != null) {
+        evictOffHeapOverflow();
+      }
       if (!map.evictsBySize()) {
         return;
       }
@@ -2668,20 +3097,92 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           throw new AssertionError();
         }
       }
+      if (map.usesAdmissionWindow()) {
+        ((AdmissionQueue<K, V>) accessQueue).promoteWindowOverflow();
+      }
     }
 
-    // TODO(fry): instead implement this with an eviction head
-    ReferenceEntry<K, V> getNextEvictable() {
+    /**
+     * Evicts entries, least recently used first, until the values which did not fit in the
+     * off-heap store have been moved into it.
+     */
+    @GuardedBy("Segment.this")
+    void evictOffHeapOverflow() {
+      drainRecencyQueue();
+      while (offHeapStore.isOverCapacity()) {
+        ReferenceEntry<K, V> e = getNextOffHeapEvictable();
+        if (e == null) {
+          return;
+        }
+        if (!removeEntry(e, e.getHash(), RemovalCause.SIZE)) {
+          throw new AssertionError();
+        }
+      }
+    }
+
+    @GuardedBy("Segment.this")
+    @Nullable
+    ReferenceEntry<K, V> getNextOffHeapEvictable() {
       for (ReferenceEntry<K, V> e : accessQueue) {
-        int weight = e.getValueReference().getWeight();
-        if (weight > 0) {
+        if (e.getValueReference().isActive()) {
           return e;
         }
       }
-      throw new AssertionError();
+      return null;
     }
 
-    /**
+    // TODO(fry): instead implement this with an eviction head
+    ReferenceEntry<K, V> getNextEvictable() {
+      if (map.usesAdmissionWindow()) {
+        ReferenceEntry<K, V> e = getNextAdmissionEvictable();
+        if (e != null) {
+          return e;
+        }
+      }
+      for (ReferenceEntry<K, V> e : accessQueue) {
+        int weight = e.getValueReference().getWeight();
+        if (weight > 0) {
+          return e;
+        }
+      }
+      throw new AssertionError();
+    }
+
+    /**
+     * Chooses between the least-recently-used entry of the main region and the entry leaving the
+     * admission window, keeping whichever has been accessed more frequently. Returns the entry to
+     * evict, or {@code null} if neither region has a candidate.
+     */
+    @GuardedBy("Segment.this")
+    @Nullable
+    ReferenceEntry<K, V> getNextAdmissionEvictable() {
+      AdmissionQueue<K, V> queue = (AdmissionQueue<K, V>) accessQueue;
+      ReferenceEntry<K, V> candidate = queue.peekWindowOverflow();
+      ReferenceEntry<K, V> victim = queue.peekMainEvictable();
+      if (candidate == null || victim == null) {
+        return (victim == null) ? candidate : victim;
+      }
+      if (queue.admit(candidate, victim)) {
+        queue.promote(candidate);
+        return victim;
+      }
+      recordAdmissionRejection(statsCounter);
+      return candidate;
+    }
+
+    /**
+     * Records an admission rejection, if {@code statsCounter} is one of our own counters; the
+     * public {@link StatsCounter} interface has no method for it.
+     */
+    static void recordAdmissionRejection(StatsCounter statsCounter) {
+      if (statsCounter instanceof SimpleStatsCounter) {
+        ((SimpleStatsCounter) statsCounter).recordAdmissionRejection();
+      } else if (statsCounter instanceof DetailedStatsCounter) {
+        ((DetailedStatsCounter) statsCounter).recordAdmissionRejection();
+      }
+    }
+
+    /**
      * Returns first entry of bin for given hash.
      */
     ReferenceEntry<K, V> getFirst(int hash) {
@@ -2889,6 +3390,68 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    /**
+     * Adds an entry read from a snapshot, unless {@code key} is already present, and returns
+     * whether it was added. The entry was last written {@code writeAge} nanoseconds ago, last
+     * accessed {@code accessAge} nanoseconds ago, and expires {@code expiresIn} nanoseconds from
+     * now; each is {@code UNSET_INT} if the snapshot does not record it, in which case the entry is
+     * treated as if it had just been put.
+     */
+    boolean restore(K key, int hash, V value, long writeAge, long accessAge, long expiresIn) {
+      lock();
+      try {
+        if (put(key, hash, value, true) != null) {
+          return false;
+        }
+        ReferenceEntry<K, V> e = getEntry(key, hash);
+        if (e == null) {
+          return false; // evicted immediately
+        }
+        long now = map.ticker.read();
+        if (map.recordsWrite() && writeAge != UNSET_INT) {
+          e.setWriteTime(now - writeAge);
+        }
+        if (map.recordsAccess() && accessAge != UNSET_INT) {
+          e.setAccessTime(now - accessAge);
+        }
+        if (map.expiresVariably() && expiresIn != UNSET_INT) {
+          e.setAccessTime(expirationTime(now, expiresIn));
+          writeQueue.add(e);
+        }
+        return true;
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
+    /**
+     * Returns the entries of this segment in the order in which they should be restored from a
+     * snapshot: least-recently-used first if the segment keeps an access order, otherwise
+     * least-recently-written first if it expires entries after write.
+     */
+    List<ReferenceEntry<K, V>> snapshotEntries() {
+      lock();
+      try {
+        drainRecencyQueue();
+        if (map.usesAccessQueue()) {
+          return Lists.newArrayList(accessQueue);
+        } else if (map.expiresAfterWrite()) {
+          return Lists.newArrayList(writeQueue);
+        }
+        List<ReferenceEntry<K, V>> entries = Lists.newArrayListWithCapacity(count);
+        AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+        for (int i = 0; i < table.length(); ++i) {
+          for (ReferenceEntry<K, V> e = table.get(i); e != null; e = e.getNext()) {
+            entries.add(e);
+          }
+        }
+        return entries;
+      } finally {
+        unlock();
+      }
+    }
+
     /**
      * Expands the table if possible.
      */
@@ -3013,6 +3576,42 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       }
     }
 
+    /**
+     * Stores {@code value} again in the entry for {@code key}, if that is still its value, so that
+     * its weight and expiration time are recomputed. This is not a replacement: no removal
+     * notification is sent.
+     */
+    boolean reweigh(K key, int hash, V value) {
+      lock();
+      try {
+        long now = map.ticker.read();
+        preWriteCleanup(now);
+
+        AtomicReferenceArray<ReferenceEntry<K, V>> table = this.table;
+        int index = hash & (table.length() - 1);
+        ReferenceEntry<K, V> first = table.get(index);
+
+        for (ReferenceEntry<K, V> e = first; e != null; e = e.getNext()) {
+          K entryKey = e.getKey();
+          if (e.getHash() == hash && entryKey != null
+              && map.keyEquivalence.equivalent(key, entryKey)) {
+            if (e.getValueReference().get() != value) {
+              return false;
+            }
+            ++modCount;
+            setValue(e, key, value, now);
+            evictEntries();
+            return true;
+          }
+        }
+
+        return false;
+      } finally {
+        unlock();
+        postWriteCleanup();
+      }
+    }
+
     @Nullable
     V replace(K key, int hash, V newValue) {
       lock();
@@ -3229,7 +3828,6 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           clearReferenceQueues();
           writeQueue.clear();
           accessQueue.clear();
-          readCount.set(0);
 
           ++modCount;
           count = 0; // write-volatile
@@ -3410,7 +4008,7 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
      * is not observed after a sufficient number of reads, try cleaning up from the read thread.
      */
     void postReadCleanup() {
-      if ((readCount.incrementAndGet() & DRAIN_THRESHOLD) == 0) {
+      if (readBuffer.countRead()) {
         cleanUp();
       }
     }
@@ -3444,7 +4042,22 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         try {
           drainReferenceQueues();
           expireEntries(now); // calls drainRecencyQueue
-          readCount.set(0);
+        } finally {
+          unlock();
+        }
+      }
+    }
+
+    /**
+     * Performs routine cleanup on behalf of the map's maintenance task, if the segment lock is
+     * available. Unlike {@link #cleanUp}, this removes at most {@code MAINTENANCE_MAX} expired
+     * entries, and leaves pending notifications to the task.
+     */
+    void runScheduledCleanup(long now) {
+      if (tryLock()) {
+        try {
+          drainReferenceQueues();
+          expireEntries(now, MAINTENANCE_MAX);
         } finally {
           unlock();
         }
@@ -3851,136 +4464,750 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
-  // Cache support
+  /**
+   * An access queue for the {@link EvictionPolicy#WINDOW_TINY_LFU} eviction policy. Entries are
+   * kept in two regions, each ordered by access time: a small admission window which receives all
+   * new entries, and a main region holding everything else. Every access is recorded in a {@link
+   * FrequencySketch}, which is consulted when an entry overflows the window of a full segment to
+   * decide whether it should replace the least-recently-used entry of the main region.
+   *
+   * <p>Like {@link AccessQueue}, this relies on the access links of {@code ReferenceEntry}; an
+   * entry's region is recorded by {@link ReferenceEntry#isInAdmissionWindow}.
+   */
+  static final class AdmissionQueue<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+    /** The percentage of the segment's entries which the admission window may hold. */
+    static final int WINDOW_PERCENT = 1;
 
-  public void cleanUp() {
-    for (Segment<?, ?> segment : segments) {
-      segment.cleanUp();
+    final AccessQueue<K, V> window = new AccessQueue<K, V>();
+    final AccessQueue<K, V> main = new AccessQueue<K, V>();
+    final FrequencySketch sketch;
+
+    int windowCount;
+    int size;
+
+    AdmissionQueue(int initialCapacity) {
+      this.sketch = new FrequencySketch(initialCapacity);
     }
-  }
 
-  // ConcurrentMap methods
+    int windowMaximum() {
+      return Math.max(1, size * WINDOW_PERCENT / 100);
+    }
 
-  @Override
-  public boolean isEmpty() {
-    /*
-     * Sum per-segment modCounts to avoid mis-reporting when elements are concurrently added and
-     * removed in one segment while checking another, in which case the table was never actually
-     * empty at any point. (The sum ensures accuracy up through at least 1<<31 per-segment
-     * modifications before recheck.)  Method containsValue() uses similar constructions for
-     * stability checks.
+    /**
+     * Returns the least-recently-used entry of the admission window if the window holds more than
+     * its share of the segment, or {@code null} if it does not. Entries of zero weight, which are
+     * never evicted for size, are moved to the main region along the way.
      */
-    long sum = 0L;
-    Segment<K, V>[] segments = this.segments;
-    for (int i = 0; i < segments.length; ++i) {
-      if (segments[i].count != 0) {
-        return false;
+    @Nullable
+    ReferenceEntry<K, V> peekWindowOverflow() {
+      while (windowCount > windowMaximum()) {
+        ReferenceEntry<K, V> e = window.peek();
+        if (e.getValueReference().getWeight() > 0) {
+          return e;
+        }
+        promote(e);
       }
-      sum += segments[i].modCount;
+      return null;
     }
 
-    if (sum != 0L) { // recheck unless no modifications
-      for (int i = 0; i < segments.length; ++i) {
-        if (segments[i].count != 0) {
-          return false;
+    /**
+     * Returns the least-recently-used entry of the main region with a non-zero weight, or
+     * {@code null} if there is none.
+     */
+    @Nullable
+    ReferenceEntry<K, V> peekMainEvictable() {
+      for (ReferenceEntry<K, V> e : main) {
+        if (e.getValueReference().getWeight() > 0) {
+          return e;
         }
-        sum -= segments[i].modCount;
-      }
-      if (sum != 0L) {
-        return false;
       }
+      return null;
     }
-    return true;
-  }
 
-  long longSize() {
-    Segment<K, V>[] segments = this.segments;
-    long sum = 0;
-    for (int i = 0; i < segments.length; ++i) {
-      sum += segments[i].count;
+    /**
+     * Returns true if {@code candidate} has been used more frequently than {@code victim}, and
+     * should therefore be retained in its place.
+     */
+    boolean admit(ReferenceEntry<K, V> candidate, ReferenceEntry<K, V> victim) {
+      return sketch.frequency(candidate.getHash()) > sketch.frequency(victim.getHash());
     }
-    return sum;
-  }
 
-  @Override
-  public int size() {
-    return Ints.saturatedCast(longSize());
-  }
+    /** Moves {@code entry} from the admission window to the tail of the main region. */
+    void promote(ReferenceEntry<K, V> entry) {
+      window.remove(entry);
+      entry.setInAdmissionWindow(false);
+      windowCount--;
+      main.offer(entry);
+    }
 
-  @Override
-  @Nullable
-  public V get(@Nullable Object key) {
-    if (key == null) {
-      return null;
+    /** Moves entries in excess of the admission window's share into the main region. */
+    void promoteWindowOverflow() {
+      while (windowCount > windowMaximum()) {
+        promote(window.peek());
+      }
     }
-    int hash = hash(key);
-    return segmentFor(hash).get(key, hash);
-  }
 
-  @Nullable
-  public V getIfPresent(Object key) {
-    int hash = hash(checkNotNull(key));
-    V value = segmentFor(hash).get(key, hash);
-    if (value == null) {
-      globalStatsCounter.recordMisses(1);
-    } else {
-      globalStatsCounter.recordHits(1);
+    // implements Queue
+
+    @Override
+    public boolean offer(ReferenceEntry<K, V> entry) {
+      if (!contains(entry)) {
+        entry.setInAdmissionWindow(true);
+        windowCount++;
+        size++;
+        sketch.ensureCapacity(size);
+      }
+      sketch.increment(entry.getHash());
+      return entry.isInAdmissionWindow() ? window.offer(entry) : main.offer(entry);
     }
-    return value;
-  }
 
-  V get(K key, CacheLoader<? super K, V> loader) throws ExecutionException {
-    int hash = hash(checkNotNull(key));
-    return segmentFor(hash).get(key, hash, loader);
-  }
+    /**
+     * Returns whichever of the two regions' heads was accessed least recently, so that expiration
+     * can proceed in access order.
+     */
+    @Override
+    public ReferenceEntry<K, V> peek() {
+      ReferenceEntry<K, V> windowHead = window.peek();
+      ReferenceEntry<K, V> mainHead = main.peek();
+      if (windowHead == null || mainHead == null) {
+        return (mainHead == null) ? windowHead : mainHead;
+      }
+      return (windowHead.getAccessTime() < mainHead.getAccessTime()) ? windowHead : mainHead;
+    }
 
-  V getOrLoad(K key) throws ExecutionException {
-    return get(key, defaultLoader);
-  }
+    @Override
+    public ReferenceEntry<K, V> poll() {
+      ReferenceEntry<K, V> next = peek();
+      if (next == null) {
+        return null;
+      }
 
-  ImmutableMap<K, V> getAllPresent(Iterable<?> keys) {
-    int hits = 0;
-    int misses = 0;
+      remove(next);
+      return next;
+    }
 
-    Map<K, V> result = Maps.newLinkedHashMap();
-    for (Object key : keys) {
-      V value = get(key);
-      if (value == null) {
-        misses++;
-      } else {
-        // TODO(fry): store entry key instead of query key
-        @SuppressWarnings("unchecked")
-        K castKey = (K) key;
-        result.put(castKey, value);
-        hits++;
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      boolean inWindow = e.isInAdmissionWindow();
+      if (!(inWindow ? window.remove(e) : main.remove(e))) {
+        return false;
       }
+      if (inWindow) {
+        e.setInAdmissionWindow(false);
+        windowCount--;
+      }
+      size--;
+      return true;
     }
-    globalStatsCounter.recordHits(hits);
-    globalStatsCounter.recordMisses(misses);
-    return ImmutableMap.copyOf(result);
-  }
 
-  ImmutableMap<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
-    int hits = 0;
-    int misses = 0;
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      return e.getNextInAccessQueue() != NullEntry.INSTANCE;
+    }
 
-    Map<K, V> result = Maps.newLinkedHashMap();
-    Set<K> keysToLoad = Sets.newLinkedHashSet();
-    for (K key : keys) {
-      V value = get(key);
-      if (!result.containsKey(key)) {
-        result.put(key, value);
-        if (value == null) {
-          misses++;
-          keysToLoad.add(key);
-        } else {
-          hits++;
-        }
-      }
+    @Override
+    public boolean isEmpty() {
+      return window.isEmpty() && main.isEmpty();
     }
 
-    try {
-      if (!keysToLoad.isEmpty()) {
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      window.clear();
+      main.clear();
+      windowCount = 0;
+      size = 0;
+    }
+
+    /**
+     * Returns the entries of the main region followed by those of the admission window, each in
+     * access order; this is the order in which they would be evicted by a segment which is not
+     * applying its admission policy.
+     */
+    @Override
+    public Iterator<ReferenceEntry<K, V>> iterator() {
+      return Iterators.concat(main.iterator(), window.iterator());
+    }
+  }
+
+  /**
+   * A hierarchical timing wheel of the entries of a segment, ordered coarsely by expiration time,
+   * for maps which use an {@link Expiry}. It takes the place of the segment's write queue, linking
+   * entries through their write order pointers, and reads their expiration times from their
+   * access times.
+   *
+   * <p>Each level of the wheel is a ring of buckets of equal width: about a second, a minute, an
+   * hour and a day for the first four levels, followed by a single overflow bucket. An entry is
+   * placed in the finest level whose ring covers its remaining lifetime. As time advances, each
+   * bucket which has been reached is emptied; entries which have expired move to a list from
+   * which they are removed by {@link #poll}, and the others are rescheduled into a finer level.
+   * Scheduling an entry takes constant time and an entry is rescheduled at most once per level, so
+   * the cost of expiration does not depend on the number of live entries.
+   *
+   * <p>Reads may change an entry's expiration time without holding the segment lock, and only
+   * reschedule the entry once their record in the lossy read buffer is drained, so the bucket of
+   * an entry may be stale in either direction. An entry whose expiration time was extended is
+   * checked again before it is returned as expired, and is rescheduled instead. An entry whose
+   * expiration time was shortened, by a read whose record was dropped, stays in a later bucket:
+   * reads already treat it as expired, but it is only removed, and its memory reclaimed, when
+   * that bucket is reached or the entry is rescheduled by a later access.
+   */
+  static final class TimerWheel<K, V> extends AbstractQueue<ReferenceEntry<K, V>> {
+    /** The number of buckets in each level, each a power of two. */
+    static final int[] BUCKETS = { 64, 64, 32, 4, 1 };
+
+    /**
+     * The width of the buckets of each level, in nanoseconds; each is a power of two. A level's
+     * ring covers at least the width of a bucket of the next level.
+     */
+    static final long[] SPANS = {
+        1L << 30, // 1.07 seconds
+        1L << 36, // 1.15 minutes
+        1L << 42, // 1.22 hours
+        1L << 47, // 1.63 days
+        1L << 49, // 6.52 days
+    };
+
+    static final int[] SHIFT = {
+        Long.numberOfTrailingZeros(SPANS[0]),
+        Long.numberOfTrailingZeros(SPANS[1]),
+        Long.numberOfTrailingZeros(SPANS[2]),
+        Long.numberOfTrailingZeros(SPANS[3]),
+        Long.numberOfTrailingZeros(SPANS[4]),
+    };
+
+    /** The buckets of each level, which are created when an entry is first scheduled in them. */
+    final WriteQueue<K, V>[][] wheel;
+
+    /** Entries which have expired, in the order in which they were found to have expired. */
+    final WriteQueue<K, V> expired = new WriteQueue<K, V>();
+
+    /** The time up to which the wheel has been advanced. */
+    long nanos;
+
+    TimerWheel(long nanos) {
+      this.nanos = nanos;
+      wheel = newWheel(BUCKETS.length);
+      for (int i = 0; i < BUCKETS.length; i++) {
+        wheel[i] = newBucketArray(BUCKETS[i]);
+      }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation
+    static <K, V> WriteQueue<K, V>[][] newWheel(int levels) {
+      return new WriteQueue[levels][];
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"}) // generic array creation
+    static <K, V> WriteQueue<K, V>[] newBucketArray(int size) {
+      return new WriteQueue[size];
+    }
+
+    /**
+     * Advances the wheel to {@code currentTime}, moving every entry which has expired by then to
+     * the head of the queue.
+     */
+    void advance(long currentTime) {
+      long previousTime = nanos;
+      nanos = currentTime;
+      for (int i = 0; i < SHIFT.length; i++) {
+        long previousTicks = previousTime >>> SHIFT[i];
+        long currentTicks = currentTime >>> SHIFT[i];
+        if (currentTicks - previousTicks <= 0) {
+          break;
+        }
+        expire(i, previousTicks, currentTicks - previousTicks);
+      }
+    }
+
+    /**
+     * Empties the buckets of the given level from that of {@code previousTicks} through the one
+     * {@code delta} ticks later, rescheduling their entries.
+     */
+    void expire(int level, long previousTicks, long delta) {
+      WriteQueue<K, V>[] buckets = wheel[level];
+      int mask = buckets.length - 1;
+      int start;
+      int end;
+      if (delta >= buckets.length) {
+        start = 0;
+        end = buckets.length;
+      } else {
+        start = (int) (previousTicks & mask);
+        end = start + (int) delta + 1;
+      }
+      for (int i = start; i < end; i++) {
+        WriteQueue<K, V> bucket = buckets[i & mask];
+        if (bucket != null) {
+          reschedule(bucket);
+        }
+      }
+    }
+
+    /** Detaches all of the entries of {@code bucket} and schedules each of them again. */
+    void reschedule(WriteQueue<K, V> bucket) {
+      ReferenceEntry<K, V> head = bucket.head;
+      ReferenceEntry<K, V> e = head.getNextInWriteQueue();
+      head.setNextInWriteQueue(head);
+      head.setPreviousInWriteQueue(head);
+      while (e != head) {
+        ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+        nullifyWriteOrder(e);
+        offer(e);
+        e = next;
+      }
+    }
+
+    /** Returns the bucket for an entry which expires at {@code time}, creating it if needed. */
+    WriteQueue<K, V> findBucket(long time) {
+      long duration = time - nanos;
+      int level = BUCKETS.length - 1;
+      for (int i = 0; i < BUCKETS.length - 1; i++) {
+        if (duration < SPANS[i + 1]) {
+          level = i;
+          break;
+        }
+      }
+      int index = (int) ((time >>> SHIFT[level]) & (BUCKETS[level] - 1));
+      WriteQueue<K, V> bucket = wheel[level][index];
+      if (bucket == null) {
+        bucket = new WriteQueue<K, V>();
+        wheel[level][index] = bucket;
+      }
+      return bucket;
+    }
+
+    // implements Queue
+
+    /** Schedules {@code entry} according to its current expiration time, moving it if needed. */
+    @Override
+    public boolean offer(ReferenceEntry<K, V> entry) {
+      long expirationTime = entry.getAccessTime();
+      WriteQueue<K, V> bucket =
+          (expirationTime - nanos <= 0) ? expired : findBucket(expirationTime);
+      return bucket.offer(entry);
+    }
+
+    /**
+     * Returns an entry which expired before the wheel was last advanced, or {@code null} if there
+     * is none. Entries whose expiration times have been extended since they were found to have
+     * expired are rescheduled.
+     */
+    @Override
+    public ReferenceEntry<K, V> peek() {
+      ReferenceEntry<K, V> e;
+      while (((e = expired.peek()) != null) && (e.getAccessTime() - nanos > 0)) {
+        offer(e);
+      }
+      return e;
+    }
+
+    @Override
+    public ReferenceEntry<K, V> poll() {
+      ReferenceEntry<K, V> e = peek();
+      if (e != null) {
+        remove(e);
+      }
+      return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean remove(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      ReferenceEntry<K, V> previous = e.getPreviousInWriteQueue();
+      ReferenceEntry<K, V> next = e.getNextInWriteQueue();
+      connectWriteOrder(previous, next);
+      nullifyWriteOrder(e);
+
+      return next != NullEntry.INSTANCE;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public boolean contains(Object o) {
+      ReferenceEntry<K, V> e = (ReferenceEntry) o;
+      return e.getNextInWriteQueue() != NullEntry.INSTANCE;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      for (WriteQueue<K, V> bucket : buckets()) {
+        if (!bucket.isEmpty()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public int size() {
+      int size = 0;
+      for (WriteQueue<K, V> bucket : buckets()) {
+        size += bucket.size();
+      }
+      return size;
+    }
+
+    @Override
+    public void clear() {
+      for (WriteQueue<K, V> bucket : buckets()) {
+        bucket.clear();
+      }
+    }
+
+    /**
+     * Returns the expired entries, followed by the others in roughly increasing order of
+     * expiration time.
+     */
+    @Override
+    public Iterator<ReferenceEntry<K, V>> iterator() {
+      return Iterables.concat(buckets()).iterator();
+    }
+
+    /** Returns the expired list followed by each existing bucket, from the finest level up. */
+    List<WriteQueue<K, V>> buckets() {
+      List<WriteQueue<K, V>> buckets = Lists.newArrayList();
+      buckets.add(expired);
+      for (int i = 0; i < wheel.length; i++) {
+        long ticks = nanos >>> SHIFT[i];
+        int mask = wheel[i].length - 1;
+        for (int j = 0; j < wheel[i].length; j++) {
+          WriteQueue<K, V> bucket = wheel[i][(int) ((ticks + j) & mask)];
+          if (bucket != null) {
+            buckets.add(bucket);
+          }
+        }
+      }
+      return buckets;
+    }
+  }
+
+  // Read Buffer
+
+  /**
+   * A lossy, bounded buffer of the entries read from a segment, striped by thread. Any number of
+   * threads may add to the buffer concurrently without locking; each addition costs a single
+   * compare-and-set on a counter which is shared only with the other threads that hash to the same
+   * stripe. An addition which would have to wait, either because its stripe is full or because
+   * another thread claimed the slot first, is dropped rather than retried: the access order only
+   * guides eviction, and a popular entry will be recorded again soon enough.
+   *
+   * <p>The buffer also counts reads, including those which are not recorded, so that routine
+   * cleanup can be performed on a small fraction of read operations without every reader
+   * incrementing the same counter. The counters are preallocated, one per stripe, so that counting
+   * a read never allocates, and are spaced a cache line apart, so that the counters of different
+   * stripes are not written through the same cache line.
+   *
+   * <p>The buffer must only be drained by the thread holding the segment lock. Stripes are created
+   * lazily, when a read is first recorded in them, so that segments which are only read by a few
+   * threads, or which never buffer reads, stay small.
+   */
+  static final class ReadBuffer<K, V> {
+
+    static final int STRIPES = stripes(Runtime.getRuntime().availableProcessors());
+
+    static final int STRIPE_MASK = STRIPES - 1;
+
+    static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+
+    /** Returns the smallest power of two at least {@code processors}, within the stripe limit. */
+    static int stripes(int processors) {
+      int stripes = 1;
+      while (stripes < processors && stripes < MAX_READ_BUFFER_STRIPES) {
+        stripes <<= 1;
+      }
+      return stripes;
+    }
+
+    final AtomicReferenceArray<Stripe<K, V>> stripes =
+        new AtomicReferenceArray<Stripe<K, V>>(STRIPES);
+
+    /** The log2 of the number of ints in a 64-byte cache line, which spaces the read counters. */
+    static final int READ_COUNT_SHIFT = 4;
+
+    /**
+     * The number of reads counted by {@link #countRead} in each stripe, at index
+     * {@code stripe << READ_COUNT_SHIFT}; the elements in between are padding.
+     */
+    final AtomicIntegerArray readCounts = new AtomicIntegerArray(STRIPES << READ_COUNT_SHIFT);
+
+    /**
+     * Records that {@code entry} was read, unless the calling thread's stripe is full or
+     * contended. Returns true if the stripe is now full and should be drained.
+     */
+    boolean offer(ReferenceEntry<K, V> entry) {
+      return stripeForCurrentThread().offer(entry);
+    }
+
+    /**
+     * Counts a read by the calling thread. Returns true once every {@code DRAIN_THRESHOLD + 1}
+     * reads counted in the calling thread's stripe, when routine cleanup should be attempted.
+     */
+    boolean countRead() {
+      int index = stripeIndexForCurrentThread() << READ_COUNT_SHIFT;
+      return (readCounts.incrementAndGet(index) & DRAIN_THRESHOLD) == 0;
+    }
+
+    /**
+     * Passes the recorded entries to {@link Segment#recordBufferedRead}, in the order in which they
+     * were recorded within each stripe.
+     */
+    @GuardedBy("Segment.this")
+    void drainTo(Segment<K, V> segment) {
+      for (int i = 0; i < STRIPES; i++) {
+        Stripe<K, V> stripe = stripes.get(i);
+        if (stripe != null) {
+          stripe.drainTo(segment);
+        }
+      }
+    }
+
+    static int stripeIndexForCurrentThread() {
+      return rehash((int) Thread.currentThread().getId()) & STRIPE_MASK;
+    }
+
+    Stripe<K, V> stripeForCurrentThread() {
+      int index = stripeIndexForCurrentThread();
+      Stripe<K, V> stripe = stripes.get(index);
+      if (stripe == null) {
+        stripe = new Stripe<K, V>();
+        if (!stripes.compareAndSet(index, null, stripe)) {
+          stripe = stripes.get(index);
+        }
+      }
+      return stripe;
+    }
+
+    /**
+     * A bounded ring buffer. Producers claim a slot by advancing {@code tail} with a single
+     * compare-and-set, and the draining thread releases slots by advancing {@code head}.
+     */
+    static final class Stripe<K, V> {
+      final AtomicReferenceArray<ReferenceEntry<K, V>> buffer =
+          new AtomicReferenceArray<ReferenceEntry<K, V>>(READ_BUFFER_SIZE);
+
+      final AtomicLong tail = new AtomicLong();
+
+      /** Only written by the thread holding the segment lock. */
+      volatile long head;
+
+      boolean offer(ReferenceEntry<K, V> entry) {
+        long h = head;
+        long t = tail.get();
+        long size = t - h;
+        if (size >= READ_BUFFER_SIZE) {
+          return true;
+        }
+        if (tail.compareAndSet(t, t + 1)) {
+          buffer.lazySet((int) t & READ_BUFFER_MASK, entry);
+          return size + 1 == READ_BUFFER_SIZE;
+        }
+        return false;
+      }
+
+      @GuardedBy("Segment.this")
+      void drainTo(Segment<K, V> segment) {
+        long h = head;
+        long t = tail.get();
+        for (; h != t; h++) {
+          int index = (int) h & READ_BUFFER_MASK;
+          ReferenceEntry<K, V> e = buffer.get(index);
+          if (e == null) {
+            // the slot has been claimed but the entry is not yet published; the rest of the
+            // stripe will be drained next time
+            break;
+          }
+          buffer.lazySet(index, null);
+          segment.recordBufferedRead(e);
+        }
+        head = h;
+      }
+    }
+  }
+
+  // Cache support
+
+  public void cleanUp() {
+    for (Segment<?, ?> segment : segments) {
+      segment.cleanUp();
+    }
+  }
+
+  /**
+   * Performs a bounded amount of routine maintenance on each segment, then delivers a bounded
+   * number of pending removal notifications. Called periodically by a {@link MaintenanceTask}.
+   */
+  void runScheduledMaintenance() {
+    long now = ticker.read();
+    for (Segment<K, V> segment : segments) {
+      segment.runScheduledCleanup(now);
+    }
+    processPendingNotifications(MAINTENANCE_MAX);
+  }
+
+  /**
+   * Periodically performs maintenance on a map for the scheduler given to
+   * {@link CacheBuilder#maintenanceScheduler}. The map is only weakly referenced, so that a map
+   * which is no longer used can be garbage-collected, after which the task cancels itself.
+   */
+  static final class MaintenanceTask implements Runnable {
+    final WeakReference<LocalCache<?, ?>> mapReference;
+    volatile Future<?> future;
+
+    MaintenanceTask(LocalCache<?, ?> map) {
+      this.mapReference = new WeakReference<LocalCache<?, ?>>(map);
+    }
+
+    @Override
+    public void run() {
+      LocalCache<?, ?> map = mapReference.get();
+      if (map == null) {
+        Future<?> future = this.future;
+        if (future != null) {
+          future.cancel(false);
+        }
+        return;
+      }
+      try {
+        map.runScheduledMaintenance();
+      } catch (Throwable t) {
+        // an exception would suppress all subsequent runs
+        logger.log(Level.WARNING, "Exception thrown during scheduled cache maintenance", t);
+      }
+    }
+  }
+
+  // ConcurrentMap methods
+
+  @Override
+  public boolean isEmpty() {
+    /*
+     * Sum per-segment modCounts to avoid mis-reporting when elements are concurrently added and
+     * removed in one segment while checking another, in which case the table was never actually
+     * empty at any point. (The sum ensures accuracy up through at least 1<<31 per-segment
+     * modifications before recheck.)  Method containsValue() uses similar constructions for
+     * stability checks.
+     */
+    long sum = 0L;
+    Segment<K, V>[] segments = this.segments;
+    for (int i = 0; i < segments.length; ++i) {
+      if (segments[i].count != 0) {
+        return false;
+      }
+      sum += segments[i].modCount;
+    }
+
+    if (sum != 0L) { // recheck unless no modifications
+      for (int i = 0; i < segments.length; ++i) {
+        if (segments[i].count != 0) {
+          return false;
+        }
+        sum -= segments[i].modCount;
+      }
+      if (sum != 0L) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  long longSize() {
+    Segment<K, V>[] segments = this.segments;
+    long sum = 0;
+    for (int i = 0; i < segments.length; ++i) {
+      sum += segments[i].count;
+    }
+    return sum;
+  }
+
+  @Override
+  public int size() {
+    return Ints.saturatedCast(longSize());
+  }
+
+  @Override
+  @Nullable
+  public V get(@Nullable Object key) {
+    if (key == null) {
+      return null;
+    }
+    int hash = hash(key);
+    return segmentFor(hash).get(key, hash);
+  }
+
+  @Nullable
+  public V getIfPresent(Object key) {
+    int hash = hash(checkNotNull(key));
+    V value = segmentFor(hash).get(key, hash);
+    if (value == null) {
+      globalStatsCounter.recordMisses(1);
+    } else {
+      globalStatsCounter.recordHits(1);
+    }
+    return value;
+  }
+
+  V get(K key, CacheLoader<? super K, V> loader) throws ExecutionException {
+    int hash = hash(checkNotNull(key));
+    return segmentFor(hash).get(key, hash, loader);
+  }
+
+  V getOrLoad(K key) throws ExecutionException {
+    return get(key, defaultLoader);
+  }
+
+  ImmutableMap<K, V> getAllPresent(Iterable<?> keys) {
+    int hits = 0;
+    int misses = 0;
+
+    Map<K, V> result = Maps.newLinkedHashMap();
+    for (Object key : keys) {
+      V value = get(key);
+      if (value == null) {
+        misses++;
+      } else {
+        // TODO(fry): store entry key instead of query key
+        @SuppressWarnings("unchecked")
+        K castKey = (K) key;
+        result.put(castKey, value);
+        hits++;
+      }
+    }
+    globalStatsCounter.recordHits(hits);
+    globalStatsCounter.recordMisses(misses);
+    return ImmutableMap.copyOf(result);
+  }
+
+  ImmutableMap<K, V> getAll(Iterable<? extends K> keys) throws ExecutionException {
+    int hits = 0;
+    int misses = 0;
+
+    Map<K, V> result = Maps.newLinkedHashMap();
+    Set<K> keysToLoad = Sets.newLinkedHashSet();
+    for (K key : keys) {
+      V value = get(key);
+      if (!result.containsKey(key)) {
+        result.put(key, value);
+        if (value == null) {
+          misses++;
+          keysToLoad.add(key);
+        } else {
+          hits++;
+        }
+      }
+    }
+
+    try {
+      if (!keysToLoad.isEmpty()) {
         try {
           Map<K, V> newEntries = loadAll(keysToLoad, defaultLoader);
           for (K key : keysToLoad) {
@@ -4055,18 +5282,158 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
         // delay failure until non-null entries are stored
         nullsPresent = true;
       } else {
-        put(key, value);
+        put(key, value);
+      }
+    }
+
+    if (nullsPresent) {
+      globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+      throw new InvalidCacheLoadException(loader + " returned null keys or values from loadAll");
+    }
+
+    // TODO(fry): record count of loaded entries
+    globalStatsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
+    return result;
+  }
+
+  /**
+   * Gathers the refreshes of stale entries into batches, for {@link CacheBuilder#refreshInBatches}.
+   * A batch is loaded by a single call to {@link CacheLoader#loadAll} on the executor, a fixed
+   * window after its first refresh was added.
+   */
+  final class RefreshBatcher implements Runnable {
+    final ScheduledExecutorService executor;
+    final long windowNanos;
+
+    @GuardedBy("this")
+    List<PendingRefresh<K, V>> pending = Lists.newArrayList();
+
+    RefreshBatcher(ScheduledExecutorService executor, long windowNanos) {
+      this.executor = executor;
+      this.windowNanos = windowNanos;
+    }
+
+    /**
+     * Adds the refresh of {@code key} to the pending batch, unless the key is already being loaded
+     * or refreshed, and schedules the batch to be loaded if it was empty.
+     */
+    void add(Segment<K, V> segment, K key, int hash) {
+      LoadingValueReference<K, V> loadingValueReference =
+          segment.insertLoadingValueReference(key, hash, true);
+      if (loadingValueReference == null) {
+        return;
+      }
+      boolean first;
+      synchronized (this) {
+        first = pending.isEmpty();
+        pending.add(new PendingRefresh<K, V>(segment, key, hash, loadingValueReference));
+      }
+      if (first) {
+        try {
+          executor.schedule(this, windowNanos, NANOSECONDS);
+        } catch (RejectedExecutionException e) {
+          logger.log(Level.WARNING, "Batched refresh was rejected; refreshing in place", e);
+          run();
+        }
+      }
+    }
+
+    /**
+     * Loads the pending batch.
+     */
+    @Override
+    public void run() {
+      List<PendingRefresh<K, V>> batch;
+      synchronized (this) {
+        batch = pending;
+        pending = Lists.newArrayList();
+      }
+      if (batch.isEmpty()) {
+        return;
+      }
+
+      CacheLoader<? super K, V> loader = defaultLoader;
+      Set<K> keys = Sets.newLinkedHashSet();
+      for (PendingRefresh<K, V> refresh : batch) {
+        keys.add(refresh.key);
+      }
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      Map<K, V> result;
+      try {
+        @SuppressWarnings("unchecked") // safe since all keys extend K
+        Map<K, V> map = (Map<K, V>) loader.loadAll(keys);
+        if (map == null) {
+          throw new InvalidCacheLoadException(loader + " returned null map from loadAll");
+        }
+        result = map;
+      } catch (UnsupportedLoadingOperationException e) {
+        for (PendingRefresh<K, V> refresh : batch) {
+          refresh.segment.loadAsync(
+              refresh.key, refresh.hash, refresh.loadingValueReference, loader);
+        }
+        return;
+      } catch (Throwable t) {
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        logger.log(Level.WARNING, "Exception thrown during refresh", t);
+        globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+        for (PendingRefresh<K, V> refresh : batch) {
+          refresh.fail(t);
+        }
+        return;
+      }
+
+      boolean valuesMissing = false;
+      for (PendingRefresh<K, V> refresh : batch) {
+        V value = result.get(refresh.key);
+        if (value == null) {
+          valuesMissing = true;
+          refresh.fail(new InvalidCacheLoadException(
+              "loadAll failed to return a value for " + refresh.key));
+        } else {
+          refresh.loadingValueReference.set(value);
+          refresh.segment.storeLoadedValue(
+              refresh.key, refresh.hash, refresh.loadingValueReference, value);
+        }
+      }
+      for (Map.Entry<K, V> entry : result.entrySet()) {
+        if (!keys.contains(entry.getKey()) && entry.getKey() != null && entry.getValue() != null) {
+          put(entry.getKey(), entry.getValue());
+        }
+      }
+      if (valuesMissing) {
+        globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+      } else {
+        globalStatsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
       }
     }
+  }
 
-    if (nullsPresent) {
-      globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
-      throw new InvalidCacheLoadException(loader + " returned null keys or values from loadAll");
+  /**
+   * The refresh of a stale entry, waiting in a {@link RefreshBatcher}.
+   */
+  static final class PendingRefresh<K, V> {
+    final Segment<K, V> segment;
+    final K key;
+    final int hash;
+    final LoadingValueReference<K, V> loadingValueReference;
+
+    PendingRefresh(Segment<K, V> segment, K key, int hash,
+        LoadingValueReference<K, V> loadingValueReference) {
+      this.segment = segment;
+      this.key = key;
+      this.hash = hash;
+      this.loadingValueReference = loadingValueReference;
     }
 
-    // TODO(fry): record count of loaded entries
-    globalStatsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
-    return result;
+    /**
+     * Abandons the refresh, restoring the entry's old value.
+     */
+    void fail(Throwable t) {
+      loadingValueReference.setException(t);
+      segment.removeLoadingValue(key, hash, loadingValueReference);
+    }
   }
 
   /**
@@ -4190,6 +5557,15 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     return segmentFor(hash).replace(key, hash, oldValue, newValue);
   }
 
+  /**
+   * Recomputes the weight and expiration time of the entry for {@code key}, if its value is still
+   * {@code value}, without sending a removal notification.
+   */
+  boolean reweigh(K key, V value) {
+    int hash = hash(checkNotNull(key));
+    return segmentFor(hash).reweigh(key, hash, checkNotNull(value));
+  }
+
   @Override
   public V replace(K key, V value) {
     checkNotNull(key);
@@ -4543,6 +5919,89 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
   }
 
+  // Snapshot Support
+
+  /**
+   * The number of entries after which {@link #writeSnapshot} resets its stream, so that the
+   * stream does not keep every entry it has written reachable.
+   */
+  static final int SNAPSHOT_RESET_INTERVAL = 1 << 10;
+
+  /**
+   * Writes the live entries of this map to {@code out}, and returns how many were written. Only one
+   * segment's entries are gathered at a time, and each value is only read as it is written.
+   *
+   * <p>The snapshot starts with the current time and which of the entries' write times, access
+   * times and expiration times it records. Each entry is preceded by {@code true}, and followed by
+   * those times relative to when it was written; the last is followed by {@code false}.
+   */
+  long writeSnapshot(ObjectOutputStream out) throws IOException {
+    out.writeLong(System.currentTimeMillis());
+    out.writeBoolean(recordsWrite());
+    out.writeBoolean(recordsAccess());
+    out.writeBoolean(expiresVariably());
+    long count = 0;
+    for (Segment<K, V> segment : segments) {
+      for (ReferenceEntry<K, V> e : segment.snapshotEntries()) {
+        long now = ticker.read();
+        V value = getLiveValue(e, now);
+        K key = e.getKey();
+        if (value == null || key == null) {
+          continue;
+        }
+        out.writeBoolean(true);
+        out.writeObject(key);
+        out.writeObject(value);
+        if (recordsWrite()) {
+          out.writeLong(now - e.getWriteTime());
+        }
+        if (recordsAccess()) {
+          out.writeLong(now - e.getAccessTime());
+        }
+        if (expiresVariably()) {
+          out.writeLong(e.getAccessTime() - now);
+        }
+        if (++count % SNAPSHOT_RESET_INTERVAL == 0) {
+          out.reset();
+        }
+      }
+    }
+    out.writeBoolean(false);
+    return count;
+  }
+
+  /**
+   * Adds the entries of a snapshot written by {@link #writeSnapshot} to this map, and returns how
+   * many were added. Entries whose keys are already present are skipped, as are those which have
+   * expired, counting the time which has passed since the snapshot was written.
+   */
+  long readSnapshot(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    long elapsed = MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - in.readLong()));
+    boolean hasWriteTimes = in.readBoolean();
+    boolean hasAccessTimes = in.readBoolean();
+    boolean hasExpirationTimes = in.readBoolean();
+    long count = 0;
+    while (in.readBoolean()) {
+      @SuppressWarnings("unchecked")
+      K key = (K) checkNotNull(in.readObject());
+      @SuppressWarnings("unchecked")
+      V value = (V) checkNotNull(in.readObject());
+      long writeAge = hasWriteTimes ? Math.max(0, in.readLong() + elapsed) : UNSET_INT;
+      long accessAge = hasAccessTimes ? Math.max(0, in.readLong() + elapsed) : UNSET_INT;
+      long expiresIn = hasExpirationTimes ? in.readLong() - elapsed : UNSET_INT;
+      if ((expiresAfterWrite() && writeAge >= expireAfterWriteNanos)
+          || (expiresAfterAccess() && accessAge >= expireAfterAccessNanos)
+          || (expiresVariably() && hasExpirationTimes && expiresIn <= 0)) {
+        continue;
+      }
+      int hash = hash(key);
+      if (segmentFor(hash).restore(key, hash, value, writeAge, accessAge, expiresIn)) {
+        count++;
+      }
+    }
+    return count;
+  }
+
   // Serialization Support
 
   /**
@@ -4559,12 +6018,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
 
     final Strength keyStrength;
     final Strength valueStrength;
+    final ValueSerializer<V> valueSerializer;
+    final long maxOffHeapBytes;
     final Equivalence<Object> keyEquivalence;
     final Equivalence<Object> valueEquivalence;
     final long expireAfterWriteNanos;
     final long expireAfterAccessNanos;
+    final Expiry<K, V> expiry;
     final long maxWeight;
     final Weigher<K, V> weigher;
+    final EvictionPolicy evictionPolicy;
     final int concurrencyLevel;
     final RemovalListener<? super K, ? super V> removalListener;
     final Ticker ticker;
@@ -4576,12 +6039,16 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       this(
           cache.keyStrength,
           cache.valueStrength,
+          cache.valueSerializer,
+          cache.maxOffHeapBytes,
           cache.keyEquivalence,
           cache.valueEquivalence,
           cache.expireAfterWriteNanos,
           cache.expireAfterAccessNanos,
+          cache.expiry,
           cache.maxWeight,
           cache.weigher,
+          cache.evictionPolicy,
           cache.concurrencyLevel,
           cache.removalListener,
           cache.ticker,
@@ -4589,20 +6056,25 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
     }
 
     private ManualSerializationProxy(
-        Strength keyStrength, Strength valueStrength,
+        Strength keyStrength, Strength valueStrength, @Nullable ValueSerializer<V> valueSerializer,
+        long maxOffHeapBytes,
         Equivalence<Object> keyEquivalence, Equivalence<Object> valueEquivalence,
-        long expireAfterWriteNanos, long expireAfterAccessNanos, long maxWeight,
-        Weigher<K, V> weigher, int concurrencyLevel,
+        long expireAfterWriteNanos, long expireAfterAccessNanos, @Nullable Expiry<K, V> expiry,
+        long maxWeight, Weigher<K, V> weigher, EvictionPolicy evictionPolicy, int concurrencyLevel,
         RemovalListener<? super K, ? super V> removalListener,
         Ticker ticker, CacheLoader<? super K, V> loader) {
       this.keyStrength = keyStrength;
       this.valueStrength = valueStrength;
+      this.valueSerializer = valueSerializer;
+      this.maxOffHeapBytes = maxOffHeapBytes;
       this.keyEquivalence = keyEquivalence;
       this.valueEquivalence = valueEquivalence;
       this.expireAfterWriteNanos = expireAfterWriteNanos;
       this.expireAfterAccessNanos = expireAfterAccessNanos;
+      this.expiry = expiry;
       this.maxWeight = maxWeight;
       this.weigher = weigher;
+      this.evictionPolicy = evictionPolicy;
       this.concurrencyLevel = concurrencyLevel;
       this.removalListener = removalListener;
       this.ticker = (ticker == Ticker.systemTicker() || ticker == NULL_TICKER)
@@ -4619,12 +6091,17 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           .concurrencyLevel(concurrencyLevel)
           .removalListener(removalListener);
       builder.strictParsing = false;
+      builder.valueSerializer = valueSerializer;
+      builder.maximumOffHeapBytes = maxOffHeapBytes;
       if (expireAfterWriteNanos > 0) {
         builder.expireAfterWrite(expireAfterWriteNanos, TimeUnit.NANOSECONDS);
       }
       if (expireAfterAccessNanos > 0) {
         builder.expireAfterAccess(expireAfterAccessNanos, TimeUnit.NANOSECONDS);
       }
+      if (expiry != null) {
+        builder.expireAfter(expiry);
+      }
       if (weigher != OneWeigher.INSTANCE) {
         builder.weigher(weigher);
         if (maxWeight != UNSET_INT) {
@@ -4635,6 +6112,9 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
           builder.maximumSize(maxWeight);
         }
       }
+      if (evictionPolicy != EvictionPolicy.LRU) {
+        builder.evictionPolicy(evictionPolicy);
+      }
       if (ticker != null) {
         builder.ticker(ticker);
       }
@@ -4854,4 +6334,431 @@ class LocalCache<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V>
       return new LoadingSerializationProxy<K, V>(localCache);
     }
   }
+
+  static class LocalAsyncLoadingCache<K, V> implements AsyncLoadingCache<K, V> {
+    final LocalCache<K, ListenableFuture<V>> localCache;
+    final CacheLoader<? super K, V> loader;
+    final Executor executor;
+
+    LocalAsyncLoadingCache(CacheBuilder<? super K, ? super V> builder,
+        CacheLoader<? super K, V> loader, Executor executor) {
+      this.loader = checkNotNull(loader);
+      this.executor = checkNotNull(executor);
+      RemovalListener<K, V> removalListener = builder.getRemovalListener();
+      Expiry<K, V> expiry = builder.getExpiry();
+      CacheBuilder<K, ListenableFuture<V>> futureBuilder = builder.copyWith(
+          (builder.weigher == null) ? null : new FutureWeigher<K, V>(builder.weigher),
+          (expiry == null) ? null : new FutureExpiry<K, V>(expiry),
+          (removalListener == NullListener.INSTANCE)
+              ? null : new FutureRemovalListener<K, V>(removalListener));
+      this.localCache =
+          new LocalCache<K, ListenableFuture<V>>(futureBuilder, new FutureLoader());
+    }
+
+    // AsyncLoadingCache methods
+
+    @Override
+    @Nullable
+    public ListenableFuture<V> getIfPresent(Object key) {
+      return localCache.getIfPresent(key);
+    }
+
+    @Override
+    public ListenableFuture<V> get(K key) {
+      Map<K, SettableFuture<V>> keysToLoad = Maps.newHashMapWithExpectedSize(1);
+      ListenableFuture<V> future = getOrCreate(key, keysToLoad);
+      if (!keysToLoad.isEmpty()) {
+        startLoad(key, keysToLoad.get(key));
+      }
+      return future;
+    }
+
+    @Override
+    public ListenableFuture<ImmutableMap<K, V>> getAll(Iterable<? extends K> keys) {
+      final Map<K, ListenableFuture<V>> result = Maps.newLinkedHashMap();
+      final Map<K, SettableFuture<V>> keysToLoad = Maps.newLinkedHashMap();
+      for (K key : keys) {
+        if (!result.containsKey(key)) {
+          result.put(key, getOrCreate(key, keysToLoad));
+        }
+      }
+      if (!keysToLoad.isEmpty()) {
+        startLoadAll(keysToLoad);
+      }
+      return Futures.transform(Futures.allAsList(result.values()),
+          new Function<List<V>, ImmutableMap<K, V>>() {
+            @Override
+            public ImmutableMap<K, V> apply(List<V> values) {
+              ImmutableMap.Builder<K, V> builder = ImmutableMap.builder();
+              Iterator<V> valueIterator = values.iterator();
+              for (K key : result.keySet()) {
+                builder.put(key, valueIterator.next());
+              }
+              return builder.build();
+            }
+          });
+    }
+
+    @Override
+    public void put(K key, ListenableFuture<V> valueFuture) {
+      checkNotNull(valueFuture);
+      localCache.put(key, valueFuture);
+      watch(key, valueFuture);
+    }
+
+    @Override
+    public void invalidate(Object key) {
+      checkNotNull(key);
+      localCache.remove(key);
+    }
+
+    @Override
+    public void invalidateAll() {
+      localCache.clear();
+    }
+
+    @Override
+    public long size() {
+      return localCache.longSize();
+    }
+
+    @Override
+    public CacheStats stats() {
+      SimpleStatsCounter aggregator = new SimpleStatsCounter();
+      aggregator.incrementBy(localCache.globalStatsCounter);
+      for (Segment<K, ListenableFuture<V>> segment : localCache.segments) {
+        aggregator.incrementBy(segment.statsCounter);
+      }
+      return aggregator.snapshot();
+    }
+
+    @Override
+    public ConcurrentMap<K, ListenableFuture<V>> asMap() {
+      return localCache;
+    }
+
+    @Override
+    public void cleanUp() {
+      localCache.cleanUp();
+    }
+
+    // Loading
+
+    /**
+     * Returns the future associated with {@code key}, installing a new, unstarted future if there
+     * is none. Installed futures are added to {@code keysToLoad}; loads are coalesced because only
+     * the caller which installs a future starts its load.
+     */
+    ListenableFuture<V> getOrCreate(K key, Map<K, SettableFuture<V>> keysToLoad) {
+      checkNotNull(key);
+      ListenableFuture<V> future = localCache.get(key);
+      if (future == null) {
+        SettableFuture<V> newFuture = SettableFuture.create();
+        future = localCache.putIfAbsent(key, newFuture);
+        if (future == null) {
+          localCache.globalStatsCounter.recordMisses(1);
+          watch(key, newFuture);
+          keysToLoad.put(key, newFuture);
+          return newFuture;
+        }
+      }
+      localCache.globalStatsCounter.recordHits(1);
+      return future;
+    }
+
+    /** Loads the value for {@code key} on the executor, completing {@code future} with it. */
+    void startLoad(final K key, final SettableFuture<V> future) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          load(key, future);
+        }
+      }, ImmutableList.of(future));
+    }
+
+    /**
+     * Loads the values for the keys of {@code futures} on the executor with a single call to
+     * {@link CacheLoader#loadAll}, or with individual loads if it is not implemented.
+     */
+    void startLoadAll(final Map<K, SettableFuture<V>> futures) {
+      execute(new Runnable() {
+        @Override
+        public void run() {
+          loadAll(futures);
+        }
+      }, futures.values());
+    }
+
+    /** Executes {@code task}, failing {@code futures} if the executor rejects it. */
+    void execute(Runnable task, Collection<SettableFuture<V>> futures) {
+      try {
+        executor.execute(task);
+      } catch (RuntimeException e) {
+        for (SettableFuture<V> future : futures) {
+          future.setException(e);
+        }
+      }
+    }
+
+    void load(K key, SettableFuture<V> future) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      try {
+        V value = loader.load(key);
+        if (value == null) {
+          throw new InvalidCacheLoadException("CacheLoader returned null for key " + key + ".");
+        }
+        localCache.globalStatsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
+        future.set(value);
+      } catch (Throwable t) {
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        localCache.globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+        future.setException(t);
+      }
+    }
+
+    void loadAll(Map<K, SettableFuture<V>> futures) {
+      Stopwatch stopwatch = Stopwatch.createStarted();
+      Map<K, V> result;
+      try {
+        @SuppressWarnings("unchecked") // safe since all keys extend K
+        Map<K, V> map = (Map<K, V>) loader.loadAll(futures.keySet());
+        result = map;
+        if (result == null) {
+          throw new InvalidCacheLoadException(loader + " returned null map from loadAll");
+        }
+      } catch (UnsupportedLoadingOperationException e) {
+        // loadAll not implemented, fallback to load
+        for (Map.Entry<K, SettableFuture<V>> entry : futures.entrySet()) {
+          startLoad(entry.getKey(), entry.getValue());
+        }
+        return;
+      } catch (Throwable t) {
+        if (t instanceof InterruptedException) {
+          Thread.currentThread().interrupt();
+        }
+        localCache.globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+        for (SettableFuture<V> future : futures.values()) {
+          future.setException(t);
+        }
+        return;
+      }
+
+      boolean nullsPresent = false;
+      for (Map.Entry<K, V> entry : result.entrySet()) {
+        K key = entry.getKey();
+        V value = entry.getValue();
+        if (key == null || value == null) {
+          // delay failure until non-null entries are stored
+          nullsPresent = true;
+        } else {
+          SettableFuture<V> future = futures.get(key);
+          if (future != null) {
+            future.set(value);
+          } else {
+            localCache.put(key, Futures.immediateFuture(value));
+          }
+        }
+      }
+
+      boolean complete = !nullsPresent;
+      for (Map.Entry<K, SettableFuture<V>> entry : futures.entrySet()) {
+        SettableFuture<V> future = entry.getValue();
+        if (!future.isDone()) {
+          complete = false;
+          future.setException(new InvalidCacheLoadException(nullsPresent
+              ? loader + " returned null keys or values from loadAll"
+              : "loadAll failed to return a value for " + entry.getKey()));
+        }
+      }
+      if (complete) {
+        localCache.globalStatsCounter.recordLoadSuccess(stopwatch.elapsed(NANOSECONDS));
+      } else {
+        localCache.globalStatsCounter.recordLoadException(stopwatch.elapsed(NANOSECONDS));
+      }
+    }
+
+    /**
+     * Removes {@code future} from the cache if it fails, or updates its weight and lifetime once it
+     * succeeds if the cache is weighed or expires variably. Must be called after {@code future} has
+     * been stored, so that a future which has already completed is handled immediately.
+     */
+    void watch(final K key, final ListenableFuture<V> future) {
+      future.addListener(new Runnable() {
+        @Override
+        public void run() {
+          if (getIfDone(future) == null) {
+            localCache.remove(key, future);
+          } else if (localCache.customWeigher() || localCache.expiresVariably()) {
+            localCache.reweigh(key, future);
+          }
+        }
+      }, sameThreadExecutor);
+    }
+
+    /**
+     * Returns the value of {@code future} if it has completed successfully, or {@code null} if it
+     * is still loading, has failed or was cancelled.
+     */
+    @Nullable
+    static <V> V getIfDone(@Nullable ListenableFuture<V> future) {
+      if (future == null || !future.isDone()) {
+        return null;
+      }
+      try {
+        return getUninterruptibly(future);
+      } catch (ExecutionException e) {
+        return null;
+      } catch (RuntimeException e) {
+        // CancellationException, or an unchecked exception from a custom future
+        return null;
+      }
+    }
+
+    /**
+     * The loader of the underlying map. Missing values are loaded by the enclosing cache, so this
+     * is only used to refresh values; the old future remains in the map until the refreshed value
+     * has been loaded.
+     */
+    final class FutureLoader extends CacheLoader<K, ListenableFuture<V>> {
+      @Override
+      public ListenableFuture<V> load(K key) {
+        SettableFuture<V> future = SettableFuture.create();
+        startLoad(key, future);
+        return future;
+      }
+
+      @Override
+      public ListenableFuture<ListenableFuture<V>> reload(
+          final K key, ListenableFuture<V> oldFuture) {
+        final V oldValue = getIfDone(oldFuture);
+        final SettableFuture<V> reloaded = SettableFuture.create();
+        execute(new Runnable() {
+          @Override
+          public void run() {
+            if (oldValue == null) {
+              LocalAsyncLoadingCache.this.load(key, reloaded);
+              return;
+            }
+            try {
+              ListenableFuture<V> future = loader.reload(key, oldValue);
+              if (future == null) {
+                throw new InvalidCacheLoadException(
+                    "CacheLoader returned null for key " + key + ".");
+              }
+              Futures.addCallback(future, new FutureCallback<V>() {
+                @Override
+                public void onSuccess(@Nullable V value) {
+                  if (value == null) {
+                    reloaded.setException(new InvalidCacheLoadException(
+                        "CacheLoader returned null for key " + key + "."));
+                  } else {
+                    reloaded.set(value);
+                  }
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                  reloaded.setException(t);
+                }
+              });
+            } catch (Throwable t) {
+              if (t instanceof InterruptedException) {
+                Thread.currentThread().interrupt();
+              }
+              reloaded.setException(t);
+            }
+          }
+        }, ImmutableList.of(reloaded));
+        return Futures.transform(reloaded, new Function<V, ListenableFuture<V>>() {
+          @Override
+          public ListenableFuture<V> apply(V value) {
+            return Futures.immediateFuture(value);
+          }
+        });
+      }
+    }
+
+    /** Weighs futures by their values; a future which has not completed successfully weighs 0. */
+    static final class FutureWeigher<K, V> implements Weigher<K, ListenableFuture<V>> {
+      final Weigher<? super K, ? super V> weigher;
+
+      FutureWeigher(Weigher<? super K, ? super V> weigher) {
+        this.weigher = weigher;
+      }
+
+      @Override
+      public int weigh(K key, ListenableFuture<V> future) {
+        V value = getIfDone(future);
+        return (value == null) ? 0 : weigher.weigh(key, value);
+      }
+    }
+
+    /**
+     * Calculates the lifetimes of futures from their values. A future which has not completed
+     * successfully does not expire; once it completes, the update which records its weight is
+     * treated as its creation.
+     */
+    static final class FutureExpiry<K, V> extends Expiry<K, ListenableFuture<V>> {
+      final Expiry<K, V> expiry;
+
+      FutureExpiry(Expiry<K, V> expiry) {
+        this.expiry = expiry;
+      }
+
+      @Override
+      public long expireAfterCreate(K key, ListenableFuture<V> future, long currentTime) {
+        V value = getIfDone(future);
+        return (value == null) ? Long.MAX_VALUE : expiry.expireAfterCreate(key, value, currentTime);
+      }
+
+      @Override
+      public long expireAfterUpdate(
+          K key, ListenableFuture<V> future, long currentTime, long currentDuration) {
+        V value = getIfDone(future);
+        if (value == null) {
+          return Long.MAX_VALUE;
+        }
+        // a future which was loading was given the maximum lifetime, most of which remains
+        return (currentDuration > (MAXIMUM_EXPIRY >> 1))
+            ? expiry.expireAfterCreate(key, value, currentTime)
+            : expiry.expireAfterUpdate(key, value, currentTime, currentDuration);
+      }
+
+      @Override
+      public long expireAfterRead(
+          K key, ListenableFuture<V> future, long currentTime, long currentDuration) {
+        V value = getIfDone(future);
+        return (value == null)
+            ? currentDuration
+            : expiry.expireAfterRead(key, value, currentTime, currentDuration);
+      }
+    }
+
+    /**
+     * Forwards the removal of successfully completed futures to the user's listener, with their
+     * values. Recording the weight of a completed future, with {@link LocalCache#reweigh}, sends no
+     * notification.
+     */
+    static final class FutureRemovalListener<K, V>
+        implements RemovalListener<K, ListenableFuture<V>> {
+      final RemovalListener<K, V> listener;
+
+      FutureRemovalListener(RemovalListener<K, V> listener) {
+        this.listener = listener;
+      }
+
+      @Override
+      public void onRemoval(RemovalNotification<K, ListenableFuture<V>> notification) {
+        ListenableFuture<V> future = notification.getValue();
+        V value = getIfDone(future);
+        if (value == null) {
+          return;
+        }
+        listener.onRemoval(new RemovalNotification<K, V>(
+            notification.getKey(), value, notification.getCause()));
+      }
+    }
+  }
 }
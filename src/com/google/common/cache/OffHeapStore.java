@@ -0,0 +1,399 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import javax.annotation.Nullable;
+
+/**
+ * Stores the serialized values of one segment of a cache built with
+ * {@link CacheBuilder#offHeapValues}, in direct byte buffers outside of the Java heap.
+ *
+ * <p>Memory is carved from direct buffers ("slabs") of up to {@value #SLAB_SIZE} bytes, which are
+ * allocated as they are needed until they reach the store's capacity, and are then kept for the
+ * lifetime of the cache. Slabs are divided by a buddy allocator: blocks are powers of two, from
+ * {@value #MIN_BLOCK_SIZE} bytes up to a whole slab, and a block which is freed merges with its
+ * buddy, if that is free too, into a block twice as large. A value larger than a slab is stored in
+ * several blocks.
+ *
+ * <p>Every method but {@link #read} must be called with the segment locked. The segment frees the
+ * memory of each value explicitly, by {@linkplain #release releasing} it when the value is removed
+ * or replaced. As values are read without locking, each {@link Allocation} counts the readers
+ * which are copying from it, and memory released while it is being read is freed by the last of
+ * them, which hands it back to the segment.
+ *
+ * <p>When the slabs are too full to hold a new value, the value is kept in a heap buffer instead
+ * ("spilled"), and {@link #isOverCapacity} returns true until the segment has evicted enough
+ * entries for every spilled value to be moved into the slabs.
+ */
+@GwtIncompatible("java.nio.ByteBuffer")
+final class OffHeapStore<V> {
+
+  /** The binary logarithm of the smallest block size. */
+  static final int MIN_BLOCK_SHIFT = 6;
+
+  /** The smallest block size. */
+  static final int MIN_BLOCK_SIZE = 1 << MIN_BLOCK_SHIFT;
+
+  /** The binary logarithm of the largest slab size. */
+  static final int SLAB_SHIFT = 20;
+
+  /** The largest slab size, which is also the largest block size. */
+  static final int SLAB_SIZE = 1 << SLAB_SHIFT;
+
+  final ValueSerializer<V> serializer;
+
+  /** The binary logarithm of the size of each slab of this store. */
+  final int slabShift;
+
+  /** The number of slabs this store may allocate. */
+  final int maxSlabs;
+
+  final List<ByteBuffer> slabs = Lists.newArrayList();
+
+  /**
+   * The addresses of the free blocks of each size, indexed by {@link #sizeClass}. The address of a
+   * block is its offset in the concatenation of all slabs.
+   */
+  final List<Set<Long>> freeBlocks = Lists.newArrayList();
+
+  /** Values which did not fit in the slabs, in the order in which they were written. */
+  final Deque<Allocation> spilled = new ArrayDeque<Allocation>();
+
+  /** Allocations released while being read, whose last reader has finished since. */
+  final Queue<Allocation> pendingFrees = new ConcurrentLinkedQueue<Allocation>();
+
+  /**
+   * Creates a store which allocates at most {@code capacity} bytes of direct buffers.
+   */
+  OffHeapStore(ValueSerializer<V> serializer, long capacity) {
+    checkArgument(capacity >= 0);
+    this.serializer = checkNotNull(serializer);
+    int shift = SLAB_SHIFT;
+    while (shift > MIN_BLOCK_SHIFT && (1L << shift) > capacity) {
+      shift--;
+    }
+    this.slabShift = shift;
+    this.maxSlabs = Ints.saturatedCast(capacity >>> shift);
+    for (int i = MIN_BLOCK_SHIFT; i <= shift; i++) {
+      freeBlocks.add(Sets.<Long>newLinkedHashSet());
+    }
+  }
+
+  /**
+   * Serializes {@code value} into newly allocated memory, which stays allocated until it is
+   * {@linkplain #release released}.
+   */
+  Allocation write(V value) {
+    int size = serializer.serializedSize(value);
+    checkState(size >= 0, "Serialized sizes must be non-negative");
+    Allocation allocation = allocate(size);
+    ByteBuffer[] buffers = allocation.buffers;
+    if (buffers.length == 1) {
+      serialize(value, buffers[0].duplicate(), size);
+    } else {
+      ByteBuffer heap = ByteBuffer.allocate(size);
+      serialize(value, heap, size);
+      heap.flip();
+      copy(heap, buffers);
+    }
+    return allocation;
+  }
+
+  private void serialize(V value, ByteBuffer target, int size) {
+    serializer.serialize(value, target);
+    checkState(!target.hasRemaining(), "%s wrote %s bytes but promised %s",
+        serializer, target.position(), size);
+  }
+
+  /**
+   * Deserializes the value held by {@code allocation}, or returns null if it has been released.
+   * May be called without locking the segment.
+   */
+  @Nullable
+  V read(Allocation allocation) {
+    if (!allocation.pin()) {
+      return null;
+    }
+    try {
+      ByteBuffer[] buffers = allocation.buffers;
+      ByteBuffer source;
+      if (buffers.length == 1) {
+        source = buffers[0].asReadOnlyBuffer();
+      } else {
+        source = ByteBuffer.allocate(allocation.size);
+        for (ByteBuffer buffer : buffers) {
+          source.put(buffer.duplicate());
+        }
+        source.flip();
+      }
+      return checkNotNull(serializer.deserialize(source));
+    } finally {
+      if (allocation.unpin()) {
+        pendingFrees.add(allocation);
+      }
+    }
+  }
+
+  /**
+   * Releases the memory of {@code allocation}, which is freed at once unless it is being read.
+   * Releasing an allocation again has no effect.
+   */
+  void release(Allocation allocation) {
+    if (allocation.addresses == null) {
+      spilled.remove(allocation);
+    }
+    if (allocation.release()) {
+      free(allocation);
+    }
+  }
+
+  /**
+   * Returns true if some values did not fit in the slabs, and are still spilled even after
+   * moving as many as now fit into them.
+   */
+  boolean isOverCapacity() {
+    drainPendingFrees();
+    for (Iterator<Allocation> i = spilled.iterator(); i.hasNext(); ) {
+      Allocation allocation = i.next();
+      long[] addresses = allocateBlocks(allocation.size);
+      if (addresses != null) {
+        ByteBuffer[] buffers = blocks(addresses, allocation.size);
+        copy(allocation.buffers[0].duplicate(), buffers);
+        allocation.addresses = addresses;
+        allocation.buffers = buffers;
+        i.remove();
+      }
+    }
+    return !spilled.isEmpty();
+  }
+
+  /**
+   * Returns new memory for {@code size} bytes, spilling onto the heap if the slabs have no room.
+   */
+  Allocation allocate(int size) {
+    drainPendingFrees();
+    long[] addresses = allocateBlocks(size);
+    if (addresses == null) {
+      Allocation allocation = new Allocation(size, new ByteBuffer[] {ByteBuffer.allocate(size)});
+      spilled.add(allocation);
+      return allocation;
+    }
+    Allocation allocation = new Allocation(size, blocks(addresses, size));
+    allocation.addresses = addresses;
+    return allocation;
+  }
+
+  void drainPendingFrees() {
+    Allocation allocation;
+    while ((allocation = pendingFrees.poll()) != null) {
+      free(allocation);
+    }
+  }
+
+  void free(Allocation allocation) {
+    long[] addresses = allocation.addresses;
+    if (addresses != null) {
+      for (int i = 0; i < addresses.length; i++) {
+        freeBlock(addresses[i], sizeClass(allocation.buffers[i].capacity()));
+      }
+    }
+  }
+
+  /**
+   * Returns the addresses of the blocks which hold {@code size} bytes, each but the last of which
+   * is a whole slab, or null if the slabs have no room for them.
+   */
+  @Nullable
+  long[] allocateBlocks(int size) {
+    int slabSize = 1 << slabShift;
+    int count = Math.max(1, (size + slabSize - 1) >>> slabShift);
+    long[] addresses = new long[count];
+    for (int i = 0; i < count; i++) {
+      int sizeClass = sizeClass(Math.min(slabSize, size - i * slabSize));
+      addresses[i] = allocateBlock(sizeClass);
+      if (addresses[i] < 0) {
+        for (int j = 0; j < i; j++) {
+          freeBlock(addresses[j], sizeClass(slabSize));
+        }
+        return null;
+      }
+    }
+    return addresses;
+  }
+
+  /**
+   * Returns the address of a free block of the given size class, splitting a larger free block
+   * or starting a new slab if there is none, or -1 if the slabs have no room for it.
+   */
+  long allocateBlock(int sizeClass) {
+    int largest = slabShift - MIN_BLOCK_SHIFT;
+    int k = sizeClass;
+    while (k <= largest && freeBlocks.get(k).isEmpty()) {
+      k++;
+    }
+    if (k > largest) {
+      if (slabs.size() >= maxSlabs) {
+        return -1;
+      }
+      freeBlocks.get(largest).add((long) slabs.size() << slabShift);
+      slabs.add(ByteBuffer.allocateDirect(1 << slabShift));
+      k = largest;
+    }
+    Iterator<Long> i = freeBlocks.get(k).iterator();
+    long address = i.next();
+    i.remove();
+    while (k > sizeClass) {
+      k--;
+      freeBlocks.get(k).add(address + (MIN_BLOCK_SIZE << k));
+    }
+    return address;
+  }
+
+  /**
+   * Frees the block at {@code address}, merging it with its buddies as long as they are free.
+   */
+  void freeBlock(long address, int sizeClass) {
+    int largest = slabShift - MIN_BLOCK_SHIFT;
+    for (; sizeClass < largest; sizeClass++) {
+      long buddy = address ^ blockSize(sizeClass);
+      if (!freeBlocks.get(sizeClass).remove(buddy)) {
+        break;
+      }
+      address = Math.min(address, buddy);
+    }
+    freeBlocks.get(sizeClass).add(address);
+  }
+
+  /**
+   * Returns buffers over the blocks at {@code addresses}, whose remaining bytes together are
+   * {@code size}.
+   */
+  ByteBuffer[] blocks(long[] addresses, int size) {
+    int slabSize = 1 << slabShift;
+    ByteBuffer[] buffers = new ByteBuffer[addresses.length];
+    for (int i = 0; i < addresses.length; i++) {
+      int length = Math.min(slabSize, size - i * slabSize);
+      ByteBuffer block = slabs.get((int) (addresses[i] >>> slabShift)).duplicate();
+      int offset = (int) (addresses[i] & (slabSize - 1));
+      block.limit(offset + blockSize(sizeClass(length)));
+      block.position(offset);
+      buffers[i] = block.slice();
+      buffers[i].limit(length);
+    }
+    return buffers;
+  }
+
+  /** Copies the remaining bytes of {@code source} into {@code targets}, filling each in turn. */
+  static void copy(ByteBuffer source, ByteBuffer[] targets) {
+    for (ByteBuffer target : targets) {
+      ByteBuffer chunk = source.duplicate();
+      chunk.limit(chunk.position() + target.remaining());
+      target.duplicate().put(chunk);
+      source.position(chunk.limit());
+    }
+  }
+
+  static int blockSize(int sizeClass) {
+    return MIN_BLOCK_SIZE << sizeClass;
+  }
+
+  /**
+   * Returns the index of the smallest block size which can hold {@code size} bytes.
+   */
+  static int sizeClass(int size) {
+    return (size <= MIN_BLOCK_SIZE)
+        ? 0
+        : Integer.SIZE - Integer.numberOfLeadingZeros(size - 1) - MIN_BLOCK_SHIFT;
+  }
+
+  /**
+   * The memory holding one serialized value, and the number of readers copying from it.
+   */
+  static final class Allocation {
+    static final AtomicIntegerFieldUpdater<Allocation> STATE =
+        AtomicIntegerFieldUpdater.newUpdater(Allocation.class, "state");
+
+    /** Added to the state once the allocation has been released. */
+    static final int RELEASED = Integer.MIN_VALUE;
+
+    final int size;
+
+    /** The buffers holding the value, whose remaining bytes are its serialized form, in order. */
+    volatile ByteBuffer[] buffers;
+
+    /** The addresses of the blocks of {@link #buffers}, or null if the value is spilled. */
+    long[] addresses; // guarded by the segment lock
+
+    /** The number of readers, plus {@link #RELEASED} once the allocation has been released. */
+    volatile int state;
+
+    Allocation(int size, ByteBuffer[] buffers) {
+      this.size = size;
+      this.buffers = buffers;
+    }
+
+    /** Registers a reader, unless the allocation has been released. */
+    boolean pin() {
+      while (true) {
+        int current = state;
+        if (current < 0) {
+          return false;
+        }
+        if (STATE.compareAndSet(this, current, current + 1)) {
+          return true;
+        }
+      }
+    }
+
+    /** Unregisters a reader, and returns true if it was the last reader of a released value. */
+    boolean unpin() {
+      return STATE.decrementAndGet(this) == RELEASED;
+    }
+
+    /** Marks the allocation released, and returns true if its memory can be freed at once. */
+    boolean release() {
+      while (true) {
+        int current = state;
+        if (current < 0) {
+          return false;
+        }
+        if (STATE.compareAndSet(this, current, current | RELEASED)) {
+          return current == 0;
+        }
+      }
+    }
+  }
+}
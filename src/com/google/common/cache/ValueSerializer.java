@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.cache;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtIncompatible;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Converts cache values to and from bytes, for caches built with
+ * {@link CacheBuilder#offHeapValues}, which store their values outside of the Java heap.
+ *
+ * <p>Methods are invoked while the affected entry's segment is locked, or on the reading thread for
+ * {@link #deserialize}, so they should be fast and must not access the cache.
+ *
+ * @param <V> the type of the cache's values
+ * @since 17.0
+ */
+@Beta
+@GwtIncompatible("java.nio.ByteBuffer")
+public abstract class ValueSerializer<V> {
+  /**
+   * Constructor for use by subclasses.
+   */
+  protected ValueSerializer() {}
+
+  /**
+   * Returns the exact number of bytes which {@link #serialize} will write for {@code value}.
+   */
+  public abstract int serializedSize(V value);
+
+  /**
+   * Writes {@code value} to {@code target}, starting at its current position. Exactly
+   * {@link #serializedSize serializedSize(value)} bytes must be written.
+   */
+  public abstract void serialize(V value, ByteBuffer target);
+
+  /**
+   * Reads a value from {@code source}, whose remaining bytes are exactly those written by
+   * {@link #serialize}. The buffer is only valid until this method returns, so the returned value
+   * must not refer to it. Must not return null.
+   */
+  public abstract V deserialize(ByteBuffer source);
+
+  /**
+   * Returns a serializer which stores byte arrays as they are. Each read returns a new copy of the
+   * array which was written. The returned serializer is serializable.
+   */
+  public static ValueSerializer<byte[]> byteArrays() {
+    return ByteArraySerializer.INSTANCE;
+  }
+
+  private static final class ByteArraySerializer extends ValueSerializer<byte[]>
+      implements Serializable {
+    static final ByteArraySerializer INSTANCE = new ByteArraySerializer();
+
+    @Override
+    public int serializedSize(byte[] value) {
+      return value.length;
+    }
+
+    @Override
+    public void serialize(byte[] value, ByteBuffer target) {
+      target.put(value);
+    }
+
+    @Override
+    public byte[] deserialize(ByteBuffer source) {
+      byte[] value = new byte[source.remaining()];
+      source.get(value);
+      return value;
+    }
+
+    @Override
+    public String toString() {
+      return "ValueSerializer.byteArrays()";
+    }
+
+    private Object readResolve() {
+      return INSTANCE;
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+}
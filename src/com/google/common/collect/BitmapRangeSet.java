@@ -0,0 +1,757 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable {@link RangeSet} of {@code Integer} or {@code Long} values, stored as compressed
+ * bitmaps. It suits sets of many ranges, such as sets of IDs or IP addresses, which a {@link
+ * TreeRangeSet} or {@link ImmutableRangeSet} would store as a {@code Range} object, with two
+ * {@code Cut} objects, per range.
+ *
+ * <p>The values are divided into chunks of 2<sup>16</sup> consecutive values. A chunk in which
+ * many ranges start is stored as a bitmap of its values, of 8K bytes; all other values are stored
+ * as a sorted array of runs of consecutive values, using two {@code long}s per run. {@link
+ * #contains}, {@link #rangeContaining} and {@link #encloses} take time logarithmic in the number
+ * of runs, and {@link #union}, {@link #intersection}, {@link #complement} and {@link
+ * #subRangeSet} take time linear in the size of their operands.
+ *
+ * <p>Since the values are discrete, the set is a set of values rather than of ranges: its {@link
+ * #asRanges} view holds the maximal ranges of values, in the canonical form of {@link
+ * Range#canonical}, such as {@code [1..4)} rather than {@code [1..3]}. A {@code BitmapRangeSet}
+ * is therefore only equal to other range sets whose ranges are canonical.
+ *
+ * @since 17.0
+ */
+@Beta
+public final class BitmapRangeSet<C extends Comparable> extends AbstractRangeSet<C>
+    implements Serializable {
+
+  private static final int CHUNK_BITS = 16;
+  private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+  private static final int WORDS_PER_CHUNK = CHUNK_SIZE / Long.SIZE;
+
+  /**
+   * The number of runs starting in a chunk above which the chunk is stored as a bitmap. A run
+   * takes 16 bytes, so this many runs take as much space as a bitmap.
+   */
+  static final int MAX_RUNS_PER_CHUNK = CHUNK_SIZE / Byte.SIZE / 16;
+
+  private final DiscreteDomain<C> domain;
+  // disjoint runs of values outside the bitmap chunks, as inclusive bounds, in ascending order
+  private final long[] runFirsts;
+  private final long[] runLasts;
+  // the indices (value >> CHUNK_BITS) of the chunks stored as bitmaps, in ascending order
+  private final long[] chunks;
+  private final long[][] chunkWords;
+
+  private BitmapRangeSet(DiscreteDomain<C> domain, long[] runFirsts, long[] runLasts,
+      long[] chunks, long[][] chunkWords) {
+    this.domain = domain;
+    this.runFirsts = runFirsts;
+    this.runLasts = runLasts;
+    this.chunks = chunks;
+    this.chunkWords = chunkWords;
+  }
+
+  /**
+   * Returns a {@code BitmapRangeSet} containing the values in the ranges of {@code rangeSet}.
+   *
+   * @param domain {@link DiscreteDomain#integers()} or {@link DiscreteDomain#longs()}
+   * @throws IllegalArgumentException if {@code domain} is neither of those domains
+   */
+  public static <C extends Comparable> BitmapRangeSet<C> copyOf(
+      RangeSet<C> rangeSet, DiscreteDomain<C> domain) {
+    if (rangeSet instanceof BitmapRangeSet
+        && ((BitmapRangeSet<C>) rangeSet).domain.equals(domain)) {
+      return (BitmapRangeSet<C>) rangeSet;
+    }
+    return BitmapRangeSet.builder(domain).addAll(rangeSet).build();
+  }
+
+  /**
+   * Returns a new builder for a {@code BitmapRangeSet}.
+   *
+   * @param domain {@link DiscreteDomain#integers()} or {@link DiscreteDomain#longs()}
+   * @throws IllegalArgumentException if {@code domain} is neither of those domains
+   */
+  public static <C extends Comparable> Builder<C> builder(DiscreteDomain<C> domain) {
+    return new Builder<C>(domain);
+  }
+
+  /**
+   * A builder for a {@code BitmapRangeSet}, to which ranges may be added in any order. Ranges
+   * which overlap or are adjacent are merged.
+   */
+  public static final class Builder<C extends Comparable> {
+    private final DiscreteDomain<C> domain;
+    private long[] firsts = new long[8];
+    private long[] lasts = new long[8];
+    private int size;
+    private boolean sorted = true;
+
+    Builder(DiscreteDomain<C> domain) {
+      checkNotNull(domain);
+      checkArgument(domain.equals(DiscreteDomain.integers())
+          || domain.equals(DiscreteDomain.longs()),
+          "domain must be DiscreteDomain.integers() or DiscreteDomain.longs(): %s", domain);
+      this.domain = domain;
+    }
+
+    /**
+     * Adds the values in {@code range}.
+     */
+    public Builder<C> add(Range<C> range) {
+      Range<C> canonical = range.canonical(domain);
+      if (canonical.isEmpty()) {
+        return this;
+      }
+      if (size == firsts.length) {
+        int newCapacity = ImmutableCollection.Builder.expandedCapacity(size, size + 1);
+        firsts = Arrays.copyOf(firsts, newCapacity);
+        lasts = Arrays.copyOf(lasts, newCapacity);
+      }
+      long first = toLong(canonical.lowerEndpoint());
+      sorted &= size == 0 || firsts[size - 1] <= first;
+      firsts[size] = first;
+      lasts[size] = canonical.hasUpperBound()
+          ? toLong(canonical.upperEndpoint()) - 1
+          : maxValue(domain);
+      size++;
+      return this;
+    }
+
+    /**
+     * Adds the values in the ranges of {@code rangeSet}.
+     */
+    public Builder<C> addAll(RangeSet<C> rangeSet) {
+      for (Range<C> range : rangeSet.asRanges()) {
+        add(range);
+      }
+      return this;
+    }
+
+    /**
+     * Returns a {@code BitmapRangeSet} of the values added to this builder.
+     */
+    public BitmapRangeSet<C> build() {
+      if (!sorted) {
+        sort(firsts, lasts, 0, size - 1);
+        sorted = true;
+      }
+      Encoder encoder = new Encoder();
+      for (int i = 0; i < size; i++) {
+        encoder.add(firsts[i], lasts[i]);
+      }
+      return encoder.build(domain);
+    }
+
+    /** Sorts runs by their first values, with a quicksort. */
+    private static void sort(long[] firsts, long[] lasts, int from, int to) {
+      while (from < to) {
+        long pivot = firsts[(from + to) >>> 1];
+        int i = from;
+        int j = to;
+        while (i <= j) {
+          while (firsts[i] < pivot) {
+            i++;
+          }
+          while (firsts[j] > pivot) {
+            j--;
+          }
+          if (i <= j) {
+            swap(firsts, i, j);
+            swap(lasts, i, j);
+            i++;
+            j--;
+          }
+        }
+        // recurse into the smaller part, to bound the depth of the stack
+        if (j - from < to - i) {
+          sort(firsts, lasts, from, j);
+          from = i;
+        } else {
+          sort(firsts, lasts, i, to);
+          to = j;
+        }
+      }
+    }
+
+    private static void swap(long[] array, int i, int j) {
+      long tmp = array[i];
+      array[i] = array[j];
+      array[j] = tmp;
+    }
+  }
+
+  /**
+   * Accumulates runs given in ascending order of their first values, merging those which overlap
+   * or are adjacent, and encodes them as a {@code BitmapRangeSet}.
+   */
+  private static final class Encoder {
+    private final LongArrayBuilder firsts = new LongArrayBuilder();
+    private final LongArrayBuilder lasts = new LongArrayBuilder();
+
+    void add(long first, long last) {
+      int size = firsts.size;
+      if (size > 0) {
+        long previousLast = lasts.array[size - 1];
+        if (previousLast == Long.MAX_VALUE || first <= previousLast + 1) {
+          lasts.array[size - 1] = Math.max(previousLast, last);
+          return;
+        }
+      }
+      firsts.add(first);
+      lasts.add(last);
+    }
+
+    <C extends Comparable> BitmapRangeSet<C> build(DiscreteDomain<C> domain) {
+      int size = firsts.size;
+      long[] runFirsts = firsts.array;
+      long[] runLasts = lasts.array;
+
+      // Find the chunks in which too many runs start
+      LongArrayBuilder denseChunks = new LongArrayBuilder();
+      for (int i = 0; i < size; ) {
+        long chunk = runFirsts[i] >> CHUNK_BITS;
+        int start = i;
+        while (i < size && (runFirsts[i] >> CHUNK_BITS) == chunk) {
+          i++;
+        }
+        if (i - start > MAX_RUNS_PER_CHUNK) {
+          denseChunks.add(chunk);
+        }
+      }
+      if (denseChunks.size == 0) {
+        return new BitmapRangeSet<C>(domain, Arrays.copyOf(runFirsts, size),
+            Arrays.copyOf(runLasts, size), new long[0], new long[0][]);
+      }
+
+      // Move the values in those chunks to bitmaps, splitting the runs which cross into them
+      long[] chunks = Arrays.copyOf(denseChunks.array, denseChunks.size);
+      long[][] chunkWords = new long[chunks.length][WORDS_PER_CHUNK];
+      LongArrayBuilder pieceFirsts = new LongArrayBuilder();
+      LongArrayBuilder pieceLasts = new LongArrayBuilder();
+      int d = 0;
+      for (int i = 0; i < size; i++) {
+        long first = runFirsts[i];
+        long last = runLasts[i];
+        while (true) {
+          long chunk = first >> CHUNK_BITS;
+          while (d < chunks.length && chunks[d] < chunk) {
+            d++;
+          }
+          if (d < chunks.length && chunks[d] == chunk) {
+            long chunkLast = first | CHUNK_MASK;
+            setBits(chunkWords[d], (int) (first & CHUNK_MASK),
+                (int) (Math.min(last, chunkLast) & CHUNK_MASK));
+            if (last <= chunkLast) {
+              break;
+            }
+            first = chunkLast + 1;
+          } else {
+            long pieceLast = (d < chunks.length)
+                ? Math.min(last, (chunks[d] << CHUNK_BITS) - 1)
+                : last;
+            pieceFirsts.add(first);
+            pieceLasts.add(pieceLast);
+            if (pieceLast == last) {
+              break;
+            }
+            first = pieceLast + 1;
+          }
+        }
+      }
+      return new BitmapRangeSet<C>(domain, Arrays.copyOf(pieceFirsts.array, pieceFirsts.size),
+          Arrays.copyOf(pieceLasts.array, pieceLasts.size), chunks, chunkWords);
+    }
+  }
+
+  /** A growable array of {@code long}s. */
+  private static final class LongArrayBuilder {
+    long[] array = new long[8];
+    int size;
+
+    void add(long value) {
+      if (size == array.length) {
+        array = Arrays.copyOf(array, ImmutableCollection.Builder.expandedCapacity(size, size + 1));
+      }
+      array[size++] = value;
+    }
+  }
+
+  // Conversions between values and longs
+
+  private static long toLong(Comparable<?> value) {
+    return ((Number) checkNotNull(value)).longValue();
+  }
+
+  @SuppressWarnings("unchecked") // the domain is of Integers or of Longs
+  private C fromLong(long value) {
+    // not a conditional expression, which would unbox and widen the Integer to a long
+    Object result;
+    if (domain.equals(DiscreteDomain.integers())) {
+      result = Integer.valueOf((int) value);
+    } else {
+      result = Long.valueOf(value);
+    }
+    return (C) result;
+  }
+
+  private static long minValue(DiscreteDomain<?> domain) {
+    return toLong(domain.minValue());
+  }
+
+  private static long maxValue(DiscreteDomain<?> domain) {
+    return toLong(domain.maxValue());
+  }
+
+  /** Returns the canonical range of the values from {@code first} to {@code last}, inclusive. */
+  private Range<C> toRange(long first, long last) {
+    return (last == maxValue(domain))
+        ? Range.atLeast(fromLong(first))
+        : Range.closedOpen(fromLong(first), fromLong(last + 1));
+  }
+
+  // Bitmap operations on the words of a chunk
+
+  /** Sets the bits from {@code from} to {@code to}, inclusive. */
+  private static void setBits(long[] words, int from, int to) {
+    int fromWord = from >>> 6;
+    int toWord = to >>> 6;
+    long fromMask = -1L << from;
+    long toMask = -1L >>> (63 - (to & 63));
+    if (fromWord == toWord) {
+      words[fromWord] |= fromMask & toMask;
+    } else {
+      words[fromWord] |= fromMask;
+      for (int i = fromWord + 1; i < toWord; i++) {
+        words[i] = -1L;
+      }
+      words[toWord] |= toMask;
+    }
+  }
+
+  private static boolean isSet(long[] words, int bit) {
+    return (words[bit >>> 6] & (1L << bit)) != 0;
+  }
+
+  /** Returns the first set bit at or after {@code from}, or -1 if there is none. */
+  private static int nextSetBit(long[] words, int from) {
+    if (from >= CHUNK_SIZE) {
+      return -1;
+    }
+    int i = from >>> 6;
+    long word = words[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS_PER_CHUNK) {
+        return -1;
+      }
+      word = words[i];
+    }
+    return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+  }
+
+  /** Returns the first clear bit at or after {@code from}, or {@code CHUNK_SIZE} if none. */
+  private static int nextClearBit(long[] words, int from) {
+    int i = from >>> 6;
+    long word = ~words[i] & (-1L << from);
+    while (word == 0) {
+      if (++i == WORDS_PER_CHUNK) {
+        return CHUNK_SIZE;
+      }
+      word = ~words[i];
+    }
+    return i * Long.SIZE + Long.numberOfTrailingZeros(word);
+  }
+
+  /** Returns the last clear bit at or before {@code from}, or -1 if there is none. */
+  private static int previousClearBit(long[] words, int from) {
+    int i = from >>> 6;
+    long word = ~words[i] & (-1L >>> (63 - (from & 63)));
+    while (word == 0) {
+      if (--i < 0) {
+        return -1;
+      }
+      word = ~words[i];
+    }
+    return i * Long.SIZE + 63 - Long.numberOfLeadingZeros(word);
+  }
+
+  // Queries
+
+  /** Returns the index of the greatest element of {@code array} at most {@code key}, or -1. */
+  private static int floorIndex(long[] array, long key) {
+    int index = Arrays.binarySearch(array, key);
+    return (index >= 0) ? index : -index - 2;
+  }
+
+  /** Returns the index of the bitmap of the chunk of {@code value}, or a negative number. */
+  private int chunkIndex(long value) {
+    return Arrays.binarySearch(chunks, value >> CHUNK_BITS);
+  }
+
+  private boolean contains(long value) {
+    int chunkIndex = chunkIndex(value);
+    if (chunkIndex >= 0) {
+      return isSet(chunkWords[chunkIndex], (int) (value & CHUNK_MASK));
+    }
+    int runIndex = floorIndex(runFirsts, value);
+    return runIndex >= 0 && value <= runLasts[runIndex];
+  }
+
+  /** Returns the last value of the maximal run containing {@code value}, which is in the set. */
+  private long runLast(long value) {
+    long max = maxValue(domain);
+    while (true) {
+      long last;
+      int chunkIndex = chunkIndex(value);
+      if (chunkIndex >= 0) {
+        int clear = nextClearBit(chunkWords[chunkIndex], (int) (value & CHUNK_MASK));
+        if (clear < CHUNK_SIZE) {
+          return (value & ~CHUNK_MASK) + clear - 1;
+        }
+        last = value | CHUNK_MASK;
+      } else {
+        last = runLasts[floorIndex(runFirsts, value)];
+      }
+      // The run may continue in the next piece
+      if (last == max || !contains(last + 1)) {
+        return last;
+      }
+      value = last + 1;
+    }
+  }
+
+  /** Returns the first value of the maximal run containing {@code value}, which is in the set. */
+  private long runFirst(long value) {
+    long min = minValue(domain);
+    while (true) {
+      long first;
+      int chunkIndex = chunkIndex(value);
+      if (chunkIndex >= 0) {
+        int clear = previousClearBit(chunkWords[chunkIndex], (int) (value & CHUNK_MASK));
+        if (clear >= 0) {
+          return (value & ~CHUNK_MASK) + clear + 1;
+        }
+        first = value & ~CHUNK_MASK;
+      } else {
+        first = runFirsts[floorIndex(runFirsts, value)];
+      }
+      if (first == min || !contains(first - 1)) {
+        return first;
+      }
+      value = first - 1;
+    }
+  }
+
+  @Override
+  public boolean contains(C value) {
+    return contains(toLong(value));
+  }
+
+  @Override
+  @Nullable
+  public Range<C> rangeContaining(C value) {
+    long v = toLong(value);
+    return contains(v) ? toRange(runFirst(v), runLast(v)) : null;
+  }
+
+  @Override
+  public boolean encloses(Range<C> otherRange) {
+    Range<C> canonical = otherRange.canonical(domain);
+    if (canonical.isEmpty()) {
+      // an empty range [a..a) is enclosed by any range containing a or ending just before it
+      long value = toLong(canonical.lowerEndpoint());
+      return contains(value) || (value != minValue(domain) && contains(value - 1));
+    }
+    long first = toLong(canonical.lowerEndpoint());
+    long last = canonical.hasUpperBound()
+        ? toLong(canonical.upperEndpoint()) - 1
+        : maxValue(domain);
+    return contains(first) && runLast(first) >= last;
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return runFirsts.length == 0 && chunks.length == 0;
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * @throws NoSuchElementException if this range set is {@linkplain #isEmpty() empty}
+   */
+  @Override
+  public Range<C> span() {
+    if (isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    long first = Long.MAX_VALUE;
+    long last = Long.MIN_VALUE;
+    if (runFirsts.length > 0) {
+      first = runFirsts[0];
+      last = runLasts[runLasts.length - 1];
+    }
+    if (chunks.length > 0) {
+      long[] firstWords = chunkWords[0];
+      first = Math.min(first, (chunks[0] << CHUNK_BITS) + nextSetBit(firstWords, 0));
+      long[] lastWords = chunkWords[chunks.length - 1];
+      int i = WORDS_PER_CHUNK - 1;
+      while (lastWords[i] == 0) {
+        i--;
+      }
+      int lastBit = i * Long.SIZE + 63 - Long.numberOfLeadingZeros(lastWords[i]);
+      last = Math.max(last, (chunks[chunks.length - 1] << CHUNK_BITS) + lastBit);
+    }
+    return toRange(first, last);
+  }
+
+  // Set operations
+
+  /**
+   * Returns a {@code BitmapRangeSet} of the values in this set or in {@code other}.
+   */
+  public BitmapRangeSet<C> union(BitmapRangeSet<C> other) {
+    checkArgument(domain.equals(other.domain), "range sets have different domains");
+    Encoder encoder = new Encoder();
+    RunCursor a = new RunCursor();
+    RunCursor b = other.new RunCursor();
+    boolean hasA = a.advance();
+    boolean hasB = b.advance();
+    while (hasA || hasB) {
+      if (hasA && (!hasB || a.first <= b.first)) {
+        encoder.add(a.first, a.last);
+        hasA = a.advance();
+      } else {
+        encoder.add(b.first, b.last);
+        hasB = b.advance();
+      }
+    }
+    return encoder.build(domain);
+  }
+
+  /**
+   * Returns a {@code BitmapRangeSet} of the values in both this set and {@code other}.
+   */
+  public BitmapRangeSet<C> intersection(BitmapRangeSet<C> other) {
+    checkArgument(domain.equals(other.domain), "range sets have different domains");
+    Encoder encoder = new Encoder();
+    RunCursor a = new RunCursor();
+    RunCursor b = other.new RunCursor();
+    boolean hasA = a.advance();
+    boolean hasB = b.advance();
+    while (hasA && hasB) {
+      long first = Math.max(a.first, b.first);
+      long last = Math.min(a.last, b.last);
+      if (first <= last) {
+        encoder.add(first, last);
+      }
+      if (a.last < b.last) {
+        hasA = a.advance();
+      } else {
+        hasB = b.advance();
+      }
+    }
+    return encoder.build(domain);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The complement is computed eagerly, as a {@code BitmapRangeSet}.
+   */
+  @Override
+  public BitmapRangeSet<C> complement() {
+    Encoder encoder = new Encoder();
+    long next = minValue(domain);
+    long max = maxValue(domain);
+    boolean open = true;
+    RunCursor cursor = new RunCursor();
+    while (cursor.advance()) {
+      if (cursor.first > next) {
+        encoder.add(next, cursor.first - 1);
+      }
+      if (cursor.last == max) {
+        open = false;
+        break;
+      }
+      next = cursor.last + 1;
+    }
+    if (open) {
+      encoder.add(next, max);
+    }
+    return encoder.build(domain);
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>Since this set is immutable, the returned set is a {@code BitmapRangeSet}, computed
+   * eagerly.
+   */
+  @Override
+  public BitmapRangeSet<C> subRangeSet(Range<C> view) {
+    return intersection(builder(domain).add(view).build());
+  }
+
+  /**
+   * Iterates over the maximal runs of values in the set, in ascending order, merging runs of
+   * consecutive values which are stored in different pieces.
+   */
+  private final class RunCursor {
+    private int runIndex;
+    private int chunkIndex;
+    private int nextBit;
+
+    private boolean hasPiece;
+    private long pieceFirst;
+    private long pieceLast;
+
+    long first;
+    long last;
+
+    /** Moves to the next run, returning false if there is none. */
+    boolean advance() {
+      if (!hasPiece && !advancePiece()) {
+        return false;
+      }
+      first = pieceFirst;
+      last = pieceLast;
+      while ((hasPiece = advancePiece())
+          && last != Long.MAX_VALUE && pieceFirst == last + 1) {
+        last = pieceLast;
+      }
+      return true;
+    }
+
+    /** Moves to the next run stored in a single run or bitmap, returning false if none. */
+    private boolean advancePiece() {
+      while (true) {
+        boolean hasRun = runIndex < runFirsts.length;
+        if (chunkIndex < chunks.length
+            && (!hasRun || (chunks[chunkIndex] << CHUNK_BITS) < runFirsts[runIndex])) {
+          long[] words = chunkWords[chunkIndex];
+          int start = nextSetBit(words, nextBit);
+          if (start < 0) {
+            chunkIndex++;
+            nextBit = 0;
+            continue;
+          }
+          int end = nextClearBit(words, start);
+          nextBit = end;
+          long base = chunks[chunkIndex] << CHUNK_BITS;
+          pieceFirst = base + start;
+          pieceLast = base + end - 1;
+          return true;
+        } else if (hasRun) {
+          pieceFirst = runFirsts[runIndex];
+          pieceLast = runLasts[runIndex];
+          runIndex++;
+          return true;
+        }
+        return false;
+      }
+    }
+  }
+
+  private transient Set<Range<C>> ranges;
+
+  // the number of maximal runs, or 0 if not yet computed
+  private transient int rangeCount;
+
+  @Override
+  public Set<Range<C>> asRanges() {
+    Set<Range<C>> result = ranges;
+    return (result == null) ? ranges = new AsRanges() : result;
+  }
+
+  private final class AsRanges extends AbstractSet<Range<C>> {
+    @Override
+    public Iterator<Range<C>> iterator() {
+      final RunCursor cursor = new RunCursor();
+      return new AbstractIterator<Range<C>>() {
+        @Override
+        protected Range<C> computeNext() {
+          return cursor.advance() ? toRange(cursor.first, cursor.last) : endOfData();
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      int count = rangeCount;
+      if (count == 0 && !BitmapRangeSet.this.isEmpty()) {
+        RunCursor cursor = new RunCursor();
+        while (cursor.advance()) {
+          count++;
+        }
+        rangeCount = count;
+      }
+      return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return BitmapRangeSet.this.isEmpty();
+    }
+
+    @Override
+    public boolean contains(@Nullable Object object) {
+      if (object instanceof Range) {
+        Range<?> range = (Range<?>) object;
+        if (range.hasLowerBound() && range.lowerEndpoint() instanceof Number) {
+          @SuppressWarnings("unchecked") // a Number in a Range<C> is a C
+          C lower = (C) range.lowerEndpoint();
+          return range.equals(rangeContaining(lower));
+        }
+      }
+      return false;
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object instanceof BitmapRangeSet) {
+      BitmapRangeSet<?> other = (BitmapRangeSet<?>) object;
+      if (domain.equals(other.domain)) {
+        // the encoding of a set of values is unique
+        return Arrays.equals(runFirsts, other.runFirsts)
+            && Arrays.equals(runLasts, other.runLasts)
+            && Arrays.equals(chunks, other.chunks)
+            && Arrays.deepEquals(chunkWords, other.chunkWords);
+      }
+    }
+    return super.equals(object);
+  }
+
+  private static final long serialVersionUID = 0;
+}
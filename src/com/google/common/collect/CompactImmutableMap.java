@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.collect.CollectPreconditions.checkEntryNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.primitives.Ints;
+
+import javax.annotation.Nullable;
+
+/**
+ * Implementation of {@link ImmutableMap} with two or more entries, whose keys and values are
+ * stored next to each other in a single open-addressed table, with linear probing. A lookup reads
+ * consecutive elements of one array, rather than following a chain of entry objects as in
+ * {@link RegularImmutableMap}, and the map holds no objects per entry.
+ *
+ * <p>Linear probing degrades badly when many hash codes collide, so {@link #create} gives up, and
+ * the caller falls back to a {@code RegularImmutableMap}, when the keys are poorly distributed.
+ */
+@GwtCompatible
+final class CompactImmutableMap<K, V> extends ImmutableMap<K, V> {
+
+  /**
+   * The maximum average number of occupied slots which a key passes over before reaching its own,
+   * above which the keys are deemed to collide too often. Random keys pass over about one.
+   */
+  private static final int MAX_AVERAGE_DISPLACEMENT = 4;
+
+  // each key at an even index, followed by its value; null where the slot is empty
+  private final transient Object[] table;
+  // the index in the table of the key of each entry, in insertion order
+  private final transient int[] keyIndices;
+  // 'and' with an int to get a slot, whose key is at twice that index
+  private final transient int mask;
+
+  private CompactImmutableMap(Object[] table, int[] keyIndices, int mask) {
+    this.table = table;
+    this.keyIndices = keyIndices;
+    this.mask = mask;
+  }
+
+  /**
+   * Returns a map of the first {@code size} of {@code entries}, which must be at least two, or
+   * {@code null} if their keys collide too often for this layout.
+   *
+   * @throws IllegalArgumentException if two entries have the same key
+   */
+  @Nullable
+  static <K, V> CompactImmutableMap<K, V> create(int size, Entry<?, ?>[] entries) {
+    // The same load factor as RegularImmutableSet, which also probes linearly
+    int tableSize = ImmutableSet.chooseTableSize(size);
+    if (tableSize > Ints.MAX_POWER_OF_TWO / 2) {
+      return null; // the table wouldn't fit in one array
+    }
+    Object[] table = new Object[2 * tableSize];
+    int[] keyIndices = new int[size];
+    int mask = tableSize - 1;
+    long displacement = 0;
+    long maxDisplacement = (long) MAX_AVERAGE_DISPLACEMENT * size;
+    for (int entryIndex = 0; entryIndex < size; entryIndex++) {
+      Entry<?, ?> entry = entries[entryIndex];
+      Object key = entry.getKey();
+      Object value = entry.getValue();
+      checkEntryNotNull(key, value);
+      for (int slot = Hashing.smear(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+        int keyIndex = 2 * slot;
+        Object existingKey = table[keyIndex];
+        if (existingKey == null) {
+          table[keyIndex] = key;
+          table[keyIndex + 1] = value;
+          keyIndices[entryIndex] = keyIndex;
+          break;
+        }
+        checkNoConflict(!key.equals(existingKey), "key", entry,
+            Maps.immutableEntry(existingKey, table[keyIndex + 1]));
+        if (++displacement > maxDisplacement) {
+          return null;
+        }
+      }
+    }
+    return new CompactImmutableMap<K, V>(table, keyIndices, mask);
+  }
+
+  @SuppressWarnings("unchecked") // only values are stored at odd indices
+  @Override public V get(@Nullable Object key) {
+    if (key == null) {
+      return null;
+    }
+    for (int slot = Hashing.smear(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      Object candidateKey = table[2 * slot];
+      if (candidateKey == null) {
+        return null;
+      } else if (key.equals(candidateKey)) {
+        return (V) table[2 * slot + 1];
+      }
+    }
+  }
+
+  @Override
+  public int size() {
+    return keyIndices.length;
+  }
+
+  @Override boolean isPartialView() {
+    return false;
+  }
+
+  @Override
+  ImmutableSet<Entry<K, V>> createEntrySet() {
+    return new EntrySet();
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private class EntrySet extends ImmutableMapEntrySet<K, V> {
+    @Override ImmutableMap<K, V> map() {
+      return CompactImmutableMap.this;
+    }
+
+    @Override
+    public UnmodifiableIterator<Entry<K, V>> iterator() {
+      return asList().iterator();
+    }
+
+    @Override
+    ImmutableList<Entry<K, V>> createAsList() {
+      return new ImmutableAsList<Entry<K, V>>() {
+        @SuppressWarnings("unchecked") // keys and values are stored at known indices
+        @Override
+        public Entry<K, V> get(int index) {
+          int keyIndex = keyIndices[index];
+          return Maps.immutableEntry((K) table[keyIndex], (V) table[keyIndex + 1]);
+        }
+
+        @Override
+        ImmutableCollection<Entry<K, V>> delegateCollection() {
+          return EntrySet.this;
+        }
+      };
+    }
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.ObjectArrays.checkElementsNotNull;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.Collection;
+
+import javax.annotation.Nullable;
+
+/**
+ * The {@code asMap()} view backing an {@link ImmutableListMultimap} or an {@link
+ * ImmutableSetMultimap}, which stores the multimap in compressed sparse row form: one array of
+ * the distinct keys, an array of offsets, and one flat array of the values of all keys, the values
+ * of the key at index {@code i} lying between the offsets at {@code i} and {@code i + 1}. The
+ * keys are found through an open-addressed table of their indices. The collection of values of a
+ * key is a view of its part of the flat array, created each time it is requested.
+ *
+ * <p>A multimap with many keys, each with few values, thus holds four arrays rather than a map
+ * entry and an immutable collection for every key.
+ */
+@GwtCompatible
+abstract class CompactMultimapMap<K, V, C extends ImmutableCollection<V>>
+    extends ImmutableMap<K, C> {
+
+  // the distinct keys, in iteration order
+  private final transient Object[] keys;
+  // one plus the index of a key in each occupied slot, or zero; probed linearly
+  private final transient int[] keyTable;
+  // the values of the key at index i are at offsets[i] (inclusive) to offsets[i + 1] (exclusive)
+  final transient int[] offsets;
+  final transient Object[] values;
+
+  CompactMultimapMap(Builder builder) {
+    int keyCount = builder.keyCount;
+    this.keys = ObjectArrays.arraysCopyOf(builder.keys, keyCount);
+    this.offsets = new int[keyCount + 1];
+    System.arraycopy(builder.offsets, 0, offsets, 0, keyCount + 1);
+    this.values = ObjectArrays.arraysCopyOf(builder.values, builder.size);
+    this.keyTable = new int[ImmutableSet.chooseTableSize(Math.max(keyCount, 2))];
+    int mask = keyTable.length - 1;
+    for (int i = 0; i < keyCount; i++) {
+      int slot = Hashing.smear(keys[i].hashCode()) & mask;
+      while (keyTable[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      keyTable[slot] = i + 1;
+    }
+  }
+
+  /**
+   * Accumulates the keys and values of a {@code CompactMultimapMap}, growing its arrays as needed.
+   */
+  static final class Builder {
+    Object[] keys;
+    int[] offsets;
+    Object[] values;
+    int keyCount;
+    int size;
+
+    Builder(int expectedKeys, int expectedSize) {
+      keys = new Object[expectedKeys];
+      offsets = new int[expectedKeys + 1];
+      values = new Object[expectedSize];
+    }
+
+    /**
+     * Adds a key, which must not have been added before, and its values.
+     *
+     * @throws NullPointerException if {@code key} or any of {@code keyValues} is null
+     */
+    void put(Object key, Object[] keyValues) {
+      checkNotNull(key);
+      checkElementsNotNull(keyValues);
+      if (keyCount == keys.length) {
+        int newCapacity = ImmutableCollection.Builder.expandedCapacity(keys.length, keyCount + 1);
+        keys = ObjectArrays.arraysCopyOf(keys, newCapacity);
+        int[] newOffsets = new int[newCapacity + 1];
+        System.arraycopy(offsets, 0, newOffsets, 0, keyCount + 1);
+        offsets = newOffsets;
+      }
+      int newSize = size + keyValues.length;
+      if (newSize > values.length) {
+        values = ObjectArrays.arraysCopyOf(
+            values, ImmutableCollection.Builder.expandedCapacity(values.length, newSize));
+      }
+      System.arraycopy(keyValues, 0, values, size, keyValues.length);
+      keys[keyCount++] = key;
+      offsets[keyCount] = newSize;
+      size = newSize;
+    }
+  }
+
+  /** Returns the index of {@code key}, or -1 if it is absent. */
+  final int indexOf(@Nullable Object key) {
+    if (key == null) {
+      return -1;
+    }
+    int mask = keyTable.length - 1;
+    for (int slot = Hashing.smear(key.hashCode()) & mask; ; slot = (slot + 1) & mask) {
+      int index = keyTable[slot] - 1;
+      if (index < 0) {
+        return -1;
+      } else if (key.equals(keys[index])) {
+        return index;
+      }
+    }
+  }
+
+  /** Returns a view of the values of the key at {@code index}. */
+  abstract C valueCollection(int index);
+
+  @Override
+  public C get(@Nullable Object key) {
+    int index = indexOf(key);
+    return (index < 0) ? null : valueCollection(index);
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    return indexOf(key) >= 0;
+  }
+
+  @Override
+  public int size() {
+    return keys.length;
+  }
+
+  @Override
+  boolean isPartialView() {
+    return false;
+  }
+
+  @Override
+  ImmutableSet<K> createKeySet() {
+    return new KeySet();
+  }
+
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private final class KeySet extends ImmutableSet<K> {
+    @Override
+    public boolean contains(@Nullable Object object) {
+      return indexOf(object) >= 0;
+    }
+
+    @Override
+    public int size() {
+      return keys.length;
+    }
+
+    @Override
+    public UnmodifiableIterator<K> iterator() {
+      return asList().iterator();
+    }
+
+    @Override
+    ImmutableList<K> createAsList() {
+      return new RegularImmutableAsList<K>(this, keys);
+    }
+
+    @Override
+    boolean isPartialView() {
+      return false;
+    }
+  }
+
+  @Override
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  ImmutableSet<Entry<K, C>> createEntrySet() {
+    return new ImmutableMapEntrySet<K, C>() {
+      @Override
+      ImmutableMap<K, C> map() {
+        return CompactMultimapMap.this;
+      }
+
+      @Override
+      public UnmodifiableIterator<Entry<K, C>> iterator() {
+        return asList().iterator();
+      }
+
+      @Override
+      ImmutableList<Entry<K, C>> createAsList() {
+        final ImmutableCollection<Entry<K, C>> entrySet = this;
+        return new ImmutableAsList<Entry<K, C>>() {
+          @SuppressWarnings("unchecked") // only K's are stored in keys
+          @Override
+          public Entry<K, C> get(int index) {
+            return Maps.immutableEntry((K) keys[index], valueCollection(index));
+          }
+
+          @Override
+          ImmutableCollection<Entry<K, C>> delegateCollection() {
+            return entrySet;
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * The backing map of an {@code ImmutableListMultimap}, whose value lists are views of the flat
+   * array of values.
+   */
+  static final class ListValues<K, V> extends CompactMultimapMap<K, V, ImmutableList<V>> {
+    ListValues(Builder builder) {
+      super(builder);
+    }
+
+    /**
+     * Returns the backing map of an {@code ImmutableListMultimap} with the entries of {@code
+     * multimap}, in the order of its {@code asMap()} view.
+     *
+     * @throws NullPointerException if any key or value in {@code multimap} is null
+     */
+    static <K, V> ListValues<K, V> copyOf(Multimap<? extends K, ? extends V> multimap) {
+      Builder builder = new Builder(multimap.keySet().size(), multimap.size());
+      for (Entry<? extends K, ? extends Collection<? extends V>> entry
+          : multimap.asMap().entrySet()) {
+        Object[] keyValues = entry.getValue().toArray();
+        if (keyValues.length > 0) {
+          builder.put(entry.getKey(), keyValues);
+        }
+      }
+      return new ListValues<K, V>(builder);
+    }
+
+    @Override
+    ImmutableList<V> valueCollection(int index) {
+      int offset = offsets[index];
+      return new RegularImmutableList<V>(values, offset, offsets[index + 1] - offset);
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  /**
+   * The backing map of an {@code ImmutableSetMultimap} without a value comparator. The value set
+   * of a key with at most {@value #MAX_SCANNED_SET_SIZE} values is a view of the flat array of
+   * values, which is searched linearly; larger value sets are ordinary {@link ImmutableSet}s, kept
+   * in addition to the flat array.
+   */
+  static final class SetValues<K, V> extends CompactMultimapMap<K, V, ImmutableSet<V>> {
+    /**
+     * The largest value set which is searched linearly. Up to this size, a linear search is about
+     * as fast as a hash lookup.
+     */
+    static final int MAX_SCANNED_SET_SIZE = 8;
+
+    private final transient ImmutableMap<Integer, ImmutableSet<V>> largeSets;
+
+    SetValues(Builder builder, ImmutableMap<Integer, ImmutableSet<V>> largeSets) {
+      super(builder);
+      this.largeSets = largeSets;
+    }
+
+    /**
+     * Returns the backing map of an {@code ImmutableSetMultimap} with the entries of {@code
+     * multimap}, in the order of its {@code asMap()} view, without duplicate key-value pairs.
+     *
+     * @throws NullPointerException if any key or value in {@code multimap} is null
+     */
+    static <K, V> SetValues<K, V> copyOf(Multimap<? extends K, ? extends V> multimap) {
+      Builder builder = new Builder(multimap.keySet().size(), multimap.size());
+      ImmutableMap.Builder<Integer, ImmutableSet<V>> largeSets = ImmutableMap.builder();
+      for (Entry<? extends K, ? extends Collection<? extends V>> entry
+          : multimap.asMap().entrySet()) {
+        ImmutableSet<V> set = ImmutableSet.copyOf(entry.getValue());
+        if (!set.isEmpty()) {
+          if (set.size() > MAX_SCANNED_SET_SIZE) {
+            largeSets.put(builder.keyCount, set);
+          }
+          builder.put(entry.getKey(), set.toArray());
+        }
+      }
+      return new SetValues<K, V>(builder, largeSets.build());
+    }
+
+    @Override
+    ImmutableSet<V> valueCollection(int index) {
+      int offset = offsets[index];
+      int size = offsets[index + 1] - offset;
+      return (size > MAX_SCANNED_SET_SIZE)
+          ? largeSets.get(index)
+          : new ScannedSet<V>(values, offset, size);
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  /**
+   * An immutable set of the distinct elements in a range of an array, whose {@code contains}
+   * method searches the range linearly.
+   */
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  private static final class ScannedSet<E> extends ImmutableSet<E> {
+    private final Object[] array;
+    private final int offset;
+    private final int size;
+
+    ScannedSet(Object[] array, int offset, int size) {
+      this.array = array;
+      this.offset = offset;
+      this.size = size;
+    }
+
+    @Override
+    public boolean contains(@Nullable Object object) {
+      if (object == null) {
+        return false;
+      }
+      for (int i = offset; i < offset + size; i++) {
+        if (array[i].equals(object)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    @Override
+    public int size() {
+      return size;
+    }
+
+    @Override
+    public UnmodifiableIterator<E> iterator() {
+      return asList().iterator();
+    }
+
+    @Override
+    ImmutableList<E> createAsList() {
+      return new RegularImmutableAsList<E>(this, new RegularImmutableList<E>(array, offset, size));
+    }
+
+    @Override
+    int copyIntoArray(Object[] dst, int dstOff) {
+      System.arraycopy(array, offset, dst, dstOff, size);
+      return dstOff + size;
+    }
+
+    @Override
+    boolean isPartialView() {
+      return true;
+    }
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,495 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.CollectPreconditions.checkRemove;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Serialization.FieldSetter;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A {@link SetMultimap} that supports concurrent modifications, with atomic versions of {@link
+ * #put}, {@link #remove}, {@link #removeAll} and {@link #replaceValues}. It is backed by a {@link
+ * ConcurrentHashMap} from each key to a concurrent set of its values, so that updates of
+ * different keys proceed in parallel, and reads take no locks at all; updates of the same key are
+ * serialized. Null keys and values are not supported.
+ *
+ * <p>Like the collections of {@code java.util.concurrent}, the views of the multimap (including
+ * the collections returned by {@link #get}) are weakly consistent: their iterators never throw
+ * {@link java.util.ConcurrentModificationException}, and reflect the state of the multimap at
+ * some point at or since their creation. {@link #size} adds up the number of values of each key,
+ * so it is not a snapshot while the multimap is being modified, and takes time proportional to
+ * the number of keys. Bulk operations, such as {@link #putAll} and {@link #clear}, are not
+ * atomic.
+ *
+ * <p>Unlike {@link Multimaps#synchronizedMultimap}, this class cannot be used to update several
+ * keys atomically, by synchronizing on the multimap.
+ *
+ * <p>See the Guava User Guide article on <a href=
+ * "http://code.google.com/p/guava-libraries/wiki/NewCollectionTypesExplained#Multimap">
+ * {@code Multimap}</a>.
+ *
+ * @since 17.0
+ */
+@Beta
+public final class ConcurrentHashMultimap<K, V> extends AbstractMultimap<K, V>
+    implements SetMultimap<K, V>, Serializable {
+
+  /*
+   * Each key maps to a ValueSet, whose monitor guards every change to its values. A ValueSet is
+   * removed from the map when its last value is removed, and is then marked as removed, under its
+   * monitor, so that an update which found it in the map before its removal knows to look up the
+   * key again, rather than changing a set which is no longer in the map. Reads only look at the
+   * concurrent sets, without locking.
+   */
+
+  private static final int DEFAULT_VALUES_PER_KEY = 2;
+
+  private final transient ConcurrentMap<K, ValueSet<V>> map;
+
+  // This constant allows the deserialization code to set a final field. This holder class
+  // makes sure it is not initialized unless an instance is deserialized.
+  private static class FieldSettersHolder {
+    static final FieldSetter<ConcurrentHashMultimap> MAP_FIELD_SETTER =
+        Serialization.getFieldSetter(ConcurrentHashMultimap.class, "map");
+  }
+
+  /** The values of one key, and whether they have been removed from the multimap. */
+  private static final class ValueSet<V> {
+    // Updates of one key are serialized by the monitor, so one segment suffices
+    final Set<V> values = Sets.newSetFromMap(
+        new ConcurrentHashMap<V, Boolean>(DEFAULT_VALUES_PER_KEY, 0.75f, 1));
+
+    // guarded by this
+    boolean removed;
+  }
+
+  /**
+   * Creates a new, empty {@code ConcurrentHashMultimap} using the default initial capacity, load
+   * factor, and concurrency settings.
+   */
+  public static <K, V> ConcurrentHashMultimap<K, V> create() {
+    return new ConcurrentHashMultimap<K, V>(new ConcurrentHashMap<K, ValueSet<V>>());
+  }
+
+  /**
+   * Creates a new {@code ConcurrentHashMultimap} containing the same mappings as {@code
+   * multimap}.
+   *
+   * @throws NullPointerException if any key or value in {@code multimap} is null
+   */
+  public static <K, V> ConcurrentHashMultimap<K, V> create(
+      Multimap<? extends K, ? extends V> multimap) {
+    ConcurrentHashMultimap<K, V> result = create();
+    result.putAll(multimap);
+    return result;
+  }
+
+  private ConcurrentHashMultimap(ConcurrentMap<K, ValueSet<V>> map) {
+    this.map = map;
+  }
+
+  /** Returns the values of {@code key}, or {@code null} if it has none. */
+  @Nullable
+  private ValueSet<V> valueSet(@Nullable Object key) {
+    return (key == null) ? null : map.get(key);
+  }
+
+  @Override
+  public int size() {
+    long sum = 0L;
+    for (ValueSet<V> valueSet : map.values()) {
+      sum += valueSet.values.size();
+    }
+    return Ints.saturatedCast(sum);
+  }
+
+  @Override
+  public boolean isEmpty() {
+    return map.isEmpty();
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    ValueSet<V> valueSet = valueSet(key);
+    return valueSet != null && !valueSet.values.isEmpty();
+  }
+
+  @Override
+  public boolean containsEntry(@Nullable Object key, @Nullable Object value) {
+    ValueSet<V> valueSet = valueSet(key);
+    return valueSet != null && value != null && valueSet.values.contains(value);
+  }
+
+  /**
+   * Stores a key-value pair in the multimap, if it isn't already present.
+   *
+   * @return {@code true} if the multimap changed
+   * @throws NullPointerException if {@code key} or {@code value} is null
+   */
+  @Override
+  public boolean put(K key, V value) {
+    checkNotNull(key);
+    checkNotNull(value);
+    while (true) {
+      ValueSet<V> valueSet = map.get(key);
+      if (valueSet == null) {
+        ValueSet<V> newValueSet = new ValueSet<V>();
+        newValueSet.values.add(value);
+        valueSet = map.putIfAbsent(key, newValueSet);
+        if (valueSet == null) {
+          return true;
+        }
+      }
+      synchronized (valueSet) {
+        if (!valueSet.removed) {
+          return valueSet.values.add(value);
+        }
+      }
+      // The values were removed since we looked them up; start over
+    }
+  }
+
+  /**
+   * Removes a key-value pair from the multimap, if present.
+   *
+   * @return {@code true} if the multimap changed
+   */
+  @Override
+  public boolean remove(@Nullable Object key, @Nullable Object value) {
+    if (value == null) {
+      return false;
+    }
+    while (true) {
+      ValueSet<V> valueSet = valueSet(key);
+      if (valueSet == null) {
+        return false;
+      }
+      synchronized (valueSet) {
+        if (!valueSet.removed) {
+          if (!valueSet.values.remove(value)) {
+            return false;
+          }
+          if (valueSet.values.isEmpty()) {
+            valueSet.removed = true;
+            map.remove(key, valueSet);
+          }
+          return true;
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The values are removed atomically. The returned set is unmodifiable.
+   */
+  @Override
+  public Set<V> removeAll(@Nullable Object key) {
+    while (true) {
+      ValueSet<V> valueSet = valueSet(key);
+      if (valueSet == null) {
+        return ImmutableSet.of();
+      }
+      synchronized (valueSet) {
+        if (!valueSet.removed) {
+          valueSet.removed = true;
+          map.remove(key, valueSet);
+          return Collections.unmodifiableSet(valueSet.values);
+        }
+      }
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The values are replaced atomically. The returned set is unmodifiable.
+   *
+   * @throws NullPointerException if {@code key} or any of {@code values} is null
+   */
+  @Override
+  public Set<V> replaceValues(K key, Iterable<? extends V> values) {
+    checkNotNull(key);
+    ValueSet<V> newValueSet = new ValueSet<V>();
+    for (V value : values) {
+      newValueSet.values.add(checkNotNull(value));
+    }
+    boolean empty = newValueSet.values.isEmpty();
+    while (true) {
+      ValueSet<V> valueSet = map.get(key);
+      if (valueSet == null) {
+        if (empty || map.putIfAbsent(key, newValueSet) == null) {
+          return ImmutableSet.of();
+        }
+        continue;
+      }
+      synchronized (valueSet) {
+        if (!valueSet.removed) {
+          valueSet.removed = true;
+          if (empty) {
+            map.remove(key, valueSet);
+          } else {
+            map.replace(key, valueSet, newValueSet);
+          }
+          return Collections.unmodifiableSet(valueSet.values);
+        }
+      }
+    }
+  }
+
+  /**
+   * Removes all of the mappings from the multimap. Keys whose values are added while this method
+   * runs may remain in the multimap.
+   */
+  @Override
+  public void clear() {
+    for (K key : map.keySet()) {
+      removeAll(key);
+    }
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned set is a view of the values of {@code key}, which is weakly consistent: it
+   * reflects later changes of the multimap, including values added after all those of {@code key}
+   * were removed.
+   */
+  @Override
+  public Set<V> get(@Nullable final K key) {
+    return new AbstractSet<V>() {
+      @Override
+      public int size() {
+        ValueSet<V> valueSet = valueSet(key);
+        return (valueSet == null) ? 0 : valueSet.values.size();
+      }
+
+      @Override
+      public boolean contains(@Nullable Object object) {
+        return containsEntry(key, object);
+      }
+
+      @Override
+      public Iterator<V> iterator() {
+        ValueSet<V> valueSet = valueSet(key);
+        if (valueSet == null) {
+          return Iterators.emptyModifiableIterator();
+        }
+        final Iterator<V> iterator = valueSet.values.iterator();
+        return new Iterator<V>() {
+          V last;
+
+          @Override
+          public boolean hasNext() {
+            return iterator.hasNext();
+          }
+
+          @Override
+          public V next() {
+            last = iterator.next();
+            return last;
+          }
+
+          @Override
+          public void remove() {
+            checkRemove(last != null);
+            ConcurrentHashMultimap.this.remove(key, last);
+            last = null;
+          }
+        };
+      }
+
+      @Override
+      public boolean add(V value) {
+        return put(key, value);
+      }
+
+      @Override
+      public boolean remove(@Nullable Object object) {
+        return ConcurrentHashMultimap.this.remove(key, object);
+      }
+
+      @Override
+      public void clear() {
+        ConcurrentHashMultimap.this.removeAll(key);
+      }
+    };
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The returned set is weakly consistent.
+   */
+  @Override
+  public Set<Entry<K, V>> entries() {
+    return (Set<Entry<K, V>>) super.entries();
+  }
+
+  @Override
+  Iterator<Entry<K, V>> entryIterator() {
+    final Iterator<Entry<K, ValueSet<V>>> keyIterator = map.entrySet().iterator();
+    return new Iterator<Entry<K, V>>() {
+      K key;
+      Iterator<V> valueIterator = Iterators.emptyIterator();
+      Entry<K, V> last;
+
+      @Override
+      public boolean hasNext() {
+        while (!valueIterator.hasNext()) {
+          if (!keyIterator.hasNext()) {
+            return false;
+          }
+          Entry<K, ValueSet<V>> entry = keyIterator.next();
+          key = entry.getKey();
+          valueIterator = entry.getValue().values.iterator();
+        }
+        return true;
+      }
+
+      @Override
+      public Entry<K, V> next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        last = Maps.immutableEntry(key, valueIterator.next());
+        return last;
+      }
+
+      @Override
+      public void remove() {
+        checkRemove(last != null);
+        ConcurrentHashMultimap.this.remove(last.getKey(), last.getValue());
+        last = null;
+      }
+    };
+  }
+
+  @Override
+  Map<K, Collection<V>> createAsMap() {
+    return new AsMap();
+  }
+
+  private final class AsMap extends Maps.ImprovedAbstractMap<K, Collection<V>> {
+    @Override
+    public int size() {
+      return map.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+      return map.isEmpty();
+    }
+
+    @Override
+    public boolean containsKey(@Nullable Object key) {
+      return ConcurrentHashMultimap.this.containsKey(key);
+    }
+
+    @SuppressWarnings("unchecked") // key is a K if the multimap contains it
+    @Override
+    public Collection<V> get(@Nullable Object key) {
+      return containsKey(key) ? ConcurrentHashMultimap.this.get((K) key) : null;
+    }
+
+    @Override
+    public Collection<V> remove(@Nullable Object key) {
+      Collection<V> values = removeAll(key);
+      return values.isEmpty() ? null : values;
+    }
+
+    @Override
+    public void clear() {
+      ConcurrentHashMultimap.this.clear();
+    }
+
+    @Override
+    Set<Entry<K, Collection<V>>> createEntrySet() {
+      return new Maps.EntrySet<K, Collection<V>>() {
+        @Override
+        Map<K, Collection<V>> map() {
+          return AsMap.this;
+        }
+
+        @Override
+        public Iterator<Entry<K, Collection<V>>> iterator() {
+          final Iterator<K> keyIterator = map.keySet().iterator();
+          return new Iterator<Entry<K, Collection<V>>>() {
+            K last;
+
+            @Override
+            public boolean hasNext() {
+              return keyIterator.hasNext();
+            }
+
+            @Override
+            public Entry<K, Collection<V>> next() {
+              last = keyIterator.next();
+              return Maps.<K, Collection<V>>immutableEntry(last, get(last));
+            }
+
+            @Override
+            public void remove() {
+              checkRemove(last != null);
+              ConcurrentHashMultimap.this.removeAll(last);
+              last = null;
+            }
+          };
+        }
+      };
+    }
+  }
+
+  /**
+   * @serialData a snapshot of the multimap, as an {@link ImmutableSetMultimap}
+   */
+  private void writeObject(ObjectOutputStream stream) throws IOException {
+    stream.defaultWriteObject();
+    stream.writeObject(ImmutableSetMultimap.copyOf(this));
+  }
+
+  private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+    stream.defaultReadObject();
+    @SuppressWarnings("unchecked") // reading data stored by writeObject
+    Multimap<K, V> snapshot = (Multimap<K, V>) stream.readObject();
+    FieldSettersHolder.MAP_FIELD_SETTER.set(this, new ConcurrentHashMap<K, ValueSet<V>>());
+    putAll(snapshot);
+  }
+
+  private static final long serialVersionUID = 0;
+}
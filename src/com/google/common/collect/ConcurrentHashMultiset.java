@@ -46,6 +46,10 @@ import javax.annotation.Nullable;
  * A multiset that supports concurrent modifications and that provides atomic versions of most
  * {@code Multiset} operations (exceptions where noted). Null elements are not supported.
  *
+ * <p>The count of each element is updated by compare-and-set, which is retried when several
+ * threads update the same element at once. If many threads add the same few elements, consider
+ * {@link StripedConcurrentHashMultiset}, which spreads each count over striped cells.
+ *
  * <p>See the Guava User Guide article on <a href=
  * "http://code.google.com/p/guava-libraries/wiki/NewCollectionTypesExplained#Multiset">
  * {@code Multiset}</a>.
@@ -69,4 +69,29 @@ final class Hashing {
   static boolean needsResizing(int size, int tableSize, double loadFactor) {
     return size > loadFactor * tableSize && tableSize < MAX_TABLE_SIZE;
   }
+
+  /**
+   * Returns the capacity of the smallest open-addressed table in which {@code expectedSize}
+   * entries use at most {@link #maxUsedSlots} slots.
+   */
+  static int openTableSize(int expectedSize, double maxLoadFactor) {
+    if (expectedSize > MAX_TABLE_SIZE / 2) {
+      // no smaller table is large enough, and rounding larger sizes up would overflow
+      return MAX_TABLE_SIZE;
+    }
+    int capacity = Integer.highestOneBit(Math.max(expectedSize, 2) - 1) << 1;
+    while (maxUsedSlots(capacity, maxLoadFactor) < expectedSize && capacity < MAX_TABLE_SIZE) {
+      capacity <<= 1;
+    }
+    return capacity;
+  }
+
+  /**
+   * Returns the number of slots of an open-addressed table of the given capacity which may be
+   * used, whether by entries or by markers of removed entries. A table of the maximum size keeps
+   * one slot free, so that probes terminate.
+   */
+  static int maxUsedSlots(int capacity, double maxLoadFactor) {
+    return (capacity < MAX_TABLE_SIZE) ? (int) (capacity * maxLoadFactor) : capacity - 1;
+  }
 }
@@ -23,7 +23,6 @@ import java.io.IOException;
 import java.io.InvalidObjectException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
-import java.util.Collection;
 import java.util.Comparator;
 import java.util.Map.Entry;
 
@@ -253,19 +252,8 @@ public class ImmutableListMultimap<K, V>
       }
     }
 
-    ImmutableMap.Builder<K, ImmutableList<V>> builder = ImmutableMap.builder();
-    int size = 0;
-
-    for (Entry<? extends K, ? extends Collection<? extends V>> entry
-        : multimap.asMap().entrySet()) {
-      ImmutableList<V> list = ImmutableList.copyOf(entry.getValue());
-      if (!list.isEmpty()) {
-        builder.put(entry.getKey(), list);
-        size += list.size();
-      }
-    }
-
-    return new ImmutableListMultimap<K, V>(builder.build(), size);
+    CompactMultimapMap.ListValues<K, V> map = CompactMultimapMap.ListValues.copyOf(multimap);
+    return new ImmutableListMultimap<K, V>(map, map.values.length);
   }
 
   ImmutableListMultimap(ImmutableMap<K, ImmutableList<V>> map, int size) {
@@ -251,7 +251,8 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
         case 1:
           return of(entries[0].getKey(), entries[0].getValue());
         default:
-          return new RegularImmutableMap<K, V>(size, entries);
+          ImmutableMap<K, V> compact = CompactImmutableMap.create(size, entries);
+          return (compact != null) ? compact : new RegularImmutableMap<K, V>(size, entries);
       }
     }
   }
@@ -291,7 +292,8 @@ public abstract class ImmutableMap<K, V> implements Map<K, V>, Serializable {
         Entry<K, V> onlyEntry = (Entry<K, V>) entries[0];
         return of(onlyEntry.getKey(), onlyEntry.getValue());
       default:
-        return new RegularImmutableMap<K, V>(entries);
+        ImmutableMap<K, V> compact = CompactImmutableMap.create(entries.length, entries);
+        return (compact != null) ? compact : new RegularImmutableMap<K, V>(entries);
     }
   }
 
@@ -0,0 +1,382 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.primitives.Ints;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * An immutable mapping from ranges to values which, unlike a {@link RangeMap}, allows the ranges
+ * to overlap, and finds all the entries whose ranges contain a value or overlap a range.
+ *
+ * <p>The entries are stored in ascending order of their ranges, with a range maximum query
+ * structure over their upper bounds, taking linear space, so that {@link #get},
+ * {@link #getEntries} and {@link #overlapping} visit only the entries which match, after a binary
+ * search. A query returning {@code k} entries takes {@code O(log n + k)} time, rather than the
+ * {@code O(n)} time of scanning all the entries.
+ *
+ * <p>Neither null ranges nor null values are supported, and empty ranges are rejected, as they
+ * contain no values.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public final class ImmutableRangeMultimap<K extends Comparable<?>, V> {
+
+  private static final ImmutableRangeMultimap<Comparable<?>, Object> EMPTY =
+      new ImmutableRangeMultimap<Comparable<?>, Object>(
+          ImmutableList.<Range<Comparable<?>>>of(), ImmutableList.of());
+
+  /**
+   * Returns an empty immutable range multimap.
+   */
+  @SuppressWarnings("unchecked")
+  public static <K extends Comparable<?>, V> ImmutableRangeMultimap<K, V> of() {
+    return (ImmutableRangeMultimap<K, V>) EMPTY;
+  }
+
+  /**
+   * Returns an immutable range multimap mapping a single range to a single value.
+   *
+   * @throws IllegalArgumentException if {@code range} is empty
+   */
+  public static <K extends Comparable<?>, V> ImmutableRangeMultimap<K, V> of(
+      Range<K> range, V value) {
+    return ImmutableRangeMultimap.<K, V>builder().put(range, value).build();
+  }
+
+  /**
+   * Returns an immutable range multimap with the entries of {@code rangeMap}.
+   */
+  public static <K extends Comparable<?>, V> ImmutableRangeMultimap<K, V> copyOf(
+      RangeMap<K, ? extends V> rangeMap) {
+    return ImmutableRangeMultimap.<K, V>builder().putAll(rangeMap).build();
+  }
+
+  /**
+   * Returns a new builder for an immutable range multimap.
+   */
+  public static <K extends Comparable<?>, V> Builder<K, V> builder() {
+    return new Builder<K, V>();
+  }
+
+  /**
+   * A builder for immutable range multimaps. Overlapping ranges, and duplicate entries, are
+   * permitted.
+   */
+  public static final class Builder<K extends Comparable<?>, V> {
+    private final List<Entry<Range<K>, V>> entries = Lists.newArrayList();
+
+    public Builder() {}
+
+    /**
+     * Associates the specified range with the specified value.
+     *
+     * @throws IllegalArgumentException if {@code range} is empty
+     */
+    public Builder<K, V> put(Range<K> range, V value) {
+      checkNotNull(range);
+      checkNotNull(value);
+      checkArgument(!range.isEmpty(), "Range must not be empty, but was %s", range);
+      entries.add(Maps.immutableEntry(range, value));
+      return this;
+    }
+
+    /**
+     * Copies all associations from the specified range map into this builder.
+     */
+    public Builder<K, V> putAll(RangeMap<K, ? extends V> rangeMap) {
+      for (Entry<Range<K>, ? extends V> entry : rangeMap.asMapOfRanges().entrySet()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
+    /**
+     * Copies all associations from the specified multimap, such as the {@linkplain
+     * ImmutableRangeMultimap#asMultimapOfRanges multimap view} of another range multimap, into
+     * this builder.
+     *
+     * @throws IllegalArgumentException if any of the ranges in {@code multimap} is empty
+     */
+    public Builder<K, V> putAll(Multimap<Range<K>, ? extends V> multimap) {
+      for (Entry<Range<K>, ? extends V> entry : multimap.entries()) {
+        put(entry.getKey(), entry.getValue());
+      }
+      return this;
+    }
+
+    /**
+     * Returns an {@code ImmutableRangeMultimap} containing the associations previously added to
+     * this builder. Entries with equal ranges keep the order in which they were added.
+     */
+    public ImmutableRangeMultimap<K, V> build() {
+      if (entries.isEmpty()) {
+        return of();
+      }
+      List<Entry<Range<K>, V>> sorted = Lists.newArrayList(entries);
+      // a stable sort, keeping the values of each range in insertion order
+      Collections.sort(sorted, Range.RANGE_LEX_ORDERING.<Range<K>>onKeys());
+      ImmutableList.Builder<Range<K>> rangesBuilder =
+          new ImmutableList.Builder<Range<K>>(sorted.size());
+      ImmutableList.Builder<V> valuesBuilder = new ImmutableList.Builder<V>(sorted.size());
+      for (Entry<Range<K>, V> entry : sorted) {
+        rangesBuilder.add(entry.getKey());
+        valuesBuilder.add(entry.getValue());
+      }
+      return new ImmutableRangeMultimap<K, V>(rangesBuilder.build(), valuesBuilder.build());
+    }
+  }
+
+  // the ranges in ascending order, by lower bound and then by upper bound
+  private final ImmutableList<Range<K>> ranges;
+  private final ImmutableList<V> values;
+
+  /*
+   * A range maximum query structure over the upper bounds of the ranges, which finds the index of
+   * the greatest upper bound in [from, to) in constant time, in linear space. The indices are
+   * split into blocks of 32. inBlockCandidates[i] has a bit set for each index j of the block of
+   * i, up to i, whose upper bound is greater than those at (j, i], so that the lowest of these at
+   * or after from is the maximum in [from, i]. blockMaxima[level][b] is the index of the maximum
+   * in the 2^level blocks starting at block b.
+   */
+  private static final int BLOCK_SHIFT = 5;
+  private static final int BLOCK_MASK = (1 << BLOCK_SHIFT) - 1;
+  private final int[] inBlockCandidates;
+  private final int[][] blockMaxima;
+
+  private ImmutableRangeMultimap(ImmutableList<Range<K>> ranges, ImmutableList<V> values) {
+    this.ranges = ranges;
+    this.values = values;
+    int size = ranges.size();
+    this.inBlockCandidates = new int[size];
+    for (int i = 0; i < size; i++) {
+      int blockStart = i & ~BLOCK_MASK;
+      int candidates = (i == blockStart) ? 0 : inBlockCandidates[i - 1];
+      Cut<K> upper = ranges.get(i).upperBound;
+      while (candidates != 0) {
+        int last = blockStart + (Integer.SIZE - 1) - Integer.numberOfLeadingZeros(candidates);
+        if (ranges.get(last).upperBound.compareTo(upper) > 0) {
+          break;
+        }
+        candidates &= ~Integer.highestOneBit(candidates);
+      }
+      inBlockCandidates[i] = candidates | (1 << (i - blockStart));
+    }
+    int blocks = (size + BLOCK_MASK) >>> BLOCK_SHIFT;
+    int levels = Integer.SIZE - Integer.numberOfLeadingZeros(blocks);
+    this.blockMaxima = new int[levels][];
+    for (int level = 0; level < levels; level++) {
+      int[] maxima = new int[blocks - (1 << level) + 1];
+      for (int b = 0; b < maxima.length; b++) {
+        maxima[b] = (level == 0)
+            ? maxInBlock(b << BLOCK_SHIFT, Math.min((b + 1) << BLOCK_SHIFT, size))
+            : greater(blockMaxima[level - 1][b], blockMaxima[level - 1][b + (1 << (level - 1))]);
+      }
+      blockMaxima[level] = maxima;
+    }
+  }
+
+  /** Returns whichever of the indices {@code i} and {@code j} has the greater upper bound. */
+  private int greater(int i, int j) {
+    return (ranges.get(i).upperBound.compareTo(ranges.get(j).upperBound) >= 0) ? i : j;
+  }
+
+  /** Returns the index of the greatest upper bound in [from, to), which lie in one block. */
+  private int maxInBlock(int from, int to) {
+    int candidates = inBlockCandidates[to - 1] & (-1 << (from & BLOCK_MASK));
+    return (from & ~BLOCK_MASK) + Integer.numberOfTrailingZeros(candidates);
+  }
+
+  /** Returns the index of the greatest upper bound in [from, to), which must not be empty. */
+  private int maxIndex(int from, int to) {
+    int firstBlock = from >>> BLOCK_SHIFT;
+    int lastBlock = (to - 1) >>> BLOCK_SHIFT;
+    if (firstBlock == lastBlock) {
+      return maxInBlock(from, to);
+    }
+    int max = greater(
+        maxInBlock(from, (firstBlock + 1) << BLOCK_SHIFT),
+        maxInBlock(lastBlock << BLOCK_SHIFT, to));
+    int innerBlocks = lastBlock - firstBlock - 1;
+    if (innerBlocks > 0) {
+      int level = (Integer.SIZE - 1) - Integer.numberOfLeadingZeros(innerBlocks);
+      int[] maxima = blockMaxima[level];
+      max = greater(max, greater(maxima[firstBlock + 1], maxima[lastBlock - (1 << level)]));
+    }
+    return max;
+  }
+
+  /**
+   * Adds to {@code valuesBuilder}, or if it is null to {@code entriesBuilder}, the values or the
+   * entries of the ranges which intersect the range from {@code lower} to {@code upper} in a
+   * nonempty range, in ascending order.
+   *
+   * <p>The ranges starting before {@code upper} are a prefix of {@link #ranges}, found by binary
+   * search. Those of them ending after {@code lower} are found by an in-order walk of the
+   * Cartesian tree of the prefix, whose root is the index of its greatest upper bound, and whose
+   * subtrees are those of the indices before and after it: a subtree whose root ends at or before
+   * {@code lower} is skipped whole, so that a query returning {@code k} entries takes
+   * {@code O(log n + k)} time.
+   */
+  private void collect(Cut<K> lower, Cut<K> upper, @Nullable ImmutableList.Builder<V> valuesBuilder,
+      @Nullable ImmutableList.Builder<Entry<Range<K>, V>> entriesBuilder) {
+    int low = 0;
+    int high = ranges.size();
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (ranges.get(mid).lowerBound.compareTo(upper) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    // a stack of the subtrees to walk, each as its root and its end, the root being visited first
+    int[] stack = new int[8];
+    int depth = 0;
+    int from = 0;
+    int to = low;
+    while (true) {
+      while (from < to) {
+        int root = maxIndex(from, to);
+        if (ranges.get(root).upperBound.compareTo(lower) <= 0) {
+          break;
+        }
+        stack = Ints.ensureCapacity(stack, depth + 2, stack.length);
+        stack[depth++] = root;
+        stack[depth++] = to;
+        to = root;
+      }
+      if (depth == 0) {
+        return;
+      }
+      to = stack[--depth];
+      int root = stack[--depth];
+      if (valuesBuilder != null) {
+        valuesBuilder.add(values.get(root));
+      } else {
+        entriesBuilder.add(Maps.immutableEntry(ranges.get(root), values.get(root)));
+      }
+      from = root + 1;
+    }
+  }
+
+  private ImmutableList<Entry<Range<K>, V>> overlapping(Cut<K> lower, Cut<K> upper) {
+    ImmutableList.Builder<Entry<Range<K>, V>> builder = ImmutableList.builder();
+    collect(lower, upper, null, builder);
+    return builder.build();
+  }
+
+  /**
+   * Returns the values associated with the ranges containing {@code key}, in ascending order of
+   * their ranges.
+   */
+  public ImmutableList<V> get(K key) {
+    ImmutableList.Builder<V> builder = ImmutableList.builder();
+    collect(Cut.belowValue(key), Cut.aboveValue(key), builder, null);
+    return builder.build();
+  }
+
+  /**
+   * Returns the entries whose ranges contain {@code key}, in ascending order of their ranges.
+   */
+  public ImmutableList<Entry<Range<K>, V>> getEntries(K key) {
+    return overlapping(Cut.belowValue(key), Cut.aboveValue(key));
+  }
+
+  /**
+   * Returns the entries whose ranges intersect {@code range} in a nonempty range, in ascending
+   * order of their ranges. Ranges which are merely {@linkplain Range#isConnected connected} to
+   * {@code range}, such as {@code [1..2)} and {@code [2..3]}, do not overlap it.
+   */
+  public ImmutableList<Entry<Range<K>, V>> overlapping(Range<K> range) {
+    if (checkNotNull(range).isEmpty()) {
+      return ImmutableList.of();
+    }
+    return overlapping(range.lowerBound, range.upperBound);
+  }
+
+  /**
+   * Returns the minimal range enclosing the ranges in this multimap.
+   *
+   * @throws NoSuchElementException if this multimap is empty
+   */
+  public Range<K> span() {
+    if (ranges.isEmpty()) {
+      throw new NoSuchElementException();
+    }
+    return Range.create(
+        ranges.get(0).lowerBound, ranges.get(maxIndex(0, ranges.size())).upperBound);
+  }
+
+  /**
+   * Returns the number of entries in this multimap.
+   */
+  public int size() {
+    return ranges.size();
+  }
+
+  /**
+   * Returns {@code true} if this multimap contains no entries.
+   */
+  public boolean isEmpty() {
+    return ranges.isEmpty();
+  }
+
+  /**
+   * Returns a view of this range multimap as an {@link ImmutableListMultimap}, whose keys are in
+   * ascending order of their ranges, and whose values are in the order in which they were added.
+   */
+  public ImmutableListMultimap<Range<K>, V> asMultimapOfRanges() {
+    ImmutableListMultimap.Builder<Range<K>, V> builder = ImmutableListMultimap.builder();
+    for (int i = 0; i < ranges.size(); i++) {
+      builder.put(ranges.get(i), values.get(i));
+    }
+    return builder.build();
+  }
+
+  @Override
+  public int hashCode() {
+    return asMultimapOfRanges().hashCode();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object o) {
+    if (o instanceof ImmutableRangeMultimap) {
+      ImmutableRangeMultimap<?, ?> other = (ImmutableRangeMultimap<?, ?>) o;
+      return ranges.equals(other.ranges) && values.equals(other.values);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return asMultimapOfRanges().toString();
+  }
+}
@@ -19,7 +19,9 @@ package com.google.common.collect;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.collect.ObjectArrays.checkElementNotNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.primitives.Ints;
 
@@ -30,7 +32,9 @@ import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
 
@@ -226,6 +230,138 @@ public abstract class ImmutableSet<E> extends ImmutableCollection<E>
     }
   }
 
+  /**
+   * Constructs an {@code ImmutableSet} from the first {@code n} elements of the specified array,
+   * exactly as {@link #construct} does, but computing hash codes and removing duplicates with
+   * tasks run by {@code executor}, at most {@code parallelism} at a time.
+   *
+   * <p>The elements are divided into partitions by the high bits of their smeared hash codes, so
+   * that equal elements always fall in the same partition, and the duplicates in each partition are
+   * found by a separate task. The unique elements are then placed in the table in their original
+   * order, as {@code construct} places them, so the result is the same.
+   */
+  @GwtIncompatible("java.util.concurrent.Executor")
+  private static <E> ImmutableSet<E> constructInParallel(
+      int n, final Object[] elements, Executor executor, int parallelism) {
+    final int tasks = ParallelConstruction.taskCount(n, parallelism);
+    if (tasks == 1) {
+      return construct(n, elements);
+    }
+    final int[] hashes = new int[n];
+    // A power of two at least the number of tasks, so partitions are chosen by the hash's top bits
+    final int partitions = Integer.highestOneBit(tasks - 1) << 1;
+    final int partitionShift = Integer.SIZE - Integer.numberOfTrailingZeros(partitions);
+    final int[] bounds = ParallelConstruction.bounds(n, tasks);
+    final int[][] counts = new int[tasks][partitions];
+    List<Runnable> hashTasks = Lists.newArrayListWithCapacity(tasks);
+    for (int i = 0; i < tasks; i++) {
+      final int task = i;
+      hashTasks.add(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = bounds[task]; j < bounds[task + 1]; j++) {
+            int hash = checkElementNotNull(elements[j], j).hashCode();
+            hashes[j] = hash;
+            counts[task][Hashing.smear(hash) >>> partitionShift]++;
+          }
+        }
+      });
+    }
+    ParallelConstruction.runAll(executor, hashTasks);
+
+    // Lay out the indices of each partition's elements in ascending order, counting-sort style
+    final int[] partitionStarts = new int[partitions + 1];
+    final int[][] offsets = new int[tasks][partitions];
+    int offset = 0;
+    for (int partition = 0; partition < partitions; partition++) {
+      partitionStarts[partition] = offset;
+      for (int task = 0; task < tasks; task++) {
+        offsets[task][partition] = offset;
+        offset += counts[task][partition];
+      }
+    }
+    partitionStarts[partitions] = n;
+    final int[] indices = new int[n];
+    List<Runnable> scatterTasks = Lists.newArrayListWithCapacity(tasks);
+    for (int i = 0; i < tasks; i++) {
+      final int task = i;
+      scatterTasks.add(new Runnable() {
+        @Override
+        public void run() {
+          int[] taskOffsets = offsets[task];
+          for (int j = bounds[task]; j < bounds[task + 1]; j++) {
+            indices[taskOffsets[Hashing.smear(hashes[j]) >>> partitionShift]++] = j;
+          }
+        }
+      });
+    }
+    ParallelConstruction.runAll(executor, scatterTasks);
+
+    final boolean[] duplicates = new boolean[n];
+    List<Runnable> deduplicationTasks = Lists.newArrayListWithCapacity(partitions);
+    for (int i = 0; i < partitions; i++) {
+      final int from = partitionStarts[i];
+      final int to = partitionStarts[i + 1];
+      if (to - from < 2) {
+        continue;
+      }
+      deduplicationTasks.add(new Runnable() {
+        @Override
+        public void run() {
+          // holds one plus the index of each unique element of the partition seen so far
+          int[] table = new int[chooseTableSize(to - from)];
+          int mask = table.length - 1;
+          for (int j = from; j < to; j++) {
+            int index = indices[j];
+            int hash = hashes[index];
+            for (int k = Hashing.smear(hash); ; k++) {
+              int other = table[k & mask] - 1;
+              if (other < 0) {
+                table[k & mask] = index + 1;
+                break;
+              } else if (hashes[other] == hash && elements[other].equals(elements[index])) {
+                duplicates[index] = true;
+                break;
+              }
+            }
+          }
+        }
+      });
+    }
+    ParallelConstruction.runAll(executor, deduplicationTasks);
+
+    int uniques = 0;
+    int hashCode = 0;
+    for (int i = 0; i < n; i++) {
+      if (!duplicates[i]) {
+        hashes[uniques] = hashes[i];
+        elements[uniques++] = elements[i];
+        hashCode += hashes[i];
+      }
+    }
+    Arrays.fill(elements, uniques, n, null);
+    if (uniques == 1) {
+      @SuppressWarnings("unchecked") // we are careful to only pass in E
+      E element = (E) elements[0];
+      return new SingletonImmutableSet<E>(element, hashCode);
+    }
+    // The elements are known to be unique, so each only needs an empty slot
+    int tableSize = chooseTableSize(uniques);
+    Object[] table = new Object[tableSize];
+    int mask = tableSize - 1;
+    for (int i = 0; i < uniques; i++) {
+      int index = Hashing.smear(hashes[i]) & mask;
+      while (table[index] != null) {
+        index = (index + 1) & mask;
+      }
+      table[index] = elements[i];
+    }
+    Object[] uniqueElements = (uniques < elements.length)
+        ? ObjectArrays.arraysCopyOf(elements, uniques)
+        : elements;
+    return new RegularImmutableSet<E>(uniqueElements, hashCode, table, mask);
+  }
+
   // We use power-of-2 tables, and this is the highest int that's a power of 2
   static final int MAX_TABLE_SIZE = Ints.MAX_POWER_OF_TWO;
 
@@ -534,5 +670,29 @@ public abstract class ImmutableSet<E> extends ImmutableCollection<E>
       size = result.size();
       return result;
     }
+
+    /**
+     * Returns a newly-created {@code ImmutableSet} based on the contents of the {@code Builder},
+     * as {@link #build} does, but computing the hash codes of the elements and removing
+     * duplicates with tasks run by {@code executor}, at most {@code parallelism} at a time. This
+     * only pays off for sets of at least tens of thousands of elements; smaller sets are built by
+     * the calling thread.
+     *
+     * <p>The calling thread runs any tasks which {@code executor} has not started by the time all
+     * have been submitted, so the build completes even if {@code executor} is busy, rejects tasks,
+     * or is the pool in which the caller itself is running.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     * @since 17.0
+     */
+    @Beta
+    @GwtIncompatible("java.util.concurrent.Executor")
+    public ImmutableSet<E> buildInParallel(Executor executor, int parallelism) {
+      ParallelConstruction.checkArguments(executor, parallelism);
+      ImmutableSet<E> result = constructInParallel(size, contents, executor, parallelism);
+      // constructInParallel, like construct, dedupes contents
+      size = result.size();
+      return result;
+    }
   }
 }
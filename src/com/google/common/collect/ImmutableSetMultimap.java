@@ -316,6 +316,12 @@ public class ImmutableSetMultimap<K, V>
       }
     }
 
+    if (valueComparator == null) {
+      CompactMultimapMap.SetValues<K, V> map = CompactMultimapMap.SetValues.copyOf(multimap);
+      return new ImmutableSetMultimap<K, V>(map, map.values.length, null);
+    }
+
+    // Sorted value sets are kept as ImmutableSortedSets, to support valueComparator()
     ImmutableMap.Builder<K, ImmutableSet<V>> builder = ImmutableMap.builder();
     int size = 0;
 
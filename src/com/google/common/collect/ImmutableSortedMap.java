@@ -20,15 +20,19 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.Maps.keyOrNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
 
@@ -289,6 +293,42 @@ public abstract class ImmutableSortedMap<K, V>
     return fromSortedEntries(comparator, size, entries);
   }
 
+  /**
+   * Returns a map of the first {@code size} of {@code entries}, as {@link #fromEntries} does when
+   * the entries are not known to be sorted, but copying and sorting the entries, and checking for
+   * duplicate keys, with tasks run by {@code executor}, at most {@code parallelism} at a time.
+   */
+  @GwtIncompatible("java.util.concurrent.Executor")
+  private static <K, V> ImmutableSortedMap<K, V> fromEntriesInParallel(
+      Comparator<? super K> comparator, int size, final Entry<K, V>[] entries, Executor executor,
+      int parallelism) {
+    int tasks = ParallelConstruction.taskCount(size, parallelism);
+    int[] bounds = ParallelConstruction.bounds(size, tasks);
+    List<Runnable> copies = Lists.newArrayListWithCapacity(tasks);
+    for (int i = 0; i < tasks; i++) {
+      final int from = bounds[i];
+      final int to = bounds[i + 1];
+      copies.add(new Runnable() {
+        @Override
+        public void run() {
+          for (int j = from; j < to; j++) {
+            Entry<K, V> entry = entries[j];
+            entries[j] = entryOf(entry.getKey(), entry.getValue());
+          }
+        }
+      });
+    }
+    ParallelConstruction.runAll(executor, copies);
+    Comparator<Entry<K, ?>> entryComparator = Ordering.from(comparator).<K>onKeys();
+    ParallelConstruction.sort(entries, size, entryComparator, executor, parallelism);
+    boolean[] duplicates = ParallelConstruction.markAdjacentDuplicates(
+        entries, size, entryComparator, executor, parallelism);
+    for (int i = 1; i < size; i++) {
+      checkNoConflict(!duplicates[i], "key", entries[i - 1], entries[i]);
+    }
+    return fromSortedEntries(comparator, size, entries);
+  }
+
   private static <K, V> void sortEntries(
       final Comparator<? super K> comparator, int size, Entry<K, V>[] entries) {
     Arrays.sort(entries, 0, size, Ordering.from(comparator).<K>onKeys());
@@ -407,6 +447,27 @@ public abstract class ImmutableSortedMap<K, V>
     @Override public ImmutableSortedMap<K, V> build() {
       return fromEntries(comparator, false, size, entries);
     }
+
+    /**
+     * Returns a newly-created immutable sorted map, as {@link #build} does, but sorting the
+     * entries and checking for duplicate keys with tasks run by {@code executor}, at most {@code
+     * parallelism} at a time. This only pays off for maps of at least tens of thousands of
+     * entries; smaller maps are built by the calling thread.
+     *
+     * <p>The calling thread runs any tasks which {@code executor} has not started by the time all
+     * have been submitted, so the build completes even if {@code executor} is busy, rejects tasks,
+     * or is the pool in which the caller itself is running.
+     *
+     * @throws IllegalArgumentException if any two keys are equal according to the comparator
+     *     (which might be the keys' natural order), or if {@code parallelism} is not positive
+     * @since 17.0
+     */
+    @Beta
+    @GwtIncompatible("java.util.concurrent.Executor")
+    public ImmutableSortedMap<K, V> buildInParallel(Executor executor, int parallelism) {
+      ParallelConstruction.checkArguments(executor, parallelism);
+      return fromEntriesInParallel(comparator, size, entries, executor, parallelism);
+    }
   }
 
   ImmutableSortedMap() {
@@ -20,6 +20,7 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.collect.ObjectArrays.checkElementsNotNull;
 
+import com.google.common.annotations.Beta;
 import com.google.common.annotations.GwtCompatible;
 import com.google.common.annotations.GwtIncompatible;
 
@@ -33,6 +34,7 @@ import java.util.Comparator;
 import java.util.Iterator;
 import java.util.NavigableSet;
 import java.util.SortedSet;
+import java.util.concurrent.Executor;
 
 import javax.annotation.Nullable;
 
@@ -439,6 +441,32 @@ public abstract class ImmutableSortedSet<E> extends ImmutableSortedSetFauxveride
         ImmutableList.<E>asImmutableList(contents, uniques), comparator);
   }
 
+  /**
+   * Constructs an {@code ImmutableSortedSet} from the first {@code n} elements of {@code contents},
+   * exactly as {@link #construct} does, but sorting them and finding duplicates with tasks run by
+   * {@code executor}, at most {@code parallelism} at a time.
+   */
+  @GwtIncompatible("java.util.concurrent.Executor")
+  static <E> ImmutableSortedSet<E> constructInParallel(Comparator<? super E> comparator, int n,
+      E[] contents, Executor executor, int parallelism) {
+    if (n == 0) {
+      return emptySet(comparator);
+    }
+    checkElementsNotNull(contents, n);
+    ParallelConstruction.sort(contents, n, comparator, executor, parallelism);
+    boolean[] duplicates =
+        ParallelConstruction.markAdjacentDuplicates(contents, n, comparator, executor, parallelism);
+    int uniques = 0;
+    for (int i = 0; i < n; i++) {
+      if (!duplicates[i]) {
+        contents[uniques++] = contents[i];
+      }
+    }
+    Arrays.fill(contents, uniques, n, null);
+    return new RegularImmutableSortedSet<E>(
+        ImmutableList.<E>asImmutableList(contents, uniques), comparator);
+  }
+
   /**
    * Returns a builder that creates immutable sorted sets with an explicit
    * comparator. If the comparator has a more general type than the set being
@@ -563,6 +591,27 @@ public abstract class ImmutableSortedSet<E> extends ImmutableSortedSetFauxveride
       this.size = result.size(); // we eliminated duplicates in-place in contentsArray
       return result;
     }
+
+    /**
+     * Returns a newly-created {@code ImmutableSortedSet} based on the contents of the {@code
+     * Builder} and its comparator, as {@link #build} does, but sorting the elements and removing
+     * duplicates with tasks run by {@code executor}, at most {@code parallelism} at a time. The
+     * elements are sorted in ranges, which are then merged in pairs.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     * @since 17.0
+     */
+    @Beta
+    @GwtIncompatible("java.util.concurrent.Executor")
+    @Override public ImmutableSortedSet<E> buildInParallel(Executor executor, int parallelism) {
+      ParallelConstruction.checkArguments(executor, parallelism);
+      @SuppressWarnings("unchecked") // we're careful to put only E's in here
+      E[] contentsArray = (E[]) contents;
+      ImmutableSortedSet<E> result =
+          constructInParallel(comparator, size, contentsArray, executor, parallelism);
+      this.size = result.size(); // we eliminated duplicates in-place in contentsArray
+      return result;
+    }
   }
 
   int unsafeCompare(Object a, Object b) {
@@ -0,0 +1,543 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.CollectPreconditions.checkNonnegative;
+import static com.google.common.collect.CollectPreconditions.checkRemove;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+/**
+ * A multimap with {@code long} keys, like a {@link HashMultimap} of {@code Long} keys, which
+ * stores its keys in a primitive array without boxing. The values of each key are held in a hash
+ * set, so a key can't be mapped to the same value twice, and null values are permitted.
+ *
+ * <p>The table of keys is open-addressed, with linear probing. Removing the last value of a key
+ * leaves a marker in its place, which is cleared when the table is next rebuilt. The keys are
+ * iterated, without boxing, with a {@link KeyCursor}.
+ *
+ * <p>This class is not thread-safe. Its cursors are fail-fast: they throw a {@link
+ * ConcurrentModificationException} if a key is added to the multimap, or the multimap is cleared.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public final class LongHashMultimap<V> implements Serializable {
+  /** The maximum ratio of used slots, whether holding a key or a marker, to all slots. */
+  private static final double MAX_LOAD_FACTOR = 0.6;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  private static final int DEFAULT_VALUES_PER_KEY = 2;
+
+  /** The value set of a slot whose key has been removed. */
+  private static final Set<Object> REMOVED = Collections.emptySet();
+
+  /** The keys; each is meaningful only where the corresponding value set is a nonempty set. */
+  private transient long[] keys;
+
+  /**
+   * The value sets of the keys; {@code null} for slots which have never held a key, and {@link
+   * #REMOVED} for those whose key has been removed.
+   */
+  private transient Set<V>[] valueSets;
+
+  private transient int keyCount;
+
+  /** The number of slots whose value set is not {@code null}. */
+  private transient int usedSlots;
+
+  private transient int size;
+
+  /** The number of times a key has been added to the table, or the table cleared. */
+  private transient int modCount;
+
+  transient int expectedValuesPerKey;
+
+  /**
+   * Creates a new, empty {@code LongHashMultimap} with the default initial capacities.
+   */
+  public static <V> LongHashMultimap<V> create() {
+    return new LongHashMultimap<V>(DEFAULT_CAPACITY, DEFAULT_VALUES_PER_KEY);
+  }
+
+  /**
+   * Constructs an empty {@code LongHashMultimap} with enough capacity to hold the specified
+   * numbers of keys and values without rehashing.
+   *
+   * @param expectedKeys the expected number of distinct keys
+   * @param expectedValuesPerKey the expected average number of values per key
+   * @throws IllegalArgumentException if {@code expectedKeys} or {@code expectedValuesPerKey} is
+   *     negative
+   */
+  public static <V> LongHashMultimap<V> create(int expectedKeys, int expectedValuesPerKey) {
+    checkNonnegative(expectedKeys, "expectedKeys");
+    checkNonnegative(expectedValuesPerKey, "expectedValuesPerKey");
+    return new LongHashMultimap<V>(
+        Hashing.openTableSize(expectedKeys, MAX_LOAD_FACTOR), expectedValuesPerKey);
+  }
+
+  private LongHashMultimap(int capacity, int expectedValuesPerKey) {
+    this.expectedValuesPerKey = expectedValuesPerKey;
+    allocate(capacity);
+  }
+
+  @SuppressWarnings("unchecked") // generic array creation
+  private void allocate(int capacity) {
+    keys = new long[capacity];
+    valueSets = (Set<V>[]) new Set<?>[capacity];
+  }
+
+  /**
+   * Stores a key-value pair in this multimap.
+   *
+   * @return {@code true} if the multimap changed, which it does unless it already contained the
+   *     pair
+   */
+  public boolean put(long key, @Nullable V value) {
+    int index = find(key);
+    if (index >= 0) {
+      if (!valueSets[index].add(value)) {
+        return false;
+      }
+    } else {
+      Set<V> values = Sets.newHashSetWithExpectedSize(expectedValuesPerKey);
+      values.add(value);
+      insert(key, values, -1 - index);
+    }
+    size++;
+    return true;
+  }
+
+  /**
+   * Stores a key-value pair in this multimap for each of {@code values}, all using the same key.
+   *
+   * @return {@code true} if the multimap changed
+   */
+  public boolean putAll(long key, Iterable<? extends V> values) {
+    boolean changed = false;
+    for (V value : values) {
+      changed |= put(key, value);
+    }
+    return changed;
+  }
+
+  /**
+   * Returns a view of the values associated with {@code key}, which is empty if there are none.
+   * The view is unmodifiable, and reflects later changes to the values of {@code key}, including
+   * the addition of values to a key which was absent.
+   */
+  public Set<V> get(final long key) {
+    return new AbstractSet<V>() {
+      @Override
+      public Iterator<V> iterator() {
+        int index = indexOf(key);
+        return (index >= 0)
+            ? Iterators.unmodifiableIterator(valueSets[index].iterator())
+            : Iterators.<V>emptyIterator();
+      }
+
+      @Override
+      public int size() {
+        int index = indexOf(key);
+        return (index >= 0) ? valueSets[index].size() : 0;
+      }
+
+      @Override
+      public boolean contains(@Nullable Object value) {
+        return containsEntry(key, value);
+      }
+    };
+  }
+
+  /**
+   * Returns {@code true} if this multimap contains at least one key-value pair with the key
+   * {@code key}.
+   */
+  public boolean containsKey(long key) {
+    return indexOf(key) >= 0;
+  }
+
+  /**
+   * Returns {@code true} if this multimap contains at least one key-value pair with the key
+   * {@code key} and the value {@code value}.
+   */
+  public boolean containsEntry(long key, @Nullable Object value) {
+    int index = indexOf(key);
+    return (index >= 0) && valueSets[index].contains(value);
+  }
+
+  /**
+   * Removes a single key-value pair with the key {@code key} and the value {@code value} from this
+   * multimap, if such exists.
+   *
+   * @return {@code true} if the multimap changed
+   */
+  public boolean remove(long key, @Nullable Object value) {
+    int index = indexOf(key);
+    if (index < 0 || !valueSets[index].remove(value)) {
+      return false;
+    }
+    size--;
+    if (valueSets[index].isEmpty()) {
+      removeAt(index);
+    }
+    return true;
+  }
+
+  /**
+   * Removes all values associated with the key {@code key}.
+   *
+   * @return the values that were removed, which may be modified, and no longer affect the
+   *     multimap; or an empty set if there were none
+   */
+  public Set<V> removeAll(long key) {
+    int index = indexOf(key);
+    if (index < 0) {
+      return Sets.newHashSet();
+    }
+    Set<V> values = valueSets[index];
+    removeAt(index);
+    return values;
+  }
+
+  /**
+   * Returns the number of key-value pairs in this multimap.
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns the number of distinct keys in this multimap.
+   */
+  public int keyCount() {
+    return keyCount;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /**
+   * Removes all key-value pairs from this multimap. The capacity of the table of keys is retained.
+   */
+  public void clear() {
+    Arrays.fill(valueSets, null);
+    keyCount = 0;
+    usedSlots = 0;
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns a new cursor positioned before the first distinct key of this multimap. The keys are
+   * visited in no particular order.
+   */
+  public KeyCursor keyCursor() {
+    return new KeyCursor();
+  }
+
+  /**
+   * A cursor over the distinct keys of a {@link LongHashMultimap}, which unlike an {@link
+   * Iterator} does not box.
+   *
+   * @since 17.0
+   */
+  @Beta
+  public final class KeyCursor {
+    private int index = -1;
+    private int expectedModCount = modCount;
+    private boolean hasCurrent;
+
+    KeyCursor() {}
+
+    /**
+     * Moves to the next distinct key, and returns {@code true}, or returns {@code false} if there
+     * are no more keys.
+     *
+     * @throws ConcurrentModificationException if a key was added to the multimap since this
+     *     cursor was created
+     */
+    public boolean advance() {
+      checkForComodification();
+      hasCurrent = false;
+      while (++index < valueSets.length) {
+        if (isPresent(valueSets[index])) {
+          hasCurrent = true;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns the current key.
+     *
+     * @throws IllegalStateException if {@link #advance} has not returned {@code true} since it was
+     *     last called, or since the current key was removed
+     */
+    public long key() {
+      checkCurrent();
+      return keys[index];
+    }
+
+    /**
+     * Returns the values of the current key, as {@link LongHashMultimap#get} would.
+     *
+     * @throws IllegalStateException if there is no current key
+     */
+    public Set<V> values() {
+      return get(key());
+    }
+
+    /**
+     * Removes the current key, and all of its values, from the multimap.
+     *
+     * @throws IllegalStateException if there is no current key
+     */
+    public void remove() {
+      checkRemove(hasCurrent);
+      checkForComodification();
+      removeAt(index);
+      hasCurrent = false;
+    }
+
+    private void checkCurrent() {
+      checkForComodification();
+      checkState(hasCurrent, "no current key");
+      // The values may have been removed through the multimap rather than this cursor
+      checkState(isPresent(valueSets[index]), "current key was removed");
+    }
+
+    private void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is a {@code LongHashMultimap} with the same key-value
+   * pairs as this one.
+   */
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof LongHashMultimap) {
+      LongHashMultimap<?> that = (LongHashMultimap<?>) object;
+      if (size != that.size || keyCount != that.keyCount) {
+        return false;
+      }
+      for (int i = 0; i < valueSets.length; i++) {
+        if (isPresent(valueSets[i])) {
+          int index = that.indexOf(keys[i]);
+          if (index < 0 || !valueSets[i].equals(that.valueSets[index])) {
+            return false;
+          }
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the hash code which a {@link SetMultimap} with the same key-value pairs, and keys of
+   * type {@code Long}, would return.
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = 0;
+    for (int i = 0; i < valueSets.length; i++) {
+      if (isPresent(valueSets[i])) {
+        hashCode += Longs.hashCode(keys[i]) ^ valueSets[i].hashCode();
+      }
+    }
+    return hashCode;
+  }
+
+  /**
+   * Returns a string representation of this multimap, in the format of {@link Multimap}.
+   */
+  @Override
+  public String toString() {
+    StringBuilder builder = Collections2.newStringBuilderForCollection(keyCount).append('{');
+    boolean first = true;
+    for (int i = 0; i < valueSets.length; i++) {
+      if (isPresent(valueSets[i])) {
+        if (!first) {
+          builder.append(", ");
+        }
+        first = false;
+        builder.append(keys[i]).append('=').append(valueSets[i]);
+      }
+    }
+    return builder.append('}').toString();
+  }
+
+  private static boolean isPresent(@Nullable Set<?> values) {
+    return values != null && values != REMOVED;
+  }
+
+  /** Returns the index of {@code key}, or -1 if it is absent. */
+  private int indexOf(long key) {
+    int mask = valueSets.length - 1;
+    for (int i = Hashing.smear(Longs.hashCode(key)) & mask; ; i = (i + 1) & mask) {
+      Set<V> values = valueSets[i];
+      if (values == null) {
+        return -1;
+      } else if (values != REMOVED && keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of {@code key}, or if it is absent, {@code -1 - i} where {@code i} is the
+   * index at which it should be inserted.
+   */
+  private int find(long key) {
+    int mask = valueSets.length - 1;
+    int firstRemoved = -1;
+    for (int i = Hashing.smear(Longs.hashCode(key)) & mask; ; i = (i + 1) & mask) {
+      Set<V> values = valueSets[i];
+      if (values == null) {
+        return -1 - ((firstRemoved >= 0) ? firstRemoved : i);
+      } else if (values == REMOVED) {
+        if (firstRemoved < 0) {
+          firstRemoved = i;
+        }
+      } else if (keys[i] == key) {
+        return i;
+      }
+    }
+  }
+
+  private void insert(long key, Set<V> values, int index) {
+    if (valueSets[index] == null) {
+      if (usedSlots + 1 > Hashing.maxUsedSlots(valueSets.length, MAX_LOAD_FACTOR)) {
+        rebuild();
+        index = -1 - find(key);
+      }
+      usedSlots++;
+    }
+    keys[index] = key;
+    valueSets[index] = values;
+    keyCount++;
+    modCount++;
+  }
+
+  @SuppressWarnings("unchecked") // REMOVED is never read as a Set<V>
+  private void removeAt(int index) {
+    size -= valueSets[index].size();
+    valueSets[index] = (Set<V>) (Set<?>) REMOVED;
+    keyCount--;
+  }
+
+  /**
+   * Copies the keys into a new table without removal markers, which is twice the size of the
+   * current one if the keys alone fill more than half of the slots which may be used.
+   */
+  private void rebuild() {
+    long[] oldKeys = keys;
+    Set<V>[] oldValueSets = valueSets;
+    int capacity = oldValueSets.length;
+    int maxUsedSlots = Hashing.maxUsedSlots(capacity, MAX_LOAD_FACTOR);
+    if (keyCount + 1 > maxUsedSlots / 2 && capacity < Ints.MAX_POWER_OF_TWO) {
+      capacity <<= 1;
+    } else if (keyCount + 1 > maxUsedSlots) {
+      throw new IllegalStateException("too many keys: " + keyCount);
+    }
+    allocate(capacity);
+    int mask = capacity - 1;
+    for (int i = 0; i < oldValueSets.length; i++) {
+      if (isPresent(oldValueSets[i])) {
+        int j = Hashing.smear(Longs.hashCode(oldKeys[i])) & mask;
+        while (valueSets[j] != null) {
+          j = (j + 1) & mask;
+        }
+        keys[j] = oldKeys[i];
+        valueSets[j] = oldValueSets[i];
+      }
+    }
+    usedSlots = keyCount;
+    modCount++;
+  }
+
+  /**
+   * @serialData expectedValuesPerKey, the number of distinct keys, and then for each distinct
+   *     key: the key, the number of values for that key, and the key's values
+   */
+  @GwtIncompatible("java.io.ObjectOutputStream")
+  private void writeObject(ObjectOutputStream stream) throws IOException {
+    stream.defaultWriteObject();
+    stream.writeInt(expectedValuesPerKey);
+    stream.writeInt(keyCount);
+    for (int i = 0; i < valueSets.length; i++) {
+      if (isPresent(valueSets[i])) {
+        stream.writeLong(keys[i]);
+        stream.writeInt(valueSets[i].size());
+        for (V value : valueSets[i]) {
+          stream.writeObject(value);
+        }
+      }
+    }
+  }
+
+  @GwtIncompatible("java.io.ObjectInputStream")
+  private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+    stream.defaultReadObject();
+    expectedValuesPerKey = Serialization.readCount(stream);
+    int keyCount = Serialization.readCount(stream);
+    allocate(Hashing.openTableSize(keyCount, MAX_LOAD_FACTOR));
+    for (int i = 0; i < keyCount; i++) {
+      long key = stream.readLong();
+      int valueCount = stream.readInt();
+      checkArgument(valueCount > 0, "Invalid value count %s", valueCount);
+      for (int j = 0; j < valueCount; j++) {
+        @SuppressWarnings("unchecked") // reading data stored by writeObject
+        V value = (V) stream.readObject();
+        put(key, value);
+      }
+    }
+  }
+
+  private static final long serialVersionUID = 0;
+}
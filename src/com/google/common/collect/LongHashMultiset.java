@@ -0,0 +1,624 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static com.google.common.collect.CollectPreconditions.checkNonnegative;
+import static com.google.common.collect.CollectPreconditions.checkRemove;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * A multiset of {@code long} values which stores its elements and their counts in two primitive
+ * arrays, without boxing. Where a {@link HashMultiset} of {@code Long} uses several objects and
+ * over 40 bytes for each distinct element, this class uses 12 bytes for each slot of its table,
+ * which is kept between 30% and 60% full.
+ *
+ * <p>Elements are counted with {@link #add(long, int)}, {@link #count(long)} and the other
+ * methods which take a {@code long}, and are iterated with an {@link EntryCursor}, none of which
+ * box. Where a {@link Multiset} is needed, {@link #asMultiset} returns a view of this multiset,
+ * which boxes.
+ *
+ * <p>The table is open-addressed, with linear probing. Removing all occurrences of an element
+ * leaves a marker in its place, which is cleared when the table is next rebuilt.
+ *
+ * <p>This class is not thread-safe. Its cursors are fail-fast: they throw a {@link
+ * ConcurrentModificationException} if an element is added to the multiset, other than by
+ * increasing the count of an element which is present, or the multiset is cleared.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public final class LongHashMultiset implements Serializable {
+  /** The maximum ratio of used slots, whether holding an element or a marker, to all slots. */
+  private static final double MAX_LOAD_FACTOR = 0.6;
+
+  private static final int DEFAULT_CAPACITY = 16;
+
+  /** The count of a slot which has never held an element. */
+  private static final int EMPTY = 0;
+
+  /** The count of a slot whose element has been removed. */
+  private static final int REMOVED = -1;
+
+  /** The elements; each is meaningful only where the corresponding count is positive. */
+  private transient long[] elements;
+
+  /** The counts of the elements, or {@link #EMPTY} or {@link #REMOVED}. */
+  private transient int[] counts;
+
+  private transient int distinctElements;
+
+  /** The number of slots which are not {@link #EMPTY}. */
+  private transient int usedSlots;
+
+  private transient long size;
+
+  /** The number of times an element has been added to the table, or the table cleared. */
+  private transient int modCount;
+
+  private transient Multiset<Long> asMultiset;
+
+  /**
+   * Creates a new, empty {@code LongHashMultiset} using the default initial capacity.
+   */
+  public static LongHashMultiset create() {
+    return new LongHashMultiset(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Creates a new, empty {@code LongHashMultiset} with the specified expected number of distinct
+   * elements.
+   *
+   * @param distinctElements the expected number of distinct elements
+   * @throws IllegalArgumentException if {@code distinctElements} is negative
+   */
+  public static LongHashMultiset create(int distinctElements) {
+    checkNonnegative(distinctElements, "distinctElements");
+    return new LongHashMultiset(Hashing.openTableSize(distinctElements, MAX_LOAD_FACTOR));
+  }
+
+  /**
+   * Creates a new {@code LongHashMultiset} containing the specified elements.
+   */
+  public static LongHashMultiset create(long... elements) {
+    LongHashMultiset multiset = create(elements.length);
+    for (long element : elements) {
+      multiset.add(element, 1);
+    }
+    return multiset;
+  }
+
+  private LongHashMultiset(int capacity) {
+    elements = new long[capacity];
+    counts = new int[capacity];
+  }
+
+  /**
+   * Returns the number of occurrences of {@code element} in this multiset.
+   */
+  public int count(long element) {
+    int index = indexOf(element);
+    return (index >= 0) ? counts[index] : 0;
+  }
+
+  /**
+   * Returns {@code true} if this multiset contains at least one occurrence of {@code element}.
+   */
+  public boolean contains(long element) {
+    return indexOf(element) >= 0;
+  }
+
+  /**
+   * Adds a single occurrence of {@code element} to this multiset.
+   *
+   * @return {@code true} always, as {@link Multiset#add(Object)} does
+   * @throws IllegalArgumentException if this multiset already contains {@link Integer#MAX_VALUE}
+   *     occurrences of {@code element}
+   */
+  public boolean add(long element) {
+    add(element, 1);
+    return true;
+  }
+
+  /**
+   * Adds a number of occurrences of {@code element} to this multiset.
+   *
+   * @param occurrences the number of occurrences to add; may be zero, in which case no change
+   *     is made
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code occurrences} is negative, or if the count of
+   *     {@code element} would exceed {@link Integer#MAX_VALUE}
+   */
+  public int add(long element, int occurrences) {
+    checkArgument(occurrences >= 0, "occurrences cannot be negative: %s", occurrences);
+    int index = find(element);
+    if (index >= 0) {
+      int oldCount = counts[index];
+      long newCount = (long) oldCount + occurrences;
+      checkArgument(newCount <= Integer.MAX_VALUE, "too many occurrences: %s", newCount);
+      counts[index] = (int) newCount;
+      size += occurrences;
+      return oldCount;
+    }
+    if (occurrences > 0) {
+      insert(element, occurrences, -1 - index);
+    }
+    return 0;
+  }
+
+  /**
+   * Removes a single occurrence of {@code element} from this multiset, if present.
+   *
+   * @return {@code true} if an occurrence was found and removed
+   */
+  public boolean remove(long element) {
+    return remove(element, 1) > 0;
+  }
+
+  /**
+   * Removes a number of occurrences of {@code element} from this multiset. If this multiset
+   * contains fewer than {@code occurrences} occurrences, all of them are removed.
+   *
+   * @param occurrences the number of occurrences to remove; may be zero, in which case no change
+   *     is made
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code occurrences} is negative
+   */
+  public int remove(long element, int occurrences) {
+    checkArgument(occurrences >= 0, "occurrences cannot be negative: %s", occurrences);
+    int index = indexOf(element);
+    if (index < 0) {
+      return 0;
+    }
+    int oldCount = counts[index];
+    if (occurrences >= oldCount) {
+      removeAt(index);
+    } else {
+      counts[index] = oldCount - occurrences;
+      size -= occurrences;
+    }
+    return oldCount;
+  }
+
+  /**
+   * Adds or removes occurrences of {@code element} so that its count becomes {@code count}.
+   *
+   * @return the count of {@code element} before the operation
+   * @throws IllegalArgumentException if {@code count} is negative
+   */
+  public int setCount(long element, int count) {
+    checkNonnegative(count, "count");
+    int index = find(element);
+    if (index < 0) {
+      if (count > 0) {
+        insert(element, count, -1 - index);
+      }
+      return 0;
+    }
+    int oldCount = counts[index];
+    if (count == 0) {
+      removeAt(index);
+    } else {
+      counts[index] = count;
+      size += count - oldCount;
+    }
+    return oldCount;
+  }
+
+  /**
+   * Returns the total number of occurrences of all elements in this multiset, or {@link
+   * Integer#MAX_VALUE} if there are more.
+   */
+  public int size() {
+    return Ints.saturatedCast(size);
+  }
+
+  /**
+   * Returns the number of distinct elements in this multiset.
+   */
+  public int distinctElements() {
+    return distinctElements;
+  }
+
+  public boolean isEmpty() {
+    return distinctElements == 0;
+  }
+
+  /**
+   * Removes all elements from this multiset. The capacity of the multiset is retained.
+   */
+  public void clear() {
+    Arrays.fill(counts, EMPTY);
+    distinctElements = 0;
+    usedSlots = 0;
+    size = 0;
+    modCount++;
+  }
+
+  /**
+   * Returns a new cursor positioned before the first distinct element of this multiset. The
+   * elements are visited in no particular order.
+   */
+  public EntryCursor entryCursor() {
+    return new EntryCursor();
+  }
+
+  /**
+   * A cursor over the distinct elements of a {@link LongHashMultiset} and their counts, which
+   * unlike an {@link Iterator} does not box.
+   *
+   * @since 17.0
+   */
+  @Beta
+  public final class EntryCursor {
+    private int index = -1;
+    private int expectedModCount = modCount;
+    private boolean canRemove;
+
+    EntryCursor() {}
+
+    /**
+     * Moves to the next distinct element, and returns {@code true}, or returns {@code false} if
+     * there are no more elements.
+     *
+     * @throws ConcurrentModificationException if an element was added to the multiset other than
+     *     through this cursor
+     */
+    public boolean advance() {
+      checkForComodification();
+      canRemove = false;
+      while (++index < counts.length) {
+        if (counts[index] > 0) {
+          canRemove = true;
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Returns the current element.
+     *
+     * @throws IllegalStateException if {@link #advance} has not returned {@code true} since it was
+     *     last called, or since the current element was removed
+     */
+    public long element() {
+      checkCurrent();
+      return elements[index];
+    }
+
+    /**
+     * Returns the count of the current element.
+     *
+     * @throws IllegalStateException if there is no current element
+     */
+    public int count() {
+      checkCurrent();
+      return counts[index];
+    }
+
+    /**
+     * Sets the count of the current element, which must be positive.
+     *
+     * @return the previous count of the current element
+     * @throws IllegalArgumentException if {@code count} is not positive
+     * @throws IllegalStateException if there is no current element
+     */
+    public int setCount(int count) {
+      checkArgument(count > 0, "count must be positive: %s", count);
+      checkCurrent();
+      int oldCount = counts[index];
+      counts[index] = count;
+      size += count - oldCount;
+      return oldCount;
+    }
+
+    /**
+     * Removes all occurrences of the current element from the multiset.
+     *
+     * @throws IllegalStateException if there is no current element
+     */
+    public void remove() {
+      checkRemove(canRemove);
+      checkForComodification();
+      removeAt(index);
+      canRemove = false;
+    }
+
+    private void checkCurrent() {
+      checkForComodification();
+      checkState(canRemove, "no current element");
+    }
+
+    private void checkForComodification() {
+      if (modCount != expectedModCount) {
+        throw new ConcurrentModificationException();
+      }
+    }
+  }
+
+  /**
+   * Returns a view of this multiset as a {@code Multiset<Long>}, which supports every optional
+   * operation except the addition of null elements. Changes to either are reflected in the other.
+   * The view boxes its elements, so should be avoided where performance matters.
+   */
+  public Multiset<Long> asMultiset() {
+    Multiset<Long> result = asMultiset;
+    return (result == null) ? asMultiset = new MultisetView() : result;
+  }
+
+  private final class MultisetView extends AbstractMultiset<Long> {
+    @Override
+    public int count(@Nullable Object element) {
+      return (element instanceof Long) ? LongHashMultiset.this.count((Long) element) : 0;
+    }
+
+    @Override
+    public int add(@Nullable Long element, int occurrences) {
+      return LongHashMultiset.this.add(checkNotNull(element), occurrences);
+    }
+
+    @Override
+    public int remove(@Nullable Object element, int occurrences) {
+      checkNonnegative(occurrences, "occurrences");
+      return (element instanceof Long)
+          ? LongHashMultiset.this.remove((Long) element, occurrences)
+          : 0;
+    }
+
+    @Override
+    public int setCount(@Nullable Long element, int count) {
+      return LongHashMultiset.this.setCount(checkNotNull(element), count);
+    }
+
+    @Override
+    public int size() {
+      return LongHashMultiset.this.size();
+    }
+
+    @Override
+    public void clear() {
+      LongHashMultiset.this.clear();
+    }
+
+    @Override
+    int distinctElements() {
+      return distinctElements;
+    }
+
+    @Override
+    Iterator<Entry<Long>> entryIterator() {
+      final EntryCursor cursor = entryCursor();
+      return new Iterator<Entry<Long>>() {
+        boolean hasNext;
+        boolean advanced;
+        boolean canRemove;
+        long last;
+
+        @Override
+        public boolean hasNext() {
+          if (!advanced) {
+            hasNext = cursor.advance();
+            advanced = true;
+          }
+          return hasNext;
+        }
+
+        @Override
+        public Entry<Long> next() {
+          if (!hasNext()) {
+            throw new NoSuchElementException();
+          }
+          advanced = false;
+          canRemove = true;
+          last = cursor.element();
+          return Multisets.immutableEntry(last, cursor.count());
+        }
+
+        @Override
+        public void remove() {
+          checkRemove(canRemove);
+          // Removal leaves a marker in place, so doesn't disturb the cursor even if it has moved on
+          LongHashMultiset.this.setCount(last, 0);
+          canRemove = false;
+        }
+      };
+    }
+  }
+
+  /**
+   * Returns {@code true} if {@code object} is a {@code LongHashMultiset} with the same counts as
+   * this one.
+   */
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof LongHashMultiset) {
+      LongHashMultiset that = (LongHashMultiset) object;
+      if (size != that.size || distinctElements != that.distinctElements) {
+        return false;
+      }
+      for (int i = 0; i < counts.length; i++) {
+        if (counts[i] > 0 && that.count(elements[i]) != counts[i]) {
+          return false;
+        }
+      }
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Returns the hash code which {@link #asMultiset} would return.
+   */
+  @Override
+  public int hashCode() {
+    int hashCode = 0;
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        hashCode += Longs.hashCode(elements[i]) ^ counts[i];
+      }
+    }
+    return hashCode;
+  }
+
+  /**
+   * Returns a string representation of this multiset, in the format of {@link #asMultiset}.
+   */
+  @Override
+  public String toString() {
+    return asMultiset().toString();
+  }
+
+  /** Returns the index of {@code element}, or -1 if it is absent. */
+  private int indexOf(long element) {
+    int mask = counts.length - 1;
+    for (int i = Hashing.smear(Longs.hashCode(element)) & mask; ; i = (i + 1) & mask) {
+      int count = counts[i];
+      if (count == EMPTY) {
+        return -1;
+      } else if (count != REMOVED && elements[i] == element) {
+        return i;
+      }
+    }
+  }
+
+  /**
+   * Returns the index of {@code element}, or if it is absent, {@code -1 - i} where {@code i} is
+   * the index at which it should be inserted.
+   */
+  private int find(long element) {
+    int mask = counts.length - 1;
+    int firstRemoved = -1;
+    for (int i = Hashing.smear(Longs.hashCode(element)) & mask; ; i = (i + 1) & mask) {
+      int count = counts[i];
+      if (count == EMPTY) {
+        return -1 - ((firstRemoved >= 0) ? firstRemoved : i);
+      } else if (count == REMOVED) {
+        if (firstRemoved < 0) {
+          firstRemoved = i;
+        }
+      } else if (elements[i] == element) {
+        return i;
+      }
+    }
+  }
+
+  private void insert(long element, int count, int index) {
+    if (counts[index] == EMPTY) {
+      if (usedSlots + 1 > Hashing.maxUsedSlots(counts.length, MAX_LOAD_FACTOR)) {
+        rebuild();
+        index = -1 - find(element);
+      }
+      usedSlots++;
+    }
+    elements[index] = element;
+    counts[index] = count;
+    distinctElements++;
+    size += count;
+    modCount++;
+  }
+
+  private void removeAt(int index) {
+    size -= counts[index];
+    counts[index] = REMOVED;
+    distinctElements--;
+  }
+
+  /**
+   * Copies the elements into a new table without removal markers, which is twice the size of the
+   * current one if the elements alone fill more than half of the slots which may be used.
+   */
+  private void rebuild() {
+    long[] oldElements = elements;
+    int[] oldCounts = counts;
+    int capacity = oldCounts.length;
+    int maxUsedSlots = Hashing.maxUsedSlots(capacity, MAX_LOAD_FACTOR);
+    if (distinctElements + 1 > maxUsedSlots / 2 && capacity < Ints.MAX_POWER_OF_TWO) {
+      capacity <<= 1;
+    } else if (distinctElements + 1 > maxUsedSlots) {
+      throw new IllegalStateException("too many distinct elements: " + distinctElements);
+    }
+    elements = new long[capacity];
+    counts = new int[capacity];
+    int mask = capacity - 1;
+    for (int i = 0; i < oldCounts.length; i++) {
+      if (oldCounts[i] > 0) {
+        int j = Hashing.smear(Longs.hashCode(oldElements[i])) & mask;
+        while (counts[j] != EMPTY) {
+          j = (j + 1) & mask;
+        }
+        elements[j] = oldElements[i];
+        counts[j] = oldCounts[i];
+      }
+    }
+    usedSlots = distinctElements;
+    modCount++;
+  }
+
+  /**
+   * @serialData the number of distinct elements, the first element, its count, the second
+   *     element, its count, and so on
+   */
+  @GwtIncompatible("java.io.ObjectOutputStream")
+  private void writeObject(ObjectOutputStream stream) throws IOException {
+    stream.defaultWriteObject();
+    stream.writeInt(distinctElements);
+    for (int i = 0; i < counts.length; i++) {
+      if (counts[i] > 0) {
+        stream.writeLong(elements[i]);
+        stream.writeInt(counts[i]);
+      }
+    }
+  }
+
+  @GwtIncompatible("java.io.ObjectInputStream")
+  private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+    stream.defaultReadObject();
+    int distinctElements = Serialization.readCount(stream);
+    int capacity = Hashing.openTableSize(distinctElements, MAX_LOAD_FACTOR);
+    elements = new long[capacity];
+    counts = new int[capacity];
+    for (int i = 0; i < distinctElements; i++) {
+      long element = stream.readLong();
+      add(element, stream.readInt());
+    }
+  }
+
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.GwtIncompatible;
+import com.google.common.base.Throwables;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Static methods for building immutable collections with several threads, used by the {@code
+ * buildInParallel} methods of their builders.
+ *
+ * <p>Work is split into tasks which are handed to an {@link Executor}, and the calling thread runs
+ * any tasks which the executor has not started by the time it has submitted them all. The caller
+ * therefore never waits for a task which no thread will run, even if the executor is saturated,
+ * rejects tasks, or is the same pool the caller is running in.
+ */
+@GwtIncompatible("java.util.concurrent.Executor")
+final class ParallelConstruction {
+  private ParallelConstruction() {}
+
+  /**
+   * The minimum number of elements handled by one task, below which the cost of handing work to
+   * another thread outweighs the gain.
+   */
+  static final int MIN_TASK_SIZE = 1 << 13;
+
+  /** Checks the arguments of a {@code buildInParallel} method. */
+  static void checkArguments(Executor executor, int parallelism) {
+    checkNotNull(executor);
+    checkArgument(parallelism > 0, "parallelism must be positive: %s", parallelism);
+  }
+
+  /**
+   * Returns the number of tasks into which to split work on {@code n} elements, which is one if
+   * the work isn't worth splitting.
+   */
+  static int taskCount(int n, int parallelism) {
+    return Math.max(1, Math.min(parallelism, n / MIN_TASK_SIZE));
+  }
+
+  /**
+   * Returns {@code tasks + 1} indices which divide {@code [0, n)} into {@code tasks} nearly equal
+   * ranges, the range of task {@code i} being {@code [bounds[i], bounds[i + 1])}.
+   */
+  static int[] bounds(int n, int tasks) {
+    int[] bounds = new int[tasks + 1];
+    for (int i = 0; i <= tasks; i++) {
+      bounds[i] = (int) ((long) n * i / tasks);
+    }
+    return bounds;
+  }
+
+  /**
+   * Runs {@code tasks}, with the help of {@code executor}, and returns when all of them have
+   * finished. If any task fails, the exception of the first which failed is rethrown, after the
+   * other tasks have finished, so that none of them is still modifying shared arrays. If this
+   * thread is interrupted while waiting, the tasks are still waited for, and the interrupt is
+   * restored.
+   */
+  static void runAll(Executor executor, List<? extends Runnable> tasks) {
+    List<FutureTask<Void>> futures = Lists.newArrayListWithCapacity(tasks.size());
+    for (Runnable task : tasks) {
+      futures.add(new FutureTask<Void>(task, null));
+    }
+    for (int i = 1; i < futures.size(); i++) {
+      try {
+        executor.execute(futures.get(i));
+      } catch (RejectedExecutionException e) {
+        // the task will be run by this thread, below
+      }
+    }
+    // Running a task which another thread has started, or which has finished, does nothing
+    for (FutureTask<Void> future : futures) {
+      future.run();
+    }
+    Throwable failure = null;
+    boolean interrupted = false;
+    try {
+      for (FutureTask<Void> future : futures) {
+        while (true) {
+          try {
+            future.get();
+            break;
+          } catch (InterruptedException e) {
+            interrupted = true;
+          } catch (ExecutionException e) {
+            if (failure == null) {
+              failure = e.getCause();
+            }
+            break;
+          }
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+    if (failure != null) {
+      // tasks are Runnables, so can only throw unchecked exceptions
+      throw Throwables.propagate(failure);
+    }
+  }
+
+  /**
+   * Sorts the first {@code size} elements of {@code array}, which must all be instances of
+   * {@code E}, as {@link Arrays#sort(Object[], int, int, Comparator)} would: the sort is stable.
+   * Ranges of the array are sorted in parallel, and then merged in pairs, in parallel, until one
+   * range is left.
+   */
+  static <E> void sort(Object[] array, int size, final Comparator<? super E> comparator,
+      Executor executor, int parallelism) {
+    int tasks = taskCount(size, parallelism);
+    final int[] bounds = bounds(size, tasks);
+    final Object[] sortedRuns = array;
+    List<Runnable> sorts = Lists.newArrayListWithCapacity(tasks);
+    for (int i = 0; i < tasks; i++) {
+      final int from = bounds[i];
+      final int to = bounds[i + 1];
+      sorts.add(new Runnable() {
+        @SuppressWarnings("unchecked") // the caller guarantees that the elements are E's
+        @Override
+        public void run() {
+          Arrays.sort(sortedRuns, from, to, (Comparator<Object>) comparator);
+        }
+      });
+    }
+    runAll(executor, sorts);
+
+    Object[] source = array;
+    Object[] target = (tasks > 1) ? new Object[size] : array;
+    int[] runBounds = bounds;
+    while (runBounds.length > 2) {
+      int runs = runBounds.length - 1;
+      int[] mergedBounds = new int[(runs + 1) / 2 + 1];
+      List<Runnable> merges = Lists.newArrayListWithCapacity(mergedBounds.length - 1);
+      for (int run = 0; run < runs; run += 2) {
+        final Object[] from = source;
+        final Object[] to = target;
+        final int start = runBounds[run];
+        final int middle = runBounds[Math.min(run + 1, runs)];
+        final int end = runBounds[Math.min(run + 2, runs)];
+        mergedBounds[run / 2 + 1] = end;
+        merges.add(new Runnable() {
+          @Override
+          public void run() {
+            ParallelConstruction.<E>merge(from, start, middle, end, to, comparator);
+          }
+        });
+      }
+      runAll(executor, merges);
+      runBounds = mergedBounds;
+      Object[] swap = source;
+      source = target;
+      target = swap;
+    }
+    if (source != array) {
+      System.arraycopy(source, 0, array, 0, size);
+    }
+  }
+
+  /**
+   * Merges the sorted ranges {@code [start, middle)} and {@code [middle, end)} of {@code source}
+   * into the same positions of {@code target}, taking elements from the first range when they
+   * compare equal.
+   */
+  @SuppressWarnings("unchecked") // the caller guarantees that the elements are E's
+  private static <E> void merge(Object[] source, int start, int middle, int end, Object[] target,
+      Comparator<? super E> comparator) {
+    int left = start;
+    int right = middle;
+    int out = start;
+    while (left < middle && right < end) {
+      target[out++] = (comparator.compare((E) source[right], (E) source[left]) < 0)
+          ? source[right++]
+          : source[left++];
+    }
+    System.arraycopy(source, left, target, out, middle - left);
+    System.arraycopy(source, right, target, out + middle - left, end - right);
+  }
+
+  /**
+   * Returns an array whose element {@code i} is {@code true} if the element of the sorted array
+   * {@code array} at index {@code i} compares equal to the one before it. Ranges of the array are
+   * compared in parallel.
+   */
+  static <E> boolean[] markAdjacentDuplicates(final Object[] array, int size,
+      final Comparator<? super E> comparator, Executor executor, int parallelism) {
+    final boolean[] duplicates = new boolean[size];
+    int tasks = taskCount(size, parallelism);
+    int[] bounds = bounds(size, tasks);
+    List<Runnable> comparisons = Lists.newArrayListWithCapacity(tasks);
+    for (int i = 0; i < tasks; i++) {
+      final int from = Math.max(bounds[i], 1);
+      final int to = bounds[i + 1];
+      comparisons.add(new Runnable() {
+        @SuppressWarnings("unchecked") // the caller guarantees that the elements are E's
+        @Override
+        public void run() {
+          for (int j = from; j < to; j++) {
+            duplicates[j] = comparator.compare((E) array[j - 1], (E) array[j]) == 0;
+          }
+        }
+      });
+    }
+    runAll(executor, comparisons);
+    return duplicates;
+  }
+}
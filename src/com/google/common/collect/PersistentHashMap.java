@@ -0,0 +1,246 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.collect.CollectPreconditions.checkEntryNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.PersistentHashTrie.Change;
+import com.google.common.collect.PersistentHashTrie.Node;
+import com.google.common.collect.PersistentHashTrie.TrieIterator;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+
+/**
+ * An {@link ImmutableMap} which can be updated cheaply: {@link #with}, {@link #without} and {@link
+ * #plusAll} return new maps which share most of their structure with the original, in time and
+ * space logarithmic in the size of the map, rather than copying it. This makes it suitable for
+ * snapshots of state which changes a little at a time, where copying an {@code ImmutableMap}
+ * through {@link ImmutableMap.Builder#putAll} on every change would cost time linear in its size.
+ *
+ * <p>The entries are stored in a hash array mapped trie, so lookups take a few more steps than in
+ * an {@code ImmutableMap} built from scratch. Unlike other {@code ImmutableMap} implementations,
+ * the iteration order is <b>not</b> the order in which entries were added: it depends on the hash
+ * codes of the keys, and is otherwise unspecified.
+ *
+ * <p>Null keys and values are not supported. See the Guava User Guide article on <a href=
+ * "http://code.google.com/p/guava-libraries/wiki/ImmutableCollectionsExplained">
+ * immutable collections</a>.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+public final class PersistentHashMap<K, V> extends ImmutableMap<K, V> {
+  private static final PersistentHashMap<Object, Object> EMPTY =
+      new PersistentHashMap<Object, Object>(PersistentHashTrie.EMPTY, 0, 0);
+
+  private final transient Node root;
+  private final transient int size;
+  // the sum of the hash codes of the entries, maintained by each update
+  private final transient int hashCode;
+
+  private PersistentHashMap(Node root, int size, int hashCode) {
+    this.root = root;
+    this.size = size;
+    this.hashCode = hashCode;
+  }
+
+  /**
+   * Returns the empty persistent map.
+   */
+  // Casting to any type is safe because the map will never hold any entries.
+  @SuppressWarnings("unchecked")
+  public static <K, V> PersistentHashMap<K, V> of() {
+    return (PersistentHashMap<K, V>) EMPTY;
+  }
+
+  /**
+   * Returns a persistent map containing the same entries as {@code map}. If {@code map} is itself
+   * a {@code PersistentHashMap}, it is returned.
+   *
+   * @throws NullPointerException if any key or value in {@code map} is null
+   */
+  public static <K, V> PersistentHashMap<K, V> copyOf(Map<? extends K, ? extends V> map) {
+    if (map instanceof PersistentHashMap) {
+      @SuppressWarnings("unchecked") // safe since map is not writable
+      PersistentHashMap<K, V> persistentMap = (PersistentHashMap<K, V>) map;
+      return persistentMap;
+    }
+    return PersistentHashMap.<K, V>of().plusAll(map);
+  }
+
+  @SuppressWarnings("unchecked") // only V's are stored as values
+  @Override
+  public V get(@Nullable Object key) {
+    return (V) PersistentHashTrie.get(root, key);
+  }
+
+  @Override
+  public boolean containsKey(@Nullable Object key) {
+    return PersistentHashTrie.get(root, key) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a map with the entries of this map, except that {@code key} maps to {@code value}.
+   * Returns this map if it already maps {@code key} to {@code value} itself.
+   *
+   * @throws NullPointerException if {@code key} or {@code value} is null
+   */
+  public PersistentHashMap<K, V> with(K key, V value) {
+    checkEntryNotNull(key, value);
+    Change change = new Change();
+    Node newRoot = root.put(key, value, PersistentHashTrie.hash(key), 0, change);
+    if (newRoot == root) {
+      return this;
+    }
+    int keyHash = key.hashCode();
+    int newHashCode = hashCode + (keyHash ^ value.hashCode());
+    if (change.oldValue == null) {
+      return new PersistentHashMap<K, V>(newRoot, size + 1, newHashCode);
+    }
+    newHashCode -= keyHash ^ change.oldValue.hashCode();
+    return new PersistentHashMap<K, V>(newRoot, size, newHashCode);
+  }
+
+  /**
+   * Returns a map with the entries of this map but the one for {@code key}. Returns this map if
+   * it doesn't contain {@code key}.
+   */
+  public PersistentHashMap<K, V> without(@Nullable Object key) {
+    if (key == null) {
+      return this;
+    }
+    Change change = new Change();
+    Node newRoot = root.remove(key, PersistentHashTrie.hash(key), 0, change);
+    if (newRoot == root) {
+      return this;
+    } else if (size == 1) {
+      return of();
+    }
+    int newHashCode = hashCode - (key.hashCode() ^ change.oldValue.hashCode());
+    return new PersistentHashMap<K, V>(newRoot, size - 1, newHashCode);
+  }
+
+  /**
+   * Returns a map with the entries of this map and of {@code map}, those of {@code map} taking
+   * precedence when both contain a key.
+   *
+   * @throws NullPointerException if any key or value in {@code map} is null
+   */
+  public PersistentHashMap<K, V> plusAll(Map<? extends K, ? extends V> map) {
+    if (isEmpty() && map instanceof PersistentHashMap) {
+      @SuppressWarnings("unchecked") // safe since map is not writable
+      PersistentHashMap<K, V> persistentMap = (PersistentHashMap<K, V>) map;
+      return persistentMap;
+    }
+    PersistentHashMap<K, V> result = this;
+    for (Entry<? extends K, ? extends V> entry : map.entrySet()) {
+      result = result.with(entry.getKey(), entry.getValue());
+    }
+    return result;
+  }
+
+  @Override
+  boolean isPartialView() {
+    return false;
+  }
+
+  @Override
+  @SuppressWarnings("serial") // uses writeReplace(), not default serialization
+  ImmutableSet<Entry<K, V>> createEntrySet() {
+    return new ImmutableMapEntrySet<K, V>() {
+      @Override
+      ImmutableMap<K, V> map() {
+        return PersistentHashMap.this;
+      }
+
+      @Override
+      public UnmodifiableIterator<Entry<K, V>> iterator() {
+        return new TrieIterator<Entry<K, V>>(root) {
+          @SuppressWarnings("unchecked") // only K's and V's are stored
+          @Override
+          Entry<K, V> output(Node node, int index) {
+            return Maps.immutableEntry((K) node.keyAt(index), (V) node.valueAt(index));
+          }
+        };
+      }
+    };
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object instanceof PersistentHashMap
+        && ((PersistentHashMap<?, ?>) object).hashCode != hashCode) {
+      return false;
+    }
+    return super.equals(object);
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  /**
+   * Serialized type for all PersistentHashMap instances. It captures the logical contents and
+   * they are reconstructed using public factory methods.
+   */
+  private static class SerializedForm implements Serializable {
+    private final Object[] keys;
+    private final Object[] values;
+
+    SerializedForm(PersistentHashMap<?, ?> map) {
+      keys = new Object[map.size()];
+      values = new Object[map.size()];
+      int i = 0;
+      for (Entry<?, ?> entry : map.entrySet()) {
+        keys[i] = entry.getKey();
+        values[i] = entry.getValue();
+        i++;
+      }
+    }
+
+    Object readResolve() {
+      PersistentHashMap<Object, Object> map = of();
+      for (int i = 0; i < keys.length; i++) {
+        map = map.with(keys[i], values[i]);
+      }
+      return map;
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  @Override
+  Object writeReplace() {
+    return new SerializedForm(this);
+  }
+
+  // This class is never actually serialized directly, but we have to make the
+  // warning go away (and suppressing would suppress for all nested classes too)
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.GwtCompatible;
+import com.google.common.collect.PersistentHashTrie.Change;
+import com.google.common.collect.PersistentHashTrie.Node;
+import com.google.common.collect.PersistentHashTrie.TrieIterator;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+
+import javax.annotation.Nullable;
+
+/**
+ * An {@link ImmutableSet} which can be updated cheaply: {@link #with}, {@link #without} and {@link
+ * #plusAll} return new sets which share most of their structure with the original, in time and
+ * space logarithmic in the size of the set, rather than copying it.
+ *
+ * <p>The elements are stored in a hash array mapped trie, as in {@link PersistentHashMap}. Unlike
+ * other {@code ImmutableSet} implementations, the iteration order is <b>not</b> the order in which
+ * elements were added: it depends on their hash codes, and is otherwise unspecified.
+ *
+ * <p>Null elements are not supported. See the Guava User Guide article on <a href=
+ * "http://code.google.com/p/guava-libraries/wiki/ImmutableCollectionsExplained">
+ * immutable collections</a>.
+ *
+ * @since 17.0
+ */
+@Beta
+@GwtCompatible
+@SuppressWarnings("serial") // we're overriding default serialization
+public final class PersistentHashSet<E> extends ImmutableSet<E> {
+  // the value stored in the trie for every element
+  private static final Object PRESENT = Boolean.TRUE;
+
+  private static final PersistentHashSet<Object> EMPTY =
+      new PersistentHashSet<Object>(PersistentHashTrie.EMPTY, 0, 0);
+
+  private final transient Node root;
+  private final transient int size;
+  // the sum of the hash codes of the elements, maintained by each update
+  private final transient int hashCode;
+
+  private PersistentHashSet(Node root, int size, int hashCode) {
+    this.root = root;
+    this.size = size;
+    this.hashCode = hashCode;
+  }
+
+  /**
+   * Returns the empty persistent set.
+   */
+  // Casting to any type is safe because the set will never hold any elements.
+  @SuppressWarnings("unchecked")
+  public static <E> PersistentHashSet<E> of() {
+    return (PersistentHashSet<E>) EMPTY;
+  }
+
+  /**
+   * Returns a persistent set containing the distinct elements of {@code elements}. If {@code
+   * elements} is itself a {@code PersistentHashSet}, it is returned.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public static <E> PersistentHashSet<E> copyOf(Iterable<? extends E> elements) {
+    if (elements instanceof PersistentHashSet) {
+      @SuppressWarnings("unchecked") // safe since the set is not writable
+      PersistentHashSet<E> set = (PersistentHashSet<E>) elements;
+      return set;
+    }
+    return copyOf(elements.iterator());
+  }
+
+  /**
+   * Returns a persistent set containing the distinct elements of {@code elements}. If {@code
+   * elements} is itself a {@code PersistentHashSet}, it is returned.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public static <E> PersistentHashSet<E> copyOf(Collection<? extends E> elements) {
+    return copyOf((Iterable<? extends E>) elements);
+  }
+
+  /**
+   * Returns a persistent set containing the distinct elements of {@code elements}.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public static <E> PersistentHashSet<E> copyOf(Iterator<? extends E> elements) {
+    PersistentHashSet<E> set = of();
+    while (elements.hasNext()) {
+      set = set.with(elements.next());
+    }
+    return set;
+  }
+
+  @Override
+  public boolean contains(@Nullable Object object) {
+    return PersistentHashTrie.get(root, object) != null;
+  }
+
+  @Override
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Returns a set with the elements of this set and {@code element}. Returns this set if it
+   * already contains {@code element}.
+   *
+   * @throws NullPointerException if {@code element} is null
+   */
+  public PersistentHashSet<E> with(E element) {
+    checkNotNull(element);
+    Node newRoot = root.put(element, PRESENT, PersistentHashTrie.hash(element), 0, new Change());
+    return (newRoot == root)
+        ? this
+        : new PersistentHashSet<E>(newRoot, size + 1, hashCode + element.hashCode());
+  }
+
+  /**
+   * Returns a set with the elements of this set but {@code object}. Returns this set if it doesn't
+   * contain {@code object}.
+   */
+  public PersistentHashSet<E> without(@Nullable Object object) {
+    if (object == null) {
+      return this;
+    }
+    Node newRoot = root.remove(object, PersistentHashTrie.hash(object), 0, new Change());
+    if (newRoot == root) {
+      return this;
+    } else if (size == 1) {
+      return of();
+    }
+    return new PersistentHashSet<E>(newRoot, size - 1, hashCode - object.hashCode());
+  }
+
+  /**
+   * Returns a set with the elements of this set and of {@code elements}.
+   *
+   * @throws NullPointerException if any of {@code elements} is null
+   */
+  public PersistentHashSet<E> plusAll(Iterable<? extends E> elements) {
+    if (isEmpty()) {
+      return copyOf(elements);
+    }
+    PersistentHashSet<E> set = this;
+    for (E element : elements) {
+      set = set.with(element);
+    }
+    return set;
+  }
+
+  @Override
+  public UnmodifiableIterator<E> iterator() {
+    return new TrieIterator<E>(root) {
+      @SuppressWarnings("unchecked") // only E's are stored as keys
+      @Override
+      E output(Node node, int index) {
+        return (E) node.keyAt(index);
+      }
+    };
+  }
+
+  @Override
+  boolean isPartialView() {
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return hashCode;
+  }
+
+  @Override
+  boolean isHashCodeFast() {
+    return true;
+  }
+
+  /**
+   * Serialized type for all PersistentHashSet instances. It captures the logical contents and
+   * they are reconstructed using public factory methods.
+   */
+  private static class SerializedForm implements Serializable {
+    final Object[] elements;
+
+    SerializedForm(Object[] elements) {
+      this.elements = elements;
+    }
+
+    Object readResolve() {
+      return copyOf(Arrays.asList(elements));
+    }
+
+    private static final long serialVersionUID = 0;
+  }
+
+  @Override
+  Object writeReplace() {
+    return new SerializedForm(toArray());
+  }
+}
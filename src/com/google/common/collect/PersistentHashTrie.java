@@ -0,0 +1,419 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import com.google.common.annotations.GwtCompatible;
+
+import java.util.NoSuchElementException;
+
+import javax.annotation.Nullable;
+
+/**
+ * The nodes of a hash array mapped trie, shared by {@link PersistentHashMap} and {@link
+ * PersistentHashSet}. Nodes are never modified once built: an update copies the path from the
+ * root to the changed node, and shares every other node with the original trie.
+ *
+ * <p>The trie branches on five bits of the smeared hash of a key at each level. A {@link
+ * BitmapNode} stores the entries whose keys have no other key on the same branch inline, and the
+ * other branches as child nodes, so that a lookup follows one child per level and ends at an
+ * entry. Keys whose hashes are entirely equal end in a {@link CollisionNode}. Every node but the
+ * root holds at least two entries, counting those of its descendants, so that removing keys
+ * leaves the trie in the shape it would have had if they had never been added.
+ */
+@GwtCompatible
+final class PersistentHashTrie {
+  private PersistentHashTrie() {}
+
+  /** The number of bits of the hash on which a node branches. */
+  static final int BITS = 5;
+
+  private static final int MASK = (1 << BITS) - 1;
+
+  /** The maximum number of nodes on a path from the root, including it. */
+  static final int MAX_DEPTH = (Integer.SIZE + BITS - 1) / BITS + 1;
+
+  static final BitmapNode EMPTY = new BitmapNode(0, 0, new Object[0]);
+
+  static int hash(Object key) {
+    return Hashing.smear(key.hashCode());
+  }
+
+  /**
+   * Receives the value which an update replaced or removed, or {@code null} if there was none.
+   */
+  static final class Change {
+    Object oldValue;
+  }
+
+  abstract static class Node {
+    /** Returns the value of {@code key}, or {@code null} if this node doesn't contain it. */
+    abstract Object get(Object key, int hash, int shift);
+
+    /** Returns a node with the entries of this node and the given one, or this node if equal. */
+    abstract Node put(Object key, Object value, int hash, int shift, Change change);
+
+    /** Returns a node with the entries of this node but {@code key}, or this node if absent. */
+    abstract Node remove(Object key, int hash, int shift, Change change);
+
+    /** Returns the number of entries stored directly in this node. */
+    abstract int payloadArity();
+
+    abstract Object keyAt(int index);
+
+    abstract Object valueAt(int index);
+
+    /** Returns the number of children of this node. */
+    abstract int nodeArity();
+
+    abstract Node nodeAt(int index);
+  }
+
+  /**
+   * A node which stores an entry for each bit set in {@code dataMap}, and a child for each bit set
+   * in {@code nodeMap}. The entries are stored as keys followed by their values at the start of
+   * {@code array}, and the children at its end, in reverse order.
+   */
+  static final class BitmapNode extends Node {
+    final int dataMap;
+    final int nodeMap;
+    final Object[] array;
+
+    BitmapNode(int dataMap, int nodeMap, Object[] array) {
+      this.dataMap = dataMap;
+      this.nodeMap = nodeMap;
+      this.array = array;
+    }
+
+    private static int bit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & MASK);
+    }
+
+    /** Returns the number of bits in {@code map} below {@code bit}. */
+    private static int index(int map, int bit) {
+      return Integer.bitCount(map & (bit - 1));
+    }
+
+    private int nodeIndex(int bit) {
+      return array.length - 1 - index(nodeMap, bit);
+    }
+
+    @Override
+    Object get(Object key, int hash, int shift) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int i = 2 * index(dataMap, bit);
+        return key.equals(array[i]) ? array[i + 1] : null;
+      } else if ((nodeMap & bit) != 0) {
+        return ((Node) array[nodeIndex(bit)]).get(key, hash, shift + BITS);
+      }
+      return null;
+    }
+
+    @Override
+    Node put(Object key, Object value, int hash, int shift, Change change) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int i = 2 * index(dataMap, bit);
+        Object existingKey = array[i];
+        if (key.equals(existingKey)) {
+          change.oldValue = array[i + 1];
+          if (array[i + 1] == value) {
+            return this;
+          }
+          Object[] copy = array.clone();
+          copy[i + 1] = value;
+          return new BitmapNode(dataMap, nodeMap, copy);
+        }
+        Node child = merge(existingKey, array[i + 1], hash(existingKey),
+            key, value, hash, shift + BITS);
+        return replaceEntryWithNode(bit, i, child);
+      } else if ((nodeMap & bit) != 0) {
+        int j = nodeIndex(bit);
+        Node child = (Node) array[j];
+        Node newChild = child.put(key, value, hash, shift + BITS, change);
+        if (newChild == child) {
+          return this;
+        }
+        Object[] copy = array.clone();
+        copy[j] = newChild;
+        return new BitmapNode(dataMap, nodeMap, copy);
+      }
+      int i = 2 * index(dataMap, bit);
+      Object[] copy = new Object[array.length + 2];
+      System.arraycopy(array, 0, copy, 0, i);
+      copy[i] = key;
+      copy[i + 1] = value;
+      System.arraycopy(array, i, copy, i + 2, array.length - i);
+      return new BitmapNode(dataMap | bit, nodeMap, copy);
+    }
+
+    @Override
+    Node remove(Object key, int hash, int shift, Change change) {
+      int bit = bit(hash, shift);
+      if ((dataMap & bit) != 0) {
+        int i = 2 * index(dataMap, bit);
+        if (!key.equals(array[i])) {
+          return this;
+        }
+        change.oldValue = array[i + 1];
+        Object[] copy = new Object[array.length - 2];
+        System.arraycopy(array, 0, copy, 0, i);
+        System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+        return new BitmapNode(dataMap ^ bit, nodeMap, copy);
+      } else if ((nodeMap & bit) != 0) {
+        int j = nodeIndex(bit);
+        Node child = (Node) array[j];
+        Node newChild = child.remove(key, hash, shift + BITS, change);
+        if (newChild == child) {
+          return this;
+        }
+        if (newChild.payloadArity() == 1 && newChild.nodeArity() == 0) {
+          // The child must be inlined, by this node or, if it would then be left with only that
+          // entry, by an ancestor
+          if (shift > 0 && dataMap == 0 && array.length == 1) {
+            return newChild;
+          }
+          return replaceNodeWithEntry(bit, j, newChild.keyAt(0), newChild.valueAt(0));
+        }
+        Object[] copy = array.clone();
+        copy[j] = newChild;
+        return new BitmapNode(dataMap, nodeMap, copy);
+      }
+      return this;
+    }
+
+    /** Returns a copy of this node with the entry at {@code i} replaced by a child. */
+    private Node replaceEntryWithNode(int bit, int i, Node child) {
+      Object[] copy = new Object[array.length - 1];
+      int dataLength = 2 * Integer.bitCount(dataMap);
+      int newDataLength = dataLength - 2;
+      // the children stored before the new one, at the end of the array, are those above it
+      int j = copy.length - 1 - index(nodeMap, bit);
+      System.arraycopy(array, 0, copy, 0, i);
+      System.arraycopy(array, i + 2, copy, i, dataLength - i - 2);
+      System.arraycopy(array, dataLength, copy, newDataLength, j - newDataLength);
+      copy[j] = child;
+      System.arraycopy(array, dataLength + j - newDataLength, copy, j + 1, copy.length - j - 1);
+      return new BitmapNode(dataMap ^ bit, nodeMap | bit, copy);
+    }
+
+    /** Returns a copy of this node with the child at {@code j} replaced by an entry. */
+    private Node replaceNodeWithEntry(int bit, int j, Object key, Object value) {
+      Object[] copy = new Object[array.length + 1];
+      int dataLength = 2 * Integer.bitCount(dataMap);
+      int i = 2 * index(dataMap, bit);
+      System.arraycopy(array, 0, copy, 0, i);
+      copy[i] = key;
+      copy[i + 1] = value;
+      System.arraycopy(array, i, copy, i + 2, dataLength - i);
+      System.arraycopy(array, dataLength, copy, dataLength + 2, j - dataLength);
+      System.arraycopy(array, j + 1, copy, j + 2, array.length - j - 1);
+      return new BitmapNode(dataMap | bit, nodeMap ^ bit, copy);
+    }
+
+    @Override
+    int payloadArity() {
+      return Integer.bitCount(dataMap);
+    }
+
+    @Override
+    Object keyAt(int index) {
+      return array[2 * index];
+    }
+
+    @Override
+    Object valueAt(int index) {
+      return array[2 * index + 1];
+    }
+
+    @Override
+    int nodeArity() {
+      return Integer.bitCount(nodeMap);
+    }
+
+    @Override
+    Node nodeAt(int index) {
+      return (Node) array[array.length - 1 - index];
+    }
+  }
+
+  /** Returns a node holding two entries with different keys, at the given level. */
+  private static Node merge(
+      Object key1, Object value1, int hash1, Object key2, Object value2, int hash2, int shift) {
+    if (shift >= Integer.SIZE) {
+      return new CollisionNode(hash1, new Object[] {key1, value1, key2, value2});
+    }
+    int index1 = (hash1 >>> shift) & MASK;
+    int index2 = (hash2 >>> shift) & MASK;
+    if (index1 == index2) {
+      Node child = merge(key1, value1, hash1, key2, value2, hash2, shift + BITS);
+      return new BitmapNode(0, 1 << index1, new Object[] {child});
+    }
+    Object[] array = (index1 < index2)
+        ? new Object[] {key1, value1, key2, value2}
+        : new Object[] {key2, value2, key1, value1};
+    return new BitmapNode((1 << index1) | (1 << index2), 0, array);
+  }
+
+  /** A node holding the entries of keys whose hashes are all equal, in a list. */
+  static final class CollisionNode extends Node {
+    final int hash;
+    // keys followed by their values
+    final Object[] array;
+
+    CollisionNode(int hash, Object[] array) {
+      this.hash = hash;
+      this.array = array;
+    }
+
+    private int indexOf(Object key) {
+      for (int i = 0; i < array.length; i += 2) {
+        if (key.equals(array[i])) {
+          return i;
+        }
+      }
+      return -1;
+    }
+
+    @Override
+    Object get(Object key, int hash, int shift) {
+      if (hash != this.hash) {
+        return null;
+      }
+      int i = indexOf(key);
+      return (i < 0) ? null : array[i + 1];
+    }
+
+    @Override
+    Node put(Object key, Object value, int hash, int shift, Change change) {
+      int i = indexOf(key);
+      if (i >= 0) {
+        change.oldValue = array[i + 1];
+        if (array[i + 1] == value) {
+          return this;
+        }
+        Object[] copy = array.clone();
+        copy[i + 1] = value;
+        return new CollisionNode(hash, copy);
+      }
+      Object[] copy = ObjectArrays.arraysCopyOf(array, array.length + 2);
+      copy[array.length] = key;
+      copy[array.length + 1] = value;
+      return new CollisionNode(hash, copy);
+    }
+
+    @Override
+    Node remove(Object key, int hash, int shift, Change change) {
+      int i = indexOf(key);
+      if (i < 0) {
+        return this;
+      }
+      change.oldValue = array[i + 1];
+      Object[] copy = new Object[array.length - 2];
+      System.arraycopy(array, 0, copy, 0, i);
+      System.arraycopy(array, i + 2, copy, i, array.length - i - 2);
+      return new CollisionNode(hash, copy);
+    }
+
+    @Override
+    int payloadArity() {
+      return array.length / 2;
+    }
+
+    @Override
+    Object keyAt(int index) {
+      return array[2 * index];
+    }
+
+    @Override
+    Object valueAt(int index) {
+      return array[2 * index + 1];
+    }
+
+    @Override
+    int nodeArity() {
+      return 0;
+    }
+
+    @Override
+    Node nodeAt(int index) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  /**
+   * An iterator over the entries of a trie, which visits the entries stored in each node before
+   * those of its children.
+   */
+  abstract static class TrieIterator<T> extends UnmodifiableIterator<T> {
+    private final Node[] nodes = new Node[MAX_DEPTH];
+    // the index of the next child to visit, of each node on the path
+    private final int[] nextChild = new int[MAX_DEPTH];
+    private int depth;
+    private Node current;
+    private int nextEntry;
+
+    TrieIterator(Node root) {
+      nodes[0] = root;
+      current = root;
+    }
+
+    /** Returns the element for the entry at {@code index} in {@code node}. */
+    abstract T output(Node node, int index);
+
+    @Override
+    public boolean hasNext() {
+      while (nextEntry >= current.payloadArity()) {
+        if (!advanceNode()) {
+          return false;
+        }
+      }
+      return true;
+    }
+
+    @Override
+    public T next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return output(current, nextEntry++);
+    }
+
+    /** Moves to the next node in depth-first order, returning false if there is none. */
+    private boolean advanceNode() {
+      while (depth >= 0) {
+        Node node = nodes[depth];
+        if (nextChild[depth] < node.nodeArity()) {
+          Node child = node.nodeAt(nextChild[depth]++);
+          depth++;
+          nodes[depth] = child;
+          nextChild[depth] = 0;
+          current = child;
+          nextEntry = 0;
+          return true;
+        }
+        nodes[depth--] = null;
+      }
+      return false;
+    }
+  }
+
+  /** Returns the value of {@code key} in the trie rooted at {@code root}, or {@code null}. */
+  static Object get(Node root, @Nullable Object key) {
+    return (key == null) ? null : root.get(key, hash(key), 0);
+  }
+}
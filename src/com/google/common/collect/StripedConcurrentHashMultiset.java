@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.common.collect;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.collect.CollectPreconditions.checkNonnegative;
+import static com.google.common.collect.CollectPreconditions.checkRemove;
+
+import com.google.common.annotations.Beta;
+import com.google.common.collect.Serialization.FieldSetter;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.annotation.Nullable;
+
+/**
+ * A multiset that supports concurrent modifications, for workloads dominated by adding
+ * occurrences, such as counting events. Null elements are not supported.
+ *
+ * <p>Like {@link ConcurrentHashMultiset}, it is backed by a {@link ConcurrentHashMap} from each
+ * element to its count, but each count is kept in a set of striped cells, which grows under
+ * contention so that threads adding the same element update different cells. Adding occurrences
+ * therefore never retries a compare-and-set on a contended counter, and scales even when most
+ * threads add the same few elements; {@link #count} adds up the cells instead. Operations which
+ * remove occurrences, or set the count of an element, are serialized per element; they are atomic
+ * with respect to each other, and commute with concurrent additions.
+ *
+ * <p>For the same reason, {@link #add(Object, int)} returns a count read after adding, which may
+ * include concurrent additions of the same element; {@link #add(Object)} doesn't read the count
+ * at all. Counts which exceed {@code Integer.MAX_VALUE} are reported as {@code Integer.MAX_VALUE}
+ * rather than causing an exception. Where updates are balanced between additions and removals,
+ * or exact results of {@code add} are needed, use {@link ConcurrentHashMultiset}.
+ *
+ * <p>See the Guava User Guide article on <a href=
+ * "http://code.google.com/p/guava-libraries/wiki/NewCollectionTypesExplained#Multiset">
+ * {@code Multiset}</a>.
+ *
+ * @since 17.0
+ */
+@Beta
+public final class StripedConcurrentHashMultiset<E> extends AbstractMultiset<E>
+    implements Serializable {
+
+  /*
+   * Additions only add to the cells of a Counter, without locking. All other updates lock the
+   * Counter. When an update under the lock leaves the count at zero, the Counter is retired: it is
+   * marked, removed from the map, and any occurrences added to it concurrently are moved to the
+   * element's current Counter. An addition which finds, after adding, that its Counter has been
+   * retired moves whatever is left in the Counter itself, under its lock. Either the retiring
+   * thread sees the addition or the adding thread sees the mark, so no occurrence is lost, and
+   * since every move subtracts what it moves, none is counted twice.
+   */
+
+  /** The number of occurrences of each element. */
+  private final transient ConcurrentMap<E, Counter> countMap;
+
+  // This constant allows the deserialization code to set a final field. This holder class
+  // makes sure it is not initialized unless an instance is deserialized.
+  private static class FieldSettersHolder {
+    static final FieldSetter<StripedConcurrentHashMultiset> COUNT_MAP_FIELD_SETTER =
+        Serialization.getFieldSetter(StripedConcurrentHashMultiset.class, "countMap");
+  }
+
+  /** The count of one element, whose monitor guards all updates but additions. */
+  private static final class Counter {
+    final LongAddable cells = LongAddables.create();
+
+    volatile boolean retired;
+
+    long sum() {
+      return cells.sum();
+    }
+  }
+
+  /**
+   * Creates a new, empty {@code StripedConcurrentHashMultiset} using the default initial
+   * capacity, load factor, and concurrency settings.
+   */
+  public static <E> StripedConcurrentHashMultiset<E> create() {
+    return new StripedConcurrentHashMultiset<E>(new ConcurrentHashMap<E, Counter>());
+  }
+
+  /**
+   * Creates a new {@code StripedConcurrentHashMultiset} containing the specified elements, using
+   * the default initial capacity, load factor, and concurrency settings.
+   *
+   * @param elements the elements that the multiset should contain
+   */
+  public static <E> StripedConcurrentHashMultiset<E> create(Iterable<? extends E> elements) {
+    StripedConcurrentHashMultiset<E> multiset = StripedConcurrentHashMultiset.create();
+    Iterables.addAll(multiset, elements);
+    return multiset;
+  }
+
+  private StripedConcurrentHashMultiset(ConcurrentMap<E, Counter> countMap) {
+    this.countMap = countMap;
+  }
+
+  // Query Operations
+
+  /**
+   * Returns the number of occurrences of {@code element} in this multiset.
+   *
+   * @param element the element to look for
+   * @return the nonnegative number of occurrences of the element
+   */
+  @Override public int count(@Nullable Object element) {
+    Counter counter = Maps.safeGet(countMap, element);
+    return (counter == null) ? 0 : Ints.saturatedCast(counter.sum());
+  }
+
+  /**
+   * {@inheritDoc}
+   *
+   * <p>If the data in the multiset is modified by any other threads during this method,
+   * it is undefined which (if any) of these modifications will be reflected in the result.
+   */
+  @Override public int size() {
+    long sum = 0L;
+    for (Counter counter : countMap.values()) {
+      sum += counter.sum();
+    }
+    return Ints.saturatedCast(sum);
+  }
+
+  /*
+   * Note: the superclass toArray() methods assume that size() gives a correct
+   * answer, which ours does not.
+   */
+
+  @Override public Object[] toArray() {
+    return snapshot().toArray();
+  }
+
+  @Override public <T> T[] toArray(T[] array) {
+    return snapshot().toArray(array);
+  }
+
+  private List<E> snapshot() {
+    List<E> list = Lists.newArrayListWithExpectedSize(size());
+    for (Multiset.Entry<E> entry : entrySet()) {
+      E element = entry.getElement();
+      for (int i = entry.getCount(); i > 0; i--) {
+        list.add(element);
+      }
+    }
+    return list;
+  }
+
+  // Modification Operations
+
+  /**
+   * Adds an occurrence of the specified element to this multiset, without reading its count.
+   *
+   * @return {@code true} always
+   * @throws NullPointerException if {@code element} is null
+   */
+  @Override public boolean add(E element) {
+    checkNotNull(element);
+    increment(element, 1);
+    return true;
+  }
+
+  /**
+   * Adds a number of occurrences of the specified element to this multiset.
+   *
+   * @param element the element to add
+   * @param occurrences the number of occurrences to add
+   * @return the count of the element after the operation, less {@code occurrences}; this is the
+   *     count before the operation unless other threads added the element concurrently
+   * @throws IllegalArgumentException if {@code occurrences} is negative
+   * @throws NullPointerException if {@code element} is null
+   */
+  @Override public int add(E element, int occurrences) {
+    checkNotNull(element);
+    if (occurrences == 0) {
+      return count(element);
+    }
+    checkArgument(occurrences > 0, "Invalid occurrences: %s", occurrences);
+    Counter counter = increment(element, occurrences);
+    return Ints.saturatedCast(Math.max(counter.sum() - occurrences, 0L));
+  }
+
+  /** Adds to the count of {@code element} without locking, and returns the counter used. */
+  private Counter increment(E element, long occurrences) {
+    Counter counter = counter(element);
+    counter.cells.add(occurrences);
+    if (counter.retired) {
+      synchronized (counter) {
+        moveResidue(element, counter);
+      }
+    }
+    return counter;
+  }
+
+  /** Returns the current counter of {@code element}, creating one if there is none. */
+  private Counter counter(E element) {
+    Counter counter = countMap.get(element);
+    if (counter == null) {
+      Counter newCounter = new Counter();
+      counter = countMap.putIfAbsent(element, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    return counter;
+  }
+
+  /**
+   * Moves any occurrences added to a retired counter to the element's current counter. The caller
+   * must hold the lock of {@code counter}.
+   */
+  private void moveResidue(E element, Counter counter) {
+    long residue = counter.sum();
+    if (residue != 0) {
+      counter.cells.add(-residue);
+      increment(element, residue);
+    }
+  }
+
+  /**
+   * Retires a counter whose count is zero. The caller must hold the lock of {@code counter}.
+   */
+  private void retire(E element, Counter counter) {
+    counter.retired = true;
+    countMap.remove(element, counter);
+    moveResidue(element, counter);
+  }
+
+  /**
+   * Removes a number of occurrences of the specified element from this multiset. If the multiset
+   * contains fewer than this number of occurrences to begin with, all occurrences will be removed.
+   *
+   * @param element the element whose occurrences should be removed
+   * @param occurrences the number of occurrences of the element to remove
+   * @return the count of the element before the operation; possibly zero
+   * @throws IllegalArgumentException if {@code occurrences} is negative
+   */
+  @Override public int remove(@Nullable Object element, int occurrences) {
+    if (occurrences == 0) {
+      return count(element);
+    }
+    checkArgument(occurrences > 0, "Invalid occurrences: %s", occurrences);
+    while (true) {
+      Counter counter = Maps.safeGet(countMap, element);
+      if (counter == null) {
+        return 0;
+      }
+      synchronized (counter) {
+        if (!counter.retired) {
+          long current = counter.sum();
+          long removed = Math.min(current, occurrences);
+          counter.cells.add(-removed);
+          if (removed == current) {
+            @SuppressWarnings("unchecked") // the map only holds E's
+            E e = (E) element;
+            retire(e, counter);
+          }
+          return Ints.saturatedCast(current);
+        }
+      }
+    }
+  }
+
+  /**
+   * Adds or removes occurrences of {@code element} such that the {@link #count} of the element
+   * becomes {@code count}. Occurrences added concurrently by other threads are kept.
+   *
+   * @return the count of {@code element} in the multiset before this call
+   * @throws IllegalArgumentException if {@code count} is negative
+   * @throws NullPointerException if {@code element} is null
+   */
+  @Override public int setCount(E element, int count) {
+    checkNotNull(element);
+    checkNonnegative(count, "count");
+    while (true) {
+      Counter counter = (count == 0) ? countMap.get(element) : counter(element);
+      if (counter == null) {
+        return 0;
+      }
+      synchronized (counter) {
+        if (!counter.retired) {
+          long current = counter.sum();
+          counter.cells.add(count - current);
+          if (count == 0) {
+            retire(element, counter);
+          }
+          return Ints.saturatedCast(current);
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the number of occurrences of {@code element} to {@code newCount}, but only if
+   * the count is currently {@code expectedOldCount}.
+   *
+   * @return {@code true} if the change was successful
+   * @throws IllegalArgumentException if {@code expectedOldCount} or {@code newCount} is negative
+   * @throws NullPointerException if {@code element} is null
+   */
+  @Override public boolean setCount(E element, int expectedOldCount, int newCount) {
+    checkNotNull(element);
+    checkNonnegative(expectedOldCount, "oldCount");
+    checkNonnegative(newCount, "newCount");
+    while (true) {
+      Counter counter = countMap.get(element);
+      if (counter == null) {
+        if (expectedOldCount != 0) {
+          return false;
+        } else if (newCount == 0) {
+          return true;
+        }
+        counter = counter(element);
+      }
+      synchronized (counter) {
+        if (!counter.retired) {
+          long current = counter.sum();
+          boolean matches = current == expectedOldCount;
+          if (matches) {
+            counter.cells.add(newCount - current);
+          }
+          if ((matches ? newCount : current) == 0) {
+            retire(element, counter);
+          }
+          return matches;
+        }
+      }
+    }
+  }
+
+  // Views
+
+  @Override int distinctElements() {
+    return countMap.size();
+  }
+
+  @Override public boolean isEmpty() {
+    return countMap.isEmpty();
+  }
+
+  @Override Iterator<Entry<E>> entryIterator() {
+    final Iterator<Map.Entry<E, Counter>> mapEntries = countMap.entrySet().iterator();
+    final Iterator<Entry<E>> readOnlyIterator = new AbstractIterator<Entry<E>>() {
+      @Override protected Entry<E> computeNext() {
+        while (true) {
+          if (!mapEntries.hasNext()) {
+            return endOfData();
+          }
+          Map.Entry<E, Counter> mapEntry = mapEntries.next();
+          long count = mapEntry.getValue().sum();
+          if (count > 0) {
+            return Multisets.immutableEntry(mapEntry.getKey(), Ints.saturatedCast(count));
+          }
+        }
+      }
+    };
+
+    return new ForwardingIterator<Entry<E>>() {
+      private Entry<E> last;
+
+      @Override protected Iterator<Entry<E>> delegate() {
+        return readOnlyIterator;
+      }
+
+      @Override public Entry<E> next() {
+        last = super.next();
+        return last;
+      }
+
+      @Override public void remove() {
+        checkRemove(last != null);
+        StripedConcurrentHashMultiset.this.setCount(last.getElement(), 0);
+        last = null;
+      }
+    };
+  }
+
+  /**
+   * Removes all occurrences of all elements. Elements added while this method runs may remain in
+   * the multiset.
+   */
+  @Override public void clear() {
+    for (E element : countMap.keySet()) {
+      setCount(element, 0);
+    }
+  }
+
+  private transient EntrySet entrySet;
+
+  @Override public Set<Multiset.Entry<E>> entrySet() {
+    EntrySet result = entrySet;
+    if (result == null) {
+      entrySet = result = new EntrySet();
+    }
+    return result;
+  }
+
+  private class EntrySet extends AbstractMultiset<E>.EntrySet {
+    @Override StripedConcurrentHashMultiset<E> multiset() {
+      return StripedConcurrentHashMultiset.this;
+    }
+
+    /*
+     * Note: the superclass toArray() methods assume that size() gives a correct
+     * answer, which ours does not.
+     */
+
+    @Override public Object[] toArray() {
+      return snapshot().toArray();
+    }
+
+    @Override public <T> T[] toArray(T[] array) {
+      return snapshot().toArray(array);
+    }
+
+    private List<Multiset.Entry<E>> snapshot() {
+      List<Multiset.Entry<E>> list = Lists.newArrayListWithExpectedSize(size());
+      // Not Iterables.addAll(list, this), because that'll forward right back here.
+      Iterators.addAll(list, iterator());
+      return list;
+    }
+  }
+
+  /**
+   * @serialData a snapshot of the multiset, as an {@link ImmutableMultiset}
+   */
+  private void writeObject(ObjectOutputStream stream) throws IOException {
+    stream.defaultWriteObject();
+    ImmutableMultiset.Builder<E> snapshot = ImmutableMultiset.builder();
+    for (Entry<E> entry : entrySet()) {
+      snapshot.addCopies(entry.getElement(), entry.getCount());
+    }
+    stream.writeObject(snapshot.build());
+  }
+
+  private void readObject(ObjectInputStream stream) throws IOException, ClassNotFoundException {
+    stream.defaultReadObject();
+    @SuppressWarnings("unchecked") // reading data stored by writeObject
+    Multiset<E> deserialized = (Multiset<E>) stream.readObject();
+    FieldSettersHolder.COUNT_MAP_FIELD_SETTER.set(this, new ConcurrentHashMap<E, Counter>());
+    for (Entry<E> entry : deserialized.entrySet()) {
+      add(entry.getElement(), entry.getCount());
+    }
+  }
+
+  private static final long serialVersionUID = 0;
+}
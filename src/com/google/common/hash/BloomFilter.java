@@ -21,9 +21,25 @@ import com.google.common.annotations.Beta;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilterStrategies.AtomicBitArray;
 import com.google.common.hash.BloomFilterStrategies.BitArray;
-
+import com.google.common.hash.BloomFilterStrategies.MappedBitArray;
+import com.google.common.io.Files;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Longs;
+import com.google.common.primitives.SignedBytes;
+import com.google.common.primitives.UnsignedBytes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.RoundingMode;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
 
 import javax.annotation.Nullable;
 
@@ -40,6 +56,12 @@ import javax.annotation.Nullable;
  * that {@linkplain #mightContain(Object)} will erroneously return {@code true} for an object that
  * has not actually been put in the {@code BloomFilter}.
  *
+ * <p>Bloom filters are thread-safe and lock-free: several threads may {@link #put} elements
+ * concurrently, without external synchronization, and each word of the underlying bit array is
+ * updated with a compare-and-set. Concurrent calls to {@link #mightContain} never miss an element
+ * whose {@code put} has returned. Bloom filters {@linkplain #map mapped from a file} are
+ * thread-safe too, but lock while setting bits, and only one process should put elements in a
+ * file at a time.
  *
  * @param <T> the type of instances that the {@code BloomFilter} accepts
  * @author Dimitris Andreou
@@ -102,6 +124,13 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
         "numHashFunctions (%s) must be > 0", numHashFunctions);
     checkArgument(numHashFunctions <= 255,
         "numHashFunctions (%s) must be <= 255", numHashFunctions);
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512) {
+      // each element is mapped to a whole block; see BloomFilterStrategies.blockStart
+      long blockBits = BloomFilterStrategies.BLOCK_BITS;
+      checkArgument(bits.bitSize() >= blockBits && bits.bitSize() % blockBits == 0,
+          "bitSize (%s) must be a positive multiple of %s for a blocked BloomFilter",
+          bits.bitSize(), blockBits);
+    }
     this.bits = checkNotNull(bits);
     this.numHashFunctions = numHashFunctions;
     this.funnel = checkNotNull(funnel);
@@ -270,6 +299,39 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
    */
   public static <T> BloomFilter<T> create(
       Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    return create(funnel, expectedInsertions, fpp, BloomFilterStrategies.MURMUR128_MITZ_32);
+  }
+
+  /**
+   * Creates a blocked {@link BloomFilter BloomFilter<T>} with the expected number of insertions
+   * and expected false positive probability. A blocked Bloom filter confines the bits of each
+   * element to a single 64-byte block, so that {@link #put} and {@link #mightContain} touch one
+   * or two cache lines, rather than one for each hash function. This makes them several times
+   * faster for filters much larger than the processor caches.
+   *
+   * <p>Since the number of elements varies between blocks, a blocked Bloom filter needs more bits
+   * than a {@linkplain #create(Funnel, int, double) standard one} for the same false positive
+   * probability: about 3% to 17% more for probabilities between 1% and 0.01%. It is sized to
+   * achieve {@code fpp} nonetheless, and has at least one block.
+   *
+   * <p>Blocked Bloom filters are only {@linkplain #isCompatible compatible} with other blocked
+   * Bloom filters.
+   *
+   * @param funnel the funnel of T's that the constructed {@code BloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code BloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code BloomFilter}
+   * @since 17.0
+   */
+  public static <T> BloomFilter<T> createBlocked(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    return create(funnel, expectedInsertions, fpp, BloomFilterStrategies.MURMUR128_BLOCKED_512);
+  }
+
+  @VisibleForTesting
+  static <T> BloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp, Strategy strategy) {
     checkNotNull(funnel);
     checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
         expectedInsertions);
@@ -286,9 +348,11 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
      */
     long numBits = optimalNumOfBits(expectedInsertions, fpp);
     int numHashFunctions = optimalNumOfHashFunctions(expectedInsertions, numBits);
+    if (strategy == BloomFilterStrategies.MURMUR128_BLOCKED_512) {
+      numBits = optimalNumOfBlockedBits(expectedInsertions, fpp, numHashFunctions);
+    }
     try {
-      return new BloomFilter<T>(new BitArray(numBits), numHashFunctions, funnel,
-          BloomFilterStrategies.MURMUR128_MITZ_32);
+      return new BloomFilter<T>(new AtomicBitArray(numBits), numHashFunctions, funnel, strategy);
     } catch (IllegalArgumentException e) {
       throw new IllegalArgumentException("Could not create BloomFilter of " + numBits + " bits", e);
     }
@@ -359,6 +423,61 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     return (long) (-n * Math.log(p) / (Math.log(2) * Math.log(2)));
   }
 
+  /**
+   * Computes m (total bits of a blocked Bloom filter, a multiple of the block size) which is
+   * expected to achieve, for the specified expected insertions and number of hashes per element,
+   * the required false positive probability. This starts from the size of a standard Bloom
+   * filter, and grows it until the {@linkplain #blockedFpp expected false positive probability}
+   * of the blocked filter is small enough.
+   *
+   * @param n expected insertions (must be positive)
+   * @param p false positive rate (must be 0 < p < 1)
+   * @param k number of hashes per element, optimal for a standard Bloom filter
+   */
+  @VisibleForTesting
+  static long optimalNumOfBlockedBits(long n, double p, int k) {
+    long blockBits = BloomFilterStrategies.BLOCK_BITS;
+    long numBits = LongMath.divide(Math.max(optimalNumOfBits(n, p), 1), blockBits,
+        RoundingMode.CEILING) * blockBits;
+    while (blockedFpp(n, numBits, k) > p) {
+      // grow by about 3%, and at least one block
+      numBits += LongMath.divide(numBits / 32, blockBits, RoundingMode.CEILING) * blockBits;
+    }
+    return numBits;
+  }
+
+  /**
+   * Computes the expected false positive probability of a blocked Bloom filter of m bits and k
+   * hashes per element, after n insertions. The number of elements mapped to a block follows a
+   * Poisson distribution, of mean {@code n * BLOCK_BITS / m}, and the probability is the mean,
+   * over that distribution, of the false positive probability of a standard Bloom filter of
+   * {@code BLOCK_BITS} bits holding that many elements.
+   *
+   * <p>See "Cache-, Hash- and Space-Efficient Bloom Filters" by Felix Putze, Peter Sanders and
+   * Johannes Singler.
+   *
+   * @param n expected insertions (must be positive)
+   * @param m total number of bits in the Bloom filter (a positive multiple of the block size)
+   * @param k number of hashes per element
+   */
+  @VisibleForTesting
+  static double blockedFpp(long n, long m, int k) {
+    int blockBits = BloomFilterStrategies.BLOCK_BITS;
+    double mean = (double) n * blockBits / m;
+    // the probabilities of more elements than this are negligible
+    int maxElements = (int) (mean + 10 * Math.sqrt(mean) + 10);
+    double logProbability = -mean; // of no elements in a block
+    double fpp = 0;
+    for (int i = 0; i <= maxElements; i++) {
+      if (i > 0) {
+        logProbability += Math.log(mean / i);
+      }
+      double blockFpp = Math.pow(1 - Math.pow(1 - 1.0 / blockBits, (double) k * i), k);
+      fpp += Math.exp(logProbability) * blockFpp;
+    }
+    return fpp;
+  }
+
   private Object writeReplace() {
     return new SerialForm<T>(this);
   }
@@ -370,14 +489,159 @@ public final class BloomFilter<T> implements Predicate<T>, Serializable {
     final Strategy strategy;
 
     SerialForm(BloomFilter<T> bf) {
-      this.data = bf.bits.data;
+      this.data = bf.bits.toPlainArray();
       this.numHashFunctions = bf.numHashFunctions;
       this.funnel = bf.funnel;
       this.strategy = bf.strategy;
     }
     Object readResolve() {
-      return new BloomFilter<T>(new BitArray(data), numHashFunctions, funnel, strategy);
+      return new BloomFilter<T>(new AtomicBitArray(data), numHashFunctions, funnel, strategy);
     }
     private static final long serialVersionUID = 1;
   }
+
+  /**
+   * The number of bytes preceding the bits in the form written by {@link #writeTo}: one for the
+   * strategy ordinal, one for the number of hash functions, and four for the number of words.
+   */
+  private static final int HEADER_BYTES = 6;
+
+  /**
+   * Writes this {@code BloomFilter} to an output stream, with a custom format (not Java
+   * serialization): a header of {@value #HEADER_BYTES} bytes, followed by the words of the bit
+   * array as big-endian longs.
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written BloomFilter on
+   * the heap, or, if it was written to a file, {@linkplain #map(File, Funnel, MapMode)} to map it.
+   *
+   * @since 17.0
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(SignedBytes.checkedCast(strategy.ordinal()));
+    dout.writeByte(UnsignedBytes.checkedCast(numHashFunctions)); // note: checked at the start
+    dout.writeInt(bits.wordCount());
+    for (int i = 0; i < bits.wordCount(); i++) {
+      dout.writeLong(bits.getWord(i));
+    }
+    dout.flush();
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a
+   * {@code BloomFilter<T>} on the heap.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to
+   * populate the original Bloom filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does
+   *     not appear to be a BloomFilter written using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   * @since 17.0
+   */
+  public static <T> BloomFilter<T> readFrom(InputStream in, Funnel<T> funnel) throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    int strategyOrdinal = -1;
+    int numHashFunctions = -1;
+    int dataLength = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      // currently this assumes there is no negative ordinal; will have to be updated if we
+      // add non-stateless strategies (for which we've reserved negative ordinals; see
+      // Strategy.ordinal()).
+      strategyOrdinal = din.readByte();
+      numHashFunctions = UnsignedBytes.toInt(din.readByte());
+      dataLength = din.readInt();
+
+      Strategy strategy = BloomFilterStrategies.values()[strategyOrdinal];
+      long[] data = new long[dataLength];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = din.readLong();
+      }
+      return new BloomFilter<T>(new AtomicBitArray(data), numHashFunctions, funnel, strategy);
+    } catch (RuntimeException e) {
+      IOException ioException = new IOException(
+          "Unable to deserialize BloomFilter from InputStream."
+          + " strategyOrdinal: " + strategyOrdinal
+          + " numHashFunctions: " + numHashFunctions
+          + " dataLength: " + dataLength);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+
+  /**
+   * Maps a file, which was written by {@linkplain #writeTo(OutputStream)}, into memory as a
+   * {@code BloomFilter<T>}, without copying its bits to the heap. The filter is usable at once,
+   * whatever its size: its bits are paged in from the file as they are queried, and the pages are
+   * shared, through the operating system's page cache, by all the processes mapping the file.
+   * Files of 2 GB or more cannot be mapped, as a mapped buffer is indexed by an {@code int}; since
+   * the bits of a {@code BloomFilter} are too, {@link #writeTo} never writes such a file.
+   *
+   * <p>The {@code mode} determines whether {@link #put} may set bits, and where they are set:
+   *
+   * <ul>
+   * <li>{@link MapMode#READ_ONLY}: the filter may only be queried; {@code put} throws a
+   *     {@link java.nio.ReadOnlyBufferException} if it would change any bit.
+   * <li>{@link MapMode#READ_WRITE}: bits are set in the file itself, in place, and are seen by the
+   *     other processes mapping it. The filters mapping the same file in this process share a
+   *     lock, so several of them may put elements concurrently, but nothing locks the file:
+   *     only one process should put elements at a time, since concurrent updates of a word by
+   *     several processes may be lost.
+   * <li>{@link MapMode#PRIVATE}: bits are set in a private, copy-on-write, copy of the touched
+   *     pages, which is discarded with the filter.
+   * </ul>
+   *
+   * <p>The first call to {@link #expectedFpp} counts the set bits by reading the whole file; the
+   * count is then kept up to date by the puts of this process, but misses the bits set by others.
+   * {@linkplain #copy Copies} of a mapped filter are on the heap.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the file, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to
+   * populate the original Bloom filter!
+   *
+   * @throws java.io.FileNotFoundException if {@code file} does not exist
+   * @throws IOException if the file cannot be mapped, if it is 2 GB or larger, or if its contents
+   *     do not appear to be a BloomFilter written using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   * @since 17.0
+   */
+  public static <T> BloomFilter<T> map(File file, Funnel<T> funnel, MapMode mode)
+      throws IOException {
+    checkNotNull(file, "File");
+    checkNotNull(funnel, "Funnel");
+    checkNotNull(mode, "MapMode");
+    int strategyOrdinal = -1;
+    int numHashFunctions = -1;
+    int dataLength = -1;
+    try {
+      // throws IllegalArgumentException for files of 2 GB or more
+      MappedByteBuffer buffer = Files.map(file, mode);
+      strategyOrdinal = buffer.get(0);
+      numHashFunctions = UnsignedBytes.toInt(buffer.get(1));
+      dataLength = buffer.getInt(2);
+      checkArgument(buffer.capacity() == HEADER_BYTES + (long) dataLength * Longs.BYTES,
+          "file length (%s) does not match the header", buffer.capacity());
+
+      Strategy strategy = BloomFilterStrategies.values()[strategyOrdinal];
+      buffer.position(HEADER_BYTES);
+      // slices are big-endian, like DataOutputStream
+      // private and read-only mappings are not changed by the other filters mapping the file
+      MappedBitArray.Shared shared = (mode == MapMode.READ_WRITE)
+          ? MappedBitArray.sharedFor(file)
+          : new MappedBitArray.Shared();
+      BitArray bits = new MappedBitArray(buffer.slice().asLongBuffer(), shared);
+      return new BloomFilter<T>(bits, numHashFunctions, funnel, strategy);
+    } catch (RuntimeException e) {
+      IOException ioException = new IOException(
+          "Unable to map BloomFilter from " + file + "."
+          + " strategyOrdinal: " + strategyOrdinal
+          + " numHashFunctions: " + numHashFunctions
+          + " dataLength: " + dataLength);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
 }
@@ -15,12 +15,20 @@
 package com.google.common.hash;
 
 import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.common.collect.MapMaker;
 import com.google.common.math.LongMath;
 import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
 
+import java.io.File;
+import java.io.IOException;
 import java.math.RoundingMode;
+import java.nio.LongBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * Collections of strategies of generating the k * log(M) bits required for an element to
@@ -72,77 +80,319 @@ enum BloomFilterStrategies implements BloomFilter.Strategy {
       }
       return true;
     }
-  };
+  },
+  /**
+   * Confines the probes of each element to one block of {@link #BLOCK_BITS} bits, the size of a
+   * typical cache line, so that each operation touches one or two cache lines (as the array is
+   * not necessarily aligned to cache lines), rather than up to {@code numHashFunctions} of them.
+   * The first 64 bits of the 128-bit murmur3 hash choose the block, and the last 64 seed the
+   * generator of the probes within it.
+   *
+   * <p>The bits of a block are shared by the elements mapped to it, whose number varies between
+   * blocks, which raises the false positive probability for a given number of bits; see
+   * {@link BloomFilter#optimalNumOfBlockedBits} for the sizing which compensates for this.
+   */
+  MURMUR128_BLOCKED_512() {
+    @Override public <T> boolean put(T object, Funnel<? super T> funnel,
+        int numHashFunctions, BitArray bits) {
+      byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+      int blockStart = blockStart(lowerEight(bytes), bits);
+      long probes = upperEight(bytes);
+      boolean bitsChanged = false;
+      for (int i = 0; i < numHashFunctions; i++) {
+        probes = nextProbes(probes);
+        bitsChanged |= bits.set(blockStart + (int) (probes >>> (Long.SIZE - BLOCK_SHIFT)));
+      }
+      return bitsChanged;
+    }
 
-  // Note: We use this instead of java.util.BitSet because we need access to the long[] data field
-  static class BitArray {
-    final long[] data;
-    int bitCount;
+    @Override public <T> boolean mightContain(T object, Funnel<? super T> funnel,
+        int numHashFunctions, BitArray bits) {
+      byte[] bytes = Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+      int blockStart = blockStart(lowerEight(bytes), bits);
+      long probes = upperEight(bytes);
+      for (int i = 0; i < numHashFunctions; i++) {
+        probes = nextProbes(probes);
+        if (!bits.get(blockStart + (int) (probes >>> (Long.SIZE - BLOCK_SHIFT)))) {
+          return false;
+        }
+      }
+      return true;
+    }
 
-    BitArray(long bits) {
-      this(new long[Ints.checkedCast(LongMath.divide(bits, 64, RoundingMode.CEILING))]);
+    /**
+     * Steps a 64-bit linear congruential generator (Knuth's MMIX constants), whose high bits give
+     * the next probe. Unlike {@code hash1 + i * hash2}, which can only generate 2^17 patterns of
+     * probes in a block, this makes the probes of different elements nearly independent.
+     */
+    private long nextProbes(long probes) {
+      return probes * 6364136223846793005L + 1442695040888963407L;
     }
 
-    // Used by serialization
-    BitArray(long[] data) {
-      checkArgument(data.length > 0, "data length is zero!");
-      this.data = data;
-      int bitCount = 0;
-      for (long value : data) {
-        bitCount += Long.bitCount(value);
-      }
-      this.bitCount = bitCount;
+    private int blockStart(long hash, BitArray bits) {
+      return (int) ((hash & Long.MAX_VALUE) % (bits.bitSize() / BLOCK_BITS)) * BLOCK_BITS;
+    }
+
+    private long lowerEight(byte[] bytes) {
+      return Longs.fromBytes(
+          bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
     }
 
+    private long upperEight(byte[] bytes) {
+      return Longs.fromBytes(
+          bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+    }
+  };
+
+  /**
+   * The number of bits in a block of {@link #MURMUR128_BLOCKED_512}: 64 bytes. The size of a
+   * Bloom filter using that strategy must be a multiple of this.
+   */
+  static final int BLOCK_BITS = 512;
+
+  private static final int BLOCK_SHIFT = 9; // log2(BLOCK_BITS)
+
+  /**
+   * An array of bits, stored in 64-bit words, which the strategies set and query. Bits are never
+   * cleared. The words are kept either on the heap, by {@link AtomicBitArray}, or in a buffer
+   * mapped from a file, by {@link MappedBitArray}.
+   */
+  // Note: We use this instead of java.util.BitSet because we need access to the words
+  abstract static class BitArray {
     /** Returns true if the bit changed value. */
     boolean set(int index) {
-      if (!get(index)) {
-        data[index >> 6] |= (1L << index);
-        bitCount++;
-        return true;
+      if (get(index)) {
+        return false;
       }
-      return false;
+      return orWord(index >>> 6, 1L << index) != 0;
     }
 
     boolean get(int index) {
-      return (data[index >> 6] & (1L << index)) != 0;
+      return (getWord(index >>> 6) & (1L << index)) != 0;
     }
 
     /** Number of bits */
     int bitSize() {
-      return data.length * Long.SIZE;
+      return wordCount() * Long.SIZE;
     }
 
+    /** Number of 64-bit words */
+    abstract int wordCount();
+
+    abstract long getWord(int wordIndex);
+
+    /**
+     * Sets the bits of {@code mask} in the word at {@code wordIndex}, returning the number of bits
+     * which changed value.
+     */
+    abstract int orWord(int wordIndex, long mask);
+
     /** Number of set bits (1s) */
-    int bitCount() {
-      return bitCount;
-    }
+    abstract long bitCount();
 
+    /** Returns a copy of this array on the heap. */
     BitArray copy() {
-      return new BitArray(data.clone());
+      return new AtomicBitArray(toPlainArray());
     }
 
-    /** Combines the two BitArrays using bitwise OR. */
+    /**
+     * Combines the two BitArrays using bitwise OR. {@code array} is read word by word, so bits set
+     * in it concurrently may or may not be copied.
+     */
     void putAll(BitArray array) {
-      checkArgument(data.length == array.data.length,
-          "BitArrays must be of equal length (%s != %s)", data.length, array.data.length);
-      bitCount = 0;
-      for (int i = 0; i < data.length; i++) {
-        data[i] |= array.data[i];
-        bitCount += Long.bitCount(data[i]);
+      checkArgument(wordCount() == array.wordCount(),
+          "BitArrays must be of equal length (%s != %s)", wordCount(), array.wordCount());
+      for (int i = 0; i < wordCount(); i++) {
+        orWord(i, array.getWord(i));
+      }
+    }
+
+    /** Returns a snapshot of the words of this array. */
+    long[] toPlainArray() {
+      long[] array = new long[wordCount()];
+      for (int i = 0; i < array.length; i++) {
+        array[i] = getWord(i);
       }
+      return array;
     }
 
+    // equals and hashCode read the words one at a time, rather than copying a mapped array
+
     @Override public boolean equals(Object o) {
       if (o instanceof BitArray) {
         BitArray bitArray = (BitArray) o;
-        return Arrays.equals(data, bitArray.data);
+        if (wordCount() != bitArray.wordCount()) {
+          return false;
+        }
+        for (int i = 0; i < wordCount(); i++) {
+          if (getWord(i) != bitArray.getWord(i)) {
+            return false;
+          }
+        }
+        return true;
       }
       return false;
     }
 
+    /** Returns the same hash code as {@link Arrays#hashCode(long[])} of the words. */
     @Override public int hashCode() {
-      return Arrays.hashCode(data);
+      int hashCode = 1;
+      for (int i = 0; i < wordCount(); i++) {
+        hashCode = 31 * hashCode + Longs.hashCode(getWord(i));
+      }
+      return hashCode;
+    }
+  }
+
+  /**
+   * A bit array on the heap whose bits may be set concurrently by several threads without
+   * locking: bits are set with a compare-and-set of the word containing them, and the number of
+   * set bits is kept in a striped counter.
+   */
+  static final class AtomicBitArray extends BitArray {
+    private final AtomicLongArray data;
+    private final LongAddable bitCount;
+
+    AtomicBitArray(long bits) {
+      this(new long[Ints.checkedCast(LongMath.divide(bits, 64, RoundingMode.CEILING))]);
+    }
+
+    // Used by serialization
+    AtomicBitArray(long[] data) {
+      checkArgument(data.length > 0, "data length is zero!");
+      this.data = new AtomicLongArray(data);
+      this.bitCount = LongAddables.create();
+      long bitCount = 0;
+      for (long value : data) {
+        bitCount += Long.bitCount(value);
+      }
+      this.bitCount.add(bitCount);
+    }
+
+    @Override int wordCount() {
+      return data.length();
+    }
+
+    @Override long getWord(int wordIndex) {
+      return data.get(wordIndex);
+    }
+
+    @Override int orWord(int wordIndex, long mask) {
+      long oldValue;
+      long newValue;
+      do {
+        oldValue = data.get(wordIndex);
+        newValue = oldValue | mask;
+        if (oldValue == newValue) {
+          // another thread set the bits first
+          return 0;
+        }
+      } while (!data.compareAndSet(wordIndex, oldValue, newValue));
+      int bitsAdded = Long.bitCount(newValue) - Long.bitCount(oldValue);
+      bitCount.add(bitsAdded);
+      return bitsAdded;
+    }
+
+    /**
+     * Number of set bits (1s). This is exact when no bits are being set concurrently, and
+     * otherwise counts some of the bits being set.
+     */
+    @Override long bitCount() {
+      return bitCount.sum();
+    }
+  }
+
+  /**
+   * A bit array whose words are those of a {@link LongBuffer}, typically a view of a buffer mapped
+   * from a file, so that its bits are read from the file lazily, and may be shared with other
+   * processes mapping the same file. Bits are set while holding the lock of a {@link Shared}
+   * state, since buffers offer no compare-and-set; arrays mapping the same file in this process
+   * should share the same state, so that they neither lose each other's updates nor miscount
+   * bits. Nothing protects the words from concurrent updates by other processes.
+   */
+  static final class MappedBitArray extends BitArray {
+    private final LongBuffer data;
+    private final Shared shared;
+
+    MappedBitArray(LongBuffer data, Shared shared) {
+      checkArgument(data.capacity() > 0, "data length is zero!");
+      this.data = data;
+      this.shared = checkNotNull(shared);
+    }
+
+    @Override int wordCount() {
+      return data.capacity();
+    }
+
+    @Override long getWord(int wordIndex) {
+      return data.get(wordIndex);
+    }
+
+    /**
+     * @throws java.nio.ReadOnlyBufferException if the buffer is read-only and any of the bits
+     *     would change
+     */
+    @Override int orWord(int wordIndex, long mask) {
+      synchronized (shared) {
+        long oldValue = data.get(wordIndex);
+        long newValue = oldValue | mask;
+        if (oldValue == newValue) {
+          return 0;
+        }
+        data.put(wordIndex, newValue);
+        int bitsAdded = Long.bitCount(newValue) - Long.bitCount(oldValue);
+        if (shared.bitCount >= 0) {
+          shared.bitCount += bitsAdded;
+        }
+        return bitsAdded;
+      }
+    }
+
+    /**
+     * Number of set bits (1s). The words are counted on the first call, which reads the whole
+     * buffer, and the count is kept up to date by {@link #orWord} from then on; bits set by other
+     * processes after that are not counted.
+     */
+    @Override long bitCount() {
+      synchronized (shared) {
+        if (shared.bitCount < 0) {
+          long bitCount = 0;
+          for (int i = 0; i < data.capacity(); i++) {
+            bitCount += Long.bitCount(data.get(i));
+          }
+          shared.bitCount = bitCount;
+        }
+        return shared.bitCount;
+      }
+    }
+
+    /**
+     * The lock and the number of set bits shared by the arrays mapping the same file. Its monitor
+     * guards {@code bitCount}, which is negative until the words are first counted.
+     */
+    static final class Shared {
+      long bitCount = -1;
+    }
+
+    /** The shared states of the files mapped for writing, by canonical path. */
+    private static final ConcurrentMap<String, Shared> SHARED_BY_PATH =
+        new MapMaker().weakValues().makeMap();
+
+    /**
+     * Returns the shared state of the arrays mapping {@code file} for writing in this process,
+     * which lives as long as any of them.
+     */
+    static Shared sharedFor(File file) throws IOException {
+      String path = file.getCanonicalPath();
+      Shared shared = SHARED_BY_PATH.get(path);
+      if (shared == null) {
+        Shared newShared = new Shared();
+        shared = SHARED_BY_PATH.putIfAbsent(path, newShared);
+        if (shared == null) {
+          shared = newShared;
+        }
+      }
+      return shared;
     }
   }
 }
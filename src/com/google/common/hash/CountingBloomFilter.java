@@ -0,0 +1,346 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.hash.BloomFilter.Strategy;
+import com.google.common.hash.BloomFilterStrategies.BitArray;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A Bloom filter for instances of {@code T} which, unlike a {@link BloomFilter}, supports
+ * {@linkplain #remove removing} elements. Each bit of a Bloom filter is replaced by a four-bit
+ * counter, which {@link #put} increments and {@link #remove} decrements, so a counting Bloom
+ * filter takes four times the space of a Bloom filter with the same false positive probability.
+ * The counters are chosen by the same hashing strategy as those bits.
+ *
+ * <p>A counter which reaches 15 sticks there, as its true count is unknown from then on: the
+ * elements it counts can no longer all be removed, which only causes false positives. Removing
+ * an element which was never put, but which the filter might contain, decrements the counters of
+ * other elements, and may cause false <i>negatives</i>: only remove elements which were put.
+ *
+ * <p>Counting Bloom filters are thread-safe: their methods synchronize on the filter.
+ *
+ * @param <T> the type of instances that the {@code CountingBloomFilter} accepts
+ * @since 17.0
+ */
+@Beta
+public final class CountingBloomFilter<T> implements Predicate<T>, Serializable {
+  /** The counters of the CountingBloomFilter (not necessarily power of 2!) */
+  private final Counters counters;
+
+  /** Number of hashes per element */
+  private final int numHashFunctions;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<T> funnel;
+
+  /**
+   * The strategy we employ to map an element T to {@code numHashFunctions} counter indexes.
+   */
+  private final Strategy strategy;
+
+  private CountingBloomFilter(Counters counters, int numHashFunctions, Funnel<T> funnel,
+      Strategy strategy) {
+    checkArgument(numHashFunctions > 0,
+        "numHashFunctions (%s) must be > 0", numHashFunctions);
+    checkArgument(numHashFunctions <= 255,
+        "numHashFunctions (%s) must be <= 255", numHashFunctions);
+    this.counters = checkNotNull(counters);
+    this.numHashFunctions = numHashFunctions;
+    this.funnel = checkNotNull(funnel);
+    this.strategy = checkNotNull(strategy);
+  }
+
+  /**
+   * Creates a {@link CountingBloomFilter CountingBloomFilter<T>} with the expected number of
+   * insertions and expected false positive probability.
+   *
+   * <p>Note that overflowing a {@code CountingBloomFilter} with significantly more elements
+   * than specified, will result in its saturation, and a sharp deterioration of its
+   * false positive probability.
+   *
+   * <p>The constructed {@code CountingBloomFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountingBloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CountingBloomFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code CountingBloomFilter}
+   */
+  public static <T> CountingBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
+        expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    long numCounters = BloomFilter.optimalNumOfBits(expectedInsertions, fpp);
+    int numHashFunctions = BloomFilter.optimalNumOfHashFunctions(expectedInsertions, numCounters);
+    try {
+      return new CountingBloomFilter<T>(new Counters(numCounters), numHashFunctions, funnel,
+          BloomFilterStrategies.MURMUR128_MITZ_32);
+    } catch (IllegalArgumentException e) {
+      throw new IllegalArgumentException(
+          "Could not create CountingBloomFilter of " + numCounters + " counters", e);
+    }
+  }
+
+  /**
+   * Creates a {@link CountingBloomFilter CountingBloomFilter<T>} with the expected number of
+   * insertions and a default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CountingBloomFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CountingBloomFilter<T>}; must be positive
+   * @return a {@code CountingBloomFilter}
+   */
+  public static <T> CountingBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */) {
+    return create(funnel, expectedInsertions, 0.03);
+  }
+
+  /**
+   * Creates a new {@code CountingBloomFilter} that's a copy of this instance. The new instance is
+   * equal to this instance but shares no mutable state.
+   */
+  public synchronized CountingBloomFilter<T> copy() {
+    return new CountingBloomFilter<T>(counters.copy(), numHashFunctions, funnel, strategy);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter, and not
+   * removed since, {@code false} if this is <i>definitely</i> not the case.
+   */
+  public synchronized boolean mightContain(T object) {
+    return strategy.mightContain(object, funnel, numHashFunctions, counters);
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code CountingBloomFilter}. Ensures that subsequent invocations of
+   * {@link #mightContain(Object)} with the same element will return {@code true}, until it is
+   * removed as often as it was put.
+   *
+   * @return true if any of the element's counters was zero. Like {@link BloomFilter#put}, this
+   *     always returns the <i>opposite</i> result to what {@code mightContain(t)} would have
+   *     returned at the time it is called.
+   */
+  public synchronized boolean put(T object) {
+    return strategy.put(object, funnel, numHashFunctions, counters);
+  }
+
+  /**
+   * Removes a single occurrence of an element from this {@code CountingBloomFilter}, if it might
+   * contain it, by decrementing each of its counters. The element must have been put in this
+   * filter, or the counters of other elements may reach zero.
+   *
+   * @return true if the element might have been contained in this filter, and was removed
+   */
+  public synchronized boolean remove(T object) {
+    if (!mightContain(object)) {
+      return false;
+    }
+    counters.decrementing = true;
+    try {
+      strategy.put(object, funnel, numHashFunctions, counters);
+    } finally {
+      counters.decrementing = false;
+    }
+    return true;
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the
+   * {@code CountingBloomFilter}.
+   *
+   * <p>Ideally, this number should be close to the {@code fpp} parameter
+   * passed in {@linkplain #create(Funnel, int, double)}, or smaller. If it is
+   * significantly higher, it is usually the case that too many elements (more than
+   * expected) have been put in the {@code CountingBloomFilter}, degenerating it.
+   */
+  public synchronized double expectedFpp() {
+    return Math.pow((double) counters.bitCount() / counters.bitSize(), numHashFunctions);
+  }
+
+  /** Returns a copy of the counters, taken without holding the lock of any other filter. */
+  private synchronized long[] snapshot() {
+    return counters.data.clone();
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof CountingBloomFilter) {
+      CountingBloomFilter<?> that = (CountingBloomFilter<?>) object;
+      return this.numHashFunctions == that.numHashFunctions
+          && this.funnel.equals(that.funnel)
+          && Arrays.equals(this.snapshot(), that.snapshot())
+          && this.strategy.equals(that.strategy);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(numHashFunctions, funnel, strategy, Arrays.hashCode(snapshot()));
+  }
+
+  /**
+   * Four-bit counters, sixteen to a word, which the strategy sees as a bit array whose bit i is
+   * set if counter i is nonzero. Setting a bit increments its counter, unless the counter is
+   * saturated, or, while {@code decrementing} is true, decrements it instead.
+   */
+  private static final class Counters extends BitArray {
+    private static final int MAX_COUNT = 15;
+
+    final long[] data;
+    boolean decrementing;
+
+    Counters(long numCounters) {
+      // a whole number of 64-bit words of the bit array seen by the strategy
+      this(new long[Ints.checkedCast(LongMath.divide(numCounters, 64, RoundingMode.CEILING) * 4)]);
+    }
+
+    Counters(long[] data) {
+      checkArgument(data.length > 0, "data length is zero!");
+      checkArgument(data.length % 4 == 0, "data length (%s) must be a multiple of 4", data.length);
+      this.data = data;
+    }
+
+    private int count(int index) {
+      return (int) (data[index >>> 4] >>> ((index & 15) << 2)) & MAX_COUNT;
+    }
+
+    private void add(int index, long delta) {
+      data[index >>> 4] += delta << ((index & 15) << 2);
+    }
+
+    /** Returns true if the counter was zero. */
+    @Override boolean set(int index) {
+      int count = count(index);
+      if (decrementing) {
+        // a probe repeated by the strategy may find its counter already decremented to zero
+        if (count > 0 && count < MAX_COUNT) {
+          add(index, -1);
+        }
+        return false;
+      }
+      if (count < MAX_COUNT) {
+        add(index, 1);
+      }
+      return count == 0;
+    }
+
+    @Override boolean get(int index) {
+      return count(index) != 0;
+    }
+
+    @Override int wordCount() {
+      return data.length / 4;
+    }
+
+    @Override long getWord(int wordIndex) {
+      long word = 0;
+      for (int i = 0; i < Long.SIZE; i++) {
+        if (get(wordIndex * Long.SIZE + i)) {
+          word |= 1L << i;
+        }
+      }
+      return word;
+    }
+
+    /** Sets the zero counters among the bits of {@code mask} to one. */
+    @Override int orWord(int wordIndex, long mask) {
+      int changed = 0;
+      for (int i = 0; i < Long.SIZE; i++) {
+        int index = wordIndex * Long.SIZE + i;
+        if ((mask & (1L << i)) != 0 && !get(index)) {
+          add(index, 1);
+          changed++;
+        }
+      }
+      return changed;
+    }
+
+    /** Number of nonzero counters */
+    @Override long bitCount() {
+      long bitCount = 0;
+      for (long value : data) {
+        // gather whether each four-bit counter is nonzero into its lowest bit
+        long nonzero = value | (value >>> 1);
+        nonzero = (nonzero | (nonzero >>> 2)) & 0x1111111111111111L;
+        bitCount += Long.bitCount(nonzero);
+      }
+      return bitCount;
+    }
+
+    @Override Counters copy() {
+      return new Counters(data.clone());
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(this);
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final long[] data;
+    final int numHashFunctions;
+    final Funnel<T> funnel;
+    final Strategy strategy;
+
+    SerialForm(CountingBloomFilter<T> bf) {
+      this.data = bf.snapshot();
+      this.numHashFunctions = bf.numHashFunctions;
+      this.funnel = bf.funnel;
+      this.strategy = bf.strategy;
+    }
+    Object readResolve() {
+      return new CountingBloomFilter<T>(new Counters(data), numHashFunctions, funnel, strategy);
+    }
+    private static final long serialVersionUID = 1;
+  }
+
+  private static final long serialVersionUID = 0;
+}
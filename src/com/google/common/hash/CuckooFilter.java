@@ -0,0 +1,655 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.math.DoubleMath;
+import com.google.common.math.LongMath;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+import javax.annotation.Nullable;
+
+/**
+ * A cuckoo filter for instances of {@code T}. Like a {@link BloomFilter}, a cuckoo filter offers
+ * an approximate containment test with one-sided error, but it also supports {@linkplain #remove
+ * removing} elements, and for false positive probabilities below about 3% it takes less space.
+ *
+ * <p>A cuckoo filter stores a short fingerprint of each element in one of two buckets of a hash
+ * table, each holding four fingerprints. When both buckets of an element are full, a fingerprint
+ * is moved to the other bucket of its own element, making room for it, as in cuckoo hashing; the
+ * other bucket is found from the fingerprint alone, so elements need not be stored. The filter is
+ * full when no room can be made this way, which typically happens when 95% of its entries are
+ * occupied: {@link #put} then returns {@code false}. See "Cuckoo Filter: Practically Better Than
+ * Bloom" by Bin Fan, David G. Andersen, Michael Kaminsky and Michael D. Mitzenmacher.
+ *
+ * <p>An element put several times is stored several times, and must be removed as many times.
+ * Removing an element which was never put, but which the filter might contain, removes the
+ * fingerprint of another element, and may cause false <i>negatives</i>: only remove elements
+ * which were put.
+ *
+ * <p>Cuckoo filters are thread-safe: their methods synchronize on the filter.
+ *
+ * @param <T> the type of instances that the {@code CuckooFilter} accepts
+ * @since 17.0
+ */
+@Beta
+public final class CuckooFilter<T> implements Predicate<T>, Serializable {
+  /** The number of fingerprints in each bucket. */
+  private static final int BUCKET_SIZE = 4;
+
+  /**
+   * The log2 of the largest number of buckets, so that the indices of the entries, up to
+   * {@code numBuckets * BUCKET_SIZE}, fit in an {@code int}.
+   */
+  private static final int MAX_BUCKETS_LOG2 = 28;
+
+  /** The fraction of the entries which can be occupied before insertions start to fail. */
+  private static final double LOAD_FACTOR = 0.955;
+
+  /** The number of fingerprints moved before the filter is considered full. */
+  private static final int MAX_KICKS = 500;
+
+  /**
+   * The identifier of the hashing scheme, written by {@link #writeTo}: the first 64 bits of the
+   * 128-bit murmur3 hash of an element give its bucket index, in their low bits, and the last 64
+   * give its fingerprint. (The high bits of the first 64 are not independent enough of their low
+   * bits to give the fingerprint.)
+   */
+  private static final int MURMUR128 = 0;
+
+  /** The fingerprints, of {@code fingerprintBits} bits each, packed into words */
+  private final long[] data;
+
+  /** The number of buckets, a power of 2 */
+  private final int numBuckets;
+
+  /** The number of bits of each fingerprint, from 1 to 32; fingerprint 0 marks empty entries */
+  private final int fingerprintBits;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<T> funnel;
+
+  /** The number of fingerprints stored, including the victim */
+  private long count;
+
+  /**
+   * A fingerprint for which no room could be made, and one of its buckets, or 0 if there is none.
+   * While there is a victim, the filter is full.
+   */
+  private int victimFingerprint;
+  private int victimIndex;
+
+  private CuckooFilter(long[] data, int numBuckets, int fingerprintBits, long count,
+      int victimIndex, int victimFingerprint, Funnel<T> funnel) {
+    checkArgument(numBuckets > 0 && (numBuckets & (numBuckets - 1)) == 0,
+        "numBuckets (%s) must be a power of 2", numBuckets);
+    checkArgument(numBuckets <= 1 << MAX_BUCKETS_LOG2,
+        "numBuckets (%s) must be at most 2^%s", numBuckets, MAX_BUCKETS_LOG2);
+    checkArgument(fingerprintBits > 0 && fingerprintBits <= Integer.SIZE,
+        "fingerprintBits (%s) must be between 1 and 32", fingerprintBits);
+    checkArgument(data.length == numWords(numBuckets, fingerprintBits),
+        "data length (%s) does not match numBuckets and fingerprintBits", data.length);
+    checkArgument(count >= 0 && count <= (long) numBuckets * BUCKET_SIZE + 1,
+        "count (%s) is out of range", count);
+    checkArgument(victimFingerprint == 0 || (victimIndex >= 0 && victimIndex < numBuckets),
+        "victimIndex (%s) is out of range", victimIndex);
+    this.data = data;
+    this.numBuckets = numBuckets;
+    this.fingerprintBits = fingerprintBits;
+    this.count = count;
+    this.victimIndex = victimIndex;
+    this.victimFingerprint = victimFingerprint;
+    this.funnel = checkNotNull(funnel);
+  }
+
+  private static int numWords(int numBuckets, int fingerprintBits) {
+    return Ints.checkedCast(LongMath.divide(
+        (long) numBuckets * BUCKET_SIZE * fingerprintBits, Long.SIZE, RoundingMode.CEILING));
+  }
+
+  /**
+   * Creates a {@link CuckooFilter CuckooFilter<T>} with room for the expected number of
+   * insertions and the expected false positive probability.
+   *
+   * <p>The filter has room for at least {@code expectedInsertions} elements, and often for up to
+   * twice as many, as the number of buckets is rounded up to a power of 2; beyond that,
+   * {@link #put} fails, rather than degrading the false positive probability.
+   *
+   * <p>The constructed {@code CuckooFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CuckooFilter<T>}; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code CuckooFilter}
+   * @throws IllegalArgumentException if {@code fpp} is too small for fingerprints of 32 bits, or
+   *     {@code expectedInsertions} too large for 2^28 buckets, about a billion elements
+   */
+  public static <T> CuckooFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
+        expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    int numBuckets = optimalNumOfBuckets(expectedInsertions);
+    int fingerprintBits = optimalNumOfFingerprintBits(fpp);
+    return new CuckooFilter<T>(new long[numWords(numBuckets, fingerprintBits)], numBuckets,
+        fingerprintBits, 0, 0, 0, funnel);
+  }
+
+  /**
+   * Creates a {@link CuckooFilter CuckooFilter<T>} with room for the expected number of
+   * insertions and a default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code CuckooFilter<T>} will use
+   * @param expectedInsertions the number of expected insertions to the constructed
+   *     {@code CuckooFilter<T>}; must be positive
+   * @return a {@code CuckooFilter}
+   */
+  public static <T> CuckooFilter<T> create(Funnel<T> funnel, int expectedInsertions /* n */) {
+    return create(funnel, expectedInsertions, 0.03);
+  }
+
+  /*
+   * Cheat sheet:
+   *
+   * b: fingerprints per bucket (4)
+   * f: bits per fingerprint
+   * a: load factor, the fraction of occupied entries (at most about 0.955 for b = 4)
+   *
+   * 1) A lookup compares 2b fingerprints, each equal with probability 1 / (2^f - 1), so
+   *    p ~= 2b / 2^f, and f = log2(2b / p)
+   * 2) Bits per element: f / a ~= (log2(1/p) + 3) / a, against 1.44 log2(1/p) for a Bloom filter
+   */
+
+  /**
+   * Computes the number of buckets, a power of 2, with room for the expected insertions.
+   *
+   * @param n expected insertions (must be positive)
+   */
+  @VisibleForTesting
+  static int optimalNumOfBuckets(long n) {
+    long minBuckets = (long) Math.ceil(n / (BUCKET_SIZE * LOAD_FACTOR));
+    int log2 = LongMath.log2(minBuckets, RoundingMode.CEILING);
+    checkArgument(log2 <= MAX_BUCKETS_LOG2, "Expected insertions (%s) need more than 2^%s buckets",
+        n, MAX_BUCKETS_LOG2);
+    return 1 << log2;
+  }
+
+  /**
+   * Computes the number of bits of each fingerprint which achieves the required false positive
+   * probability when the filter is full.
+   *
+   * @param p false positive rate (must be 0 < p < 1)
+   */
+  @VisibleForTesting
+  static int optimalNumOfFingerprintBits(double p) {
+    int bits = DoubleMath.log2(2 * BUCKET_SIZE / p, RoundingMode.CEILING);
+    checkArgument(bits <= Integer.SIZE,
+        "False positive probability (%s) needs fingerprints of more than 32 bits", p);
+    return bits;
+  }
+
+  /**
+   * Creates a new {@code CuckooFilter} that's a copy of this instance. The new instance is equal
+   * to this instance but shares no mutable state.
+   */
+  public synchronized CuckooFilter<T> copy() {
+    return new CuckooFilter<T>(data.clone(), numBuckets, fingerprintBits, count, victimIndex,
+        victimFingerprint, funnel);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this cuckoo filter, and not
+   * removed since, {@code false} if this is <i>definitely</i> not the case.
+   */
+  public synchronized boolean mightContain(T object) {
+    byte[] hash = hash(object);
+    int fingerprint = fingerprint(hash);
+    int index = index(hash);
+    int alternate = alternateIndex(index, fingerprint);
+    return bucketContains(index, fingerprint)
+        || bucketContains(alternate, fingerprint)
+        || (victimFingerprint == fingerprint
+            && (victimIndex == index || victimIndex == alternate));
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code CuckooFilter}. If this succeeds, ensures that subsequent
+   * invocations of {@link #mightContain(Object)} with the same element will return {@code true},
+   * until it is removed as often as it was put.
+   *
+   * @return true if the element was put, false if the filter is full
+   */
+  public synchronized boolean put(T object) {
+    if (victimFingerprint != 0) {
+      return false;
+    }
+    byte[] hash = hash(object);
+    insert(index(hash), fingerprint(hash), lowerEight(hash));
+    return true;
+  }
+
+  /**
+   * Removes a single occurrence of an element from this {@code CuckooFilter}, if it might contain
+   * it. The element must have been put in this filter, or a fingerprint of another element may be
+   * removed instead.
+   *
+   * @return true if the element might have been contained in this filter, and was removed
+   */
+  public synchronized boolean remove(T object) {
+    byte[] hash = hash(object);
+    int fingerprint = fingerprint(hash);
+    int index = index(hash);
+    int alternate = alternateIndex(index, fingerprint);
+    if (victimFingerprint == fingerprint && (victimIndex == index || victimIndex == alternate)) {
+      victimFingerprint = 0;
+      count--;
+      return true;
+    }
+    if (!bucketRemove(index, fingerprint) && !bucketRemove(alternate, fingerprint)) {
+      return false;
+    }
+    count--;
+    if (victimFingerprint != 0) {
+      // there may be room for the victim now
+      int victim = victimFingerprint;
+      victimFingerprint = 0;
+      count--;
+      insert(victimIndex, victim, victim);
+    }
+    return true;
+  }
+
+  /**
+   * Returns the number of elements in this filter: the number of times elements have been put,
+   * less the number of times they have been removed. This is approximate, since an element which
+   * was never put may be removed in place of another, if their fingerprints are equal.
+   */
+  public synchronized long approximateElementCount() {
+    return count;
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the {@code CuckooFilter}, given
+   * the fraction of its entries which are occupied.
+   *
+   * <p>This is at most the {@code fpp} parameter passed in
+   * {@linkplain #create(Funnel, int, double)}, which is reached when the filter is full.
+   */
+  public synchronized double expectedFpp() {
+    double occupied = (double) count / numBuckets;
+    return 1.0 - Math.pow(1.0 - 1.0 / fingerprintMask(), 2 * occupied);
+  }
+
+  /**
+   * Determines whether a given cuckoo filter is compatible with this cuckoo filter. For two
+   * cuckoo filters to be compatible, they must:
+   *
+   * <ul>
+   * <li>not be the same instance
+   * <li>have the same number of buckets
+   * <li>have the same number of bits per fingerprint
+   * <li>have equal funnels
+   * </ul>
+   *
+   * @param that The cuckoo filter to check for compatibility.
+   */
+  public boolean isCompatible(CuckooFilter<T> that) {
+    checkNotNull(that);
+    return (this != that) &&
+        (this.numBuckets == that.numBuckets) &&
+        (this.fingerprintBits == that.fingerprintBits) &&
+        (this.funnel.equals(that.funnel));
+  }
+
+  /**
+   * Combines this cuckoo filter with another cuckoo filter by putting the fingerprints of the
+   * other filter into this one. The mutations happen to <b>this</b> instance. If this filter has
+   * no room for all of them, it is left unchanged.
+   *
+   * @param that The cuckoo filter to combine this cuckoo filter with. It is not mutated.
+   * @return true if the filters were combined, false if this filter is too full
+   * @throws IllegalArgumentException if {@code isCompatible(that) == false}
+   */
+  public boolean putAll(CuckooFilter<T> that) {
+    checkNotNull(that);
+    checkArgument(this != that, "Cannot combine a CuckooFilter with itself.");
+    checkArgument(this.numBuckets == that.numBuckets,
+        "CuckooFilters must have the same number of buckets (%s != %s)",
+        this.numBuckets, that.numBuckets);
+    checkArgument(this.fingerprintBits == that.fingerprintBits,
+        "CuckooFilters must have the same number of bits per fingerprint (%s != %s)",
+        this.fingerprintBits, that.fingerprintBits);
+    checkArgument(this.funnel.equals(that.funnel),
+        "CuckooFilters must have equal funnels (%s != %s)",
+        this.funnel, that.funnel);
+    // copy that first, so that the locks of the two filters are never held together
+    CuckooFilter<T> other = that.copy();
+    synchronized (this) {
+      CuckooFilter<T> merged = copy();
+      for (int entry = 0; entry < numBuckets * BUCKET_SIZE; entry++) {
+        int fingerprint = other.getEntry(entry);
+        if (fingerprint != 0) {
+          if (merged.victimFingerprint != 0) {
+            return false;
+          }
+          merged.insert(entry / BUCKET_SIZE, fingerprint, fingerprint);
+        }
+      }
+      if (other.victimFingerprint != 0) {
+        if (merged.victimFingerprint != 0) {
+          return false;
+        }
+        merged.insert(other.victimIndex, other.victimFingerprint, other.victimFingerprint);
+      }
+      System.arraycopy(merged.data, 0, data, 0, data.length);
+      count = merged.count;
+      victimIndex = merged.victimIndex;
+      victimFingerprint = merged.victimFingerprint;
+      return true;
+    }
+  }
+
+  /**
+   * Stores a fingerprint in one of its buckets, moving other fingerprints to their alternate
+   * buckets to make room if need be, or makes it the victim if no room can be made. This must
+   * only be called while there is no victim.
+   *
+   * @param random the seed of the random choices of the fingerprints to move
+   */
+  private void insert(int index, int fingerprint, long random) {
+    count++;
+    int alternate = alternateIndex(index, fingerprint);
+    if (bucketInsert(index, fingerprint) || bucketInsert(alternate, fingerprint)) {
+      return;
+    }
+    random = nextRandom(random);
+    if (random < 0) {
+      index = alternate;
+    }
+    for (int kick = 0; kick < MAX_KICKS; kick++) {
+      random = nextRandom(random);
+      int entry = index * BUCKET_SIZE + (int) (random >>> (Long.SIZE - 2));
+      int evicted = getEntry(entry);
+      setEntry(entry, fingerprint);
+      fingerprint = evicted;
+      index = alternateIndex(index, fingerprint);
+      if (bucketInsert(index, fingerprint)) {
+        return;
+      }
+    }
+    victimIndex = index;
+    victimFingerprint = fingerprint;
+  }
+
+  /** Steps a 64-bit linear congruential generator, whose high bits are the most random. */
+  private static long nextRandom(long random) {
+    return random * 6364136223846793005L + 1442695040888963407L;
+  }
+
+  private byte[] hash(T object) {
+    return Hashing.murmur3_128().hashObject(object, funnel).getBytesInternal();
+  }
+
+  private int index(byte[] hash) {
+    return (int) lowerEight(hash) & (numBuckets - 1);
+  }
+
+  private int fingerprint(byte[] hash) {
+    int fingerprint = (int) (upperEight(hash) & fingerprintMask());
+    return (fingerprint == 0) ? 1 : fingerprint;
+  }
+
+  private static long lowerEight(byte[] bytes) {
+    return Longs.fromBytes(
+        bytes[7], bytes[6], bytes[5], bytes[4], bytes[3], bytes[2], bytes[1], bytes[0]);
+  }
+
+  private static long upperEight(byte[] bytes) {
+    return Longs.fromBytes(
+        bytes[15], bytes[14], bytes[13], bytes[12], bytes[11], bytes[10], bytes[9], bytes[8]);
+  }
+
+  private long fingerprintMask() {
+    return (1L << fingerprintBits) - 1;
+  }
+
+  /**
+   * Returns the other bucket of the fingerprints in bucket {@code index}. Since the number of
+   * buckets is a power of 2, this is an involution: the alternate of the alternate bucket is the
+   * original one.
+   */
+  private int alternateIndex(int index, int fingerprint) {
+    // the high bits of the product of the fingerprint and an odd constant depend on all its bits
+    int mixed = (int) ((fingerprint * 0xc6a4a7935bd1e995L) >>> Integer.SIZE);
+    return (index ^ mixed) & (numBuckets - 1);
+  }
+
+  private boolean bucketContains(int index, int fingerprint) {
+    for (int entry = index * BUCKET_SIZE; entry < (index + 1) * BUCKET_SIZE; entry++) {
+      if (getEntry(entry) == fingerprint) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean bucketInsert(int index, int fingerprint) {
+    for (int entry = index * BUCKET_SIZE; entry < (index + 1) * BUCKET_SIZE; entry++) {
+      if (getEntry(entry) == 0) {
+        setEntry(entry, fingerprint);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private boolean bucketRemove(int index, int fingerprint) {
+    for (int entry = index * BUCKET_SIZE; entry < (index + 1) * BUCKET_SIZE; entry++) {
+      if (getEntry(entry) == fingerprint) {
+        setEntry(entry, 0);
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private int getEntry(int entry) {
+    long bitIndex = (long) entry * fingerprintBits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) bitIndex & 63;
+    long value = data[word] >>> shift;
+    if (shift + fingerprintBits > Long.SIZE) {
+      // the entry continues in the next word
+      value |= data[word + 1] << (Long.SIZE - shift);
+    }
+    return (int) (value & fingerprintMask());
+  }
+
+  private void setEntry(int entry, int fingerprint) {
+    long bitIndex = (long) entry * fingerprintBits;
+    int word = (int) (bitIndex >>> 6);
+    int shift = (int) bitIndex & 63;
+    long mask = fingerprintMask();
+    long value = fingerprint & mask;
+    data[word] = (data[word] & ~(mask << shift)) | (value << shift);
+    if (shift + fingerprintBits > Long.SIZE) {
+      int written = Long.SIZE - shift;
+      data[word + 1] = (data[word + 1] & ~(mask >>> written)) | (value >>> written);
+    }
+  }
+
+  @Override
+  public boolean equals(@Nullable Object object) {
+    if (object == this) {
+      return true;
+    }
+    if (object instanceof CuckooFilter) {
+      CuckooFilter<?> that = ((CuckooFilter<?>) object).copy();
+      CuckooFilter<T> copy = this.copy();
+      return copy.numBuckets == that.numBuckets
+          && copy.fingerprintBits == that.fingerprintBits
+          && copy.funnel.equals(that.funnel)
+          && copy.count == that.count
+          && copy.victimFingerprint == that.victimFingerprint
+          && (copy.victimFingerprint == 0 || copy.victimIndex == that.victimIndex)
+          && Arrays.equals(copy.data, that.data);
+    }
+    return false;
+  }
+
+  @Override
+  public int hashCode() {
+    CuckooFilter<T> copy = copy();
+    return Objects.hashCode(copy.numBuckets, copy.fingerprintBits, copy.funnel, copy.count,
+        copy.victimFingerprint, Arrays.hashCode(copy.data));
+  }
+
+  /**
+   * Writes this {@code CuckooFilter} to an output stream, with a custom format (not Java
+   * serialization): the hashing scheme, the number of bits per fingerprint, the number of
+   * buckets, the element count, the victim, and the packed fingerprints, as big-endian longs.
+   *
+   * <p>Use {@linkplain #readFrom(InputStream, Funnel)} to reconstruct the written CuckooFilter.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    CuckooFilter<T> copy = copy();
+    DataOutputStream dout = new DataOutputStream(out);
+    dout.writeByte(MURMUR128);
+    dout.writeByte(copy.fingerprintBits);
+    dout.writeInt(copy.numBuckets);
+    dout.writeLong(copy.count);
+    dout.writeInt(copy.victimIndex);
+    dout.writeInt(copy.victimFingerprint);
+    dout.writeInt(copy.data.length);
+    for (long value : copy.data) {
+      dout.writeLong(value);
+    }
+    dout.flush();
+  }
+
+  /**
+   * Reads a byte stream, which was written by {@linkplain #writeTo(OutputStream)}, into a
+   * {@code CuckooFilter<T>}.
+   *
+   * <p>The {@code Funnel} to be used is not encoded in the stream, so it must be provided here.
+   * <b>Warning:</b> the funnel provided <b>must</b> behave identically to the one used to
+   * populate the original cuckoo filter!
+   *
+   * @throws IOException if the InputStream throws an {@code IOException}, or if its data does
+   *     not appear to be a CuckooFilter written using the {@linkplain #writeTo(OutputStream)}
+   *     method.
+   */
+  public static <T> CuckooFilter<T> readFrom(InputStream in, Funnel<T> funnel)
+      throws IOException {
+    checkNotNull(in, "InputStream");
+    checkNotNull(funnel, "Funnel");
+    int hashing = -1;
+    int fingerprintBits = -1;
+    int numBuckets = -1;
+    int dataLength = -1;
+    try {
+      DataInputStream din = new DataInputStream(in);
+      hashing = din.readByte();
+      fingerprintBits = din.readByte();
+      numBuckets = din.readInt();
+      long count = din.readLong();
+      int victimIndex = din.readInt();
+      int victimFingerprint = din.readInt();
+      dataLength = din.readInt();
+
+      checkArgument(hashing == MURMUR128, "unknown hashing scheme");
+      long[] data = new long[dataLength];
+      for (int i = 0; i < data.length; i++) {
+        data[i] = din.readLong();
+      }
+      return new CuckooFilter<T>(data, numBuckets, fingerprintBits, count, victimIndex,
+          victimFingerprint, funnel);
+    } catch (RuntimeException e) {
+      IOException ioException = new IOException(
+          "Unable to deserialize CuckooFilter from InputStream."
+          + " hashing: " + hashing
+          + " fingerprintBits: " + fingerprintBits
+          + " numBuckets: " + numBuckets
+          + " dataLength: " + dataLength);
+      ioException.initCause(e);
+      throw ioException;
+    }
+  }
+
+  private Object writeReplace() {
+    return new SerialForm<T>(copy());
+  }
+
+  private static class SerialForm<T> implements Serializable {
+    final long[] data;
+    final int numBuckets;
+    final int fingerprintBits;
+    final long count;
+    final int victimIndex;
+    final int victimFingerprint;
+    final Funnel<T> funnel;
+
+    SerialForm(CuckooFilter<T> cf) {
+      this.data = cf.data;
+      this.numBuckets = cf.numBuckets;
+      this.fingerprintBits = cf.fingerprintBits;
+      this.count = cf.count;
+      this.victimIndex = cf.victimIndex;
+      this.victimFingerprint = cf.victimFingerprint;
+      this.funnel = cf.funnel;
+    }
+    Object readResolve() {
+      return new CuckooFilter<T>(data, numBuckets, fingerprintBits, count, victimIndex,
+          victimFingerprint, funnel);
+    }
+    private static final long serialVersionUID = 1;
+  }
+
+  private static final long serialVersionUID = 0;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 The Guava Authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+
+package com.google.common.hash;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.common.annotations.Beta;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.primitives.Ints;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+
+/**
+ * A Bloom filter for instances of {@code T} which, unlike a {@link BloomFilter}, needs no bound on
+ * the number of elements put in it: it grows as elements are put, keeping its false positive
+ * probability ({@code FPP}) below the one it was created with.
+ *
+ * <p>A scalable Bloom filter is a chain of Bloom filters. Elements are put in the last one, and
+ * when it holds as many elements as it was created for, a new one is added, for twice as many
+ * elements and with half the false positive probability. The false positive probabilities of the
+ * chain form a geometric series, whose sum is the false positive probability of the whole. See
+ * "Scalable Bloom Filters" by Paulo S&eacute;rgio Almeida, Carlos Baquero, Nuno Pregui&ccedil;a
+ * and David Hutchison.
+ *
+ * <p>The false positive probabilities of the chain stop shrinking at {@value #MIN_FPP}, from which
+ * the probability of the whole exceeds {@code fpp} by at most that much for each further filter,
+ * and the chain stops growing at {@value #MAX_FILTERS} filters, whose last then receives every new
+ * element, like a {@link BloomFilter} filled beyond its expected insertions.
+ *
+ * <p>{@link #mightContain} queries each Bloom filter of the chain, whose length grows with the
+ * logarithm of the number of elements over {@code expectedInsertions}, so a scalable Bloom filter
+ * is fastest when {@code expectedInsertions} is close to the number of elements it will hold.
+ *
+ * <p>Scalable Bloom filters are thread-safe: {@link #put} synchronizes on the filter, while
+ * {@link #mightContain} does not lock.
+ *
+ * @param <T> the type of instances that the {@code ScalableBloomFilter} accepts
+ * @since 17.0
+ */
+@Beta
+public final class ScalableBloomFilter<T> implements Predicate<T>, Serializable {
+  /** The factor by which the expected insertions of each Bloom filter of the chain grow. */
+  private static final int GROWTH_FACTOR = 2;
+
+  /** The factor by which the false positive probability of each Bloom filter shrinks. */
+  private static final double TIGHTENING_RATIO = 0.5;
+
+  /**
+   * The smallest false positive probability to which the Bloom filters of the chain shrink, unless
+   * the first one is created with less; halving it indefinitely would reach zero.
+   */
+  static final double MIN_FPP = 1e-12;
+
+  /**
+   * The largest number of Bloom filters in the chain: enough for the expected insertions of the
+   * last to reach {@code Integer.MAX_VALUE}, whatever those of the first.
+   */
+  static final int MAX_FILTERS = 32;
+
+  /** The funnel to translate Ts to bytes */
+  private final Funnel<T> funnel;
+
+  /** The chain of Bloom filters, the last of which receives new elements */
+  private volatile ImmutableList<BloomFilter<T>> filters;
+
+  /** The expected insertions and false positive probability of the last filter */
+  private long lastCapacity; // guarded by this
+  private double lastFpp; // guarded by this
+
+  /** The number of elements put in the last filter */
+  private long lastCount; // guarded by this
+
+  private ScalableBloomFilter(Funnel<T> funnel, int expectedInsertions, double fpp) {
+    this.funnel = funnel;
+    this.lastCapacity = expectedInsertions;
+    // so that the false positive probabilities of the chain sum to at most fpp
+    this.lastFpp = fpp * (1 - TIGHTENING_RATIO);
+    this.filters = ImmutableList.of(BloomFilter.create(funnel, expectedInsertions, lastFpp));
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter ScalableBloomFilter<T>} with the initial expected number
+   * of insertions and expected false positive probability.
+   *
+   * <p>The constructed {@code ScalableBloomFilter<T>} will be serializable if the provided
+   * {@code Funnel<T>} is.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter<T>} will use
+   * @param expectedInsertions the number of insertions the first Bloom filter of the chain is
+   *     created for; must be positive
+   * @param fpp the desired false positive probability (must be positive and less than 1.0)
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T> ScalableBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */, double fpp) {
+    checkNotNull(funnel);
+    checkArgument(expectedInsertions >= 0, "Expected insertions (%s) must be >= 0",
+        expectedInsertions);
+    checkArgument(fpp > 0.0, "False positive probability (%s) must be > 0.0", fpp);
+    checkArgument(fpp < 1.0, "False positive probability (%s) must be < 1.0", fpp);
+    if (expectedInsertions == 0) {
+      expectedInsertions = 1;
+    }
+    return new ScalableBloomFilter<T>(funnel, expectedInsertions, fpp);
+  }
+
+  /**
+   * Creates a {@link ScalableBloomFilter ScalableBloomFilter<T>} with the initial expected number
+   * of insertions and a default expected false positive probability of 3%.
+   *
+   * @param funnel the funnel of T's that the constructed {@code ScalableBloomFilter<T>} will use
+   * @param expectedInsertions the number of insertions the first Bloom filter of the chain is
+   *     created for; must be positive
+   * @return a {@code ScalableBloomFilter}
+   */
+  public static <T> ScalableBloomFilter<T> create(
+      Funnel<T> funnel, int expectedInsertions /* n */) {
+    return create(funnel, expectedInsertions, 0.03);
+  }
+
+  /**
+   * Returns {@code true} if the element <i>might</i> have been put in this Bloom filter,
+   * {@code false} if this is <i>definitely</i> not the case.
+   */
+  public boolean mightContain(T object) {
+    for (BloomFilter<T> filter : filters) {
+      if (filter.mightContain(object)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @deprecated Provided only to satisfy the {@link Predicate} interface; use {@link #mightContain}
+   *     instead.
+   */
+  @Deprecated
+  @Override
+  public boolean apply(T input) {
+    return mightContain(input);
+  }
+
+  /**
+   * Puts an element into this {@code ScalableBloomFilter}, unless it might already contain it.
+   * Ensures that subsequent invocations of {@link #mightContain(Object)} with the same element
+   * will always return {@code true}.
+   *
+   * @return true if the element was put in the filter, which is <i>definitely</i> the first time
+   *     {@code object} has been added to it. Like {@link BloomFilter#put}, this always returns
+   *     the <i>opposite</i> result to what {@code mightContain(t)} would have returned at the
+   *     time it is called.
+   */
+  public synchronized boolean put(T object) {
+    if (mightContain(object)) {
+      // counting it would grow the chain faster than the number of distinct elements
+      return false;
+    }
+    filters.get(filters.size() - 1).put(object);
+    if (++lastCount >= lastCapacity && filters.size() < MAX_FILTERS) {
+      grow();
+    }
+    return true;
+  }
+
+  private void grow() {
+    lastCapacity *= GROWTH_FACTOR;
+    if (lastFpp > MIN_FPP) {
+      lastFpp = Math.max(lastFpp * TIGHTENING_RATIO, MIN_FPP);
+    }
+    lastCount = 0;
+    BloomFilter<T> next = BloomFilter.create(funnel, Ints.saturatedCast(lastCapacity), lastFpp);
+    filters = ImmutableList.<BloomFilter<T>>builder().addAll(filters).add(next).build();
+  }
+
+  /**
+   * Returns the probability that {@linkplain #mightContain(Object)} will erroneously return
+   * {@code true} for an object that has not actually been put in the
+   * {@code ScalableBloomFilter}: the probability that any of the Bloom filters of the chain
+   * returns {@code true}.
+   *
+   * <p>This should always be close to the {@code fpp} parameter passed in
+   * {@linkplain #create(Funnel, int, double)}, or smaller.
+   */
+  public double expectedFpp() {
+    double trueNegativeProbability = 1.0;
+    for (BloomFilter<T> filter : filters) {
+      trueNegativeProbability *= 1.0 - filter.expectedFpp();
+    }
+    return 1.0 - trueNegativeProbability;
+  }
+
+  private synchronized void writeObject(ObjectOutputStream stream) throws IOException {
+    // so that the chain and the count of its last filter are consistent
+    stream.defaultWriteObject();
+  }
+
+  private static final long serialVersionUID = 0;
+}
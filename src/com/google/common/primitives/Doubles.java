@@ -246,6 +246,286 @@ public final class Doubles {
     return max;
   }
 
+  /**
+   * Returns the sum of the values in {@code array}, added in order. The sum is
+   * {@code NaN} if any value is {@code NaN}.
+   *
+   * @param array an array of {@code double} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  public static double sum(double... array) {
+    double sum = 0;
+    for (double value : array) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  /**
+   * Replaces each value in {@code array} by the sum of the values up to and
+   * including it, so that {@code {1, 2, 3}} becomes {@code {1, 3, 6}}.
+   *
+   * @param array an array of {@code double} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  public static void prefixSums(double[] array) {
+    for (int i = 1; i < array.length; i++) {
+      array[i] += array[i - 1];
+    }
+  }
+
+  /**
+   * Returns the index of the first value in {@code sortedArray} which is
+   * greater than or equal to {@code key}, or {@code sortedArray.length} if
+   * there is none. Values are ordered as by {@link Double#compare}, the order
+   * in which {@link Arrays#sort(double[])} leaves them: {@code -0.0} is less
+   * than {@code 0.0}, and {@code NaN} is greater than every other value and
+   * equal to itself. Unlike {@link Arrays#binarySearch(double[], double)}, the
+   * result is well-defined when {@code key} appears more than once.
+   *
+   * @param sortedArray an array of {@code double} values in ascending order
+   * @since 17.0
+   */
+  @Beta
+  public static int ceilingIndex(double[] sortedArray, double key) {
+    int low = 0;
+    int high = sortedArray.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Double.compare(sortedArray[mid], key) < 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first value in {@code sortedArray} which is
+   * strictly greater than {@code key}, or {@code sortedArray.length} if there
+   * is none, values being ordered as by {@link Double#compare}. The values
+   * equal to {@code key} are at the indices from {@link #ceilingIndex
+   * ceilingIndex(sortedArray, key)}, inclusive, to this index, exclusive.
+   *
+   * @param sortedArray an array of {@code double} values in ascending order
+   * @since 17.0
+   */
+  @Beta
+  public static int higherIndex(double[] sortedArray, double key) {
+    int low = 0;
+    int high = sortedArray.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (Double.compare(sortedArray[mid], key) <= 0) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Merges the values of the sorted arrays {@code a} and {@code b} into {@code
+   * out}, which is then sorted. Values are ordered as by {@link
+   * Double#compare}.
+   *
+   * @param a an array of {@code double} values in ascending order
+   * @param b an array of {@code double} values in ascending order
+   * @param out an array of length at least {@code a.length + b.length}, which
+   *     must not be {@code a} or {@code b}
+   * @return the number of values written to {@code out}, {@code a.length +
+   *     b.length}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int mergeSorted(double[] a, double[] b, double[] out) {
+    checkOutputLength(out, a.length + b.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      out[k++] = (Double.compare(a[i], b[j]) <= 0) ? a[i++] : b[j++];
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    k += a.length - i;
+    System.arraycopy(b, j, out, k, b.length - j);
+    return k + b.length - j;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted arrays
+   * {@code a} and {@code b}. A value appearing {@code m} times in {@code a} and
+   * {@code n} times in {@code b} is written {@code max(m, n)} times, values
+   * being equal if {@link Double#compare} finds them so: {@code -0.0} and
+   * {@code 0.0} are distinct, while {@code NaN} appears like any other value.
+   *
+   * @param a an array of {@code double} values in ascending order
+   * @param b an array of {@code double} values in ascending order
+   * @param out an array of length at least {@code a.length + b.length}, which
+   *     must not be {@code a} or {@code b}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int unionSorted(double[] a, double[] b, double[] out) {
+    checkOutputLength(out, a.length + b.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      int comparison = Double.compare(a[i], b[j]);
+      if (comparison < 0) {
+        out[k++] = a[i++];
+      } else if (comparison > 0) {
+        out[k++] = b[j++];
+      } else {
+        out[k++] = a[i++];
+        j++;
+      }
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    k += a.length - i;
+    System.arraycopy(b, j, out, k, b.length - j);
+    return k + b.length - j;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted array
+   * {@code a} which also appear in the sorted array {@code b}. A value
+   * appearing {@code m} times in {@code a} and {@code n} times in {@code b} is
+   * written {@code min(m, n)} times, values being equal if {@link
+   * Double#compare} finds them so.
+   *
+   * @param a an array of {@code double} values in ascending order
+   * @param b an array of {@code double} values in ascending order
+   * @param out an array of length at least {@code min(a.length, b.length)},
+   *     which may be {@code a} or {@code b}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int intersectSorted(double[] a, double[] b, double[] out) {
+    checkOutputLength(out, Math.min(a.length, b.length));
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      int comparison = Double.compare(a[i], b[j]);
+      if (comparison < 0) {
+        i++;
+      } else if (comparison > 0) {
+        j++;
+      } else {
+        out[k++] = a[i++];
+        j++;
+      }
+    }
+    return k;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted array
+   * {@code a} which do not appear in the sorted array {@code b}. A value
+   * appearing {@code m} times in {@code a} and {@code n} times in {@code b} is
+   * written {@code max(m - n, 0)} times, values being equal if {@link
+   * Double#compare} finds them so.
+   *
+   * @param a an array of {@code double} values in ascending order
+   * @param b an array of {@code double} values in ascending order
+   * @param out an array of length at least {@code a.length}, which may be
+   *     {@code a}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int subtractSorted(double[] a, double[] b, double[] out) {
+    checkOutputLength(out, a.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      int comparison = Double.compare(a[i], b[j]);
+      if (comparison < 0) {
+        out[k++] = a[i++];
+      } else if (comparison > 0) {
+        j++;
+      } else {
+        i++;
+        j++;
+      }
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    return k + a.length - i;
+  }
+
+  private static void checkOutputLength(double[] out, int length) {
+    checkArgument(out.length >= length,
+        "output array has length %s, but %s values may be written", out.length,
+        length);
+  }
+
+  /**
+   * Arrays shorter than this are sorted by {@link Arrays#sort(double[])}, which
+   * is faster than a radix sort for them.
+   */
+  private static final int RADIX_SORT_THRESHOLD = 1 << 10;
+
+  /**
+   * Sorts {@code array} in the ascending order of {@link Double#compare}, the
+   * same as {@link Arrays#sort(double[])}, with a least-significant-digit radix
+   * sort of the bits of its values. For large arrays this takes linear time,
+   * and is typically several times faster than {@link Arrays#sort(double[])},
+   * at the cost of allocating two temporary arrays of the same length.
+   *
+   * @param array an array of {@code double} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  @GwtIncompatible("doubleToRawLongBits")
+  public static void radixSort(double[] array) {
+    if (array.length < RADIX_SORT_THRESHOLD) {
+      Arrays.sort(array);
+      return;
+    }
+    // NaN is greater than every other value: move each one, unchanged, last
+    int end = array.length;
+    for (int i = 0; i < end; ) {
+      if (Double.isNaN(array[i])) {
+        end--;
+        double nan = array[i];
+        array[i] = array[end];
+        array[end] = nan;
+      } else {
+        i++;
+      }
+    }
+    long[] keys = new long[end];
+    for (int i = 0; i < end; i++) {
+      keys[i] = sortableBits(Double.doubleToRawLongBits(array[i]));
+    }
+    Longs.radixSort(keys);
+    for (int i = 0; i < end; i++) {
+      array[i] = Double.longBitsToDouble(sortableBits(keys[i]));
+    }
+  }
+
+  /**
+   * Flips the bits other than the sign of negative values, so that the signed
+   * order of the bits of values other than {@code NaN} is that of {@link
+   * Double#compare}. The transformation is its own inverse.
+   */
+  private static long sortableBits(long bits) {
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
   /**
    * Returns the values from each provided array combined into a single array.
    * For example, {@code concat(new double[] {a, b}, new double[] {}, new
@@ -229,6 +229,275 @@ public final class Longs {
     return max;
   }
 
+  /**
+   * Returns the sum of the values in {@code array}. A sum which overflows wraps
+   * around, as in {@code long} arithmetic.
+   *
+   * @param array an array of {@code long} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  public static long sum(long... array) {
+    long sum = 0;
+    for (long value : array) {
+      sum += value;
+    }
+    return sum;
+  }
+
+  /**
+   * Replaces each value in {@code array} by the sum of the values up to and
+   * including it, so that {@code {1, 2, 3}} becomes {@code {1, 3, 6}}. Sums
+   * which overflow wrap around, as in {@code long} arithmetic.
+   *
+   * @param array an array of {@code long} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  public static void prefixSums(long[] array) {
+    for (int i = 1; i < array.length; i++) {
+      array[i] += array[i - 1];
+    }
+  }
+
+  /**
+   * Returns the index of the first value in {@code sortedArray} which is
+   * greater than or equal to {@code key}, or {@code sortedArray.length} if
+   * there is none. Unlike {@link Arrays#binarySearch(long[], long)}, the result
+   * is well-defined when {@code key} appears more than once.
+   *
+   * @param sortedArray an array of {@code long} values in ascending order
+   * @since 17.0
+   */
+  @Beta
+  public static int ceilingIndex(long[] sortedArray, long key) {
+    int low = 0;
+    int high = sortedArray.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedArray[mid] < key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the index of the first value in {@code sortedArray} which is
+   * strictly greater than {@code key}, or {@code sortedArray.length} if there
+   * is none. The values equal to {@code key} are at the indices from {@link
+   * #ceilingIndex ceilingIndex(sortedArray, key)}, inclusive, to this index,
+   * exclusive.
+   *
+   * @param sortedArray an array of {@code long} values in ascending order
+   * @since 17.0
+   */
+  @Beta
+  public static int higherIndex(long[] sortedArray, long key) {
+    int low = 0;
+    int high = sortedArray.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedArray[mid] <= key) {
+        low = mid + 1;
+      } else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Merges the values of the sorted arrays {@code a} and {@code b} into {@code
+   * out}, which is then sorted.
+   *
+   * @param a an array of {@code long} values in ascending order
+   * @param b an array of {@code long} values in ascending order
+   * @param out an array of length at least {@code a.length + b.length}, which
+   *     must not be {@code a} or {@code b}
+   * @return the number of values written to {@code out}, {@code a.length +
+   *     b.length}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int mergeSorted(long[] a, long[] b, long[] out) {
+    checkOutputLength(out, a.length + b.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      out[k++] = (a[i] <= b[j]) ? a[i++] : b[j++];
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    k += a.length - i;
+    System.arraycopy(b, j, out, k, b.length - j);
+    return k + b.length - j;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted arrays
+   * {@code a} and {@code b}. A value appearing {@code m} times in {@code a} and
+   * {@code n} times in {@code b} is written {@code max(m, n)} times, so that
+   * the union of two arrays of distinct values has distinct values.
+   *
+   * @param a an array of {@code long} values in ascending order
+   * @param b an array of {@code long} values in ascending order
+   * @param out an array of length at least {@code a.length + b.length}, which
+   *     must not be {@code a} or {@code b}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int unionSorted(long[] a, long[] b, long[] out) {
+    checkOutputLength(out, a.length + b.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        out[k++] = a[i++];
+      } else if (a[i] > b[j]) {
+        out[k++] = b[j++];
+      } else {
+        out[k++] = a[i++];
+        j++;
+      }
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    k += a.length - i;
+    System.arraycopy(b, j, out, k, b.length - j);
+    return k + b.length - j;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted array
+   * {@code a} which also appear in the sorted array {@code b}. A value
+   * appearing {@code m} times in {@code a} and {@code n} times in {@code b} is
+   * written {@code min(m, n)} times.
+   *
+   * @param a an array of {@code long} values in ascending order
+   * @param b an array of {@code long} values in ascending order
+   * @param out an array of length at least {@code min(a.length, b.length)},
+   *     which may be {@code a} or {@code b}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int intersectSorted(long[] a, long[] b, long[] out) {
+    checkOutputLength(out, Math.min(a.length, b.length));
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        i++;
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        out[k++] = a[i++];
+        j++;
+      }
+    }
+    return k;
+  }
+
+  /**
+   * Writes to {@code out}, in ascending order, the values of the sorted array
+   * {@code a} which do not appear in the sorted array {@code b}. A value
+   * appearing {@code m} times in {@code a} and {@code n} times in {@code b} is
+   * written {@code max(m - n, 0)} times.
+   *
+   * @param a an array of {@code long} values in ascending order
+   * @param b an array of {@code long} values in ascending order
+   * @param out an array of length at least {@code a.length}, which may be
+   *     {@code a}
+   * @return the number of values written to {@code out}
+   * @throws IllegalArgumentException if {@code out} is too short
+   * @since 17.0
+   */
+  @Beta
+  public static int subtractSorted(long[] a, long[] b, long[] out) {
+    checkOutputLength(out, a.length);
+    int i = 0;
+    int j = 0;
+    int k = 0;
+    while (i < a.length && j < b.length) {
+      if (a[i] < b[j]) {
+        out[k++] = a[i++];
+      } else if (a[i] > b[j]) {
+        j++;
+      } else {
+        i++;
+        j++;
+      }
+    }
+    System.arraycopy(a, i, out, k, a.length - i);
+    return k + a.length - i;
+  }
+
+  private static void checkOutputLength(long[] out, int length) {
+    checkArgument(out.length >= length,
+        "output array has length %s, but %s values may be written", out.length,
+        length);
+  }
+
+  /**
+   * Arrays shorter than this are sorted by {@link Arrays#sort(long[])}, which
+   * is faster than a radix sort for them.
+   */
+  private static final int RADIX_SORT_THRESHOLD = 1 << 10;
+
+  /**
+   * Sorts {@code array} in ascending order, with a least-significant-digit
+   * radix sort of 8-bit digits. For large arrays this takes linear time, and is
+   * typically several times faster than {@link Arrays#sort(long[])}, at the
+   * cost of allocating a temporary array of the same length.
+   *
+   * @param array an array of {@code long} values, possibly empty
+   * @since 17.0
+   */
+  @Beta
+  public static void radixSort(long[] array) {
+    if (array.length < RADIX_SORT_THRESHOLD) {
+      Arrays.sort(array);
+      return;
+    }
+    long[] from = array;
+    long[] to = new long[array.length];
+    int[] counts = new int[1 << 8];
+    for (int shift = 0; shift < Long.SIZE; shift += 8) {
+      // flipping the sign bit of the last digit orders negative values first
+      int flip = (shift == Long.SIZE - 8) ? 0x80 : 0;
+      Arrays.fill(counts, 0);
+      for (long value : from) {
+        counts[((int) (value >>> shift) & 0xFF) ^ flip]++;
+      }
+      if (counts[((int) (from[0] >>> shift) & 0xFF) ^ flip] == from.length) {
+        continue; // every value has the same digit
+      }
+      int total = 0;
+      for (int i = 0; i < counts.length; i++) {
+        int count = counts[i];
+        counts[i] = total;
+        total += count;
+      }
+      for (long value : from) {
+        to[counts[((int) (value >>> shift) & 0xFF) ^ flip]++] = value;
+      }
+      long[] tmp = from;
+      from = to;
+      to = tmp;
+    }
+    if (from != array) {
+      System.arraycopy(from, 0, array, 0, array.length);
+    }
+  }
+
   /**
    * Returns the values from each provided array combined into a single array.
    * For example, {@code concat(new long[] {a, b}, new long[] {}, new